@@ -15,6 +15,9 @@ import com.tobedevoured.naether.NaetherException;
 import com.tobedevoured.naether.api.Naether;
 import com.tobedevoured.naether.impl.NaetherImpl;
 import com.tobedevoured.naether.util.RepoBuilder;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -118,6 +121,7 @@ import science.atlarge.opencraft.opencraft.block.BuiltinMaterialValueManager;
 import science.atlarge.opencraft.opencraft.block.MaterialValueManager;
 import science.atlarge.opencraft.opencraft.block.entity.state.GlowDispenser;
 import science.atlarge.opencraft.opencraft.boss.GlowBossBar;
+import science.atlarge.opencraft.opencraft.chunk.ChunkPacketCache;
 import science.atlarge.opencraft.opencraft.command.glowstone.ColorCommand;
 import science.atlarge.opencraft.opencraft.command.glowstone.GlowstoneCommand;
 import science.atlarge.opencraft.opencraft.command.minecraft.BanCommand;
@@ -167,6 +171,7 @@ import science.atlarge.opencraft.opencraft.command.minecraft.WhitelistCommand;
 import science.atlarge.opencraft.opencraft.command.minecraft.WorldBorderCommand;
 import science.atlarge.opencraft.opencraft.command.minecraft.XpCommand;
 import science.atlarge.opencraft.opencraft.command.opencraft.DyconitPolicyCommand;
+import science.atlarge.opencraft.opencraft.command.opencraft.TickProfileCommand;
 import science.atlarge.opencraft.opencraft.constants.GlowEnchantment;
 import science.atlarge.opencraft.opencraft.constants.GlowPotionEffect;
 import science.atlarge.opencraft.opencraft.entity.EntityIdManager;
@@ -192,6 +197,9 @@ import science.atlarge.opencraft.opencraft.map.GlowMapView;
 import science.atlarge.opencraft.opencraft.measurements.EventFileLogger;
 import science.atlarge.opencraft.opencraft.measurements.EventLogger;
 import science.atlarge.opencraft.opencraft.measurements.EventNoopLogger;
+import science.atlarge.opencraft.opencraft.measurements.TickProfileFileLogger;
+import science.atlarge.opencraft.opencraft.messaging.MessagingFactory;
+import science.atlarge.opencraft.opencraft.messaging.sharding.EmbeddedBroker;
 import science.atlarge.opencraft.opencraft.net.GameServer;
 import science.atlarge.opencraft.opencraft.net.GlowSession;
 import science.atlarge.opencraft.opencraft.net.Networking;
@@ -200,6 +208,8 @@ import science.atlarge.opencraft.opencraft.net.handler.status.StatusRequestHandl
 import science.atlarge.opencraft.opencraft.net.message.play.player.AdvancementsMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.player.PlayerAbilitiesMessage;
 import science.atlarge.opencraft.opencraft.net.message.status.StatusRequestMessage;
+import science.atlarge.opencraft.opencraft.net.pipeline.FlushCoalescingHandler;
+import science.atlarge.opencraft.opencraft.net.pipeline.FlushStatistics;
 import science.atlarge.opencraft.opencraft.net.protocol.ProtocolProvider;
 import science.atlarge.opencraft.opencraft.net.query.QueryServer;
 import science.atlarge.opencraft.opencraft.net.rcon.RconServer;
@@ -220,6 +230,7 @@ import science.atlarge.opencraft.opencraft.util.bans.UuidListFile;
 import science.atlarge.opencraft.opencraft.util.config.BrokerConfig;
 import science.atlarge.opencraft.opencraft.util.config.BrokerType;
 import science.atlarge.opencraft.opencraft.util.config.ChannelType;
+import science.atlarge.opencraft.opencraft.util.config.QueueType;
 import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 import science.atlarge.opencraft.opencraft.util.config.ServerConfig.Key;
 import science.atlarge.opencraft.opencraft.util.config.WorldConfig;
@@ -245,6 +256,30 @@ public class GlowServer implements Server {
      */
     public EventLogger eventLogger;
 
+    /**
+     * Periodically writes the tick profiles of the server and its worlds, or null if disabled.
+     */
+    private TickProfileFileLogger tickProfileLogger;
+
+    /**
+     * The cache of encoded chunk data, shared by all worlds.
+     */
+    @Getter
+    private ChunkPacketCache chunkPacketCache;
+
+    /**
+     * The flush counters of the network pipelines of all sessions.
+     */
+    @Getter
+    private final FlushStatistics flushStatistics = new FlushStatistics();
+
+    /**
+     * The threads which compress the messages of all sessions, or null if messages are compressed
+     * on the network threads.
+     */
+    @Getter
+    private EventExecutorGroup compressionExecutor;
+
     /**
      * The game version supported by the server.
      */
@@ -333,7 +368,7 @@ public class GlowServer implements Server {
     /**
      * The EntityIdManager for this server.
      */
-    private final EntityIdManager entityIdManager = new EntityIdManager();
+    private final EntityIdManager entityIdManager;
 
     /**
      * The world this server is managing.
@@ -542,7 +577,18 @@ public class GlowServer implements Server {
         ipBans = new GlowBanList(this, Type.IP);
 
         loadConfig();
+        // the nodes of a sharded world show each other their entities, so they allocate ids from their own partitions
+        entityIdManager = config.getBoolean(Key.OPENCRAFT_SHARDING_ENABLED)
+                ? EntityIdManager.partitioned(MessagingFactory.regionsFromConfig(config).getLocalIndex())
+                : new EntityIdManager();
         initEventLogging();
+        initTickProfileLogging();
+        chunkPacketCache = new ChunkPacketCache(config.getInt(Key.OPENCRAFT_CHUNK_CACHE_SIZE) * 1024L * 1024L);
+        int compressionThreads = config.getInt(Key.COMPRESSION_THREADS);
+        if (compressionThreads > 0) {
+            compressionExecutor = new DefaultEventExecutorGroup(compressionThreads,
+                    new DefaultThreadFactory("compression", true)); // NON-NLS
+        }
     }
 
     private void initEventLogging() {
@@ -558,6 +604,18 @@ public class GlowServer implements Server {
         }
     }
 
+    private void initTickProfileLogging() {
+        if (config.getBoolean(Key.OPENCRAFT_LOGGING_TICK_PROFILE)) {
+            long period = TimeUnit.SECONDS.toMillis(config.getInt(Key.OPENCRAFT_LOGGING_TICK_PROFILE_INTERVAL));
+            tickProfileLogger = new TickProfileFileLogger(new File("opencraft-tick-profile.log"), period, this);
+            try {
+                tickProfileLogger.init();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     /**
      * Extract and parse the broker configuration from the server configuration.
      *
@@ -1052,16 +1110,24 @@ public class GlowServer implements Server {
         if (rconServer != null) {
             rconServer.shutdown();
         }
+        if (compressionExecutor != null) {
+            compressionExecutor.shutdownGracefully();
+        }
 
         // Stop scheduler and console
         scheduler.stop();
         consoleManager.stop();
+        if (tickProfileLogger != null) {
+            tickProfileLogger.close();
+        }
 
         // Save worlds
         for (World world : getWorlds()) {
             ConsoleMessages.Info.SAVE.log(world.getName());
             unloadWorld(world, true);
         }
+        // the worlds of other nodes may still use the broker, but it only runs as long as this server
+        EmbeddedBroker.stop();
 
         // Wait for a while and terminate any rogue threads
         new ShutdownMonitorThread().start();
@@ -1268,6 +1334,7 @@ public class GlowServer implements Server {
         commandMap.clearCommands();
         // opencraft commands
         commandMap.register("opencraft", new DyconitPolicyCommand());
+        commandMap.register("opencraft", new TickProfileCommand());
         // glowstone commands
         commandMap.register("glowstone", new ColorCommand());
         commandMap.register("glowstone", new GlowstoneCommand());
@@ -1697,6 +1764,15 @@ public class GlowServer implements Server {
         return config.getInt(Key.COMPRESSION_THRESHOLD);
     }
 
+    /**
+     * Get the level to use for network compression defined in the config.
+     *
+     * @return The compression level, from 0 to 9, or -1 for the default level.
+     */
+    public int getCompressionLevel() {
+        return config.getInt(Key.COMPRESSION_LEVEL);
+    }
+
     /**
      * Get the default game difficulty defined in the config.
      *
@@ -1719,6 +1795,28 @@ public class GlowServer implements Server {
         return config.getBoolean(Key.PERSIST_SPAWN);
     }
 
+    /**
+     * Get the type of queue in which chunks wait to be sent to players.
+     *
+     * @return The type of the chunk queue.
+     */
+    public QueueType getChunkQueueType() {
+        return QueueType.parse(config.getString(Key.OPENCRAFT_CHUNK_QUEUE));
+    }
+
+    /**
+     * Create the handler that coalesces the flushes of a session's channel.
+     *
+     * @return The flush coalescing handler, or null if flushes should not be coalesced.
+     */
+    public FlushCoalescingHandler createFlushCoalescingHandler() {
+        if (!config.getBoolean(Key.OPENCRAFT_NETWORK_COALESCE_FLUSHES)) {
+            return null;
+        }
+        return new FlushCoalescingHandler(flushStatistics, config.getInt(Key.OPENCRAFT_NETWORK_FLUSH_BYTES),
+                config.getInt(Key.OPENCRAFT_NETWORK_FLUSH_DELAY));
+    }
+
     /**
      * Get whether to populate chunks when they are anchored.
      *
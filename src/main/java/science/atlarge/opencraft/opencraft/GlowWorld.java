@@ -7,6 +7,8 @@ import com.flowpowered.network.Message;
 import com.flowpowered.network.session.Session;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import it.unimi.dsi.fastutil.longs.LongList;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -17,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -25,13 +28,17 @@ import lombok.Setter;
 import lombok.ToString;
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
 import science.atlarge.opencraft.opencraft.block.ItemTable;
+import science.atlarge.opencraft.opencraft.block.blocktype.BlockRedstone;
 import science.atlarge.opencraft.opencraft.block.blocktype.BlockType;
 import science.atlarge.opencraft.opencraft.chunk.AreaOfInterest;
 import science.atlarge.opencraft.opencraft.chunk.ChunkManager;
 import science.atlarge.opencraft.opencraft.chunk.ChunkManager.ChunkLock;
 import science.atlarge.opencraft.opencraft.chunk.ChunkSection;
+import science.atlarge.opencraft.opencraft.chunk.FluidEngine;
 import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
 import science.atlarge.opencraft.opencraft.chunk.GlowChunkSnapshot.EmptySnapshot;
+import science.atlarge.opencraft.opencraft.chunk.LightEngine;
+import science.atlarge.opencraft.opencraft.chunk.RedstoneEngine;
 import science.atlarge.opencraft.opencraft.constants.GameRules;
 import science.atlarge.opencraft.opencraft.constants.GlowBiome;
 import science.atlarge.opencraft.opencraft.constants.GlowBiomeClimate;
@@ -51,22 +58,28 @@ import science.atlarge.opencraft.opencraft.entity.objects.GlowItem;
 import science.atlarge.opencraft.opencraft.entity.physics.BoundingBox;
 import science.atlarge.opencraft.opencraft.executor.ChunkRunnable;
 import science.atlarge.opencraft.opencraft.executor.PriorityExecutor;
+import science.atlarge.opencraft.opencraft.executor.RegionTickExecutor;
 import science.atlarge.opencraft.opencraft.generator.structures.GlowStructure;
 import science.atlarge.opencraft.opencraft.io.WorldStorageProvider;
 import science.atlarge.opencraft.opencraft.io.entity.EntityStorage;
+import science.atlarge.opencraft.opencraft.measurements.TickPhase;
+import science.atlarge.opencraft.opencraft.measurements.TickProfiler;
 import science.atlarge.opencraft.opencraft.messaging.Messaging;
 import science.atlarge.opencraft.opencraft.messaging.MessagingFactory;
+import science.atlarge.opencraft.opencraft.messaging.sharding.RegionMap;
+import science.atlarge.opencraft.opencraft.messaging.sharding.ShardedMessaging;
 import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityStatusMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.game.UnloadChunkMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.game.UpdateBlockEntityMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.player.ServerDifficultyMessage;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
 import science.atlarge.opencraft.opencraft.util.BlockStateDelegate;
 import science.atlarge.opencraft.opencraft.util.GameRuleManager;
 import science.atlarge.opencraft.opencraft.util.RayUtil;
 import science.atlarge.opencraft.opencraft.util.TickUtil;
 import science.atlarge.opencraft.opencraft.util.Vectors;
-import science.atlarge.opencraft.opencraft.util.collection.ConcurrentSet;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 import science.atlarge.opencraft.opencraft.util.config.WorldConfig;
 import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
 import org.bukkit.BlockChangeDelegate;
@@ -212,9 +225,14 @@ public class GlowWorld implements World {
     private final long seed;
 
     /**
-     * Contains how regular blocks should be pulsed.
+     * The blocks that have requested to be pulsed, by the tick in which they are due.
      */
-    private final ConcurrentSet<Location> tickMap;
+    private final TickWheel scheduledPulses;
+
+    /**
+     * The full time at which the scheduled pulses are next checked, or -1 before they are first checked.
+     */
+    private long nextPulseTime = -1;
 
     /**
      * The world border.
@@ -392,10 +410,51 @@ public class GlowWorld implements World {
 
     private final Messaging messagingSystem;
 
+    /**
+     * Whether the messages collected by the messaging system are passed on at the end of the world pulse, on the
+     * thread of this world, rather than by the scheduler after all worlds have been pulsed.
+     */
+    private final boolean flushMessagingInPulse;
+
+    /**
+     * The assignment of regions to the nodes that simulate this world together, or null if this server simulates the
+     * entire world.
+     */
+    private final RegionMap regions;
+
     private final PriorityExecutor<ChunkRunnable> executor;
 
+    /**
+     * The executor that runs the stages of the pulse of this world in parallel.
+     */
+    private final RegionTickExecutor tickExecutor;
+
+    /**
+     * The engine that propagates the light of this world as blocks change.
+     */
+    @Getter
+    private final LightEngine lightEngine;
+
+    /**
+     * The engine that flows the water and lava of this world.
+     */
+    @Getter
+    private final FluidEngine fluidEngine;
+
+    /**
+     * The engine that powers the redstone wire of this world.
+     */
+    @Getter
+    private final RedstoneEngine redstoneEngine;
+
     private ImmutableMap<GlowPlayer, AreaOfInterest> previousAreas;
 
+    /**
+     * The profiler recording the duration of each phase of this world's tick.
+     */
+    @Getter
+    private final TickProfiler tickProfiler = new TickProfiler();
+
     /**
      * Creates a new world from the options in the given WorldCreator.
      *
@@ -420,7 +479,7 @@ public class GlowWorld implements World {
         entityManager = new EntityManager();
         populators = generator.getDefaultPopulators(this);
         gameRuleMap = new GameRuleManager();
-        tickMap = new ConcurrentSet<>();
+        scheduledPulses = new TickWheel();
 
         // Set up values from server defaults
         ticksPerAnimalSpawns = server.getTicksPerAnimalSpawns();
@@ -438,8 +497,13 @@ public class GlowWorld implements World {
 
         // Set up messaging system
         messagingSystem = MessagingFactory.fromConfig(this, server);
+        flushMessagingInPulse = server.getConfig()
+            .getBoolean(ServerConfig.Key.OPENCRAFT_MESSAGING_FLUSH_ON_WORLD_THREAD);
+        regions = messagingSystem instanceof ShardedMessaging
+            ? ((ShardedMessaging) messagingSystem).getRegions() : null;
 
-        executor = new PriorityExecutor<>();
+        executor = new PriorityExecutor<>(server.getChunkQueueType());
+        tickExecutor = newTickExecutor(name, server.getConfig());
         previousAreas = ImmutableMap.of();
 
         // Read in world data
@@ -458,6 +522,14 @@ public class GlowWorld implements World {
         }
 
         chunkManager = new ChunkManager(this, storage.getChunkIoService(), generator);
+        lightEngine = new LightEngine(server.getMaterialValueManager(), environment == Environment.NORMAL,
+            chunkManager::getChunkIfPresent, Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("light-" + name) // NON-NLS
+                .setDaemon(true)
+                .build()));
+        redstoneEngine = new RedstoneEngine(chunkManager::getChunkIfPresent, new BlockRedstone.WireCircuit(this));
+        fluidEngine = new FluidEngine(chunkManager::getChunkIfPresent, environment == Environment.NETHER,
+            redstoneEngine);
         structures = storage.getStructureDataService().readStructuresData();
         functions = storage.getFunctionIoService().readFunctions().stream()
             .collect(Collectors.toMap(CommandFunction::getFullName, function -> function));
@@ -477,6 +549,25 @@ public class GlowWorld implements World {
     ////////////////////////////////////////////////////////////////////////////
     // Various internal mechanisms
 
+    /**
+     * Create the executor of the pulse of a world, with the parallelism configured for the world or else the default
+     * parallelism.
+     *
+     * @param name   the name of the world.
+     * @param config the server configuration.
+     * @return the executor.
+     */
+    private static RegionTickExecutor newTickExecutor(String name, ServerConfig config) {
+        int parallelism = config.getInt(ServerConfig.Key.OPENCRAFT_TICK_PARALLELISM);
+        for (Map<?, ?> world : config.getMapList(ServerConfig.Key.OPENCRAFT_TICK_WORLDS)) {
+            if (name.equals(world.get("world")) && world.get("parallelism") instanceof Integer) {
+                parallelism = (Integer) world.get("parallelism");
+            }
+        }
+        return new RegionTickExecutor("world-" + name, parallelism,
+            config.getInt(ServerConfig.Key.OPENCRAFT_TICK_REGION_SIZE));
+    }
+
     /**
      * Get a new chunk lock object a player or other party can use to keep chunkManager loaded.
      *
@@ -492,21 +583,37 @@ public class GlowWorld implements World {
      */
     public void pulse() {
 
+        long tickStart = System.nanoTime();
         List<GlowPlayer> players = entityManager.getPlayers();
 
         updateAreasOfInterest(players);
+        long time = tickProfiler.record(TickPhase.UPDATE_AREAS_OF_INTEREST, tickStart);
 
         pulseTickMap();
+        time = tickProfiler.record(TickPhase.PULSE_TICK_MAP, time);
+
+        fluidEngine.pulse(messagingSystem::publish);
+        time = tickProfiler.record(TickPhase.PULSE_FLUIDS, time);
+
+        redstoneEngine.pulse(messagingSystem::publish);
+        time = tickProfiler.record(TickPhase.PULSE_REDSTONE, time);
+
         Set<GlowChunk> activeChunks = findActiveChunks(players);
         updateBlocksInChunks(activeChunks);
+        time = tickProfiler.record(TickPhase.UPDATE_BLOCKS_IN_CHUNKS, time);
 
         List<GlowEntity> entities = entityManager.getAll();
 
         broadcastEntityUpdates(entities);
+        time = tickProfiler.record(TickPhase.BROADCAST_ENTITY_UPDATES, time);
+
+        entityManager.updateVisibility(players);
+        tickProfiler.record(TickPhase.SPAWN_ENTITIES, time);
 
-        players.parallelStream().forEach(GlowPlayer::spawnEntities);
+        tickExecutor.forEach(entities, GlowEntity::reset);
 
-        entities.parallelStream().forEach(GlowEntity::reset);
+        lightEngine.pulse((chunk, sections) -> messagingSystem.publish(chunk,
+            chunk.toMessage(environment == Environment.NORMAL, sections)));
 
         worldBorder.pulse();
 
@@ -516,7 +623,15 @@ public class GlowWorld implements World {
 
         handleSleepAndWake(players);
 
+        time = System.nanoTime();
         saveWorld();
+        tickProfiler.record(TickPhase.SAVE_WORLD, time);
+
+        if (flushMessagingInPulse) {
+            messagingSystem.flush();
+        }
+
+        tickProfiler.record(TickPhase.WORLD_TICK, tickStart);
     }
 
     /**
@@ -535,24 +650,23 @@ public class GlowWorld implements World {
         Set<GlowPlayer> previousPlayers = previousAreas.keySet();
         Sets.SetView<GlowPlayer> allPlayers = Sets.union(currentPlayers, previousPlayers);
 
-        allPlayers.parallelStream()
-            .forEach(player -> {
-                Session session = player.getSession();
-                messagingSystem.update(player, session::send);
-            });
+        tickExecutor.forEach(allPlayers, player -> {
+            Session session = player.getSession();
+            messagingSystem.update(player, session::send);
+        });
 
-        List<ChunkRunnable> chunksToLoad = allPlayers.parallelStream()
+        List<ChunkRunnable> chunksToLoad = tickExecutor.invoke(() -> allPlayers.parallelStream()
             .map(player -> {
                 AreaOfInterest current = currentAreas.get(player);
                 AreaOfInterest previous = previousAreas.get(player);
                 return getChunksToLoad(player, current, previous);
             })
             .flatMap(List::stream)
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
 
         Set<ChunkRunnable> cancelled = executor.executeAndCancel(chunksToLoad, ChunkRunnable::shouldBeCancelled);
 
-        List<ChunkRunnable> chunksToUnload = allPlayers.parallelStream()
+        List<ChunkRunnable> chunksToUnload = tickExecutor.invoke(() -> allPlayers.parallelStream()
             .map(player -> {
                 AreaOfInterest current = currentAreas.get(player);
                 AreaOfInterest previous = previousAreas.get(player);
@@ -560,7 +674,7 @@ public class GlowWorld implements World {
             })
             .flatMap(List::stream)
             .filter(runnable -> !cancelled.contains(runnable))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
 
         unloadChunks(chunksToUnload);
 
@@ -656,17 +770,40 @@ public class GlowWorld implements World {
             AreaOfInterest area = player.getAreaOfInterest();
             area.forEach(chunks::add);
         });
+        if (regions != null) {
+            chunks.removeIf(chunk -> !regions.isLocal(chunk.getX(), chunk.getZ()));
+        }
         return chunks;
     }
 
+    /**
+     * Check whether this server simulates the given entity. Entities in regions that other nodes own are left to those
+     * nodes, except for the players connected to this server.
+     *
+     * @param entity the entity.
+     * @return whether the entity is simulated.
+     */
+    private boolean isSimulated(GlowEntity entity) {
+        if (regions == null || entity instanceof GlowPlayer) {
+            return true;
+        }
+        Location location = entity.getLocation();
+        return regions.isLocal(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
     /**
      * Update each chunk in the given set of chunks. Maybe striking lighting, applying the default tick, and randomly
-     * selecting a number of blocks within each chunk's sections to be ticked as well.
+     * selecting a number of blocks within each chunk's sections to be ticked as well. Chunks are updated in parallel
+     * by region, so updates that spill over into neighbouring chunks do not race.
      *
      * @param chunks the chunks which contain the blocks to be updated.
      */
     private void updateBlocksInChunks(Set<GlowChunk> chunks) {
-        chunks.parallelStream().filter(this::isChunkLoaded).forEach(chunk -> {
+        tickExecutor.forEachByRegion(chunks, chunk -> GlowChunk.Key.toLong(chunk.getX(), chunk.getZ()), chunk -> {
+
+            if (!isChunkLoaded(chunk)) {
+                return;
+            }
 
             int x = chunk.getX();
             int z = chunk.getZ();
@@ -689,19 +826,18 @@ public class GlowWorld implements World {
      * @param index   the index of the section within the chunk.
      */
     private void updateBlocksInSection(GlowChunk chunk, ChunkSection section, int index) {
-        if (section != null) {
-            for (int j = 0; j < 3; j++) {
-                int n = ThreadLocalRandom.current().nextInt();
-                int x = n & 0xF;
-                int z = n >> 8 & 0xF;
-                int y = n >> 16 & 0xF;
-                int type = section.getType(x, y, z) >> 4;
-                if (type != 0) { // filter air blocks
-                    BlockType blockType = ItemTable.instance().getBlock(type);
-                    if (blockType != null && blockType.canTickRandomly()) {
-                        blockType.updateBlock(chunk.getBlock(x, y + (index << 4), z));
-                    }
-                }
+        // most sections, such as those of only stone or air, have no blocks that tick randomly
+        if (section == null || section.getRandomTickCount() == 0) {
+            return;
+        }
+        for (int j = 0; j < 3; j++) {
+            int n = ThreadLocalRandom.current().nextInt();
+            int x = n & 0xF;
+            int z = n >> 8 & 0xF;
+            int y = n >> 16 & 0xF;
+            int type = section.getType(x, y, z);
+            if (ChunkSection.ticksRandomly(type)) {
+                ItemTable.instance().getBlock(type >> 4).updateBlock(chunk.getBlock(x, y + (index << 4), z));
             }
         }
     }
@@ -769,12 +905,21 @@ public class GlowWorld implements World {
     }
 
     /**
-     * Generate and broadcast update messages for all entities on the server.
+     * Generate and broadcast update messages for all entities on the server. Entities are pulsed in parallel by
+     * region, so entities that affect nearby entities and blocks do not race.
      *
      * @param entities The entities for which update messages should be generated.
      */
     private void broadcastEntityUpdates(Collection<GlowEntity> entities) {
-        entities.parallelStream().forEach(entity -> {
+        Location scratch = new Location(this, 0, 0, 0);
+        tickExecutor.forEachByRegion(entities, entity -> {
+            Location location = entity.getLocation(scratch);
+            return GlowChunk.Key.toLong(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        }, entity -> {
+
+            if (!isSimulated(entity)) {
+                return;
+            }
 
             entity.pulse();
 
@@ -820,7 +965,7 @@ public class GlowWorld implements World {
         fullTime++;
         // fullTime is used to determine when to (periodically) update clients of server time
         // (time of day - "time")
-        // also used to occasionally pulse some blocks (see "tickMap" and "requestPulse()")
+        // also used to occasionally pulse some blocks (see "scheduledPulses" and "requestPulse()")
 
         // Modulus by 24000, the tick length of a day
         if (gameRuleMap.getBoolean(GameRules.DO_DAYLIGHT_CYCLE)) {
@@ -2355,60 +2500,131 @@ public class GlowWorld implements World {
         return result;
     }
 
+    /**
+     * Pulse the blocks that are due. A block is pulsed when the full time is a multiple of its pulse speed, and then
+     * either forgotten or scheduled again for the next multiple, as its type requires. A block that cancels its own
+     * pulse while it is pulsed is not scheduled again.
+     */
     private void pulseTickMap() {
+        nextPulseTime = fullTime + 1;
         ItemTable itemTable = ItemTable.instance();
-        tickMap.forEach(location -> {
-
-            GlowChunk chunk = (GlowChunk) location.getChunk();
-            if (!chunk.isLoaded()) {
-                return;
+        LongList due = scheduledPulses.advance();
+        for (int i = 0; i < due.size(); i++) {
+            long position = due.getLong(i);
+            int x = TickWheel.unpackX(position);
+            int y = TickWheel.unpackY(position);
+            int z = TickWheel.unpackZ(position);
+
+            GlowChunk chunk = chunkManager.getChunkIfPresent(GlowChunk.Key.toLong(x >> 4, z >> 4));
+            if (chunk == null || !chunk.isLoaded()) {
+                cancelPulse(position);
+                continue;
             }
 
-            int x = location.getBlockX();
-            int y = location.getBlockY();
-            int z = location.getBlockZ();
-
             int typeId = chunk.getType(x & 0xF, z & 0xF, y);
             BlockType type = itemTable.getBlock(typeId);
             if (type == null) {
-                cancelPulse(location);
-                return;
+                cancelPulse(position);
+                continue;
             }
 
             GlowBlock block = new GlowBlock(chunk, x, y, z);
             int speed = type.getPulseTickSpeed(block);
             boolean once = type.isPulseOnce(block);
-            if (speed == 0) {
-                return;
+            if (speed <= 0) {
+                cancelPulse(position);
+                continue;
             }
 
             if (fullTime % speed == 0) {
                 type.receivePulse(block);
                 if (once) {
-                    cancelPulse(location);
+                    cancelPulse(position);
+                    continue;
                 }
             }
-        });
+            scheduledPulses.reschedule(position, pulseDelay(speed));
+        }
+    }
+
+    /**
+     * Get the number of pulses of this world until the full time is next a multiple of the given pulse speed.
+     *
+     * @param speed the pulse speed, in ticks.
+     * @return the number of pulses, which is at least one.
+     */
+    private long pulseDelay(int speed) {
+        long next = nextPulseTime < 0 ? fullTime : nextPulseTime;
+        return 1 + Math.floorMod(-next, (long) speed);
     }
 
-    public ConcurrentSet<Location> getTickMap() {
-        return tickMap;
+    /**
+     * Get the blocks of a chunk that have requested to be pulsed, including those with a pending fluid update.
+     *
+     * @param chunk the chunk.
+     * @return the coordinates of the blocks, as packed by {@link TickWheel#pack(int, int, int)}.
+     */
+    public LongList getScheduledPulses(GlowChunk chunk) {
+        LongList pulses = scheduledPulses.getScheduled(chunk.getX(), chunk.getZ());
+        pulses.addAll(fluidEngine.getScheduled(chunk.getX(), chunk.getZ()));
+        return pulses;
     }
 
+    /**
+     * Forget the pulses requested by the blocks of a chunk and the redstone networks in it, e.g. because it is
+     * unloaded.
+     *
+     * @param chunk the chunk.
+     */
+    public void cancelPulses(GlowChunk chunk) {
+        scheduledPulses.cancelChunk(chunk.getX(), chunk.getZ());
+        fluidEngine.cancelChunk(chunk.getX(), chunk.getZ());
+        redstoneEngine.cancelChunk(chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Request a block to be pulsed when the full time is next a multiple of its pulse speed. The request is ignored
+     * if the block has already requested to be pulsed.
+     *
+     * @param block the block.
+     */
     public void requestPulse(GlowBlock block) {
-        requestPulse(block.getLocation());
+        BlockType type = ItemTable.instance().getBlock(block.getType());
+        int speed = type == null ? 0 : type.getPulseTickSpeed(block);
+        // the type of a block may still change before it is due, in which case its speed is checked on the next pulse
+        long delay = speed <= 0 ? 1 : pulseDelay(speed);
+        if (scheduledPulses.schedule(TickWheel.pack(block.getX(), block.getY(), block.getZ()), delay)) {
+            block.getChunk().markStateModified();
+        }
     }
 
     public void requestPulse(Location location) {
-        tickMap.add(location);
+        requestPulse(getBlockAt(location));
     }
 
     public void cancelPulse(GlowBlock block) {
-        cancelPulse(block.getLocation());
+        cancelPulse(TickWheel.pack(block.getX(), block.getY(), block.getZ()));
     }
 
     public void cancelPulse(Location location) {
-        tickMap.remove(location);
+        cancelPulse(TickWheel.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    /**
+     * Cancel the pulse of a block, and mark its chunk as modified if it is loaded, since the scheduled pulses of a chunk
+     * are saved with it. A rescheduled pulse leaves the chunk as it is, as only the positions of the blocks are saved.
+     *
+     * @param position the coordinates of the block, as packed by {@link TickWheel#pack(int, int, int)}.
+     */
+    private void cancelPulse(long position) {
+        if (scheduledPulses.cancel(position)) {
+            int x = TickWheel.unpackX(position);
+            int z = TickWheel.unpackZ(position);
+            GlowChunk chunk = chunkManager.getChunkIfPresent(GlowChunk.Key.toLong(x >> 4, z >> 4));
+            if (chunk != null) {
+                chunk.markStateModified();
+            }
+        }
     }
 
     /**
@@ -2416,6 +2632,9 @@ public class GlowWorld implements World {
      */
     public void shutdown() {
         executor.shutdown();
+        tickExecutor.shutdown();
+        lightEngine.shutdown();
+        chunkManager.shutdown();
         messagingSystem.close();
     }
 
@@ -2444,4 +2663,14 @@ public class GlowWorld implements World {
     public Messaging getMessagingSystem() {
         return messagingSystem;
     }
+
+    /**
+     * Pass the messages collected by the messaging system during the tick on to the players, unless that is already
+     * done at the end of the world pulse.
+     */
+    public void flushMessaging() {
+        if (!flushMessagingInPulse) {
+            messagingSystem.flush();
+        }
+    }
 }
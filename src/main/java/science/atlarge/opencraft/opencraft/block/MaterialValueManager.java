@@ -48,6 +48,12 @@ public interface MaterialValueManager {
          */
         int getLightOpacity();
 
+        /**
+         * Returns the light emission-component of this value.
+         * @return the block light level emitted, from 0 to 15
+         */
+        int getLightEmission();
+
         /**
          * Returns the flame resistance-component of this value.
          *
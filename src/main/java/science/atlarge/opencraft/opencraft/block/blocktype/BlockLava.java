@@ -19,8 +19,7 @@ public class BlockLava extends BlockLiquid {
     @Override
     public boolean isCollectible(GlowBlockState target) {
         return (target.getType() == Material.LAVA || target.getType() == Material.STATIONARY_LAVA)
-            &&
-            (target.getRawData() == 0 || target.getRawData() == 8); // 8 for backwards compatibility
+            && target.getRawData() == 0; // 8 is falling liquid, not a source
     }
 
     @Override
@@ -2,7 +2,6 @@ package science.atlarge.opencraft.opencraft.block.blocktype;
 
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
 import science.atlarge.opencraft.opencraft.block.GlowBlockState;
-import science.atlarge.opencraft.opencraft.block.ItemTable;
 import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
 import org.bukkit.Material;
 import org.bukkit.Sound;
@@ -62,21 +61,6 @@ public class BlockLever extends BlockAttachable {
 
     private void extraUpdate(GlowBlock block) {
         Lever lever = (Lever) block.getState().getData();
-        ItemTable itemTable = ItemTable.instance();
-        GlowBlock target = block.getRelative(lever.getAttachedFace());
-        if (target.getType().isSolid()) {
-            for (BlockFace face2 : ADJACENT) {
-                GlowBlock target2 = target.getRelative(face2);
-                BlockType notifyType = itemTable.getBlock(target2.getType());
-                if (notifyType != null) {
-                    if (target2.getFace(block) == null) {
-                        notifyType
-                            .onNearBlockChanged(target2, BlockFace.SELF, block, block.getType(),
-                                block.getData(), block.getType(), block.getData());
-                    }
-                    notifyType.onRedstoneUpdate(target2);
-                }
-            }
-        }
+        BlockRedstone.updatePoweredBlock(block, block.getRelative(lever.getAttachedFace()));
     }
 }
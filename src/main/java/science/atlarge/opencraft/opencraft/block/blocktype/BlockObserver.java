@@ -1,7 +1,6 @@
 package science.atlarge.opencraft.opencraft.block.blocktype;
 
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
-import science.atlarge.opencraft.opencraft.scheduler.PulseTask;
 import org.bukkit.Material;
 import org.bukkit.block.BlockFace;
 import org.bukkit.inventory.ItemStack;
@@ -45,7 +44,11 @@ public class BlockObserver extends BlockDirectional {
         }
         block.setData((byte) (block.getData() | (1 << POWERED_MASK)));
         block.getWorld().requestPulse(block);
-        new PulseTask(block, true, 4, true).startPulseTask();
+    }
+
+    @Override
+    public int getPulseTickSpeed(GlowBlock block) {
+        return 2;
     }
 
     @Override
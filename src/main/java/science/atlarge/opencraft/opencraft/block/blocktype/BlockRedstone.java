@@ -8,9 +8,8 @@ import science.atlarge.opencraft.opencraft.GlowWorld;
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
 import science.atlarge.opencraft.opencraft.block.GlowBlockState;
 import science.atlarge.opencraft.opencraft.block.ItemTable;
+import science.atlarge.opencraft.opencraft.chunk.RedstoneEngine;
 import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
-import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
-import science.atlarge.opencraft.opencraft.scheduler.PulseTask;
 import org.bukkit.Material;
 import org.bukkit.block.BlockFace;
 import org.bukkit.event.block.BlockRedstoneEvent;
@@ -28,6 +27,8 @@ import org.bukkit.material.Step;
  */
 public class BlockRedstone extends BlockNeedsAttached {
 
+    private static final int MAX_POWER = 15;
+
     public BlockRedstone() {
         setDrops(new ItemStack(Material.REDSTONE));
     }
@@ -122,19 +123,45 @@ public class BlockRedstone extends BlockNeedsAttached {
     @Override
     public void afterPlace(GlowPlayer player, GlowBlock block, ItemStack holding,
                            GlowBlockState oldState) {
+        block.getWorld().getRedstoneEngine().linksChanged(block.getX(), block.getY(), block.getZ());
         updatePhysics(block);
     }
 
     @Override
     public void onNearBlockChanged(GlowBlock block, BlockFace face, GlowBlock changedBlock,
                                    Material oldType, byte oldData, Material newType, byte newData) {
+        if (RedstoneEngine.changesLinks(oldType, newType)) {
+            block.getWorld().getRedstoneEngine()
+                .linksChanged(changedBlock.getX(), changedBlock.getY(), changedBlock.getZ());
+        }
         updatePhysics(block);
     }
 
+    @Override
+    public void onBlockChanged(GlowBlock block, Material oldType, byte oldData, Material newType,
+                               byte data) {
+        if (RedstoneEngine.changesLinks(oldType, newType)) {
+            block.getWorld().getRedstoneEngine().linksChanged(block.getX(), block.getY(), block.getZ());
+        }
+    }
+
     @Override
     public void updatePhysicsAfterEvent(GlowBlock me) {
         super.updatePhysicsAfterEvent(me);
+        if (me.getType() == Material.REDSTONE_WIRE) {
+            // the power of the wire is recomputed with the rest of its network on the next pulse
+            me.getWorld().getRedstoneEngine().powerChanged(me.getX(), me.getY(), me.getZ());
+        }
+    }
 
+    /**
+     * Calculates the power that a redstone wire block receives from the blocks around it, other
+     * than redstone wire.
+     *
+     * @param me a redstone wire block
+     * @return 15 if the wire is powered by an adjacent block, otherwise 0
+     */
+    public static int getInputPower(GlowBlock me) {
         for (BlockFace face : ADJACENT) {
             GlowBlock target = me.getRelative(face);
 
@@ -142,36 +169,31 @@ public class BlockRedstone extends BlockNeedsAttached {
                 case LEVER:
                     Lever lever = (Lever) target.getState().getData();
                     if (lever.isPowered()) {
-                        setFullyPowered(me);
-                        return;
+                        return MAX_POWER;
                     }
                     break;
                 case STONE_BUTTON:
                 case WOOD_BUTTON:
                     Button button = (Button) target.getState().getData();
                     if (button.isPowered()) {
-                        setFullyPowered(me);
-                        return;
+                        return MAX_POWER;
                     }
                     break;
                 case DIODE_BLOCK_ON:
                     Diode diode = (Diode) target.getState().getData();
                     if (face == diode.getFacing().getOppositeFace()) {
-                        setFullyPowered(me);
-                        return;
+                        return MAX_POWER;
                     }
                     break;
                 case REDSTONE_BLOCK:
                 case REDSTONE_TORCH_ON:
-                    setFullyPowered(me);
-                    return;
+                    return MAX_POWER;
                 case OBSERVER:
                     boolean powered = BlockObserver.isPowered(target);
                     BlockFace outputFace = BlockObserver.getFace(target).getOppositeFace();
                     if (powered && target.getRelative(outputFace).getLocation()
                         .equals(me.getLocation())) {
-                        setFullyPowered(me);
-                        return;
+                        return MAX_POWER;
                     }
                     break;
                 default:
@@ -180,123 +202,108 @@ public class BlockRedstone extends BlockNeedsAttached {
                     }
                     if (target.getRelative(BlockFace.DOWN).getType()
                         == Material.REDSTONE_TORCH_ON) {
-                        setFullyPowered(me);
-                        return;
+                        return MAX_POWER;
                     }
                     for (BlockFace face2 : ADJACENT) {
                         GlowBlock target2 = target.getRelative(face2);
                         if (target2.getType() == Material.DIODE_BLOCK_ON
                             && ((Diode) target2.getState().getData()).getFacing() == target2
                             .getFace(target)) {
-                            setFullyPowered(me);
-                            return;
+                            return MAX_POWER;
                         } else if (target2.getType() == Material.STONE_BUTTON
                             || target2.getType() == Material.WOOD_BUTTON) {
                             Button button2 = (Button) target2.getState().getData();
                             if (button2.isPowered() && button2.getAttachedFace() == target2
                                 .getFace(target)) {
-                                setFullyPowered(me);
-                                return;
+                                return MAX_POWER;
                             }
                         } else if (target2.getType() == Material.LEVER) {
                             Lever lever2 = (Lever) target2.getState().getData();
                             if (lever2.isPowered() && lever2.getAttachedFace() == target2
                                 .getFace(target)) {
-                                setFullyPowered(me);
-                                return;
+                                return MAX_POWER;
                             }
                         }
                     }
             }
         }
+        return 0;
+    }
 
-        byte power = 0;
-
-        for (BlockFace face : calculateConnections(me)) {
-
-            if (face == BlockFace.DOWN) {
+    /**
+     * Notifies the blocks around a block that is powered by a redstone source, such as a lever or
+     * a repeater, that the power of the source has changed. Redstone wire around the block is
+     * queued in the redstone engine instead, so power never propagates recursively.
+     *
+     * @param source  the redstone source
+     * @param powered the block that the source powers; nothing happens if it is not solid
+     */
+    public static void updatePoweredBlock(GlowBlock source, GlowBlock powered) {
+        if (!powered.getType().isSolid()) {
+            return;
+        }
+        ItemTable itemTable = ItemTable.instance();
+        for (BlockFace face : ADJACENT) {
+            GlowBlock target = powered.getRelative(face);
+            if (target.getType() == Material.REDSTONE_WIRE) {
+                // wire is not powered by other wire through a block
+                if (source.getType() != Material.REDSTONE_WIRE) {
+                    source.getWorld().getRedstoneEngine()
+                        .powerChanged(target.getX(), target.getY(), target.getZ());
+                }
                 continue;
             }
-
-            GlowBlock target = me.getRelative(face);
-            if (target.getType() != Material.REDSTONE_WIRE) {
-                if (!target.getType().isSolid()) {
-                    target = target.getRelative(BlockFace.DOWN);
-                } else if (!me.getRelative(BlockFace.UP).getType().isSolid()) {
-                    target = target.getRelative(BlockFace.UP);
-                }
-
-                if (target.getType() != Material.REDSTONE_WIRE) {
-                    // There is no redstone wire here..
-                    continue;
+            BlockType notifyType = itemTable.getBlock(target.getType());
+            if (notifyType != null) {
+                if (target.getFace(source) == null) {
+                    notifyType.onNearBlockChanged(target, BlockFace.SELF, source, source.getType(),
+                        source.getData(), source.getType(), source.getData());
                 }
+                notifyType.onRedstoneUpdate(target);
             }
-
-            if (target.getData() > power) {
-                power = (byte) (target.getData() - 1);
-            }
-        }
-
-        if (power != me.getData()) {
-            BlockRedstoneEvent event = EventFactory.getInstance()
-                .callEvent(new BlockRedstoneEvent(me, me.getData(), power));
-            power = (byte) event.getNewCurrent();
-
-            me.setData(power);
-            updateConnected(me);
-            new PulseTask(me, true, 1, true).startPulseTask();
         }
     }
 
     /**
-     * Sets a redstone dust block to the fully-powered state and, if it wasn't already in that
-     * state, updates connected blocks so that power propagates.
-     *
-     * @param block the block to update
+     * The blocks around the redstone wire of a world, which power the wire and are powered by it.
      */
-    protected static void setFullyPowered(GlowBlock block) {
-        int newPower = 15;
-        if (block.getData() != newPower) {
-            BlockRedstoneEvent event = EventFactory.getInstance()
-                .callEvent(new BlockRedstoneEvent(block, block.getData(), newPower));
-            newPower = event.getNewCurrent();
+    public static final class WireCircuit implements RedstoneEngine.Circuit {
 
-            block.setData((byte) newPower);
-            updateConnected(block);
+        private final GlowWorld world;
+
+        public WireCircuit(GlowWorld world) {
+            this.world = world;
         }
-    }
 
-    private static void updateConnected(GlowBlock block) {
-        ItemTable itemTable = ItemTable.instance();
-        for (BlockFace face : calculateConnections(block)) {
-            GlowBlock target = block.getRelative(face);
-            if (target.getType().isSolid()) {
-                for (BlockFace face2 : ADJACENT) {
-                    GlowBlock target2 = target.getRelative(face2);
-                    BlockType notifyType = itemTable.getBlock(target2.getType());
-                    if (notifyType != null) {
-                        if (target2.getFace(block) == null) {
-                            notifyType
-                                .onNearBlockChanged(target2, BlockFace.SELF, block, block.getType(),
-                                    block.getData(), block.getType(), block.getData());
-                        }
-                        notifyType.onRedstoneUpdate(target2);
-                    }
+        @Override
+        public int getInputPower(int x, int y, int z) {
+            return BlockRedstone.getInputPower(world.getBlockAt(x, y, z));
+        }
+
+        @Override
+        public int powerChanging(int x, int y, int z, int oldPower, int newPower) {
+            BlockRedstoneEvent event = EventFactory.getInstance()
+                .callEvent(new BlockRedstoneEvent(world.getBlockAt(x, y, z), oldPower, newPower));
+            return event.getNewCurrent();
+        }
+
+        @Override
+        public void powerChanged(int x, int y, int z) {
+            GlowBlock wire = world.getBlockAt(x, y, z);
+            ItemTable itemTable = ItemTable.instance();
+            Material type = wire.getType();
+            byte data = wire.getData();
+            for (BlockFace face : ADJACENT) {
+                GlowBlock target = wire.getRelative(face);
+                BlockType notifyType = itemTable.getBlock(target.getType());
+                if (notifyType != null && target.getType() != Material.REDSTONE_WIRE) {
+                    notifyType.onNearBlockChanged(target, face.getOppositeFace(), wire, type, data,
+                        type, data);
                 }
             }
+            for (BlockFace face : calculateConnections(wire)) {
+                updatePoweredBlock(wire, wire.getRelative(face));
+            }
         }
     }
-
-    @Override
-    public void receivePulse(GlowBlock current) {
-        BlockChangeMessage message = new BlockChangeMessage(
-                current.getX(),
-                current.getY(),
-                current.getZ(),
-                current.getTypeId(),
-                current.getData()
-        );
-        GlowWorld world = current.getWorld();
-        world.broadcastBlockChange(message);
-    }
 }
@@ -2,7 +2,6 @@ package science.atlarge.opencraft.opencraft.block.blocktype;
 
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
 import science.atlarge.opencraft.opencraft.block.GlowBlockState;
-import science.atlarge.opencraft.opencraft.block.ItemTable;
 import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
 import org.bukkit.Effect;
 import org.bukkit.Material;
@@ -97,22 +96,7 @@ public class BlockRedstoneTorch extends BlockNeedsAttached {
     }
 
     private void extraUpdate(GlowBlock block) {
-        ItemTable itemTable = ItemTable.instance();
-        GlowBlock target = block.getRelative(BlockFace.UP);
-        if (target.getType().isSolid()) {
-            for (BlockFace face2 : ADJACENT) {
-                GlowBlock target2 = target.getRelative(face2);
-                BlockType notifyType = itemTable.getBlock(target2.getType());
-                if (notifyType != null) {
-                    if (target2.getFace(block) == null) {
-                        notifyType
-                            .onNearBlockChanged(target2, BlockFace.SELF, block, block.getType(),
-                                block.getData(), block.getType(), block.getData());
-                    }
-                    notifyType.onRedstoneUpdate(target2);
-                }
-            }
-        }
+        BlockRedstone.updatePoweredBlock(block, block.getRelative(BlockFace.UP));
     }
 
     @Override
@@ -18,8 +18,7 @@ public class BlockWater extends BlockLiquid {
     @Override
     public boolean isCollectible(GlowBlockState target) {
         return (target.getType() == Material.WATER || target.getType() == Material.STATIONARY_WATER)
-            &&
-            (target.getRawData() == 0 || target.getRawData() == 8); // 8 for backwards compatibility
+            && target.getRawData() == 0; // 8 is falling liquid, not a source
     }
 
     @Override
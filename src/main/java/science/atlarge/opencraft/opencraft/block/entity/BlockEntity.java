@@ -44,6 +44,13 @@ public abstract class BlockEntity {
             .forEach(this::update);
     }
 
+    /**
+     * Mark the saved state of this block entity as modified, so that its chunk is saved again.
+     */
+    protected final void markModified() {
+        block.getChunk().markStateModified();
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     // World I/O
 
@@ -116,6 +123,14 @@ public abstract class BlockEntity {
         return null;
     }
 
+    /**
+     * Check for changes to the saved state of this BlockEntity that are not marked as they
+     * happen, and mark them. Called before its chunk is checked for unsaved changes.
+     */
+    public void checkModified() {
+        // nothing by default
+    }
+
     /**
      * Destroy this BlockEntity.
      */
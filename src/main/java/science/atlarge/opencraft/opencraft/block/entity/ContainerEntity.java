@@ -1,5 +1,6 @@
 package science.atlarge.opencraft.opencraft.block.entity;
 
+import java.util.Arrays;
 import lombok.Getter;
 import science.atlarge.opencraft.opencraft.block.GlowBlock;
 import science.atlarge.opencraft.opencraft.inventory.GlowInventory;
@@ -15,9 +16,15 @@ public abstract class ContainerEntity extends BlockEntity {
     @Getter
     private final GlowInventory inventory;
 
+    /**
+     * The hash code of the contents of the inventory when they were last checked for changes.
+     */
+    private int contentsHash;
+
     public ContainerEntity(GlowBlock block, GlowInventory inventory) {
         super(block);
         this.inventory = inventory;
+        contentsHash = Arrays.hashCode(inventory.getContents());
     }
 
     public void setContents(ItemStack... contents) {
@@ -31,6 +38,17 @@ public abstract class ContainerEntity extends BlockEntity {
             inventory.setContents(NbtSerialization.readInventory(items, 0, inventory.getSize()))
         );
         tag.readString("CustomName", inventory::setTitle);
+        contentsHash = Arrays.hashCode(inventory.getContents());
+    }
+
+    @Override
+    public void checkModified() {
+        // items are moved in and out of inventories in too many places to mark each change
+        int hash = Arrays.hashCode(inventory.getContents());
+        if (hash != contentsHash) {
+            contentsHash = hash;
+            markModified();
+        }
     }
 
     @Override
@@ -169,6 +169,8 @@ public class FurnaceEntity extends ContainerEntity {
         if (sendChange) {
             updateInRange();
         }
+        // the burn and cook times change on every tick that the furnace is burning
+        markModified();
     }
 
     private boolean isBurnable() {
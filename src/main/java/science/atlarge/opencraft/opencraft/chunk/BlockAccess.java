@@ -0,0 +1,168 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import com.flowpowered.network.Message;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import org.bukkit.Material;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
+
+/**
+ * The access to the blocks of a world for the engines that change blocks without block physics. Blocks are read and
+ * written in the chunks directly, and the changes are recorded until they are flushed as a single message per chunk.
+ *
+ * <p>The block access is not thread-safe, so each engine guards its own with its monitor.
+ */
+final class BlockAccess {
+
+    /**
+     * The x-offsets of the blocks next to a block, from north clockwise.
+     */
+    static final int[] SIDE_X = {0, 1, 0, -1};
+
+    /**
+     * The z-offsets of the blocks next to a block, from north clockwise.
+     */
+    static final int[] SIDE_Z = {-1, 0, 1, 0};
+
+    private final LongFunction<GlowChunk> chunks;
+
+    /**
+     * The blocks that have changed since the last flush, by chunk key and then packed coordinates.
+     */
+    private final Long2ObjectMap<Long2ObjectMap<BlockChangeMessage>> changes = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Create a block access.
+     *
+     * @param chunks the function that gets a chunk by its key, as packed by {@link GlowChunk.Key#toLong(int, int)}.
+     *               The function must not load the chunk.
+     */
+    BlockAccess(LongFunction<GlowChunk> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Get a chunk by its key.
+     *
+     * @param key the key of the chunk, as packed by {@link GlowChunk.Key#toLong(int, int)}.
+     * @return the chunk, or null if it is not loaded.
+     */
+    GlowChunk getChunk(long key) {
+        return chunks.apply(key);
+    }
+
+    /**
+     * Get the type and data of a block, as packed by a {@link ChunkSection}.
+     *
+     * @param position the coordinates of the block, as packed by {@link TickWheel#pack(int, int, int)}.
+     * @return the type and data, or -1 if the block is outside the world or its chunk is not loaded.
+     */
+    int getState(long position) {
+        return getState(TickWheel.unpackX(position), TickWheel.unpackY(position), TickWheel.unpackZ(position));
+    }
+
+    /**
+     * Get the type and data of a block, as packed by a {@link ChunkSection}.
+     *
+     * @param x the x-coordinate of the block.
+     * @param y the y-coordinate of the block.
+     * @param z the z-coordinate of the block.
+     * @return the type and data, or -1 if the block is outside the world or its chunk is not loaded.
+     */
+    int getState(int x, int y, int z) {
+        if (y < 0 || y >= GlowChunk.DEPTH) {
+            return -1;
+        }
+        GlowChunk chunk = chunks.apply(GlowChunk.Key.toLong(x >> 4, z >> 4));
+        if (chunk == null || !chunk.isLoaded()) {
+            return -1;
+        }
+        return chunk.getType(x & 0xf, z & 0xf, y) << 4 | chunk.getMetaData(x & 0xf, z & 0xf, y);
+    }
+
+    /**
+     * Change the type and data of a block in a loaded chunk, and record the change.
+     *
+     * @param x    the x-coordinate of the block.
+     * @param y    the y-coordinate of the block.
+     * @param z    the z-coordinate of the block.
+     * @param type the new type of the block.
+     * @param data the new data of the block.
+     * @return the old type of the block.
+     */
+    int setState(int x, int y, int z, int type, int data) {
+        GlowChunk chunk = chunks.apply(GlowChunk.Key.toLong(x >> 4, z >> 4));
+        int oldType = chunk.getType(x & 0xf, z & 0xf, y);
+        chunk.setType(x & 0xf, z & 0xf, y, type);
+        chunk.setMetaData(x & 0xf, z & 0xf, y, data);
+        record(chunk, x, y, z, type, data);
+        return oldType;
+    }
+
+    /**
+     * Change the data of a block in a loaded chunk, and record the change.
+     *
+     * @param x    the x-coordinate of the block.
+     * @param y    the y-coordinate of the block.
+     * @param z    the z-coordinate of the block.
+     * @param data the new data of the block.
+     */
+    void setData(int x, int y, int z, int data) {
+        GlowChunk chunk = chunks.apply(GlowChunk.Key.toLong(x >> 4, z >> 4));
+        chunk.setMetaData(x & 0xf, z & 0xf, y, data);
+        record(chunk, x, y, z, chunk.getType(x & 0xf, z & 0xf, y), data);
+    }
+
+    private void record(GlowChunk chunk, int x, int y, int z, int type, int data) {
+        long key = GlowChunk.Key.toLong(chunk.getX(), chunk.getZ());
+        Long2ObjectMap<BlockChangeMessage> records = changes.get(key);
+        if (records == null) {
+            records = new Long2ObjectOpenHashMap<>();
+            changes.put(key, records);
+        }
+        records.put(TickWheel.pack(x, y, z), new BlockChangeMessage(x, y, z, type, data));
+    }
+
+    /**
+     * Pass on the recorded block changes, and forget them. The changes of a chunk are passed as a single
+     * {@link MultiBlockChangeMessage}, or as a {@link BlockChangeMessage} if only one block has changed.
+     *
+     * @param changed the consumer of the chunks that have changed and their block change message.
+     */
+    void flush(BiConsumer<GlowChunk, Message> changed) {
+        for (Long2ObjectMap.Entry<Long2ObjectMap<BlockChangeMessage>> entry : changes.long2ObjectEntrySet()) {
+            GlowChunk chunk = chunks.apply(entry.getLongKey());
+            Long2ObjectMap<BlockChangeMessage> records = entry.getValue();
+            if (records.size() == 1) {
+                changed.accept(chunk, records.values().iterator().next());
+            } else {
+                changed.accept(chunk, new MultiBlockChangeMessage(chunk.getX(), chunk.getZ(),
+                    new ArrayList<>(records.values())));
+            }
+        }
+        changes.clear();
+    }
+
+    /**
+     * Build a table of the block types that match a predicate, by type ID. The engines keep their tables in holder
+     * classes, so that a table is only built when it is first used, after the block types have been registered.
+     *
+     * @param predicate the predicate that the block types match.
+     * @return whether each block type matches the predicate, by type ID.
+     */
+    static boolean[] typeTable(Predicate<Material> predicate) {
+        boolean[] types = new boolean[4096];
+        for (Material material : Material.values()) {
+            if (material.isBlock() && material.getId() < types.length && predicate.test(material)) {
+                types[material.getId()] = true;
+            }
+        }
+        return types;
+    }
+}
@@ -1,19 +1,21 @@
 package science.atlarge.opencraft.opencraft.chunk;
 
-import com.google.common.collect.ConcurrentHashMultiset;
-import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import lombok.Getter;
 import org.bukkit.Material;
 import org.bukkit.block.Biome;
@@ -32,6 +34,8 @@ import science.atlarge.opencraft.opencraft.generator.GlowChunkGenerator;
 import science.atlarge.opencraft.opencraft.generator.biomegrid.MapLayer;
 import science.atlarge.opencraft.opencraft.i18n.ConsoleMessages;
 import science.atlarge.opencraft.opencraft.io.ChunkIoService;
+import science.atlarge.opencraft.opencraft.util.collection.ConcurrentLong2ObjectMap;
+import science.atlarge.opencraft.opencraft.util.collection.ConcurrentLongMultiset;
 
 /**
  * A class which manages the {@link GlowChunk}s currently loaded in memory.
@@ -64,16 +68,42 @@ public class ChunkManager {
     private final MapLayer[] biomeGrid;
 
     /**
-     * A map of chunks currently loaded in memory.
+     * A map of chunks currently loaded in memory, by their packed coordinates (see {@link Key#toLong(int, int)}).
      */
-    private final ConcurrentMap<Key, GlowChunk> chunks = new ConcurrentHashMap<>();
+    private final ConcurrentLong2ObjectMap<GlowChunk> chunks = new ConcurrentLong2ObjectMap<>();
 
     /**
-     * A set of chunks which are being kept loaded by players or other factors.
+     * The number of locks on each chunk that is being kept loaded by players or other factors, by its packed
+     * coordinates.
      */
-    private final Multiset<Key> lockSet = ConcurrentHashMultiset.create();
+    private final ConcurrentLongMultiset lockSet = new ConcurrentLongMultiset();
 
-    private final Lock lock;
+    /**
+     * The number of locks over which the chunks are striped.
+     */
+    private static final int LOCK_STRIPES = 1024;
+
+    /**
+     * The locks held while loading, generating or unloading a single chunk.
+     */
+    private final Striped<Lock> loadLocks = Striped.lock(LOCK_STRIPES);
+
+    /**
+     * The locks held on the 3x3 area around a chunk while it is populated, because populators modify the neighbouring
+     * chunks as well.
+     */
+    private final Striped<Lock> populateLocks = Striped.lock(LOCK_STRIPES);
+
+    /**
+     * The chunks that are being loaded asynchronously.
+     */
+    private final ConcurrentLong2ObjectMap<CompletableFuture<GlowChunk>> pendingLoads =
+            new ConcurrentLong2ObjectMap<>();
+
+    /**
+     * The threads which load, generate and populate chunks asynchronously.
+     */
+    private final ExecutorService loader;
 
     /**
      * Creates a new chunk manager with the specified I/O service and world generator.
@@ -87,7 +117,10 @@ public class ChunkManager {
         this.service = service;
         this.generator = generator;
         biomeGrid = MapLayer.initialize(world.getSeed(), world.getEnvironment(), world.getWorldType());
-        lock = new ReentrantLock();
+        loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                .setNameFormat("chunk-loader-" + world.getName() + "-%d") // NON-NLS
+                .setDaemon(true)
+                .build());
     }
 
     /**
@@ -98,8 +131,17 @@ public class ChunkManager {
      * @return The chunk.
      */
     public GlowChunk getChunk(int x, int z) {
-        Key key = GlowChunk.Key.of(x, z);
-        return chunks.computeIfAbsent(key, k -> new GlowChunk(world, x, z));
+        return chunks.computeIfAbsent(Key.toLong(x, z), k -> new GlowChunk(world, x, z));
+    }
+
+    /**
+     * Gets the chunk object with the specified packed coordinates, without creating it if there is none.
+     *
+     * @param key The coordinates, as packed by {@link Key#toLong(int, int)}.
+     * @return The chunk, which might not be loaded, or null.
+     */
+    public GlowChunk getChunkIfPresent(long key) {
+        return chunks.get(key);
     }
 
     /**
@@ -110,9 +152,8 @@ public class ChunkManager {
      * @return true if the chunk is loaded, otherwise false.
      */
     public boolean isChunkLoaded(int x, int z) {
-        Key key = GlowChunk.Key.of(x, z);
-        GlowChunk chunk = chunks.computeIfAbsent(key, k -> new GlowChunk(world, x, z));
-        return chunk.isLoaded();
+        GlowChunk chunk = chunks.get(Key.toLong(x, z));
+        return chunk != null && chunk.isLoaded();
     }
 
     /**
@@ -123,8 +164,7 @@ public class ChunkManager {
      * @return Whether the chunk is in use.
      */
     public boolean isChunkInUse(int x, int z) {
-        Key key = GlowChunk.Key.of(x, z);
-        return lockSet.contains(key);
+        return lockSet.contains(Key.toLong(x, z));
     }
 
     /**
@@ -147,6 +187,11 @@ public class ChunkManager {
      * @return true if the chunk was loaded or generated successfully, false otherwise
      */
     public boolean loadChunk(GlowChunk chunk, boolean generate) {
+        if (chunk.isLoaded()) {
+            return true;
+        }
+
+        Lock lock = loadLocks.get(Key.of(chunk.getX(), chunk.getZ()));
         lock.lock();
         try {
 
@@ -157,6 +202,7 @@ public class ChunkManager {
             // Read from file
             try {
                 if (service.read(chunk)) {
+                    chunk.markSaved(chunk.getVersion(), chunk.getStateVersion(), chunk.getInhabitedTime());
                     EventFactory.getInstance().callEvent(new ChunkLoadEvent(chunk, false));
                     return true;
                 }
@@ -176,6 +222,7 @@ public class ChunkManager {
             // get generating
             try {
                 generateChunk(chunk, chunk.getX(), chunk.getZ());
+                world.getLightEngine().chunkGenerated(chunk.getX(), chunk.getZ());
             } catch (Throwable ex) {
                 ConsoleMessages.Error.Chunk.GEN_FAILED.log(ex, chunk.getX(), chunk.getZ());
                 return false;
@@ -190,29 +237,98 @@ public class ChunkManager {
         }
     }
 
+    /**
+     * Asynchronously load a chunk, optionally generating it. Concurrent requests for the same chunk share a single
+     * load.
+     *
+     * @param x        The X coordinate of the chunk to load.
+     * @param z        The Z coordinate of the chunk to load.
+     * @param generate Whether to generate the chunk if needed.
+     * @return A future of the chunk, which is not loaded if it could not be read or generated.
+     */
+    public CompletableFuture<GlowChunk> loadChunkAsync(int x, int z, boolean generate) {
+        GlowChunk chunk = getChunk(x, z);
+        if (chunk.isLoaded()) {
+            return CompletableFuture.completedFuture(chunk);
+        }
+
+        long key = Key.toLong(x, z);
+        CompletableFuture<GlowChunk> future = new CompletableFuture<>();
+        CompletableFuture<GlowChunk> pending = pendingLoads.putIfAbsent(key, future);
+        if (pending != null) {
+            return pending;
+        }
+
+        loader.execute(() -> {
+            try {
+                loadChunk(chunk, generate);
+                pendingLoads.remove(key, future);
+                future.complete(chunk);
+            } catch (Throwable ex) {
+                pendingLoads.remove(key, future);
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Asynchronously populate a chunk, once the chunks in the 3x3 area around it have been loaded or generated.
+     *
+     * @param x The X coordinate.
+     * @param z The Z coordinate.
+     * @return A future of the chunk.
+     */
+    public CompletableFuture<GlowChunk> populateChunkAsync(int x, int z) {
+        GlowChunk chunk = getChunk(x, z);
+        if (chunk.isPopulated()) {
+            return CompletableFuture.completedFuture(chunk);
+        }
+
+        List<CompletableFuture<GlowChunk>> neighbours = new ArrayList<>(9);
+        for (int x2 = x - 1; x2 <= x + 1; x2++) {
+            for (int z2 = z - 1; z2 <= z + 1; z2++) {
+                neighbours.add(loadChunkAsync(x2, z2, true));
+            }
+        }
+        return CompletableFuture.allOf(neighbours.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> {
+                    populateChunk(x, z, true);
+                    return chunk;
+                }, loader);
+    }
+
     /**
      * Unload chunks with no locks on them.
      */
     public void unloadOldChunks() {
-        lock.lock();
-        try {
-            Iterator<Entry<Key, GlowChunk>> chunksEntryIter = chunks.entrySet().iterator();
-            while (chunksEntryIter.hasNext()) {
+        for (GlowChunk chunk : chunks.values()) {
+            long id = Key.toLong(chunk.getX(), chunk.getZ());
+            if (pendingLoads.containsKey(id)) {
+                continue;
+            }
 
-                Entry<Key, GlowChunk> entry = chunksEntryIter.next();
-                if (!lockSet.contains(entry.getKey())) {
-                    if (!entry.getValue().unload(true, true)) {
-                        ConsoleMessages.Warn.Chunk.UNLOAD_FAILED.log(world.getName(), entry.getKey());
+            // do not unload chunks while they are being populated or loaded
+            Key key = Key.of(chunk.getX(), chunk.getZ());
+            Lock populateLock = populateLocks.get(key);
+            Lock loadLock = loadLocks.get(key);
+            populateLock.lock();
+            loadLock.lock();
+            try {
+                if (!lockSet.contains(id)) {
+                    if (!chunk.unload(true, true)) {
+                        ConsoleMessages.Warn.Chunk.UNLOAD_FAILED.log(world.getName(), key);
                     }
                 }
 
-                if (!entry.getValue().isLoaded()) {
-                    chunksEntryIter.remove();
-                    lockSet.setCount(entry.getKey(), 0);
+                if (!chunk.isLoaded()) {
+                    chunks.remove(id, chunk);
+                    lockSet.removeAll(id);
                 }
+            } finally {
+                loadLock.unlock();
+                populateLock.unlock();
             }
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -220,11 +336,24 @@ public class ChunkManager {
      * Populate a single chunk if needed.
      */
     private void populateChunk(int x, int z, boolean force) {
-        lock.lock();
+        GlowChunk chunk = getChunk(x, z);
+        // cancel out if it's already populated
+        if (chunk.isPopulated()) {
+            return;
+        }
+
+        List<Key> area = new ArrayList<>(9);
+        for (int x2 = x - 1; x2 <= x + 1; x2++) {
+            for (int z2 = z - 1; z2 <= z + 1; z2++) {
+                area.add(Key.of(x2, z2));
+            }
+        }
+        // the locks are acquired in a consistent order, so overlapping areas cannot deadlock
+        Iterable<Lock> locks = populateLocks.bulkGet(area);
+        locks.forEach(Lock::lock);
         try {
 
-            GlowChunk chunk = getChunk(x, z);
-            // cancel out if it's already populated
+            // check again, now that no overlapping area can be populated
             if (chunk.isPopulated()) {
                 return;
             }
@@ -254,7 +383,7 @@ public class ChunkManager {
             EventFactory.getInstance().callEvent(new ChunkPopulateEvent(chunk));
 
         } finally {
-            lock.unlock();
+            locks.forEach(Lock::unlock);
         }
     }
 
@@ -262,12 +391,16 @@ public class ChunkManager {
      * Force a chunk to be populated by loading the chunks in an area around it. Used when streaming
      * chunks to players so that they do not have to watch chunks being populated.
      *
+     * <p>This waits for the loader threads, so it must not be called from a populator.
+     *
      * @param x The X coordinate.
      * @param z The Z coordinate.
      */
     public void forcePopulation(int x, int z) {
         try {
-            populateChunk(x, z, true);
+            populateChunkAsync(x, z).join();
+        } catch (CompletionException ex) {
+            ConsoleMessages.Error.Chunk.POP_FAILED.log(ex.getCause(), x, z);
         } catch (Throwable ex) {
             ConsoleMessages.Error.Chunk.POP_FAILED.log(ex, x, z);
         }
@@ -393,13 +526,23 @@ public class ChunkManager {
     public boolean forceRegeneration(int x, int z) {
         GlowChunk chunk = getChunk(x, z);
 
-        if (chunk == null || !chunk.unload(false, false)) {
+        Lock lock = loadLocks.get(Key.of(x, z));
+        lock.lock();
+        try {
+            if (chunk == null || !chunk.unload(false, false)) {
+                return false;
+            }
+
+            chunk.setPopulated(false);
+            generateChunk(chunk, x, z);
+        } catch (Throwable ex) {
+            ConsoleMessages.Error.Chunk.REGEN_FAILED.log(ex, chunk.getX(), chunk.getZ());
             return false;
+        } finally {
+            lock.unlock();
         }
 
-        chunk.setPopulated(false);
         try {
-            generateChunk(chunk, x, z);
             populateChunk(x, z, false);  // should this be forced?
         } catch (Throwable ex) {
             ConsoleMessages.Error.Chunk.REGEN_FAILED.log(ex, chunk.getX(), chunk.getZ());
@@ -408,6 +551,13 @@ public class ChunkManager {
         return true;
     }
 
+    /**
+     * Stop the threads which load chunks asynchronously. Pending loads are still completed.
+     */
+    public void shutdown() {
+        loader.shutdown();
+    }
+
     /**
      * Gets a list of loaded chunks.
      *
@@ -420,13 +570,17 @@ public class ChunkManager {
     }
 
     /**
-     * Performs the save for the given chunk using the storage provider.
+     * Performs the save for the given chunk using the storage provider, if it has unsaved changes.
+     * The storage provider marks the chunk as saved once it has been written.
      *
      * @param chunk The chunk to save.
-     * @return True if the save was successful.
+     * @return True if the save was successful or not needed.
      */
     public boolean performSave(GlowChunk chunk) {
         if (chunk.isLoaded()) {
+            if (!chunk.isDirty()) {
+                return true;
+            }
             try {
                 service.write(chunk);
                 return true;
@@ -453,7 +607,7 @@ public class ChunkManager {
      * @param key The chunk's key
      */
     private void acquireLock(Key key) {
-        lockSet.add(key);
+        lockSet.add(key.toLong());
     }
 
     /**
@@ -463,7 +617,7 @@ public class ChunkManager {
      * @param key The chunk's key
      */
     private void releaseLock(Key key) {
-        lockSet.remove(key);
+        lockSet.remove(key.toLong());
     }
 
     /**
@@ -0,0 +1,155 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * A cache of the encoded section and biome data of chunks, shared by all players, so a chunk that is sent to several
+ * players is only encoded once. Entries are tagged with the modification version of their chunk, and are ignored once
+ * the chunk has been modified. The total size of the cached data is bounded; the least recently used entries are
+ * evicted first.
+ */
+public final class ChunkPacketCache {
+
+    /**
+     * The maximum number of bytes of chunk data in the cache.
+     */
+    @Getter
+    private final long capacity;
+
+    /**
+     * The entries in access order, from least to most recently used.
+     */
+    private final Map<GlowChunk, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of bytes of chunk data in the cache.
+     */
+    private long size;
+
+    /**
+     * Create a chunk packet cache.
+     *
+     * @param capacity the maximum number of bytes of chunk data in the cache. If this is zero, nothing is cached.
+     */
+    public ChunkPacketCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the cached data of the given chunk, if it is up to date.
+     *
+     * @param chunk    the chunk.
+     * @param version  the current modification version of the chunk.
+     * @param skylight whether the data should include sky light.
+     * @return the cached entry, or null if there is no up-to-date entry.
+     */
+    Entry get(GlowChunk chunk, long version, boolean skylight) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(chunk);
+        }
+        if (entry == null || entry.version != version || entry.skylight != skylight) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Store the data of the given chunk, evicting the least recently used entries if the cache is full.
+     *
+     * @param chunk the chunk.
+     * @param entry the encoded data of the chunk.
+     */
+    synchronized void put(GlowChunk chunk, Entry entry) {
+        if (entry.data.length > capacity) {
+            return;
+        }
+        Entry previous = entries.put(chunk, entry);
+        if (previous != null) {
+            size -= previous.data.length;
+        }
+        size += entry.data.length;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            size -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove the data of the given chunk from the cache, e.g. because it was unloaded.
+     *
+     * @param chunk the chunk.
+     */
+    public synchronized void invalidate(GlowChunk chunk) {
+        Entry entry = entries.remove(chunk);
+        if (entry != null) {
+            size -= entry.data.length;
+        }
+    }
+
+    /**
+     * Get the number of requests for which up-to-date data was cached.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of requests for which no up-to-date data was cached.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of bytes of chunk data in the cache.
+     *
+     * @return the size of the cache in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of chunks in the cache.
+     *
+     * @return the number of cached chunks.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * The encoded section and biome data of a chunk.
+     */
+    static final class Entry {
+
+        private final long version;
+        private final boolean skylight;
+        @Getter
+        private final int primaryMask;
+        @Getter
+        private final byte[] data;
+
+        Entry(long version, boolean skylight, int primaryMask, byte[] data) {
+            this.version = version;
+            this.skylight = skylight;
+            this.primaryMask = primaryMask;
+            this.data = data;
+        }
+    }
+}
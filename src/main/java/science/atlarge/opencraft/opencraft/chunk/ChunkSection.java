@@ -2,17 +2,29 @@ package science.atlarge.opencraft.opencraft.chunk;
 
 import com.flowpowered.network.util.ByteBufUtils;
 import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntListIterator;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 import lombok.Getter;
+import org.bukkit.Material;
+import science.atlarge.opencraft.opencraft.block.ItemTable;
+import science.atlarge.opencraft.opencraft.block.blocktype.BlockType;
 import science.atlarge.opencraft.opencraft.util.NibbleArray;
 import science.atlarge.opencraft.opencraft.util.VariableValueArray;
 import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
 
 /**
  * A single cubic section of a chunk, with all data.
+ *
+ * <p>Sections that consist of a single block type, such as all-air sections, do not allocate a
+ * data array; they only keep a singleton palette until a different type is set. Light arrays in
+ * which every value is the same are likewise stored as a single value (see
+ * {@link NibbleArray#isUniform()}).
  */
 public final class ChunkSection {
 
@@ -47,11 +59,38 @@ public final class ChunkSection {
      */
     public static final int GLOBAL_PALETTE_BITS_PER_BLOCK = 13;
 
+    /**
+     * The minimum number of bits per block used with a section palette.
+     */
+    private static final int MIN_PALETTE_BITS_PER_BLOCK = 4;
+
+    /**
+     * The maximum number of bits per block used with a section palette.
+     */
+    private static final int MAX_PALETTE_BITS_PER_BLOCK = 8;
+
+    /**
+     * The palette of sections without a data array, which contain only air.
+     */
+    private static final IntList AIR_PALETTE = IntLists.singleton(0);
+
     /**
      * The palette.
      */
     @Nullable
     private IntList palette;
+
+    /**
+     * The index of each type in the palette, built when the first block is set.
+     */
+    @Nullable
+    private Int2IntMap paletteIndex;
+
+    /**
+     * The palette indices or global type IDs of the blocks, or null if every block has the type of
+     * the first palette entry.
+     */
+    @Nullable
     private VariableValueArray data;
 
     /**
@@ -74,11 +113,28 @@ public final class ChunkSection {
      */
     private int count;
 
+    /**
+     * The number of blocks in this section that tick randomly, so sections without any can be skipped when blocks
+     * are ticked.
+     */
+    @Getter
+    private int randomTickCount;
+
     /**
      * Create a new, empty ChunkSection.
      */
     public ChunkSection() {
-        this(new char[ARRAY_SIZE]);
+        this(DEFAULT_SKYLIGHT);
+    }
+
+    /**
+     * Create a new, empty ChunkSection with the given sky light.
+     *
+     * @param skyLight The sky light level of every block in the section.
+     */
+    public ChunkSection(byte skyLight) {
+        this(null, AIR_PALETTE, new NibbleArray(ARRAY_SIZE, skyLight),
+                new NibbleArray(ARRAY_SIZE, DEFAULT_BLOCK_LIGHT), 0, 0);
     }
 
     /**
@@ -144,7 +200,8 @@ public final class ChunkSection {
                         + data.getBitsPerValue());
             }
         } else {
-            if (data.getBitsPerValue() < 4 || data.getBitsPerValue() > 8) {
+            if (data.getBitsPerValue() < MIN_PALETTE_BITS_PER_BLOCK
+                    || data.getBitsPerValue() > MAX_PALETTE_BITS_PER_BLOCK) {
                 throw new IllegalArgumentException("Bits per block must be between 4 and 8 "
                         + "(inclusive) when using a section palette; got "
                         + data.getBitsPerValue());
@@ -154,6 +211,27 @@ public final class ChunkSection {
         this.palette = palette;
         this.skyLight = skyLight;
         this.blockLight = blockLight;
+        recount();
+    }
+
+    private ChunkSection(@Nullable VariableValueArray data, @Nullable IntList palette,
+            NibbleArray skyLight, NibbleArray blockLight, int count, int randomTickCount) {
+        this.data = data;
+        this.palette = palette;
+        this.skyLight = skyLight;
+        this.blockLight = blockLight;
+        this.count = count;
+        this.randomTickCount = randomTickCount;
+    }
+
+    /**
+     * Check whether blocks of the given type tick randomly.
+     *
+     * @param type A type ID, with metadata.
+     * @return Whether the blocks tick randomly.
+     */
+    public static boolean ticksRandomly(int type) {
+        return RandomTicks.TYPES[type >> 4];
     }
 
     /**
@@ -223,6 +301,8 @@ public final class ChunkSection {
         NibbleArray data = new NibbleArray(sectionTag.getByteArray("Data"));
         NibbleArray blockLight = new NibbleArray(sectionTag.getByteArray("BlockLight"));
         NibbleArray skyLight = new NibbleArray(sectionTag.getByteArray("SkyLight"));
+        blockLight.compact();
+        skyLight.compact();
 
         char[] types = new char[rawTypes.length];
         for (int i = 0; i < rawTypes.length; i++) {
@@ -261,30 +341,43 @@ public final class ChunkSection {
                     + types.length);
         }
 
-        // Build the palette, and the count
+        // Build the palette, and the counts
         this.count = 0;
-        this.palette = new IntArrayList();
+        this.randomTickCount = 0;
+        Int2IntOpenHashMap index = new Int2IntOpenHashMap();
+        index.defaultReturnValue(-1);
+        IntList palette = new IntArrayList();
         for (char type : types) {
             if (type != 0) {
                 count++;
             }
-
-            if (!palette.contains(type)) {
+            if (ticksRandomly(type)) {
+                randomTickCount++;
+            }
+            if (index.putIfAbsent(type, palette.size()) == -1) {
                 palette.add(type);
             }
         }
+        this.paletteIndex = null;
+        if (palette.size() == 1) {
+            // Every block has the same type, so no data is needed
+            this.palette = palette.getInt(0) == 0 ? AIR_PALETTE : IntLists.singleton(palette.getInt(0));
+            this.data = null;
+            return;
+        }
         // Now that we've built a palette, build the list
-        int bitsPerBlock = VariableValueArray.calculateNeededBits(palette.size());
-        if (bitsPerBlock < 4) {
-            bitsPerBlock = 4;
-        } else if (bitsPerBlock > 8) {
+        int bitsPerBlock = VariableValueArray.calculateNeededBits(palette.size() - 1);
+        if (bitsPerBlock < MIN_PALETTE_BITS_PER_BLOCK) {
+            bitsPerBlock = MIN_PALETTE_BITS_PER_BLOCK;
+        } else if (bitsPerBlock > MAX_PALETTE_BITS_PER_BLOCK) {
             palette = null;
             bitsPerBlock = GLOBAL_PALETTE_BITS_PER_BLOCK;
         }
+        this.palette = palette;
         this.data = new VariableValueArray(bitsPerBlock, ARRAY_SIZE);
         for (int i = 0; i < ARRAY_SIZE; i++) {
             if (palette != null) {
-                data.set(i, palette.indexOf(types[i]));
+                data.set(i, index.get(types[i]));
             } else {
                 data.set(i, types[i]);
             }
@@ -300,13 +393,21 @@ public final class ChunkSection {
      */
     public void optimize() {
         loadTypeArray(getTypes());
+        skyLight.compact();
+        blockLight.compact();
     }
 
     /**
-     * Recount the amount of non-air blocks in the chunk section.
+     * Recount the amount of non-air blocks and randomly ticking blocks in the chunk section.
      */
     public void recount() {
         count = 0;
+        randomTickCount = 0;
+        if (data == null) {
+            count = palette.getInt(0) == 0 ? 0 : ARRAY_SIZE;
+            randomTickCount = ticksRandomly(palette.getInt(0)) ? ARRAY_SIZE : 0;
+            return;
+        }
         for (int i = 0; i < ARRAY_SIZE; i++) {
             int type = data.get(i);
             if (palette != null) {
@@ -315,6 +416,9 @@ public final class ChunkSection {
             if (type != 0) {
                 count++;
             }
+            if (ticksRandomly(type)) {
+                randomTickCount++;
+            }
         }
     }
 
@@ -324,9 +428,13 @@ public final class ChunkSection {
      * @return The snapshot for this section.
      */
     public ChunkSection snapshot() {
-        return new ChunkSection(data
-                .clone(), palette == null ? null : new IntArrayList(palette), skyLight
-                .snapshot(), blockLight.snapshot());
+        if (data == null) {
+            // singleton palettes are immutable, so they can be shared
+            return new ChunkSection(null, palette, skyLight.snapshot(), blockLight.snapshot(),
+                    count, randomTickCount);
+        }
+        return new ChunkSection(data.clone(), palette == null ? null : new IntArrayList(palette),
+                skyLight.snapshot(), blockLight.snapshot(), count, randomTickCount);
     }
 
     /**
@@ -338,6 +446,10 @@ public final class ChunkSection {
      * @return A type ID
      */
     public char getType(int x, int y, int z) {
+        if (data == null) {
+            index(x, y, z);
+            return (char) palette.getInt(0);
+        }
         int value = data.get(index(x, y, z));
         if (palette != null) {
             value = palette.getInt(value);
@@ -361,29 +473,54 @@ public final class ChunkSection {
         if (value != 0) {
             count++;
         }
+        if (ticksRandomly(oldType)) {
+            randomTickCount--;
+        }
+        if (ticksRandomly(value)) {
+            randomTickCount++;
+        }
 
         int encoded;
         if (palette != null) {
-            encoded = palette.indexOf(value);
+            if (data == null) {
+                if (value == palette.getInt(0)) {
+                    return;
+                }
+                // Every block is set to the first palette entry, so a zeroed array matches
+                palette = new IntArrayList(palette);
+                data = new VariableValueArray(MIN_PALETTE_BITS_PER_BLOCK, ARRAY_SIZE);
+            }
+            if (paletteIndex == null) {
+                paletteIndex = new Int2IntOpenHashMap(palette.size());
+                paletteIndex.defaultReturnValue(-1);
+                for (int i = 0; i < palette.size(); i++) {
+                    paletteIndex.put(palette.getInt(i), i);
+                }
+            }
+            encoded = paletteIndex.get(value);
             if (encoded == -1) {
                 encoded = palette.size();
                 palette.add(value);
+                paletteIndex.put(value, encoded);
                 if (encoded > data.getLargestPossibleValue()) {
                     // This is the situation where it can become expensive:
                     // resize the array
-                    if (data.getBitsPerValue() == 8) {
-                        data = data.increaseBitsPerValueTo(GLOBAL_PALETTE_BITS_PER_BLOCK);
-                        // No longer using the global palette; need to manually
+                    if (data.getBitsPerValue() == MAX_PALETTE_BITS_PER_BLOCK) {
+                        // No longer using a section palette; need to manually
                         // recalculate
+                        VariableValueArray globalData =
+                                new VariableValueArray(GLOBAL_PALETTE_BITS_PER_BLOCK, ARRAY_SIZE);
                         for (int i = 0; i < ARRAY_SIZE; i++) {
                             int oldValue = data.get(i);
                             int newValue = palette.getInt(oldValue);
-                            data.set(i, newValue);
+                            globalData.set(i, newValue);
                         }
+                        data = globalData;
                         palette = null;
+                        paletteIndex = null;
                         encoded = value;
                     } else {
-                        // Using the global palette: automatically resize
+                        // Still using a section palette: grow by a single bit
                         data = data.increaseBitsPerValueTo(data.getBitsPerValue() + 1);
                     }
                 }
@@ -401,6 +538,10 @@ public final class ChunkSection {
      */
     public char[] getTypes() {
         char[] types = new char[ARRAY_SIZE];
+        if (data == null) {
+            Arrays.fill(types, (char) palette.getInt(0));
+            return types;
+        }
         for (int i = 0; i < ARRAY_SIZE; i++) {
             int type = data.get(i);
             if (palette != null) {
@@ -487,6 +628,27 @@ public final class ChunkSection {
             throw new IllegalStateException("Can't write empty sections");
         }
 
+        if (data == null) {
+            // Every block refers to the only palette entry, so the data is all zeroes
+            int longs = MIN_PALETTE_BITS_PER_BLOCK * ARRAY_SIZE / Long.SIZE;
+            buf.writeByte(MIN_PALETTE_BITS_PER_BLOCK);
+            ByteBufUtils.writeVarInt(buf, 1);
+            ByteBufUtils.writeVarInt(buf, palette.getInt(0));
+            ByteBufUtils.writeVarInt(buf, longs);
+            buf.ensureWritable((longs << 3) + blockLight.byteSize() + (skylight ? skyLight
+                    .byteSize() : 0));
+            buf.writeZero(longs << 3);
+        } else {
+            writeDataToBuf(buf, skylight);
+        }
+
+        writeLightToBuf(buf, blockLight);
+        if (skylight) {
+            writeLightToBuf(buf, skyLight);
+        }
+    }
+
+    private void writeDataToBuf(ByteBuf buf, boolean skylight) {
         buf.writeByte(data.getBitsPerValue()); // Bit per value -> varies
         if (palette == null) {
             ByteBufUtils.writeVarInt(buf, 0); // Palette size -> 0 -> Use the global palette
@@ -505,10 +667,21 @@ public final class ChunkSection {
         for (long value : backing) {
             buf.writeLong(value);
         }
+    }
 
-        buf.writeBytes(blockLight.getRawData());
-        if (skylight) {
-            buf.writeBytes(skyLight.getRawData());
+    private static void writeLightToBuf(ByteBuf buf, NibbleArray light) {
+        if (!light.isUniform()) {
+            buf.writeBytes(light.getRawData());
+            return;
+        }
+        byte value = light.getUniformValue();
+        if (value == 0) {
+            buf.writeZero(light.byteSize());
+        } else {
+            byte packed = (byte) (value << 4 | value);
+            for (int i = 0; i < light.byteSize(); i++) {
+                buf.writeByte(packed);
+            }
         }
     }
 
@@ -539,7 +712,28 @@ public final class ChunkSection {
             sectionTag.putByteArray("Add", extTypes.getRawData());
         }
         sectionTag.putByteArray("Data", data.getRawData());
-        sectionTag.putByteArray("BlockLight", blockLight.getRawData());
-        sectionTag.putByteArray("SkyLight", skyLight.getRawData());
+        // uniform light is copied, so it keeps its compact representation
+        sectionTag.putByteArray("BlockLight", blockLight.isUniform() ? blockLight.snapshot()
+                .getRawData() : blockLight.getRawData());
+        sectionTag.putByteArray("SkyLight", skyLight.isUniform() ? skyLight.snapshot()
+                .getRawData() : skyLight.getRawData());
+    }
+
+    /**
+     * The types of blocks that tick randomly, by type ID. The table is built from the item table on first use.
+     */
+    private static final class RandomTicks {
+
+        private static final boolean[] TYPES = new boolean[4096];
+
+        static {
+            ItemTable itemTable = ItemTable.instance();
+            for (Material material : Material.values()) {
+                BlockType type = material.isBlock() ? itemTable.getBlock(material) : null;
+                if (type != null && type.canTickRandomly() && material.getId() < TYPES.length) {
+                    TYPES[material.getId()] = true;
+                }
+            }
+        }
     }
 }
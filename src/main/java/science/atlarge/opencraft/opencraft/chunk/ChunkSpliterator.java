@@ -6,13 +6,21 @@ import science.atlarge.opencraft.opencraft.GlowWorld;
 
 /**
  * The chunk spliterator allows for traversal of an area of interest, either directly or via a stream.
+ *
+ * <p>The chunks of the area are numbered row by row, and the spliterator covers a range of these numbers. It splits
+ * by halving its range, so parallel streams over an area divide it into bands of rows.
  */
 public final class ChunkSpliterator implements Spliterator<GlowChunk> {
 
+    /**
+     * The minimum number of chunks a spliterator is split into.
+     */
+    private static final int MIN_SPLIT_SIZE = 4;
+
     private final AreaOfInterest area;
-    private int x;
-    private int z;
-    private int size;
+    private final int length;
+    private int index;
+    private final int end;
 
     /**
      * Create a spliterator over the given area.
@@ -20,47 +28,62 @@ public final class ChunkSpliterator implements Spliterator<GlowChunk> {
      * @param area the area of interest.
      */
     ChunkSpliterator(AreaOfInterest area) {
+        this(area, 0, (2 * area.getRadius() + 1) * (2 * area.getRadius() + 1));
+    }
+
+    private ChunkSpliterator(AreaOfInterest area, int index, int end) {
         this.area = area;
-        int radius = area.getRadius();
-        x = area.getCenterX() - radius;
-        z = area.getCenterZ() - radius;
-        int length = (2 * radius + 1);
-        size = length * length;
+        this.length = 2 * area.getRadius() + 1;
+        this.index = index;
+        this.end = end;
     }
 
     @Override
     public boolean tryAdvance(Consumer<? super GlowChunk> action) {
 
-        if (z > area.getCenterZ() + area.getRadius()) {
+        if (index >= end) {
             return false;
         }
 
-        GlowWorld world = area.getWorld();
-        GlowChunk chunk = world.getChunkAt(x, z);
-        action.accept(chunk);
+        action.accept(chunkAt(index));
+        index++;
+
+        return true;
+    }
 
-        x++;
-        if (x > area.getCenterX() + area.getRadius()) {
-            x = area.getCenterX() - area.getRadius();
-            z++;
+    @Override
+    public void forEachRemaining(Consumer<? super GlowChunk> action) {
+        for (; index < end; index++) {
+            action.accept(chunkAt(index));
         }
-        size--;
+    }
 
-        return true;
+    private GlowChunk chunkAt(int index) {
+        GlowWorld world = area.getWorld();
+        int x = area.getCenterX() - area.getRadius() + index % length;
+        int z = area.getCenterZ() - area.getRadius() + index / length;
+        return world.getChunkAt(x, z);
     }
 
     @Override
     public Spliterator<GlowChunk> trySplit() {
-        return null;
+        int size = end - index;
+        if (size < 2 * MIN_SPLIT_SIZE) {
+            return null;
+        }
+        int middle = index + size / 2;
+        Spliterator<GlowChunk> prefix = new ChunkSpliterator(area, index, middle);
+        index = middle;
+        return prefix;
     }
 
     @Override
     public long estimateSize() {
-        return size;
+        return end - index;
     }
 
     @Override
     public int characteristics() {
-        return ORDERED | DISTINCT | SORTED | SIZED | NONNULL | IMMUTABLE;
+        return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
     }
 }
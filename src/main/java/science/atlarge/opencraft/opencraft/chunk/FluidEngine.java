@@ -0,0 +1,476 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static science.atlarge.opencraft.opencraft.chunk.BlockAccess.SIDE_X;
+import static science.atlarge.opencraft.opencraft.chunk.BlockAccess.SIDE_Z;
+
+import com.flowpowered.network.Message;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+import org.bukkit.Material;
+import science.atlarge.opencraft.opencraft.block.ItemTable;
+import science.atlarge.opencraft.opencraft.block.blocktype.BlockNeedsAttached;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
+
+/**
+ * The fluid engine flows the water and lava of a world.
+ *
+ * <p>Blocks whose fluid may have to flow are queued per chunk, and the queued blocks that are due are updated together
+ * once per tick, level by level: sources first, then flowing fluid from the strongest to the weakest, and falling fluid
+ * last. Each update settles the level of a block from its neighbours and then spreads the fluid to the blocks next to
+ * and below it, which queues those blocks in turn. Fluid is written to the chunks directly, without block physics, and
+ * the changes of a tick are sent as a single message per chunk. As block physics is skipped, the redstone engine is
+ * told about the blocks that fluid washes away or turns into stone.
+ *
+ * <p>The level of a fluid is kept in the block data: zero for a source, one to seven for flowing fluid that weakens
+ * as it spreads, with the eighth bit set for falling fluid. Fluid does not flow into chunks that are not loaded.
+ */
+public final class FluidEngine {
+
+    private static final int AIR = 0;
+    private static final int STONE = 1;
+    private static final int COBBLESTONE = 4;
+    private static final int WATER = 8;
+    private static final int STATIONARY_WATER = 9;
+    private static final int LAVA = 10;
+    private static final int STATIONARY_LAVA = 11;
+    private static final int OBSIDIAN = 49;
+
+    private static final int SOURCE = 0;
+    private static final int FALLING = 8;
+    private static final int MAX_LEVEL_WATER = 7;
+    private static final int MAX_LEVEL_LAVA = 4;
+
+    private static final int TICK_RATE_WATER = 4;
+    private static final int TICK_RATE_LAVA = 20;
+
+    /**
+     * The distance up to which flowing fluid looks for a way down, to flow towards it.
+     */
+    private static final int SLOPE_DISTANCE = 4;
+
+    /**
+     * The number of ticks ahead for which updates are queued, which exceeds the largest tick rate.
+     */
+    private static final int TICKS = 32;
+
+    private final BlockAccess blocks;
+    private final RedstoneEngine redstoneEngine;
+
+    /**
+     * Whether lava flows as far and as fast as water, as it does in the nether.
+     */
+    private final boolean thinLava;
+
+    /**
+     * The queued updates of each chunk, by chunk key.
+     */
+    private final Long2ObjectMap<ChunkQueue> queues = new Long2ObjectOpenHashMap<>();
+
+    private long tick;
+
+    /**
+     * Create a fluid engine.
+     *
+     * @param chunks         the function that gets a chunk by its key, as packed by
+     *                       {@link GlowChunk.Key#toLong(int, int)}. The function must not load the chunk.
+     * @param thinLava       whether lava flows as far and as fast as water.
+     * @param redstoneEngine the redstone engine of the same world.
+     */
+    public FluidEngine(LongFunction<GlowChunk> chunks, boolean thinLava, RedstoneEngine redstoneEngine) {
+        blocks = new BlockAccess(chunks);
+        this.thinLava = thinLava;
+        this.redstoneEngine = redstoneEngine;
+    }
+
+    /**
+     * Queue an update of a block, unless one is queued already. The update is due after the tick rate of the given
+     * fluid, and does nothing if the block does not hold fluid by then.
+     *
+     * @param x    the x-coordinate of the block.
+     * @param y    the y-coordinate of the block.
+     * @param z    the z-coordinate of the block.
+     * @param lava whether the fluid is lava, rather than water.
+     */
+    public synchronized void schedule(int x, int y, int z, boolean lava) {
+        if (y < 0 || y >= GlowChunk.DEPTH) {
+            return;
+        }
+        long key = GlowChunk.Key.toLong(x >> 4, z >> 4);
+        ChunkQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = new ChunkQueue();
+            queues.put(key, queue);
+        }
+        long position = TickWheel.pack(x, y, z);
+        if (queue.pending.add(position)) {
+            int delay = lava && !thinLava ? TICK_RATE_LAVA : TICK_RATE_WATER;
+            queue.due[(int) (tick + delay) & TICKS - 1].add(position);
+            // the queued updates of a chunk are saved with it
+            GlowChunk chunk = blocks.getChunk(key);
+            if (chunk != null) {
+                chunk.markStateModified();
+            }
+        }
+    }
+
+    /**
+     * Get the blocks of a chunk that have a queued update.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     * @return the coordinates of the blocks, as packed by {@link TickWheel#pack(int, int, int)}.
+     */
+    public synchronized LongList getScheduled(int chunkX, int chunkZ) {
+        ChunkQueue queue = queues.get(GlowChunk.Key.toLong(chunkX, chunkZ));
+        return queue == null ? new LongArrayList() : new LongArrayList(queue.pending);
+    }
+
+    /**
+     * Forget the queued updates of a chunk, e.g. because it is unloaded.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     */
+    public synchronized void cancelChunk(int chunkX, int chunkZ) {
+        queues.remove(GlowChunk.Key.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Update the blocks that are due, and pass on the resulting block changes. The changes of a chunk are passed as a
+     * single {@link MultiBlockChangeMessage}, or as a {@link BlockChangeMessage} if only one block has changed.
+     *
+     * @param changed the consumer of the chunks that have changed and their block change message.
+     */
+    public synchronized void pulse(BiConsumer<GlowChunk, Message> changed) {
+        tick++;
+        LongList[] levels = new LongList[FALLING + 1];
+        Iterator<Long2ObjectMap.Entry<ChunkQueue>> iterator = queues.long2ObjectEntrySet().iterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<ChunkQueue> entry = iterator.next();
+            ChunkQueue queue = entry.getValue();
+            LongArrayList due = queue.due[(int) tick & TICKS - 1];
+            if (due.isEmpty()) {
+                continue;
+            }
+            GlowChunk chunk = blocks.getChunk(entry.getLongKey());
+            for (int i = 0; i < due.size(); i++) {
+                long position = due.getLong(i);
+                queue.pending.remove(position);
+                if (chunk == null || !chunk.isLoaded()) {
+                    continue;
+                }
+                int x = TickWheel.unpackX(position);
+                int y = TickWheel.unpackY(position);
+                int z = TickWheel.unpackZ(position);
+                if (fluidOf(chunk.getType(x & 0xf, z & 0xf, y)) != AIR) {
+                    int level = Math.min(chunk.getMetaData(x & 0xf, z & 0xf, y), FALLING);
+                    if (levels[level] == null) {
+                        levels[level] = new LongArrayList();
+                    }
+                    levels[level].add(position);
+                }
+            }
+            due.clear();
+            if (chunk != null) {
+                chunk.markStateModified();
+            }
+            if (queue.pending.isEmpty()) {
+                iterator.remove();
+            }
+        }
+
+        for (LongList level : levels) {
+            if (level != null) {
+                for (int i = 0; i < level.size(); i++) {
+                    long position = level.getLong(i);
+                    update(TickWheel.unpackX(position), TickWheel.unpackY(position), TickWheel.unpackZ(position));
+                }
+            }
+        }
+
+        blocks.flush(changed);
+    }
+
+    /**
+     * Settle the level of the fluid of a block, and spread it to the neighbouring blocks.
+     */
+    private void update(int x, int y, int z) {
+        int state = blocks.getState(x, y, z);
+        int fluid = fluidOf(state >> 4);
+        if (fluid == AIR) {
+            // the fluid has flowed away earlier in this pulse
+            return;
+        }
+        boolean lava = fluid == LAVA;
+        int maxLevel = lava && !thinLava ? MAX_LEVEL_LAVA : MAX_LEVEL_WATER;
+        int level = state & 0xf;
+
+        if (lava && solidify(x, y, z, level)) {
+            return;
+        }
+
+        if (level != SOURCE) {
+            int min = -1;
+            int sources = 0;
+            for (int side = 0; side < SIDE_X.length; side++) {
+                int neighbour = blocks.getState(x + SIDE_X[side], y, z + SIDE_Z[side]);
+                if (fluidOf(neighbour >> 4) != fluid) {
+                    continue;
+                }
+                int neighbourLevel = neighbour & 0xf;
+                if (neighbourLevel == SOURCE) {
+                    sources++;
+                }
+                if (neighbourLevel >= FALLING) {
+                    neighbourLevel = SOURCE;
+                }
+                if (min < 0 || neighbourLevel < min) {
+                    min = neighbourLevel;
+                }
+            }
+            int next = min < 0 || min + 1 > maxLevel ? -1 : min + 1;
+            if (fluidOf(blocks.getState(x, y + 1, z) >> 4) == fluid) {
+                next = FALLING;
+            }
+            if (!lava && sources >= 2) {
+                int below = blocks.getState(x, y - 1, z);
+                if (blocksFlow(below) || fluidOf(below >> 4) == fluid && (below & 0xf) == SOURCE) {
+                    next = SOURCE;
+                }
+            }
+            if (next != level) {
+                if (next < 0) {
+                    setState(x, y, z, AIR, 0);
+                    return;
+                }
+                setState(x, y, z, fluid, next);
+                level = next;
+            } else if (state >> 4 == fluid) {
+                settle(x, y, z, fluid, level);
+            }
+        } else if (state >> 4 == fluid) {
+            settle(x, y, z, fluid, level);
+        }
+
+        int below = blocks.getState(x, y - 1, z);
+        if (canFlowInto(below, fluid)) {
+            if (lava && fluidOf(below >> 4) == WATER) {
+                setState(x, y - 1, z, STONE, 0);
+            } else {
+                setState(x, y - 1, z, fluid, FALLING);
+            }
+        } else if (level == SOURCE || blocksFlow(below)) {
+            int next = level >= FALLING ? 1 : level + 1;
+            if (next > maxLevel) {
+                return;
+            }
+            for (int side : flowDirections(x, y, z, fluid)) {
+                int sideX = x + SIDE_X[side];
+                int sideZ = z + SIDE_Z[side];
+                int target = blocks.getState(sideX, y, sideZ);
+                if (!canFlowInto(target, fluid)) {
+                    continue;
+                }
+                if (lava && fluidOf(target >> 4) == WATER) {
+                    setState(sideX, y, sideZ, COBBLESTONE, 0);
+                } else {
+                    setState(sideX, y, sideZ, fluid, next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn lava into obsidian or cobblestone if water flows next to or onto it.
+     *
+     * @return whether the lava has solidified.
+     */
+    private boolean solidify(int x, int y, int z, int level) {
+        boolean water = fluidOf(blocks.getState(x, y + 1, z) >> 4) == WATER;
+        for (int side = 0; side < SIDE_X.length && !water; side++) {
+            water = fluidOf(blocks.getState(x + SIDE_X[side], y, z + SIDE_Z[side]) >> 4) == WATER;
+        }
+        if (!water) {
+            return false;
+        }
+        if (level == SOURCE) {
+            setState(x, y, z, OBSIDIAN, 0);
+        } else if (level <= MAX_LEVEL_LAVA) {
+            setState(x, y, z, COBBLESTONE, 0);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Turn flowing fluid that no longer changes into stationary fluid of the same level.
+     */
+    private void settle(int x, int y, int z, int fluid, int level) {
+        blocks.setState(x, y, z, fluid == WATER ? STATIONARY_WATER : STATIONARY_LAVA, level);
+    }
+
+    /**
+     * Get the sides of a block that its fluid flows to: those that lead down the soonest, or all sides that the fluid
+     * can flow to if none leads down within the slope distance.
+     *
+     * @return the indices of the sides.
+     */
+    private int[] flowDirections(int x, int y, int z, int fluid) {
+        int[] distances = new int[SIDE_X.length];
+        int min = Integer.MAX_VALUE;
+        for (int side = 0; side < SIDE_X.length; side++) {
+            int sideX = x + SIDE_X[side];
+            int sideZ = z + SIDE_Z[side];
+            int target = blocks.getState(sideX, y, sideZ);
+            if (blocksFlow(target) || fluidOf(target >> 4) == fluid && (target & 0xf) == SOURCE) {
+                distances[side] = Integer.MAX_VALUE;
+                continue;
+            }
+            distances[side] = slopeDistance(sideX, y, sideZ, fluid, side, 1);
+            min = Math.min(min, distances[side]);
+        }
+        int count = 0;
+        int[] sides = new int[SIDE_X.length];
+        for (int side = 0; side < SIDE_X.length; side++) {
+            if (distances[side] != Integer.MAX_VALUE && distances[side] == min) {
+                sides[count++] = side;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(sides, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Get the number of blocks after which the fluid can flow down, searching away from the block it came from.
+     *
+     * @return the distance, or {@link #SLOPE_DISTANCE} plus one if the fluid cannot flow down within that distance.
+     */
+    private int slopeDistance(int x, int y, int z, int fluid, int from, int distance) {
+        if (!blocksFlow(blocks.getState(x, y - 1, z))) {
+            return distance;
+        }
+        int min = SLOPE_DISTANCE + 1;
+        if (distance >= SLOPE_DISTANCE) {
+            return min;
+        }
+        for (int side = 0; side < SIDE_X.length; side++) {
+            if (side == (from + 2) % SIDE_X.length) {
+                continue;
+            }
+            int sideX = x + SIDE_X[side];
+            int sideZ = z + SIDE_Z[side];
+            int target = blocks.getState(sideX, y, sideZ);
+            if (blocksFlow(target) || fluidOf(target >> 4) == fluid && (target & 0xf) == SOURCE) {
+                continue;
+            }
+            min = Math.min(min, slopeDistance(sideX, y, sideZ, fluid, side, distance + 1));
+        }
+        return min;
+    }
+
+    /**
+     * Change a block, and queue updates of the fluid in and around it.
+     */
+    private void setState(int x, int y, int z, int type, int data) {
+        // flowing fluid is written as such, so the client animates it
+        int oldType = blocks.setState(x, y, z, type, data);
+        if (!isFluidOrAir(oldType) || !isFluidOrAir(type)) {
+            // the block may have linked or powered wire, e.g. wire or a torch that is washed away
+            redstoneEngine.linksChanged(x, y, z);
+        }
+
+        scheduleIfFluid(x, y, z);
+        scheduleIfFluid(x, y + 1, z);
+        scheduleIfFluid(x, y - 1, z);
+        for (int side = 0; side < SIDE_X.length; side++) {
+            scheduleIfFluid(x + SIDE_X[side], y, z + SIDE_Z[side]);
+        }
+    }
+
+    private void scheduleIfFluid(int x, int y, int z) {
+        int fluid = fluidOf(blocks.getState(x, y, z) >> 4);
+        if (fluid != AIR) {
+            schedule(x, y, z, fluid == LAVA);
+        }
+    }
+
+    /**
+     * Check whether fluid can flow into a block: a block that is air, or that is washed away by fluid, or that holds
+     * another fluid to mix with.
+     */
+    private static boolean canFlowInto(int state, int fluid) {
+        if (state < 0) {
+            return false;
+        }
+        int other = fluidOf(state >> 4);
+        if (other != AIR) {
+            // water does not flow into lava, but lava solidifies as it notices the water
+            return other != fluid && fluid == LAVA;
+        }
+        return Replaceable.TYPES[state >> 4];
+    }
+
+    /**
+     * Check whether a block stops fluid from flowing into it.
+     */
+    private static boolean blocksFlow(int state) {
+        return state < 0 || fluidOf(state >> 4) == AIR && !Replaceable.TYPES[state >> 4];
+    }
+
+    private static boolean isFluidOrAir(int type) {
+        return type == AIR || fluidOf(type) != AIR;
+    }
+
+    /**
+     * Get the flowing fluid of a block type.
+     *
+     * @return the flowing type of the fluid, or air if the block holds no fluid.
+     */
+    private static int fluidOf(int type) {
+        switch (type) {
+            case WATER:
+            case STATIONARY_WATER:
+                return WATER;
+            case LAVA:
+            case STATIONARY_LAVA:
+                return LAVA;
+            default:
+                return AIR;
+        }
+    }
+
+    /**
+     * The updates of a chunk that are due in each of the coming ticks.
+     */
+    private static final class ChunkQueue {
+
+        private final LongSet pending = new LongOpenHashSet();
+        private final LongArrayList[] due = new LongArrayList[TICKS];
+
+        private ChunkQueue() {
+            for (int i = 0; i < TICKS; i++) {
+                due[i] = new LongArrayList();
+            }
+        }
+    }
+
+    /**
+     * The block types that fluid flows into: air, and blocks that are attached to others, which it washes away.
+     */
+    private static final class Replaceable {
+
+        private static final boolean[] TYPES = BlockAccess.typeTable(material -> material == Material.AIR
+            || ItemTable.instance().getBlock(material) instanceof BlockNeedsAttached);
+    }
+}
@@ -1,17 +1,20 @@
 package science.atlarge.opencraft.opencraft.chunk;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.HashCommon;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import lombok.Data;
 import lombok.Getter;
@@ -131,6 +134,33 @@ public class GlowChunk implements Chunk {
     @Setter
     private long inhabitedTime;
 
+    /**
+     * The modification version of this chunk, which changes whenever its blocks, light or biomes
+     * are modified.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The modification version of this chunk when it was last saved or read from storage.
+     */
+    private volatile long savedVersion = -1;
+
+    /**
+     * The modification version of the state of this chunk that is saved but not sent with its
+     * blocks: the entities and block entities in it, and its scheduled block ticks.
+     */
+    private final AtomicLong stateVersion = new AtomicLong();
+
+    /**
+     * The state version of this chunk when it was last saved or read from storage.
+     */
+    private volatile long savedStateVersion = -1;
+
+    /**
+     * The inhabited time of this chunk when it was last saved or read from storage.
+     */
+    private volatile long savedInhabitedTime = -1;
+
     /**
      * Creates a new chunk with a specified X and Z coordinate.
      *
@@ -271,6 +301,9 @@ public class GlowChunk implements Chunk {
         biomes = null;
         heightMap = null;
         blockEntities.clear();
+        world.cancelPulses(this);
+        markModified();
+        world.getServer().getChunkPacketCache().invalidate(this);
         if (save) {
             for (GlowEntity entity : entities) {
                 entity.remove();
@@ -312,6 +345,74 @@ public class GlowChunk implements Chunk {
                 initializeSection(y, initSections[y]);
             }
         }
+        markModified();
+    }
+
+    /**
+     * Mark the data of this chunk as modified, so that encoded copies of it are no longer used.
+     */
+    void markModified() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Get the modification version of this chunk, which changes whenever its blocks, light or
+     * biomes are modified.
+     *
+     * @return The modification version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Mark the saved state of this chunk other than its blocks, light and biomes as modified, so
+     * that the chunk is saved again: e.g. because an entity has moved into, out of or within it, a
+     * block entity has changed, or a block tick has been scheduled or cancelled. Encoded copies of
+     * the chunk remain in use.
+     */
+    public void markStateModified() {
+        stateVersion.incrementAndGet();
+    }
+
+    /**
+     * Get the modification version of the state of this chunk that is saved but not sent with its
+     * blocks, which changes whenever {@link #markStateModified()} is called.
+     *
+     * @return The state version.
+     */
+    public long getStateVersion() {
+        return stateVersion.get();
+    }
+
+    /**
+     * Mark this chunk as saved up to the given modification versions.
+     *
+     * @param savedVersion       The version of the chunk that was saved, obtained from
+     *                           {@link #getVersion()} before the chunk was written.
+     * @param savedStateVersion  The state version of the chunk that was saved, obtained from
+     *                           {@link #getStateVersion()} before the chunk was written.
+     * @param savedInhabitedTime The inhabited time of the chunk that was saved.
+     */
+    public void markSaved(long savedVersion, long savedStateVersion, long savedInhabitedTime) {
+        this.savedVersion = savedVersion;
+        this.savedStateVersion = savedStateVersion;
+        this.savedInhabitedTime = savedInhabitedTime;
+    }
+
+    /**
+     * Check whether this chunk has changes which have not been saved. Block entities are first
+     * given the chance to report changes that are not marked as they happen, such as the contents
+     * of their inventories.
+     *
+     * @return Whether the chunk needs to be saved.
+     */
+    public boolean isDirty() {
+        for (BlockEntity entity : blockEntities.values()) {
+            entity.checkModified();
+        }
+        return version.get() != savedVersion || stateVersion.get() != savedStateVersion
+                || inhabitedTime != savedInhabitedTime;
     }
 
     private void initializeSection(int y, ChunkSection section) {
@@ -418,6 +519,34 @@ public class GlowChunk implements Chunk {
         return sections[idx];
     }
 
+    /**
+     * Get the section at the given index, creating it if it is missing, e.g. because a block is placed in it or the
+     * {@link LightEngine} has to store light in it. A new section has the sky light that the light engine assumes for
+     * a missing section. If no section above it exists, that is full sky light, so the missing sections below it are
+     * created as well to keep them lit.
+     *
+     * @param index The index of the section.
+     * @return The section, or null if this chunk is not loaded.
+     */
+    synchronized ChunkSection getOrCreateSection(int index) {
+        ChunkSection[] sections = this.sections;
+        if (sections == null) {
+            return null;
+        }
+        if (sections[index] == null) {
+            int skyLight = LightEngine.emptySkyLight(sections, index);
+            int lowest = index;
+            while (skyLight > 0 && lowest > 0 && sections[lowest - 1] == null) {
+                lowest--;
+            }
+            // the lower sections are created first, as missing sections are dark once a section above them exists
+            for (int i = lowest; i <= index; i++) {
+                sections[i] = new ChunkSection((byte) skyLight);
+            }
+        }
+        return sections[index];
+    }
+
     /**
      * Attempt to get the block entity located at the given coordinates.
      *
@@ -472,7 +601,7 @@ public class GlowChunk implements Chunk {
                     // y is out of range somehow
                     return;
                 }
-                sections[idx] = section = new ChunkSection();
+                section = getOrCreateSection(idx);
             }
         }
 
@@ -496,13 +625,12 @@ public class GlowChunk implements Chunk {
             }
         }
         // update the type - also sets metadata to 0
+        int previous = section.getType(x, y, z) >> 4;
         section.setType(x, y, z, (char) (type << 4));
+        markModified();
+        world.getLightEngine().blockChanged(this.x << 4 | x, y, this.z << 4 | z, previous, type);
 
-        if (section.isEmpty()) {
-            // destroy the empty section
-            sections[y / SEC_DEPTH] = null;
-            return;
-        }
+        // sections without blocks are kept, as they may still hold light
 
         // create a new block entity if we need
         createEntity(x, y, z, type);
@@ -554,6 +682,7 @@ public class GlowChunk implements Chunk {
             return;  // can't set metadata on air
         }
         section.setType(x, y, z, (char) (type & 0xfff0 | metaData));
+        markModified();
     }
 
     /**
@@ -583,6 +712,7 @@ public class GlowChunk implements Chunk {
             return;  // can't set light on an empty section
         }
         section.setSkyLight(x, y, z, (byte) skyLight);
+        markModified();
     }
 
     /**
@@ -612,6 +742,7 @@ public class GlowChunk implements Chunk {
             return;  // can't set light on an empty section
         }
         section.setBlockLight(x, y, z, (byte) blockLight);
+        markModified();
     }
 
     /**
@@ -640,6 +771,7 @@ public class GlowChunk implements Chunk {
             return;
         }
         biomes[z * WIDTH + x] = (byte) biome;
+        markModified();
     }
 
     /**
@@ -655,6 +787,7 @@ public class GlowChunk implements Chunk {
             throw new IllegalArgumentException("Biomes array not of length " + biomes.length);
         }
         System.arraycopy(newBiomes, 0, biomes, 0, biomes.length);
+        markModified();
     }
 
     /**
@@ -827,39 +960,56 @@ public class GlowChunk implements Chunk {
      * @return The {@link ChunkDataMessage}.
      */
     public ChunkDataMessage toMessage(boolean skylight, boolean entireChunk) {
+        return toMessage(skylight, entireChunk, entireChunk ? -1 : 0);
+    }
+
+    /**
+     * Creates a new {@link ChunkDataMessage} which can be sent to a client to replace the given
+     * sections of this chunk, e.g. after their light has changed. Empty sections are left out.
+     *
+     * @param skylight Whether to include skylight data.
+     * @param sections The bitmask of the sections to send, by section index.
+     * @return The {@link ChunkDataMessage}.
+     */
+    public ChunkDataMessage toMessage(boolean skylight, int sections) {
+        return toMessage(skylight, false, sections);
+    }
+
+    private ChunkDataMessage toMessage(boolean skylight, boolean entireChunk, int requestedSections) {
         load();
-        int sectionBitmask = 0;
 
-        // filter sectionBitmask based on actual chunk contents
-        if (sections != null) {
-            int maxBitmask = (1 << sections.length) - 1;
-            if (entireChunk) {
-                sectionBitmask = maxBitmask;
-            }
+        ChunkPacketCache cache = world.getServer().getChunkPacketCache();
+        long currentVersion = version.get();
+        ChunkPacketCache.Entry entry = entireChunk ? cache.get(this, currentVersion, skylight) : null;
 
-            for (int i = 0; i < sections.length; ++i) {
-                if (sections[i] == null || sections[i].isEmpty()) {
-                    // remove empty sections from bitmask
-                    sectionBitmask &= ~(1 << i);
+        int sectionBitmask;
+        ByteBuf buf;
+        if (entry != null) {
+            sectionBitmask = entry.getPrimaryMask();
+            buf = Unpooled.wrappedBuffer(entry.getData());
+        } else {
+            sectionBitmask = getSectionBitmask(requestedSections);
+            buf = Unpooled.buffer();
+
+            if (sections != null) {
+                // get the list of sections
+                for (int i = 0; i < sections.length; ++i) {
+                    if ((sectionBitmask & 1 << i) == 0) {
+                        continue;
+                    }
+                    sections[i].writeToBuf(buf, skylight);
                 }
             }
-        }
 
-        ByteBuf buf = Unpooled.buffer();
-
-        if (sections != null) {
-            // get the list of sections
-            for (int i = 0; i < sections.length; ++i) {
-                if ((sectionBitmask & 1 << i) == 0) {
-                    continue;
-                }
-                sections[i].writeToBuf(buf, skylight);
+            // biomes
+            if (entireChunk && biomes != null) {
+                buf.writeBytes(biomes);
             }
-        }
 
-        // biomes
-        if (entireChunk && biomes != null) {
-            buf.writeBytes(biomes);
+            if (entireChunk) {
+                byte[] data = ByteBufUtil.getBytes(buf);
+                cache.put(this, new ChunkPacketCache.Entry(currentVersion, skylight, sectionBitmask, data));
+            }
         }
 
         Set<CompoundTag> blockEntities = new HashSet<>();
@@ -872,6 +1022,24 @@ public class GlowChunk implements Chunk {
         return new ChunkDataMessage(x, z, entireChunk, sectionBitmask, buf, blockEntities);
     }
 
+    private int getSectionBitmask(int requestedSections) {
+        int sectionBitmask = 0;
+
+        // filter sectionBitmask based on actual chunk contents
+        if (sections != null) {
+            int maxBitmask = (1 << sections.length) - 1;
+            sectionBitmask = requestedSections & maxBitmask;
+
+            for (int i = 0; i < sections.length; ++i) {
+                if (sections[i] == null || sections[i].isEmpty()) {
+                    // remove empty sections from bitmask
+                    sectionBitmask &= ~(1 << i);
+                }
+            }
+        }
+        return sectionBitmask;
+    }
+
     public void addTick() {
         inhabitedTime++;
     }
@@ -892,16 +1060,21 @@ public class GlowChunk implements Chunk {
     /**
      * A chunk key represents the X and Z coordinates of a chunk in a manner suitable for use as a
      * key in a hash table or set.
+     *
+     * <p>Recently used keys are cached in a fixed-size table, in which a key replaces the previous
+     * key with the same slot. Keys are compared by their coordinates, so the cache only saves
+     * allocations and keys do not have to be unique.
      */
     @Data
     public static final class Key {
 
-        private static final int INITIAL_CAPACITY = 512;
-
-        private static final float LOAD_FACTOR = 0.5F;
+        /**
+         * The number of slots in the key cache, which is a power of two.
+         */
+        private static final int CACHE_SIZE = 4096;
 
         // Key cache storage
-        private static final Map<Long, Key> keys = new ConcurrentHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR);
+        private static final AtomicReferenceArray<Key> keys = new AtomicReferenceArray<>(CACHE_SIZE);
 
         /**
          * The x-coordinate.
@@ -924,13 +1097,42 @@ public class GlowChunk implements Chunk {
             this.hashCode = x * 31 + z;
         }
 
-        private static long mapCode(int x, int z) {
+        /**
+         * Pack the given chunk coordinates into a long, for use as a key in primitive maps.
+         *
+         * @param x the x-coordinate.
+         * @param z the z-coordinate.
+         * @return the packed coordinates.
+         */
+        public static long toLong(int x, int z) {
             return (((long) x) << 32) | (z & 0xffffffffL);
         }
 
+        /**
+         * Get a key for the given chunk coordinates, which may be a cached one.
+         *
+         * @param x the x-coordinate.
+         * @param z the z-coordinate.
+         * @return the key.
+         */
         public static Key of(int x, int z) {
-            long id = mapCode(x, z);
-            return keys.computeIfAbsent(id, l -> new Key(x, z));
+            int slot = (int) HashCommon.mix(toLong(x, z)) & CACHE_SIZE - 1;
+            Key key = keys.get(slot);
+            if (key == null || key.x != x || key.z != z) {
+                key = new Key(x, z);
+                keys.lazySet(slot, key);
+            }
+            return key;
+        }
+
+        /**
+         * Get the coordinates of this key packed into a long.
+         *
+         * @return the packed coordinates.
+         * @see #toLong(int, int)
+         */
+        public long toLong() {
+            return toLong(x, z);
         }
 
         public static Key to(Chunk chunk) {
@@ -0,0 +1,544 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.LongFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
+import org.bukkit.Material;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.block.MaterialValueManager;
+
+/**
+ * The light engine keeps the sky light and block light of the chunk sections of a world up to date as blocks change.
+ *
+ * <p>Changes are collected during a tick and propagated together, off the thread of the world, by a breadth-first
+ * search that first removes the light that no longer reaches and then spreads light from the remaining sources. Only
+ * the blocks whose light actually changes are visited, so the work is proportional to the change. Newly generated
+ * chunks are lit in bulk, from the top of each column down and then sideways.
+ *
+ * <p>Chunks are never waited for: they are sent with the light they have, and the chunks whose light changed are
+ * passed back to the world on a later tick, together with the sections whose light changed, so only those are sent
+ * again. Light does not spread into chunks that are not loaded. Missing sections have no light storage, and are
+ * created when light that differs from their assumed light is spread into them.
+ *
+ * <p>Changes are recorded in lock-free queues, as blocks are changed by many threads at once during a tick.
+ */
+public final class LightEngine {
+
+    private static final int MAX_LIGHT = 15;
+    private static final int DOWN = 3;
+    private static final int[] DX = {1, -1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, 1, -1};
+
+    /**
+     * The light opacity of each block type, capped at the maximum light level.
+     */
+    private final byte[] opacity = new byte[4096];
+
+    /**
+     * The block light level emitted by each block type.
+     */
+    private final byte[] emission = new byte[4096];
+
+    private final boolean skylight;
+    private final LongFunction<GlowChunk> chunks;
+    private final ExecutorService executor;
+
+    private final Queue<Long> changedBlocks = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> generatedChunks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The propagation in progress, which results in the bitmask of the sections whose light has changed, by the key
+     * of their chunk.
+     */
+    private CompletableFuture<Long2IntMap> running;
+
+    /**
+     * Create a light engine.
+     *
+     * @param values   the material values, which provide the light opacity and emission of blocks.
+     * @param skylight whether the world has sky light.
+     * @param chunks   the function that gets a chunk by its key, as packed by {@link GlowChunk.Key#toLong(int, int)}.
+     *                 The function must not load the chunk.
+     * @param executor the executor on which light is propagated.
+     */
+    @SuppressWarnings("deprecation")
+    public LightEngine(MaterialValueManager values, boolean skylight, LongFunction<GlowChunk> chunks,
+                       ExecutorService executor) {
+        this.skylight = skylight;
+        this.chunks = chunks;
+        this.executor = executor;
+        for (Material material : Material.values()) {
+            if (material.isBlock() && material.getId() < opacity.length) {
+                MaterialValueManager.ValueCollection collection = values.getValues(material);
+                opacity[material.getId()] = (byte) Math.min(collection.getLightOpacity(), MAX_LIGHT);
+                emission[material.getId()] = (byte) Math.min(collection.getLightEmission(), MAX_LIGHT);
+            }
+        }
+    }
+
+    /**
+     * Record that the type of a block has changed. The light around the block is propagated on a later tick, if the
+     * change affects light at all.
+     *
+     * @param x        the x-coordinate of the block.
+     * @param y        the y-coordinate of the block.
+     * @param z        the z-coordinate of the block.
+     * @param previous the previous type of the block.
+     * @param type     the new type of the block.
+     */
+    public void blockChanged(int x, int y, int z, int previous, int type) {
+        if (opacity[previous] == opacity[type] && emission[previous] == emission[type]) {
+            return;
+        }
+        changedBlocks.add(pack(x, y, z, 0));
+    }
+
+    /**
+     * Record that a chunk has been generated, so that it is lit in bulk on a later tick.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     */
+    public void chunkGenerated(int chunkX, int chunkZ) {
+        generatedChunks.add(GlowChunk.Key.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Pass the chunks whose light has been updated since the last pulse to the given callback, and start
+     * propagating the changes of this tick if no propagation is in progress. Otherwise, the changes are kept until the
+     * propagation in progress has finished. Must be called on the thread of the world.
+     *
+     * @param relit the callback for the loaded chunks whose light has changed, which also gets the bitmask of the
+     *              sections whose light has changed, by section index.
+     */
+    public void pulse(ObjIntConsumer<GlowChunk> relit) {
+        if (running != null) {
+            if (!running.isDone()) {
+                return;
+            }
+            ObjectIterator<Long2IntMap.Entry> entries = running.join().long2IntEntrySet().iterator();
+            running = null;
+            while (entries.hasNext()) {
+                Long2IntMap.Entry entry = entries.next();
+                GlowChunk chunk = chunks.apply(entry.getLongKey());
+                if (chunk != null && chunk.isLoaded()) {
+                    relit.accept(chunk, entry.getIntValue());
+                }
+            }
+        }
+
+        if (changedBlocks.isEmpty() && generatedChunks.isEmpty()) {
+            return;
+        }
+        LongSet blocks = drain(changedBlocks);
+        LongSet generated = drain(generatedChunks);
+        running = CompletableFuture.supplyAsync(() -> new Propagation().run(blocks, generated), executor)
+            .exceptionally(ex -> {
+                GlowServer.logger.log(Level.SEVERE, "Failed to propagate light", ex);
+                return new Long2IntOpenHashMap();
+            });
+    }
+
+    /**
+     * Take the keys that have been added to the given queue so far, without duplicates.
+     */
+    private static LongSet drain(Queue<Long> queue) {
+        LongSet keys = new LongOpenHashSet();
+        Long key;
+        while ((key = queue.poll()) != null) {
+            keys.add(key.longValue());
+        }
+        return keys;
+    }
+
+    /**
+     * Stop the thread on which light is propagated.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Get the sky light of the blocks of a missing section: full if no section above it exists, and none otherwise.
+     *
+     * @param column the sections of a chunk.
+     * @param index  the index of the missing section.
+     * @return the sky light level.
+     */
+    static int emptySkyLight(ChunkSection[] column, int index) {
+        for (int above = index + 1; above < column.length; above++) {
+            if (column[above] != null) {
+                return 0;
+            }
+        }
+        return MAX_LIGHT;
+    }
+
+    /**
+     * Pack the coordinates of a block and a light level into a long.
+     */
+    static long pack(int x, int y, int z, int level) {
+        return (x & 0x3ffffffL) << 38 | (z & 0x3ffffffL) << 12 | (y & 0xffL) << 4 | level & 0xfL;
+    }
+
+    private static int unpackX(long pos) {
+        return (int) (pos >> 38);
+    }
+
+    private static int unpackZ(long pos) {
+        return (int) (pos << 26 >> 38);
+    }
+
+    private static int unpackY(long pos) {
+        return (int) (pos >>> 4 & 0xff);
+    }
+
+    private static int unpackLevel(long pos) {
+        return (int) (pos & 0xf);
+    }
+
+    /**
+     * A single propagation of a batch of changes, on the thread of the executor.
+     */
+    private final class Propagation {
+
+        /**
+         * The sections of the chunks that have been visited by key, or null for chunks that are not loaded. The
+         * sections are looked up once, so a chunk that is unloaded during the propagation is not loaded again.
+         */
+        private final Long2ObjectMap<ChunkSection[]> columns = new Long2ObjectOpenHashMap<>();
+        private final Long2ObjectMap<GlowChunk> loaded = new Long2ObjectOpenHashMap<>();
+        private final Long2IntMap relit = new Long2IntOpenHashMap();
+        private final LongArrayFIFOQueue decrease = new LongArrayFIFOQueue();
+        private final LongArrayFIFOQueue increase = new LongArrayFIFOQueue();
+
+        Long2IntMap run(LongSet blocks, LongSet generated) {
+            LongIterator keys = generated.iterator();
+            while (keys.hasNext()) {
+                long key = keys.nextLong();
+                int chunkX = (int) (key >> 32);
+                int chunkZ = (int) key;
+                if (skylight) {
+                    lightSky(chunkX, chunkZ);
+                    spread(true);
+                }
+                lightBlocks(chunkX, chunkZ);
+                spread(false);
+            }
+
+            if (!blocks.isEmpty()) {
+                if (skylight) {
+                    update(blocks, true);
+                }
+                update(blocks, false);
+            }
+
+            LongIterator relitKeys = relit.keySet().iterator();
+            while (relitKeys.hasNext()) {
+                loaded.get(relitKeys.nextLong()).markModified();
+            }
+            return relit;
+        }
+
+        /**
+         * Propagate the changes to the given blocks for one kind of light.
+         */
+        private void update(LongSet blocks, boolean sky) {
+            LongIterator positions = blocks.iterator();
+            while (positions.hasNext()) {
+                long pos = positions.nextLong();
+                int x = unpackX(pos);
+                int y = unpackY(pos);
+                int z = unpackZ(pos);
+                ChunkSection[] column = column(x, z);
+                if (column == null) {
+                    continue;
+                }
+                int previous = light(sky, column, x, y, z);
+                setLight(sky, column, x, y, z, 0);
+                decrease.enqueue(pack(x, y, z, previous));
+
+                int source = sky ? skySource(column, x, y, z) : emission[type(column, x, y, z)];
+                if (source > 0) {
+                    setLight(sky, column, x, y, z, source);
+                    increase.enqueue(pack(x, y, z, source));
+                }
+            }
+            darken(sky);
+            spread(sky);
+        }
+
+        /**
+         * The sky light a block receives directly from the sky, through the block above it.
+         */
+        private int skySource(ChunkSection[] column, int x, int y, int z) {
+            if (opacity[type(column, x, y, z)] != 0) {
+                return 0;
+            }
+            return y == GlowChunk.DEPTH - 1 || light(true, column, x, y + 1, z) == MAX_LIGHT ? MAX_LIGHT : 0;
+        }
+
+        /**
+         * Remove the light that came from the blocks in the decrease queue, and queue the neighbouring blocks that
+         * are lit from elsewhere to spread their light again.
+         */
+        private void darken(boolean sky) {
+            while (!decrease.isEmpty()) {
+                long pos = decrease.dequeueLong();
+                int x = unpackX(pos);
+                int y = unpackY(pos);
+                int z = unpackZ(pos);
+                int level = unpackLevel(pos);
+                for (int direction = 0; direction < DX.length; direction++) {
+                    int ny = y + DY[direction];
+                    if (ny < 0 || ny >= GlowChunk.DEPTH) {
+                        continue;
+                    }
+                    int nx = x + DX[direction];
+                    int nz = z + DZ[direction];
+                    ChunkSection[] column = column(nx, nz);
+                    if (column == null) {
+                        continue;
+                    }
+                    int neighbour = light(sky, column, nx, ny, nz);
+                    if (neighbour == 0) {
+                        continue;
+                    }
+                    if (neighbour < level || sky && direction == DOWN && level == MAX_LIGHT) {
+                        setLight(sky, column, nx, ny, nz, 0);
+                        decrease.enqueue(pack(nx, ny, nz, neighbour));
+                        int source = sky ? 0 : emission[type(column, nx, ny, nz)];
+                        if (source > 0) {
+                            setLight(sky, column, nx, ny, nz, source);
+                            increase.enqueue(pack(nx, ny, nz, source));
+                        }
+                    } else {
+                        increase.enqueue(pack(nx, ny, nz, neighbour));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Spread the light of the blocks in the increase queue to their neighbours.
+         */
+        private void spread(boolean sky) {
+            while (!increase.isEmpty()) {
+                long pos = increase.dequeueLong();
+                int x = unpackX(pos);
+                int y = unpackY(pos);
+                int z = unpackZ(pos);
+                int level = unpackLevel(pos);
+                ChunkSection[] own = column(x, z);
+                if (own == null || light(sky, own, x, y, z) != level) {
+                    // the block has been lit again since it was queued, or has no light storage
+                    continue;
+                }
+                for (int direction = 0; direction < DX.length; direction++) {
+                    int ny = y + DY[direction];
+                    if (ny < 0 || ny >= GlowChunk.DEPTH) {
+                        continue;
+                    }
+                    int nx = x + DX[direction];
+                    int nz = z + DZ[direction];
+                    ChunkSection[] column = column(nx, nz);
+                    if (column == null) {
+                        continue;
+                    }
+                    int blocking = opacity[type(column, nx, ny, nz)];
+                    int next = sky && direction == DOWN && level == MAX_LIGHT && blocking == 0
+                        ? MAX_LIGHT : level - Math.max(1, blocking);
+                    if (next > light(sky, column, nx, ny, nz)) {
+                        setLight(sky, column, nx, ny, nz, next);
+                        increase.enqueue(pack(nx, ny, nz, next));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Light a generated chunk from the sky: each column from the top down, after which the blocks next to
+         * brighter columns are queued to spread their light sideways.
+         */
+        private void lightSky(int chunkX, int chunkZ) {
+            int baseX = chunkX << 4;
+            int baseZ = chunkZ << 4;
+            ChunkSection[] column = column(baseX, baseZ);
+            if (column == null) {
+                return;
+            }
+            for (int x = baseX; x < baseX + GlowChunk.WIDTH; x++) {
+                for (int z = baseZ; z < baseZ + GlowChunk.HEIGHT; z++) {
+                    int level = MAX_LIGHT;
+                    for (int y = GlowChunk.DEPTH - 1; y >= 0; y--) {
+                        int blocking = opacity[type(column, x, y, z)];
+                        if (level < MAX_LIGHT || blocking != 0) {
+                            level = Math.max(0, level - Math.max(1, blocking));
+                        }
+                        setLight(true, column, x, y, z, level);
+                    }
+                }
+            }
+
+            for (int x = baseX; x < baseX + GlowChunk.WIDTH; x++) {
+                for (int z = baseZ; z < baseZ + GlowChunk.HEIGHT; z++) {
+                    int open = openHeight(column, x, z);
+                    for (int direction = 0; direction < DX.length; direction++) {
+                        if (DY[direction] != 0) {
+                            continue;
+                        }
+                        int nx = x + DX[direction];
+                        int nz = z + DZ[direction];
+                        ChunkSection[] neighbour = column(nx, nz);
+                        if (neighbour == null) {
+                            continue;
+                        }
+                        int neighbourOpen = openHeight(neighbour, nx, nz);
+                        queueOpen(column, x, z, open, neighbourOpen);
+                        if (neighbour != column) {
+                            queueOpen(neighbour, nx, nz, neighbourOpen, open);
+                        }
+                    }
+                    // light under partially transparent blocks, e.g. water, spreads sideways as well
+                    for (int y = open - 1; y >= 0; y--) {
+                        int level = light(true, column, x, y, z);
+                        if (level <= 1) {
+                            break;
+                        }
+                        increase.enqueue(pack(x, y, z, level));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Queue the fully lit blocks of a column that are next to darker blocks of a neighbouring column.
+         */
+        private void queueOpen(ChunkSection[] column, int x, int z, int open, int neighbourOpen) {
+            for (int y = open; y < neighbourOpen; y++) {
+                if (light(true, column, x, y, z) == MAX_LIGHT) {
+                    increase.enqueue(pack(x, y, z, MAX_LIGHT));
+                }
+            }
+        }
+
+        /**
+         * Get the lowest height from which a column is open to the sky.
+         */
+        private int openHeight(ChunkSection[] column, int x, int z) {
+            for (int y = GlowChunk.DEPTH - 1; y >= 0; y--) {
+                if (opacity[type(column, x, y, z)] != 0) {
+                    return y + 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Light a generated chunk from the blocks in it that emit light.
+         */
+        private void lightBlocks(int chunkX, int chunkZ) {
+            int baseX = chunkX << 4;
+            int baseZ = chunkZ << 4;
+            ChunkSection[] column = column(baseX, baseZ);
+            if (column == null) {
+                return;
+            }
+            for (int index = 0; index < column.length; index++) {
+                ChunkSection section = column[index];
+                if (section == null) {
+                    continue;
+                }
+                for (int y = 0; y < GlowChunk.SEC_DEPTH; y++) {
+                    for (int z = 0; z < GlowChunk.HEIGHT; z++) {
+                        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+                            int source = emission[section.getType(x, y, z) >> 4];
+                            if (source > section.getBlockLight(x, y, z)) {
+                                int blockY = index << 4 | y;
+                                setLight(false, column, baseX | x, blockY, baseZ | z, source);
+                                increase.enqueue(pack(baseX | x, blockY, baseZ | z, source));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the sections of the chunk that contains the given block, or null if the chunk is not loaded.
+         */
+        private ChunkSection[] column(int x, int z) {
+            long key = GlowChunk.Key.toLong(x >> 4, z >> 4);
+            ChunkSection[] column = columns.get(key);
+            if (column == null && !columns.containsKey(key)) {
+                GlowChunk chunk = chunks.apply(key);
+                column = chunk == null ? null : chunk.getSections();
+                columns.put(key, column);
+                if (column != null) {
+                    loaded.put(key, chunk);
+                }
+            }
+            return column;
+        }
+
+        private int type(ChunkSection[] column, int x, int y, int z) {
+            ChunkSection section = column[y >> 4];
+            return section == null ? 0 : section.getType(x & 0xf, y & 0xf, z & 0xf) >> 4;
+        }
+
+        /**
+         * Get the light of a block. Missing sections have no light storage: they have no block light, and the sky
+         * light given by {@link #emptySkyLight(ChunkSection[], int)}.
+         */
+        private int light(boolean sky, ChunkSection[] column, int x, int y, int z) {
+            int index = y >> 4;
+            ChunkSection section = column[index];
+            if (section == null) {
+                return sky ? emptySkyLight(column, index) : 0;
+            }
+            return sky ? section.getSkyLight(x & 0xf, y & 0xf, z & 0xf)
+                : section.getBlockLight(x & 0xf, y & 0xf, z & 0xf);
+        }
+
+        /**
+         * Set the light of a block, creating its section if it is missing and the light differs from its assumed
+         * light.
+         */
+        private void setLight(boolean sky, ChunkSection[] column, int x, int y, int z, int level) {
+            int index = y >> 4;
+            ChunkSection section = column[index];
+            if (section == null) {
+                if (level == (sky ? emptySkyLight(column, index) : 0)) {
+                    return;
+                }
+                GlowChunk chunk = loaded.get(GlowChunk.Key.toLong(x >> 4, z >> 4));
+                // the sections are replaced when the chunk is unloaded and loaded again during the propagation
+                section = chunk.getSections() == column ? chunk.getOrCreateSection(index) : null;
+                if (section == null) {
+                    return;
+                }
+            }
+            if (sky) {
+                section.setSkyLight(x & 0xf, y & 0xf, z & 0xf, (byte) level);
+            } else {
+                section.setBlockLight(x & 0xf, y & 0xf, z & 0xf, (byte) level);
+            }
+            long key = GlowChunk.Key.toLong(x >> 4, z >> 4);
+            relit.put(key, relit.get(key) | 1 << (y >> 4));
+        }
+    }
+}
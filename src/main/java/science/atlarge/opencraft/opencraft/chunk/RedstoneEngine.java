@@ -0,0 +1,468 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static science.atlarge.opencraft.opencraft.chunk.BlockAccess.SIDE_X;
+import static science.atlarge.opencraft.opencraft.chunk.BlockAccess.SIDE_Z;
+
+import com.flowpowered.network.Message;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+import org.bukkit.Material;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
+
+/**
+ * The redstone engine keeps the power of the redstone wire of a world up to date.
+ *
+ * <p>Wire is compiled into networks: the connected components of the graph of wires, in which wires are linked if
+ * they are next to each other, or a step up or down from each other past a solid block. Networks are cached until a
+ * block changes that could link or unlink wires, which only drops the networks around it.
+ *
+ * <p>When the power that a network receives from the blocks around it may have changed, the network is queued, and
+ * the queued networks are recomputed once per tick. Each recomputation is a single pass over the wires in order of
+ * decreasing power, in which every wire passes its power minus one on to the wires it links to. The changed wires of
+ * a tick are written without block physics and sent as a single message per chunk, after which the blocks around
+ * them are notified through the {@link Circuit}. The circuit is never called while holding the monitor of the
+ * engine, as the blocks it reads and notifies may change the wire again.
+ */
+public final class RedstoneEngine {
+
+    private static final int WIRE = 55;
+    private static final int MAX_POWER = 15;
+
+    /**
+     * The blocks other than wire that power wire and are powered by it.
+     */
+    public interface Circuit {
+
+        /**
+         * Get the power that a wire receives from the blocks around it, other than wire.
+         *
+         * @param x the x-coordinate of the wire.
+         * @param y the y-coordinate of the wire.
+         * @param z the z-coordinate of the wire.
+         * @return the power, from 0 to 15.
+         */
+        int getInputPower(int x, int y, int z);
+
+        /**
+         * Called before the power of a wire changes, e.g. to let plugins intervene.
+         *
+         * @param x        the x-coordinate of the wire.
+         * @param y        the y-coordinate of the wire.
+         * @param z        the z-coordinate of the wire.
+         * @param oldPower the current power of the wire.
+         * @param newPower the power that the wire is about to get.
+         * @return the power that the wire gets instead.
+         */
+        int powerChanging(int x, int y, int z, int oldPower, int newPower);
+
+        /**
+         * Called after the power of a wire has changed, to notify the blocks around it.
+         *
+         * @param x the x-coordinate of the wire.
+         * @param y the y-coordinate of the wire.
+         * @param z the z-coordinate of the wire.
+         */
+        void powerChanged(int x, int y, int z);
+    }
+
+    private final BlockAccess blocks;
+    private final Circuit circuit;
+
+    /**
+     * The network of each compiled wire, by packed coordinates.
+     */
+    private final Long2ObjectMap<Network> networks = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * The networks with wire in each chunk, by chunk key.
+     */
+    private final Long2ObjectMap<Set<Network>> chunkNetworks = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * The wires whose network has to be compiled.
+     */
+    private LongSet uncompiled = new LongOpenHashSet();
+
+    /**
+     * The networks whose power has to be recomputed.
+     */
+    private Set<Network> queued = new LinkedHashSet<>();
+
+    /**
+     * Create a redstone engine.
+     *
+     * @param chunks  the function that gets a chunk by its key, as packed by {@link GlowChunk.Key#toLong(int, int)}.
+     *                The function must not load the chunk.
+     * @param circuit the blocks that power wire and are powered by it.
+     */
+    public RedstoneEngine(LongFunction<GlowChunk> chunks, Circuit circuit) {
+        blocks = new BlockAccess(chunks);
+        this.circuit = circuit;
+    }
+
+    /**
+     * Check whether a change of a block could link or unlink wires.
+     *
+     * @param oldType the old type of the block.
+     * @param newType the new type of the block.
+     * @return whether the change affects the networks around the block.
+     */
+    public static boolean changesLinks(Material oldType, Material newType) {
+        return (oldType == Material.REDSTONE_WIRE) != (newType == Material.REDSTONE_WIRE)
+            || oldType.isSolid() != newType.isSolid();
+    }
+
+    /**
+     * Drop the networks around a block that has changed in a way that could link or unlink wires, to compile them
+     * again on the next pulse.
+     *
+     * @param x the x-coordinate of the block.
+     * @param y the y-coordinate of the block.
+     * @param z the z-coordinate of the block.
+     */
+    public synchronized void linksChanged(int x, int y, int z) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    Network network = networks.get(TickWheel.pack(x + dx, y + dy, z + dz));
+                    if (network != null) {
+                        drop(network, true);
+                    }
+                }
+            }
+        }
+        uncompiled.add(TickWheel.pack(x, y, z));
+    }
+
+    /**
+     * Queue the network of a wire, as the power it receives from the blocks around it may have changed.
+     *
+     * @param x the x-coordinate of the wire.
+     * @param y the y-coordinate of the wire.
+     * @param z the z-coordinate of the wire.
+     */
+    public synchronized void powerChanged(int x, int y, int z) {
+        long position = TickWheel.pack(x, y, z);
+        Network network = networks.get(position);
+        if (network == null) {
+            uncompiled.add(position);
+        } else {
+            queued.add(network);
+        }
+    }
+
+    /**
+     * Forget the networks in a chunk, e.g. because it is unloaded.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     */
+    public synchronized void cancelChunk(int chunkX, int chunkZ) {
+        Set<Network> dropped = chunkNetworks.get(GlowChunk.Key.toLong(chunkX, chunkZ));
+        if (dropped != null) {
+            // the wires in other chunks are compiled again when their power next changes
+            new ArrayList<>(dropped).forEach(network -> drop(network, false));
+        }
+    }
+
+    /**
+     * Get the number of compiled networks.
+     *
+     * @return the number of networks.
+     */
+    synchronized int getNetworkCount() {
+        return (int) networks.values().stream().distinct().count();
+    }
+
+    /**
+     * Forget a network, and compile its wires again on the next pulse if requested.
+     */
+    private void drop(Network network, boolean recompile) {
+        for (long wire : network.wires) {
+            networks.remove(wire);
+            if (recompile) {
+                uncompiled.add(wire);
+            }
+        }
+        for (long key : network.chunks) {
+            Set<Network> inChunk = chunkNetworks.get(key);
+            if (inChunk != null && inChunk.remove(network) && inChunk.isEmpty()) {
+                chunkNetworks.remove(key);
+            }
+        }
+        queued.remove(network);
+    }
+
+    /**
+     * Compile the wires that need it, recompute the power of the queued networks, and pass on the resulting block
+     * changes. The changes of a chunk are passed as a single {@link MultiBlockChangeMessage}, or as a
+     * {@link BlockChangeMessage} if only one wire has changed.
+     *
+     * @param changed the consumer of the chunks that have changed and their block change message.
+     */
+    public void pulse(BiConsumer<GlowChunk, Message> changed) {
+        List<Network> recomputing;
+        synchronized (this) {
+            LongSet compiling = uncompiled;
+            uncompiled = new LongOpenHashSet();
+            for (LongIterator it = compiling.iterator(); it.hasNext(); ) {
+                long position = it.nextLong();
+                if (!networks.containsKey(position) && isWire(blocks.getState(position))) {
+                    queued.add(compile(position));
+                }
+            }
+
+            recomputing = new ArrayList<>(queued);
+            queued = new LinkedHashSet<>();
+        }
+
+        List<int[]> inputs = new ArrayList<>(recomputing.size());
+        for (Network network : recomputing) {
+            int[] input = new int[network.wires.length];
+            for (int i = 0; i < input.length; i++) {
+                long wire = network.wires[i];
+                input[i] = Math.max(0, Math.min(MAX_POWER, circuit.getInputPower(
+                    TickWheel.unpackX(wire), TickWheel.unpackY(wire), TickWheel.unpackZ(wire))));
+            }
+            inputs.add(input);
+        }
+
+        List<PowerChange> changes = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < recomputing.size(); i++) {
+                Network network = recomputing.get(i);
+                // a network that was dropped while the circuit was called is compiled again on the next pulse
+                if (networks.get(network.wires[0]) == network) {
+                    recompute(network, inputs.get(i), changes);
+                }
+            }
+        }
+
+        for (PowerChange change : changes) {
+            long wire = change.wire;
+            change.newPower = Math.max(0, Math.min(MAX_POWER, circuit.powerChanging(TickWheel.unpackX(wire),
+                TickWheel.unpackY(wire), TickWheel.unpackZ(wire), change.oldPower, change.newPower)));
+        }
+
+        LongArrayList changedWires = new LongArrayList();
+        synchronized (this) {
+            for (PowerChange change : changes) {
+                long wire = change.wire;
+                // the wire may have been changed while the circuit was called
+                if (change.newPower != change.oldPower && blocks.getState(wire) == (WIRE << 4 | change.oldPower)) {
+                    blocks.setData(TickWheel.unpackX(wire), TickWheel.unpackY(wire), TickWheel.unpackZ(wire),
+                        change.newPower);
+                    changedWires.add(wire);
+                }
+            }
+            blocks.flush(changed);
+        }
+        for (int i = 0; i < changedWires.size(); i++) {
+            long wire = changedWires.getLong(i);
+            circuit.powerChanged(TickWheel.unpackX(wire), TickWheel.unpackY(wire), TickWheel.unpackZ(wire));
+        }
+    }
+
+    /**
+     * Find the network of a wire by a breadth-first search over the links between wires.
+     */
+    private Network compile(long start) {
+        LongArrayList wires = new LongArrayList();
+        Long2IntMap indices = new Long2IntOpenHashMap();
+        wires.add(start);
+        indices.put(start, 0);
+        List<int[]> links = new ArrayList<>();
+        LongArrayList linked = new LongArrayList(SIDE_X.length);
+        for (int i = 0; i < wires.size(); i++) {
+            linked.clear();
+            findLinks(wires.getLong(i), linked);
+            int[] neighbours = new int[linked.size()];
+            for (int j = 0; j < linked.size(); j++) {
+                long wire = linked.getLong(j);
+                if (!indices.containsKey(wire)) {
+                    indices.put(wire, wires.size());
+                    wires.add(wire);
+                }
+                neighbours[j] = indices.get(wire);
+            }
+            links.add(neighbours);
+        }
+
+        LongSet chunks = new LongOpenHashSet();
+        for (int i = 0; i < wires.size(); i++) {
+            long wire = wires.getLong(i);
+            chunks.add(GlowChunk.Key.toLong(TickWheel.unpackX(wire) >> 4, TickWheel.unpackZ(wire) >> 4));
+        }
+        Network network = new Network(wires.toLongArray(), links.toArray(new int[0][]), chunks.toLongArray());
+        for (long wire : network.wires) {
+            Network stale = networks.get(wire);
+            if (stale != null) {
+                // the change that joined the stale network to this one was not seen, e.g. because a chunk was loaded
+                drop(stale, true);
+            }
+        }
+        for (long wire : network.wires) {
+            networks.put(wire, network);
+        }
+        for (long key : network.chunks) {
+            Set<Network> inChunk = chunkNetworks.get(key);
+            if (inChunk == null) {
+                inChunk = new HashSet<>();
+                chunkNetworks.put(key, inChunk);
+            }
+            inChunk.add(network);
+        }
+        return network;
+    }
+
+    /**
+     * Find the wires that a wire links to: next to it, or a step up past a solid block if the block above it is not
+     * solid, or a step down past a block that is not solid.
+     */
+    private void findLinks(long wire, LongArrayList linked) {
+        int x = TickWheel.unpackX(wire);
+        int y = TickWheel.unpackY(wire);
+        int z = TickWheel.unpackZ(wire);
+        boolean roofed = isSolid(blocks.getState(x, y + 1, z));
+        for (int side = 0; side < SIDE_X.length; side++) {
+            int sideX = x + SIDE_X[side];
+            int sideZ = z + SIDE_Z[side];
+            int state = blocks.getState(sideX, y, sideZ);
+            if (isWire(state)) {
+                linked.add(TickWheel.pack(sideX, y, sideZ));
+            } else if (isSolid(state)) {
+                if (!roofed && isWire(blocks.getState(sideX, y + 1, sideZ))) {
+                    linked.add(TickWheel.pack(sideX, y + 1, sideZ));
+                }
+            } else if (state >= 0 && isWire(blocks.getState(sideX, y - 1, sideZ))) {
+                linked.add(TickWheel.pack(sideX, y - 1, sideZ));
+            }
+        }
+    }
+
+    /**
+     * Recompute the power of the wires of a network from the power they receive from the blocks around them, and
+     * collect the wires whose power has changed.
+     */
+    private void recompute(Network network, int[] inputs, List<PowerChange> changes) {
+        int count = network.wires.length;
+        int[] power = inputs.clone();
+        IntArrayList[] levels = new IntArrayList[MAX_POWER + 1];
+        for (int i = 0; i < count; i++) {
+            if (!isWire(blocks.getState(network.wires[i]))) {
+                // the network has changed without being dropped, e.g. because a chunk was unloaded
+                drop(network, true);
+                return;
+            }
+            if (power[i] > 1) {
+                add(levels, power[i], i);
+            }
+        }
+
+        for (int level = MAX_POWER; level > 1; level--) {
+            IntArrayList wires = levels[level];
+            for (int i = 0; wires != null && i < wires.size(); i++) {
+                int wire = wires.getInt(i);
+                if (power[wire] != level) {
+                    continue;
+                }
+                for (int neighbour : network.links[wire]) {
+                    if (power[neighbour] < level - 1) {
+                        power[neighbour] = level - 1;
+                        add(levels, level - 1, neighbour);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            long wire = network.wires[i];
+            int oldPower = blocks.getState(wire) & 0xf;
+            if (power[i] != oldPower) {
+                changes.add(new PowerChange(wire, oldPower, power[i]));
+            }
+        }
+    }
+
+    private static void add(IntArrayList[] levels, int level, int wire) {
+        if (levels[level] == null) {
+            levels[level] = new IntArrayList();
+        }
+        levels[level].add(wire);
+    }
+
+    private static boolean isWire(int state) {
+        return state >= 0 && state >> 4 == WIRE;
+    }
+
+    private static boolean isSolid(int state) {
+        return state >= 0 && Solid.TYPES[state >> 4];
+    }
+
+    /**
+     * A connected component of wire.
+     */
+    private static final class Network {
+
+        /**
+         * The packed coordinates of the wires.
+         */
+        private final long[] wires;
+
+        /**
+         * The indices of the wires that each wire links to.
+         */
+        private final int[][] links;
+
+        /**
+         * The keys of the chunks that the wires are in.
+         */
+        private final long[] chunks;
+
+        private Network(long[] wires, int[][] links, long[] chunks) {
+            this.wires = wires;
+            this.links = links;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * A change of the power of a wire, which the circuit may still overrule.
+     */
+    private static final class PowerChange {
+
+        private final long wire;
+        private final int oldPower;
+        private int newPower;
+
+        private PowerChange(long wire, int oldPower, int newPower) {
+            this.wire = wire;
+            this.oldPower = oldPower;
+            this.newPower = newPower;
+        }
+    }
+
+    /**
+     * The solid block types, by type ID.
+     */
+    private static final class Solid {
+
+        private static final boolean[] TYPES = BlockAccess.typeTable(Material::isSolid);
+    }
+}
@@ -0,0 +1,109 @@
+package science.atlarge.opencraft.opencraft.command.opencraft;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ResourceBundle;
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.util.StringUtil;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.chunk.ChunkPacketCache;
+import science.atlarge.opencraft.opencraft.command.minecraft.GlowVanillaCommand;
+import science.atlarge.opencraft.opencraft.i18n.LocalizedStringImpl;
+import science.atlarge.opencraft.opencraft.measurements.TickHistogram;
+import science.atlarge.opencraft.opencraft.measurements.TickPhase;
+import science.atlarge.opencraft.opencraft.measurements.TickProfiler;
+import science.atlarge.opencraft.opencraft.net.pipeline.FlushStatistics;
+
+/**
+ * Shows the duration of each phase of the server and world ticks.
+ */
+public class TickProfileCommand extends GlowVanillaCommand {
+
+    public TickProfileCommand() {
+        super("tickprofile");
+        setPermission("opencraft.command.tickprofile"); // NON-NLS
+    }
+
+    @Override
+    protected boolean execute(CommandSender sender, String commandLabel, String[] args,
+            CommandMessages localizedMessages) {
+        if (!testPermission(sender, localizedMessages.getPermissionMessage())) {
+            return true;
+        }
+        final ResourceBundle resourceBundle = localizedMessages.getResourceBundle();
+        GlowServer server = (GlowServer) sender.getServer();
+
+        if (args.length > 0 && "reset".equals(args[0])) {
+            server.getScheduler().getTickProfiler().reset();
+            server.getFlushStatistics().reset();
+            for (World world : server.getWorlds()) {
+                ((GlowWorld) world).getTickProfiler().reset();
+            }
+            new LocalizedStringImpl("tickprofile.reset", resourceBundle).send(sender);
+            return true;
+        }
+
+        if (args.length > 0) {
+            GlowWorld world = server.getWorld(args[0]);
+            if (world == null) {
+                new LocalizedStringImpl("tickprofile.no-such-world", resourceBundle)
+                        .sendInColor(ChatColor.RED, sender, args[0]);
+                return false;
+            }
+            send(sender, resourceBundle, world.getName(), world.getTickProfiler());
+            return true;
+        }
+
+        send(sender, resourceBundle, "server", server.getScheduler().getTickProfiler());
+        ChunkPacketCache cache = server.getChunkPacketCache();
+        new LocalizedStringImpl("tickprofile.chunk-cache", resourceBundle).send(sender, cache.getHits(),
+                cache.getMisses(), cache.getCount(), cache.getSize() / (1024 * 1024));
+        FlushStatistics flushes = server.getFlushStatistics();
+        if (flushes.getFlushes() > 0) {
+            new LocalizedStringImpl("tickprofile.flushes", resourceBundle).send(sender, flushes.getFlushes(),
+                    String.format("%.1f", flushes.getPacketsPerFlush()), // NON-NLS
+                    String.format("%.0f", flushes.getBytesPerFlush())); // NON-NLS
+        }
+        for (World world : server.getWorlds()) {
+            send(sender, resourceBundle, world.getName(), ((GlowWorld) world).getTickProfiler());
+        }
+        return true;
+    }
+
+    private void send(CommandSender sender, ResourceBundle resourceBundle, String source,
+            TickProfiler profiler) {
+        new LocalizedStringImpl("tickprofile.header", resourceBundle).send(sender, source);
+        LocalizedStringImpl phaseMessage = new LocalizedStringImpl("tickprofile.phase", resourceBundle);
+        for (TickPhase phase : TickPhase.values()) {
+            TickHistogram histogram = profiler.getHistogram(phase);
+            if (histogram.getCount() > 0) {
+                phaseMessage.send(sender, phase.getKey(), histogram.getCount(),
+                        toMillis(histogram.getPercentile(50)),
+                        toMillis(histogram.getPercentile(99)),
+                        toMillis(histogram.getMax()));
+            }
+        }
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0); // NON-NLS
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args)
+            throws IllegalArgumentException {
+        if (args.length == 1) {
+            List<String> options = new ArrayList<>();
+            options.add("reset"); // NON-NLS
+            for (World world : sender.getServer().getWorlds()) {
+                options.add(world.getName());
+            }
+            return StringUtil.copyPartialMatches(args[0], options, new ArrayList<>(options.size()));
+        }
+        return Collections.emptyList();
+    }
+}
@@ -5,19 +5,71 @@ import java.util.Set;
 
 /**
  * Manager responsible for allocating all entity ids on the server.
+ *
+ * <p>The ids can be partitioned between the servers that simulate a world together, so the entities of one server can
+ * be shown to the players of another. The partition is then stored in the high bits of each positive id.
  */
 public class EntityIdManager {
 
+    /**
+     * The number of bits of a partitioned id that hold its partition.
+     */
+    public static final int PARTITION_BITS = 8;
+
+    /**
+     * The number of bits of a partitioned id that are allocated within its partition.
+     */
+    private static final int ID_BITS = Integer.SIZE - 1 - PARTITION_BITS;
+
     /**
      * A set containing all used entity ids.
      */
     private final Set<Integer> usedIds = new HashSet<>();
 
+    /**
+     * The lowest id that may be allocated.
+     */
+    private final int minId;
+
+    /**
+     * The highest id that may be allocated.
+     */
+    private final int maxId;
+
     /**
      * The last assigned id value.
      */
     private int lastId;
 
+    /**
+     * Creates a manager that allocates ids from the entire range of ids.
+     */
+    public EntityIdManager() {
+        this(Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    private EntityIdManager(int minId, int maxId, int lastId) {
+        this.minId = minId;
+        this.maxId = maxId;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Creates a manager that allocates ids from one partition of the positive ids, so managers of different partitions
+     * never allocate the same id.
+     *
+     * @param partition The partition, at least 0 and less than 2 to the power of {@value #PARTITION_BITS}.
+     * @return The manager.
+     */
+    public static EntityIdManager partitioned(int partition) {
+        if (partition < 0 || partition >= 1 << PARTITION_BITS) {
+            throw new IllegalArgumentException("Entity id partition out of range: " + partition);
+        }
+        int minId = partition << ID_BITS;
+        int maxId = minId + (1 << ID_BITS) - 1;
+        return new EntityIdManager(minId, maxId, maxId);
+    }
+
     /**
      * Allocates the id for an entity. This method performs synchronization as it might be accessed
      * by multiple world threads simultaneously.
@@ -31,8 +83,8 @@ public class EntityIdManager {
         }
 
         int startedAt = lastId;
-        // intentionally wraps around integer boundaries
-        for (int id = lastId + 1; id != startedAt; ++id) {
+        // intentionally wraps around the boundaries of the range
+        for (int id = next(lastId); id != startedAt; id = next(id)) {
             // skip special values
             if (id == -1 || id == 0) {
                 continue;
@@ -48,6 +100,10 @@ public class EntityIdManager {
         throw new IllegalStateException("No free entity ids");
     }
 
+    private int next(int id) {
+        return id == maxId ? minId : id + 1;
+    }
+
     /**
      * Deallocates the id for an entity.
      *
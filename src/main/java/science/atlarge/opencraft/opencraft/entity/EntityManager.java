@@ -19,7 +19,6 @@ import java.util.stream.Collectors;
 import science.atlarge.opencraft.opencraft.EventFactory;
 import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
 import science.atlarge.opencraft.opencraft.entity.physics.BoundingBox;
-import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
@@ -44,6 +43,16 @@ public class EntityManager implements Iterable<GlowEntity> {
             = newSetMultimap(new ConcurrentHashMap<>(),
                     Sets::newConcurrentHashSet);
 
+    /**
+     * An index of all entities by the chunk-sized column containing their location.
+     */
+    private final EntitySpatialIndex spatialIndex = new EntitySpatialIndex();
+
+    /**
+     * Tracks which entities are visible to which players.
+     */
+    private final EntityTracker tracker = new EntityTracker(this, spatialIndex);
+
     /**
      * Returns all entities with the specified type.
      *
@@ -178,10 +187,29 @@ public class EntityManager implements Iterable<GlowEntity> {
      * @return the entities contained in or touching {@code searchBox}, other than {@code except}
      */
     public List<Entity> getEntitiesInside(BoundingBox searchBox, GlowEntity except) {
-        // todo: narrow search based on the box's corners
-        return getAll().stream()
-                .filter(entity -> entity != except && entity.intersects(searchBox))
-                .collect(Collectors.toCollection(LinkedList::new));
+        List<Entity> result = new ArrayList<>();
+        spatialIndex.collect(searchBox, except, result);
+        return result;
+    }
+
+    /**
+     * Update the entities known to each of the given players, and send them the resulting spawn
+     * and destroy messages.
+     *
+     * @param players the players in this world.
+     */
+    public void updateVisibility(Collection<GlowPlayer> players) {
+        tracker.update(players);
+    }
+
+    /**
+     * Notes that the visibility of an entity may have changed for reasons other than movement, so
+     * it is re-evaluated for all players during the next visibility update.
+     *
+     * @param entity the entity.
+     */
+    public void invalidate(GlowEntity entity) {
+        tracker.invalidate(entity);
     }
 
     /**
@@ -196,7 +224,13 @@ public class EntityManager implements Iterable<GlowEntity> {
         }
         entities.put(entity.entityId, entity);
         groupedEntities.put(entity.getClass(), entity);
-        ((GlowChunk) entity.location.getChunk()).getRawEntities().add(entity);
+        spatialIndex.add(entity, entity.location);
+        tracker.invalidate(entity);
+        GlowChunk chunk = (GlowChunk) entity.location.getChunk();
+        chunk.getRawEntities().add(entity);
+        if (entity.shouldSave()) {
+            chunk.markStateModified();
+        }
         EventFactory.getInstance().callEvent(
                 new EntityAddToWorldEvent(entity)
         );
@@ -211,7 +245,16 @@ public class EntityManager implements Iterable<GlowEntity> {
         EventFactory.getInstance().callEvent(new EntityRemoveFromWorldEvent(entity));
         entities.remove(entity.entityId);
         groupedEntities.remove(entity.getClass(), entity);
-        ((GlowChunk) entity.location.getChunk()).getRawEntities().remove(entity);
+        spatialIndex.remove(entity);
+        tracker.invalidate(entity);
+        if (entity instanceof GlowPlayer) {
+            tracker.removePlayer((GlowPlayer) entity);
+        }
+        GlowChunk chunk = (GlowChunk) entity.location.getChunk();
+        chunk.getRawEntities().remove(entity);
+        if (entity.shouldSave()) {
+            chunk.markStateModified();
+        }
     }
 
     /**
@@ -221,11 +264,21 @@ public class EntityManager implements Iterable<GlowEntity> {
      * @param newLocation The new location.
      */
     void move(GlowEntity entity, Location newLocation) {
-        Chunk prevChunk = entity.location.getChunk();
-        Chunk newChunk = newLocation.getChunk();
+        if (spatialIndex.move(entity, newLocation)) {
+            tracker.invalidate(entity);
+        }
+        GlowChunk prevChunk = (GlowChunk) entity.location.getChunk();
+        GlowChunk newChunk = (GlowChunk) newLocation.getChunk();
         if (prevChunk != newChunk) {
-            ((GlowChunk) prevChunk).getRawEntities().remove(entity);
-            ((GlowChunk) newChunk).getRawEntities().add(entity);
+            prevChunk.getRawEntities().remove(entity);
+            newChunk.getRawEntities().add(entity);
+        }
+        if (entity.shouldSave()) {
+            // the position of the entity is saved with the chunk it is in
+            prevChunk.markStateModified();
+            if (newChunk != prevChunk) {
+                newChunk.markStateModified();
+            }
         }
     }
 
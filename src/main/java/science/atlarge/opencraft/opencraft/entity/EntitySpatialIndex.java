@@ -0,0 +1,176 @@
+package science.atlarge.opencraft.opencraft.entity;
+
+import com.google.common.collect.Sets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.Location;
+import science.atlarge.opencraft.opencraft.entity.physics.BoundingBox;
+
+/**
+ * Buckets the entities of a world into chunk-sized columns based on their location, so range
+ * queries only need to visit the columns that overlap the searched area.
+ */
+final class EntitySpatialIndex {
+
+    /**
+     * The number of bits by which a block coordinate is shifted to find its cell (16 blocks).
+     */
+    private static final int CELL_SHIFT = 4;
+
+    /**
+     * The minimum distance by which a search area is widened, to find entities whose location lies
+     * outside the area, but whose bounding box extends into it.
+     */
+    private static final double MIN_MARGIN = 2.0;
+
+    /**
+     * A map of cell keys to the entities whose location lies in that cell.
+     */
+    private final Map<Long, Set<GlowEntity>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * A map of entity ids to the key of the cell in which the entity is stored.
+     */
+    private final Map<Integer, Long> entityCells = new ConcurrentHashMap<>();
+
+    /**
+     * The largest half-width of an entity bounding box seen by this index.
+     */
+    private volatile double maxHalfWidth = MIN_MARGIN;
+
+    private static long cellKey(int cellX, int cellZ) {
+        return (((long) cellX) << 32) | (cellZ & 0xffffffffL);
+    }
+
+    private static long cellKey(Location location) {
+        return cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+    }
+
+    /**
+     * Add an entity to the index at the given location.
+     *
+     * @param entity   the entity.
+     * @param location the location of the entity.
+     */
+    void add(GlowEntity entity, Location location) {
+        long key = cellKey(location);
+        entityCells.put(entity.entityId, key);
+        addToCell(key, entity);
+        updateMargin(entity);
+    }
+
+    /**
+     * Remove an entity from the index.
+     *
+     * @param entity the entity.
+     */
+    void remove(GlowEntity entity) {
+        Long key = entityCells.remove(entity.entityId);
+        if (key != null) {
+            removeFromCell(key, entity);
+        }
+    }
+
+    /**
+     * Move an entity to the cell containing its new location, if this is a different cell. Entities
+     * that are not in the index are ignored.
+     *
+     * @param entity      the entity.
+     * @param newLocation the new location of the entity.
+     * @return whether the entity moved to a different cell.
+     */
+    boolean move(GlowEntity entity, Location newLocation) {
+        long newKey = cellKey(newLocation);
+        Long oldKey = entityCells.replace(entity.entityId, newKey);
+        if (oldKey == null) {
+            return false;
+        }
+        updateMargin(entity);
+        if (oldKey != newKey) {
+            removeFromCell(oldKey, entity);
+            addToCell(newKey, entity);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the entities whose location lies in the given chunk-sized cell.
+     *
+     * @param cellX the x-coordinate of the cell, equal to that of the chunk.
+     * @param cellZ the z-coordinate of the cell, equal to that of the chunk.
+     * @return the entities in the cell. This will always be a non-null collection.
+     */
+    Collection<GlowEntity> getCell(int cellX, int cellZ) {
+        Set<GlowEntity> cell = cells.get(cellKey(cellX, cellZ));
+        return cell == null ? Collections.emptySet() : cell;
+    }
+
+    /**
+     * Add all entities, except for the given one, that intersect the given box to the result.
+     *
+     * @param searchBox the bounding box to search inside.
+     * @param except    the entity to exclude, or null to include all.
+     * @param result    the collection to which the found entities are added.
+     */
+    void collect(BoundingBox searchBox, GlowEntity except, Collection<? super GlowEntity> result) {
+        double margin = maxHalfWidth;
+        int minX = (int) Math.floor(searchBox.minCorner.getX() - margin) >> CELL_SHIFT;
+        int minZ = (int) Math.floor(searchBox.minCorner.getZ() - margin) >> CELL_SHIFT;
+        int maxX = (int) Math.floor(searchBox.maxCorner.getX() + margin) >> CELL_SHIFT;
+        int maxZ = (int) Math.floor(searchBox.maxCorner.getZ() + margin) >> CELL_SHIFT;
+        long area = (long) (maxX - minX + 1) * (maxZ - minZ + 1);
+        if (area > cells.size()) {
+            // the search area covers more cells than are occupied, so visit the occupied ones
+            for (Set<GlowEntity> cell : cells.values()) {
+                collect(cell, searchBox, except, result);
+            }
+            return;
+        }
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                Set<GlowEntity> cell = cells.get(cellKey(x, z));
+                if (cell != null) {
+                    collect(cell, searchBox, except, result);
+                }
+            }
+        }
+    }
+
+    private static void collect(Set<GlowEntity> cell, BoundingBox searchBox, GlowEntity except,
+            Collection<? super GlowEntity> result) {
+        for (GlowEntity entity : cell) {
+            if (entity != except && entity.intersects(searchBox)) {
+                result.add(entity);
+            }
+        }
+    }
+
+    private void addToCell(long key, GlowEntity entity) {
+        cells.compute(key, (k, cell) -> {
+            Set<GlowEntity> result = cell == null ? Sets.newConcurrentHashSet() : cell;
+            result.add(entity);
+            return result;
+        });
+    }
+
+    private void removeFromCell(long key, GlowEntity entity) {
+        cells.computeIfPresent(key, (k, cell) -> {
+            cell.remove(entity);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    private void updateMargin(GlowEntity entity) {
+        BoundingBox box = entity.boundingBox;
+        if (box != null) {
+            double halfWidth = (box.maxCorner.getX() - box.minCorner.getX()) / 2;
+            if (halfWidth > maxHalfWidth) {
+                maxHalfWidth = halfWidth;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package science.atlarge.opencraft.opencraft.entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import science.atlarge.opencraft.opencraft.chunk.AreaOfInterest;
+
+/**
+ * Keeps track of which entities are visible to which players in a world.
+ *
+ * <p>Instead of re-evaluating every entity in view of every player each tick, visibility is only
+ * re-evaluated when it may have changed: for all entities in view of a player whose area of interest
+ * has moved, and for all players when an entity crosses a chunk boundary, is added or removed, or
+ * is explicitly invalidated. The resulting spawn and destroy messages are sent once per tick.
+ */
+final class EntityTracker {
+
+    /**
+     * The number of ticks a dead living entity stays visible, to show its death animation.
+     */
+    static final int DEATH_ANIMATION_TICKS = 20;
+
+    private final EntityManager entityManager;
+    private final EntitySpatialIndex spatialIndex;
+
+    /**
+     * Entities whose visibility must be re-evaluated for all players during the next update.
+     */
+    private final Set<GlowEntity> dirtyEntities = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The area of interest of each player at the last update.
+     */
+    private final Map<GlowPlayer, AreaOfInterest> trackedAreas = new ConcurrentHashMap<>();
+
+    /**
+     * Reused buffer holding the dirty entities during an update. Only accessed by the world thread.
+     */
+    private final List<GlowEntity> updateBuffer = new ArrayList<>();
+
+    EntityTracker(EntityManager entityManager, EntitySpatialIndex spatialIndex) {
+        this.entityManager = entityManager;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Mark the visibility of the given entity as changed, so it is re-evaluated for all players.
+     *
+     * @param entity the entity.
+     */
+    void invalidate(GlowEntity entity) {
+        dirtyEntities.add(entity);
+    }
+
+    /**
+     * Stop tracking the area of the given player, e.g. because it left the world. Its visible
+     * entities are re-evaluated once it is tracked again.
+     *
+     * @param player the player.
+     */
+    void removePlayer(GlowPlayer player) {
+        trackedAreas.remove(player);
+    }
+
+    /**
+     * Update the entities known to each of the given players, and send the resulting spawn and
+     * destroy messages.
+     *
+     * @param players the players in the world.
+     */
+    void update(Collection<GlowPlayer> players) {
+        updateBuffer.clear();
+        for (Iterator<GlowEntity> it = dirtyEntities.iterator(); it.hasNext(); ) {
+            updateBuffer.add(it.next());
+            it.remove();
+        }
+        players.parallelStream().forEach(this::update);
+    }
+
+    private void update(GlowPlayer player) {
+        AreaOfInterest area = player.getAreaOfInterest();
+        AreaOfInterest previous = trackedAreas.put(player, area);
+        if (!area.equals(previous)) {
+            // the player crossed a chunk boundary, so re-evaluate everything in view
+            player.retainTrackedEntities(id -> isVisible(player, area, entityManager.getEntity(id), true));
+            int radius = area.getRadius();
+            for (int x = area.getCenterX() - radius; x <= area.getCenterX() + radius; x++) {
+                for (int z = area.getCenterZ() - radius; z <= area.getCenterZ() + radius; z++) {
+                    for (GlowEntity entity : spatialIndex.getCell(x, z)) {
+                        if (!player.knowsEntity(entity) && isVisible(player, area, entity, false)) {
+                            player.trackEntity(entity);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (GlowEntity entity : updateBuffer) {
+                boolean known = player.knowsEntity(entity);
+                boolean visible = isVisible(player, area, entity, known);
+                if (known && !visible) {
+                    player.untrackEntity(entity.getEntityId());
+                } else if (!known && visible) {
+                    player.trackEntity(entity);
+                }
+            }
+        }
+        player.flushTrackedEntities();
+    }
+
+    /**
+     * Check whether an entity should be visible to a player.
+     *
+     * @param player the player.
+     * @param area   the area of interest of the player.
+     * @param entity the entity, or null if it does not exist.
+     * @param known  whether the entity is currently known to the player.
+     * @return whether the entity should be visible.
+     */
+    private boolean isVisible(GlowPlayer player, AreaOfInterest area, GlowEntity entity,
+            boolean known) {
+        if (entity == null || entity == player || entity.isRemoved()
+                || entityManager.getEntity(entity.getEntityId()) != entity
+                || player.isHidden(entity)) {
+            return false;
+        }
+        if (entity instanceof GlowLivingEntity) {
+            if (((GlowLivingEntity) entity).getDeathTicks() > DEATH_ANIMATION_TICKS) {
+                return false;
+            }
+        } else if (entity.isDead() && !(entity instanceof GlowLightningStrike)) {
+            return false;
+        }
+        if (!known && entity.isDead()) {
+            // do not spawn entities which are already dead
+            return false;
+        }
+        if (known && entity instanceof GlowLightningStrike) {
+            // lightning is not destroyed by distance, so the flash stays visible from afar
+            return true;
+        }
+        int radius = area.getRadius();
+        return Math.abs((entity.location.getBlockX() >> 4) - area.getCenterX()) <= radius
+                && Math.abs((entity.location.getBlockZ() >> 4) - area.getCenterZ()) <= radius;
+    }
+}
@@ -321,6 +321,9 @@ public abstract class GlowLivingEntity extends GlowEntity implements LivingEntit
             deathTicks++;
             if (deathTicks >= 20 && getClass() != GlowPlayer.class) {
                 remove();
+            } else if (deathTicks == EntityTracker.DEATH_ANIMATION_TICKS + 1) {
+                // the death animation has finished, so hide the body from other players
+                world.getEntityManager().invalidate(this);
             }
         }
 
@@ -11,6 +11,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
@@ -19,7 +24,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -28,6 +32,7 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -143,6 +148,7 @@ import science.atlarge.opencraft.opencraft.inventory.ToolType;
 import science.atlarge.opencraft.opencraft.inventory.crafting.PlayerRecipeMonitor;
 import science.atlarge.opencraft.opencraft.io.PlayerDataService;
 import science.atlarge.opencraft.opencraft.map.GlowMapCanvas;
+import science.atlarge.opencraft.opencraft.messaging.sharding.ShardedMessaging;
 import science.atlarge.opencraft.opencraft.net.GlowSession;
 import science.atlarge.opencraft.opencraft.net.message.play.entity.AnimateEntityMessage;
 import science.atlarge.opencraft.opencraft.net.message.play.entity.DestroyEntitiesMessage;
@@ -208,9 +214,21 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
     private final GlowSession session;
 
     /**
-     * The entities that the client knows about. Guarded by {@link #worldLock}.
+     * The ids of the entities that the client knows about. Guarded by {@link #worldLock}.
      */
-    private final Set<GlowEntity> knownEntities = new HashSet<>();
+    private final IntSet knownEntities = new IntOpenHashSet();
+
+    /**
+     * The ids of the entities to be destroyed on the client at the end of the tick. Guarded by
+     * {@link #worldLock}.
+     */
+    private final IntList pendingDestroyedEntities = new IntArrayList();
+
+    /**
+     * The entities to be spawned on the client at the end of the tick. Guarded by
+     * {@link #worldLock}.
+     */
+    private final List<GlowEntity> pendingSpawnedEntities = new ArrayList<>();
 
     /**
      * The entities that are hidden from the client.
@@ -670,6 +688,11 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
         reader.readData(this);
         reader.close();
 
+        // a player handed off by another node of a sharded world continues with the state it had on that node
+        if (world.getMessagingSystem() instanceof ShardedMessaging) {
+            ((ShardedMessaging) world.getMessagingSystem()).arrive(this);
+        }
+
         int gameMode = getGameMode().getValue();
         if (server.isHardcore()) {
             gameMode |= 0x8;
@@ -955,55 +978,101 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
     }
 
     /**
-     * Spawn and destroy entities that come within or out of the player's view distance.
+     * Checks whether the client knows about the given entity.
+     *
+     * @param entity The entity to check.
+     * @return If the entity is known to the player's client.
      */
-    public void spawnEntities() {
-        worldLock.writeLock().lock();
+    boolean knowsEntity(GlowEntity entity) {
+        worldLock.readLock().lock();
         try {
+            return knownEntities.contains(entity.getEntityId());
+        } finally {
+            worldLock.readLock().unlock();
+        }
+    }
 
-            // Remove entities that are no longer visible
-            List<GlowEntity> removeEntities = new LinkedList<>();
-            List<GlowEntity> destroyEntities = new LinkedList<>();
-            for (GlowEntity entity : knownEntities) {
-
-                if (!isWithinDistance(entity) || entity.isRemoved()) {
-                    removeEntities.add(entity);
-                }
+    /**
+     * Checks whether the given entity is hidden from the client.
+     *
+     * @param entity The entity to check.
+     * @return If the entity is hidden from the player's client.
+     */
+    boolean isHidden(GlowEntity entity) {
+        return hiddenEntities.contains(entity.getUniqueId());
+    }
 
-                if (!isWithinDistance(entity)) {
-                    destroyEntities.add(entity);
-                }
+    /**
+     * Marks the given entity as known, and spawns it on the client at the end of the tick.
+     *
+     * @param entity The entity to spawn.
+     */
+    void trackEntity(GlowEntity entity) {
+        worldLock.writeLock().lock();
+        try {
+            if (knownEntities.add(entity.getEntityId())) {
+                pendingSpawnedEntities.add(entity);
             }
+        } finally {
+            worldLock.writeLock().unlock();
+        }
+    }
 
-            knownEntities.removeAll(removeEntities);
-
-            if (!destroyEntities.isEmpty()) {
-                List<Integer> destroyIds = removeEntities.stream()
-                        .map(GlowEntity::getEntityId)
-                        .collect(Collectors.toList());
-                session.send(new DestroyEntitiesMessage(destroyIds));
+    /**
+     * Marks the entity with the given id as unknown, and destroys it on the client at the end of
+     * the tick.
+     *
+     * @param id The id of the entity to destroy.
+     */
+    void untrackEntity(int id) {
+        worldLock.writeLock().lock();
+        try {
+            if (knownEntities.remove(id)) {
+                pendingDestroyedEntities.add(id);
             }
+        } finally {
+            worldLock.writeLock().unlock();
+        }
+    }
 
-            // Add entities that have become visible
-            AreaOfInterest area = getAreaOfInterest();
-            area.forEach(chunk -> {
-                chunk.getRawEntities().stream()
-                        .filter(entity -> this != entity
-                                && isWithinDistance(entity)
-                                && !entity.isDead()
-                                && !knownEntities.contains(entity)
-                                && !hiddenEntities.contains(entity.getUniqueId()))
-                        .forEach((entity) -> {
-                            worldLock.readLock().lock();
-                            try {
-                                knownEntities.add(entity);
-                            } finally {
-                                worldLock.readLock().unlock();
-                            }
-                            entity.createSpawnMessage().forEach(session::send);
-                        });
-            });
+    /**
+     * Marks all known entities that do not match the given predicate as unknown, and destroys them
+     * on the client at the end of the tick.
+     *
+     * @param visible The predicate which is true for the ids of entities that remain known.
+     */
+    void retainTrackedEntities(IntPredicate visible) {
+        worldLock.writeLock().lock();
+        try {
+            for (IntIterator it = knownEntities.iterator(); it.hasNext(); ) {
+                int id = it.nextInt();
+                if (!visible.test(id)) {
+                    it.remove();
+                    pendingDestroyedEntities.add(id);
+                }
+            }
+        } finally {
+            worldLock.writeLock().unlock();
+        }
+    }
 
+    /**
+     * Sends a single {@link DestroyEntitiesMessage} for all entities that are no longer known,
+     * followed by the spawn messages of all newly known entities.
+     */
+    void flushTrackedEntities() {
+        worldLock.writeLock().lock();
+        try {
+            if (!pendingDestroyedEntities.isEmpty()) {
+                session.send(new DestroyEntitiesMessage(new IntArrayList(pendingDestroyedEntities)));
+                pendingDestroyedEntities.clear();
+            }
+            for (GlowEntity entity : pendingSpawnedEntities) {
+                if (knownEntities.contains(entity.getEntityId())) {
+                    entity.createSpawnMessage().forEach(session::send);
+                }
+            }
+            pendingSpawnedEntities.clear();
         } finally {
             worldLock.writeLock().unlock();
         }
@@ -1133,11 +1202,10 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
                     .isEmpty()) {
                 // we need to manually reset all known entities if the player respawns in the
                 // same world
-                List<Integer> entityIds = new ArrayList<>(knownEntities.size());
-                entityIds.addAll(knownEntities.stream().map(GlowEntity::getEntityId)
-                        .collect(Collectors.toList()));
-                session.send(new DestroyEntitiesMessage(entityIds));
+                session.send(new DestroyEntitiesMessage(new IntArrayList(knownEntities)));
                 knownEntities.clear();
+                pendingSpawnedEntities.clear();
+                pendingDestroyedEntities.clear();
             }
             active = true;
             deathTicks = 0;
@@ -1169,12 +1237,7 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
      * @return If the entity is known to the player's client.
      */
     public boolean canSeeEntity(GlowEntity entity) {
-        worldLock.readLock().lock();
-        try {
-            return knownEntities.contains(entity);
-        } finally {
-            worldLock.readLock().unlock();
-        }
+        return knowsEntity(entity);
     }
 
     ////////////////////////////////////////////////////////////////////////////
@@ -3070,7 +3133,7 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
         hiddenEntities.add(player.getUniqueId());
         worldLock.writeLock().lock();
         try {
-            if (knownEntities.remove(player)) {
+            if (knownEntities.remove(player.getEntityId())) {
                 session.send(new DestroyEntitiesMessage(Collections
                         .singletonList(player.getEntityId())));
             }
@@ -3099,6 +3162,7 @@ public class GlowPlayer extends GlowHumanEntity implements Player {
         session.send(new UserListItemMessage(UserListItemMessage.Action.ADD_PLAYER, ((GlowPlayer)
                 player)
                 .getUserListEntry()));
+        ((GlowPlayer) player).getWorld().getEntityManager().invalidate((GlowPlayer) player);
     }
 
     @Override
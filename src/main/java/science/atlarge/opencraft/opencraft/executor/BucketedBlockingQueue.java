@@ -0,0 +1,470 @@
+package science.atlarge.opencraft.opencraft.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The bucketed blocking queue is a blocking queue of priority runnables that orders its elements by distance ring
+ * instead of by exact priority. The priority of an element is interpreted as a squared distance in blocks, and each
+ * bucket holds the elements within a ring of {@value #BUCKET_WIDTH} blocks, so the order within a ring is first-in
+ * first-out. Taking an element never blocks other takers or writers on a shared lock.
+ *
+ * <p>Elements are re-prioritised lazily: the priorities of a group of elements (see
+ * {@link PriorityRunnable#getPriorityGroup()}) are only updated when the version of the group has changed. Elements
+ * that move to another bucket or are removed are marked dead and skipped when they are taken.
+ *
+ * @param <Element> the type of elements that can be stored in the queue.
+ */
+final class BucketedBlockingQueue<Element extends PriorityRunnable> implements BlockingQueue<Element> {
+
+    /**
+     * The number of buckets. Elements beyond the last ring share the last bucket.
+     */
+    static final int BUCKET_COUNT = 64;
+
+    /**
+     * The width of a ring in blocks.
+     */
+    static final int BUCKET_WIDTH = 16;
+
+    private final List<Queue<Node<Element>>> buckets;
+    private final Map<Object, Group<Element>> groups;
+
+    /**
+     * The number of nodes in the buckets, including dead ones. Takers acquire a permit before polling a bucket.
+     */
+    private final Semaphore nodes;
+
+    /**
+     * The number of live elements in the queue.
+     */
+    private final AtomicInteger size;
+
+    /**
+     * The lock that serializes writers, so that groups are not removed while elements are added to them.
+     */
+    private final Lock writeLock;
+
+    /**
+     * Create a bucketed blocking queue.
+     */
+    BucketedBlockingQueue() {
+        buckets = new ArrayList<>(BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        groups = new ConcurrentHashMap<>();
+        nodes = new Semaphore(0);
+        size = new AtomicInteger();
+        writeLock = new ReentrantLock();
+    }
+
+    /**
+     * Get the bucket of the given priority.
+     *
+     * @param priority the priority, which is a squared distance.
+     * @return the index of the bucket.
+     */
+    static int bucketOf(double priority) {
+        if (!(priority > 0)) {
+            return 0;
+        }
+        int ring = (int) Math.sqrt(priority) / BUCKET_WIDTH;
+        return Math.min(ring, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Enqueue the given elements, and update the priorities of the elements of groups whose version has changed. The
+     * elements of those groups that match the predicate are removed.
+     *
+     * @param toExecute the elements to be enqueued.
+     * @param predicate the predicate used to determine which elements should be removed.
+     * @return the removed elements.
+     */
+    Set<Element> executeAndCancel(Collection<? extends Element> toExecute, Predicate<? super Element> predicate) {
+        Set<Element> cancelled = new HashSet<>();
+        writeLock.lock();
+        try {
+            Iterator<Group<Element>> groupIterator = groups.values().iterator();
+            while (groupIterator.hasNext()) {
+                Group<Element> group = groupIterator.next();
+                if (group.nodes.isEmpty()) {
+                    groupIterator.remove();
+                    continue;
+                }
+                Object version = group.version();
+                if (version != null && version.equals(group.version)) {
+                    continue;
+                }
+                group.version = version;
+                for (Node<Element> node : new ArrayList<>(group.nodes)) {
+                    Element element = node.element;
+                    if (predicate.test(element)) {
+                        if (kill(node)) {
+                            cancelled.add(element);
+                        }
+                        continue;
+                    }
+                    int bucket = bucketOf(element.getPriority());
+                    element.updatePriority();
+                    if (bucketOf(element.getPriority()) != bucket && kill(node)) {
+                        insert(element);
+                    }
+                }
+            }
+            toExecute.forEach(this::insert);
+        } finally {
+            writeLock.unlock();
+        }
+        return cancelled;
+    }
+
+    private void insert(Element element) {
+        Group<Element> group = groups.computeIfAbsent(element.getPriorityGroup(),
+            key -> new Group<>(element.getPriorityVersion()));
+        Node<Element> node = new Node<>(element, group);
+        group.nodes.add(node);
+        size.incrementAndGet();
+        buckets.get(bucketOf(element.getPriority())).add(node);
+        nodes.release();
+    }
+
+    /**
+     * Mark the given node as dead, if it is still alive.
+     *
+     * @param node the node.
+     * @return whether the node was alive.
+     */
+    private boolean kill(Node<Element> node) {
+        if (node.compareAndSet(true, false)) {
+            node.group.nodes.remove(node);
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Poll a live element from the buckets. The caller must have acquired a node permit.
+     *
+     * @return the element, or null if the polled node was dead.
+     */
+    private Element pollAcquired() {
+        while (true) {
+            for (Queue<Node<Element>> bucket : buckets) {
+                Node<Element> node = bucket.poll();
+                if (node != null) {
+                    return kill(node) ? node.element : null;
+                }
+            }
+            // every permit is released after its node is added, but another taker may have polled that node, while
+            // the node left for this permit was added to a bucket that this scan had already passed
+            Thread.yield();
+        }
+    }
+
+    private Node<Element> peekNode() {
+        for (Queue<Node<Element>> bucket : buckets) {
+            for (Node<Element> node : bucket) {
+                if (node.get()) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<Element> snapshot() {
+        List<Element> elements = new ArrayList<>(size.get());
+        for (Queue<Node<Element>> bucket : buckets) {
+            for (Node<Element> node : bucket) {
+                if (node.get()) {
+                    elements.add(node.element);
+                }
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public boolean add(@NotNull Element element) {
+        writeLock.lock();
+        try {
+            insert(element);
+        } finally {
+            writeLock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(@NotNull Element element) {
+        return add(element);
+    }
+
+    @Override
+    public void put(@NotNull Element element) {
+        add(element);
+    }
+
+    @Override
+    public boolean offer(Element element, long timeout, @NotNull TimeUnit unit) {
+        return add(element);
+    }
+
+    @NotNull
+    @Override
+    public Element take() throws InterruptedException {
+        while (true) {
+            nodes.acquire();
+            Element element = pollAcquired();
+            if (element != null) {
+                return element;
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public Element poll(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (nodes.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            Element element = pollAcquired();
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Element poll() {
+        while (nodes.tryAcquire()) {
+            Element element = pollAcquired();
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Element remove() {
+        Element element = poll();
+        if (element == null) {
+            throw new NoSuchElementException();
+        }
+        return element;
+    }
+
+    @Override
+    public Element element() {
+        Element element = peek();
+        if (element == null) {
+            throw new NoSuchElementException();
+        }
+        return element;
+    }
+
+    @Override
+    public Element peek() {
+        Node<Element> node = peekNode();
+        return node == null ? null : node.element;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        for (Queue<Node<Element>> bucket : buckets) {
+            for (Node<Element> node : bucket) {
+                if (Objects.equals(node.element, object) && kill(node)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsAll(@NotNull Collection<?> collection) {
+        return snapshot().containsAll(collection);
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends Element> collection) {
+        writeLock.lock();
+        try {
+            collection.forEach(this::insert);
+        } finally {
+            writeLock.unlock();
+        }
+        return !collection.isEmpty();
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<?> collection) {
+        return removeIf(collection::contains);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Element> filter) {
+        boolean removed = false;
+        for (Queue<Node<Element>> bucket : buckets) {
+            for (Node<Element> node : bucket) {
+                if (node.get() && filter.test(node.element) && kill(node)) {
+                    removed = true;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean retainAll(@NotNull Collection<?> collection) {
+        return removeIf(element -> !collection.contains(element));
+    }
+
+    @Override
+    public void clear() {
+        removeIf(element -> true);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return snapshot().contains(object);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Element> iterator() {
+        Iterator<Element> iterator = snapshot().iterator();
+        return new Iterator<Element>() {
+
+            private Element last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Element next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                BucketedBlockingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @NotNull
+    @Override
+    public <T> T[] toArray(@NotNull T[] array) {
+        return snapshot().toArray(array);
+    }
+
+    @Override
+    public int drainTo(@NotNull Collection<? super Element> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NotNull Collection<? super Element> collection, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements && nodes.tryAcquire()) {
+            Element element = pollAcquired();
+            if (element != null) {
+                collection.add(element);
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * A node in a bucket, which is alive as long as its value is true.
+     */
+    private static final class Node<Element extends PriorityRunnable> extends AtomicBoolean {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+        private final transient Group<Element> group;
+
+        Node(Element element, Group<Element> group) {
+            super(true);
+            this.element = element;
+            this.group = group;
+        }
+    }
+
+    /**
+     * The live nodes of a priority group, and the version of the group at the last update.
+     */
+    private static final class Group<Element extends PriorityRunnable> {
+
+        private final Set<Node<Element>> nodes = ConcurrentHashMap.newKeySet();
+        private volatile Object version;
+
+        Group(Object version) {
+            this.version = version;
+        }
+
+        /**
+         * Get the current version of the group.
+         *
+         * @return the version, or null if it is unknown.
+         */
+        Object version() {
+            Iterator<Node<Element>> iterator = nodes.iterator();
+            return iterator.hasNext() ? iterator.next().element.getPriorityVersion() : null;
+        }
+    }
+}
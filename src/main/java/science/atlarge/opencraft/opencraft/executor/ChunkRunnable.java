@@ -74,6 +74,27 @@ public final class ChunkRunnable extends PriorityRunnable {
         setPriority(squaredDistance);
     }
 
+    /**
+     * Get the group of the ChunkRunnable. The priorities of all chunks sent to the same player change together.
+     *
+     * @return The player to which the chunk data will be sent.
+     */
+    @Override
+    public Object getPriorityGroup() {
+        return player;
+    }
+
+    /**
+     * Get the version of the priority of the ChunkRunnable. Chunks only need to be re-prioritised, or cancelled, once
+     * the player's area of interest has changed.
+     *
+     * @return The area of interest of the player.
+     */
+    @Override
+    public Object getPriorityVersion() {
+        return player.getAreaOfInterest();
+    }
+
     @Override
     public void run() {
 
@@ -6,7 +6,9 @@ import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
+import science.atlarge.opencraft.opencraft.util.config.QueueType;
 
 /**
  * The executor that can run the ChunkRunnables. ChunkRunnables that are closed to the player are prioritized, since
@@ -15,29 +17,61 @@ import java.util.function.Predicate;
 public final class PriorityExecutor<GenericPriorityRunnable extends PriorityRunnable> {
 
     private final ThreadPoolExecutor executor;
-    private final SortableBlockingQueue<GenericPriorityRunnable> queue;
+    private final BiFunction<List<GenericPriorityRunnable>, Predicate<GenericPriorityRunnable>,
+            Set<GenericPriorityRunnable>> update;
 
     /**
      * Create a PriorityExecutor that can run ChunkRunnables. The PriorityExecutor uses a thread pool executor
      * internally.
      *
      * @param poolSize The number of threads in the pool
+     * @param queueType The type of queue in which runnables wait to be executed.
      * @throws IllegalArgumentException if poolSize < 0
      */
     @SuppressWarnings({"unchecked", "rawtypes"})
-    public PriorityExecutor(int poolSize) throws IllegalArgumentException {
-        queue = new SortableBlockingQueue<>(GenericPriorityRunnable::compareTo);
+    public PriorityExecutor(int poolSize, QueueType queueType) throws IllegalArgumentException {
+        BlockingQueue<GenericPriorityRunnable> queue;
+        if (queueType == QueueType.BUCKETED) {
+            BucketedBlockingQueue<GenericPriorityRunnable> bucketedQueue = new BucketedBlockingQueue<>();
+            update = bucketedQueue::executeAndCancel;
+            queue = bucketedQueue;
+        } else {
+            SortableBlockingQueue<GenericPriorityRunnable> sortableQueue =
+                new SortableBlockingQueue<>(GenericPriorityRunnable::compareTo);
+            update = (toExecute, predicate) -> executeAndCancel(sortableQueue, toExecute, predicate);
+            queue = sortableQueue;
+        }
         BlockingQueue<Runnable> castedQueue = (BlockingQueue<Runnable>) ((BlockingQueue) queue);
         executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, castedQueue);
         executor.prestartAllCoreThreads();
     }
 
+    /**
+     * Create a PriorityExecutor that can run ChunkRunnables, using a sorted queue. The PriorityExecutor uses a thread
+     * pool executor internally.
+     *
+     * @param poolSize The number of threads in the pool
+     * @throws IllegalArgumentException if poolSize < 0
+     */
+    public PriorityExecutor(int poolSize) throws IllegalArgumentException {
+        this(poolSize, QueueType.SORTED);
+    }
+
+    /**
+     * Create a PriorityExecutor that can run ChunkRunnables, with a thread for each available processor.
+     *
+     * @param queueType The type of queue in which runnables wait to be executed.
+     */
+    public PriorityExecutor(QueueType queueType) {
+        this(Runtime.getRuntime().availableProcessors(), queueType);
+    }
+
     /**
      * Create a PriorityExecutor that can run ChunkRunnables. The PriorityExecutor uses a thread pool executor
      * internally.
      */
     public PriorityExecutor() {
-        this(Runtime.getRuntime().availableProcessors());
+        this(QueueType.SORTED);
     }
 
     /**
@@ -51,10 +85,18 @@ public final class PriorityExecutor<GenericPriorityRunnable extends PriorityRunn
             List<GenericPriorityRunnable> toExecute,
             Predicate<GenericPriorityRunnable> predicate
     ) {
-        Set<GenericPriorityRunnable> cancelled = new HashSet<>();
+        return update.apply(toExecute, predicate);
+    }
+
+    private static <T extends PriorityRunnable> Set<T> executeAndCancel(
+            SortableBlockingQueue<T> sortableQueue,
+            List<T> toExecute,
+            Predicate<T> predicate
+    ) {
+        Set<T> cancelled = new HashSet<>();
 
-        queue.transaction(queue -> {
-            queue.forEach(GenericPriorityRunnable::updatePriority);
+        sortableQueue.transaction(queue -> {
+            queue.forEach(T::updatePriority);
             queue.removeIf(runnable -> {
                 if (predicate.test(runnable)) {
                     cancelled.add(runnable);
@@ -34,6 +34,27 @@ public abstract class PriorityRunnable implements Runnable, Comparable<PriorityR
         return priority;
     }
 
+    /**
+     * Get the group of this runnable. The priorities of runnables in the same group are updated together by queues that
+     * re-prioritise lazily. By default, every runnable forms its own group.
+     *
+     * @return The group of the runnable.
+     */
+    public Object getPriorityGroup() {
+        return this;
+    }
+
+    /**
+     * Get a value that changes whenever the priorities of this runnable's group may have changed. Lazily
+     * re-prioritising queues only update the priorities of a group when its version is no longer equal to the version
+     * at the previous update. By default, this is null, which means the priority should always be updated.
+     *
+     * @return The version of the runnable's priority, or null if it is unknown.
+     */
+    public Object getPriorityVersion() {
+        return null;
+    }
+
     @Override
     public int compareTo(@NotNull PriorityRunnable other) {
         return Double.compare(priority, other.priority);
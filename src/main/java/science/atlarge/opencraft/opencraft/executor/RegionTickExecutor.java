@@ -0,0 +1,180 @@
+package science.atlarge.opencraft.opencraft.executor;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import lombok.Getter;
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+
+/**
+ * The region tick executor runs the stages of a world tick on a dedicated pool of threads, instead of the common pool
+ * that is shared with the rest of the server.
+ *
+ * <p>Work that touches blocks and entities is partitioned by region: a square of chunks. The regions are colored like
+ * a checkerboard with four colors, such that two regions of the same color are never adjacent, not even diagonally.
+ * The regions of one color are processed in parallel, and the colors one after another, so two chunks that are worked
+ * on at the same time are more than a region apart. Work on a chunk may therefore safely touch the chunks less than
+ * half a region away from it, as work on another chunk can only touch chunks less than half a region away from that
+ * one. For example, with regions of 8 chunks, work may touch the chunks up to 3 chunks away. The pool balances the
+ * regions of a color over its threads by work stealing.
+ */
+public final class RegionTickExecutor {
+
+    private static final int COLORS = 4;
+
+    /**
+     * The number of threads that work on a tick.
+     */
+    @Getter
+    private final int parallelism;
+
+    /**
+     * The width of a region, in chunks.
+     */
+    @Getter
+    private final int regionSize;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a region tick executor.
+     *
+     * @param name        the name of the executor, which is used for its threads.
+     * @param parallelism the number of threads. With a single thread, all work is done on the calling thread.
+     * @param regionSize  the width of a region, in chunks.
+     * @throws IllegalArgumentException if the parallelism or region size is not positive.
+     */
+    public RegionTickExecutor(String name, int parallelism, int regionSize) {
+        if (parallelism <= 0 || regionSize <= 0) {
+            throw new IllegalArgumentException("The parallelism and region size must be positive");
+        }
+        this.parallelism = parallelism;
+        this.regionSize = regionSize;
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-" + threads.getAndIncrement());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Perform the given action for each item, partitioned by region. The action is never performed concurrently for
+     * items that are less than a region apart.
+     *
+     * @param items    the items.
+     * @param chunkKey the function that gets the key of the chunk of an item, as packed by
+     *                 {@link GlowChunk.Key#toLong(int, int)}.
+     * @param action   the action.
+     * @param <T>      the type of items.
+     */
+    public <T> void forEachByRegion(Collection<T> items, ToLongFunction<? super T> chunkKey,
+                                    Consumer<? super T> action) {
+        if (pool == null) {
+            items.forEach(action);
+            return;
+        }
+
+        List<Long2ObjectMap<List<T>>> colors = new ArrayList<>(COLORS);
+        for (int color = 0; color < COLORS; color++) {
+            colors.add(new Long2ObjectOpenHashMap<>());
+        }
+        for (T item : items) {
+            long key = chunkKey.applyAsLong(item);
+            int regionX = Math.floorDiv((int) (key >> 32), regionSize);
+            int regionZ = Math.floorDiv((int) key, regionSize);
+            Long2ObjectMap<List<T>> regions = colors.get(colorOf(regionX, regionZ));
+            long region = GlowChunk.Key.toLong(regionX, regionZ);
+            List<T> regionItems = regions.get(region);
+            if (regionItems == null) {
+                regionItems = new ArrayList<>();
+                regions.put(region, regionItems);
+            }
+            regionItems.add(item);
+        }
+
+        for (Long2ObjectMap<List<T>> regions : colors) {
+            if (regions.isEmpty()) {
+                continue;
+            }
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(regions.size());
+            for (List<T> regionItems : regions.values()) {
+                tasks.add(ForkJoinTask.adapt(() -> regionItems.forEach(action)));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+    }
+
+    /**
+     * Perform the given action for each item in parallel, without partitioning. The action must be safe to perform
+     * concurrently for any two items.
+     *
+     * @param items  the items.
+     * @param action the action.
+     * @param <T>    the type of items.
+     */
+    public <T> void forEach(Collection<T> items, Consumer<? super T> action) {
+        if (pool == null) {
+            items.forEach(action);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> items.parallelStream().forEach(action)));
+        }
+    }
+
+    /**
+     * Compute a result on the threads of this executor. Parallel streams that are used by the computation run on
+     * these threads as well, rather than on the common pool.
+     *
+     * @param computation the computation.
+     * @param <T>         the type of the result.
+     * @return the result.
+     */
+    public <T> T invoke(Supplier<T> computation) {
+        if (pool == null) {
+            return computation.get();
+        }
+        return pool.invoke(ForkJoinTask.adapt(computation::get));
+    }
+
+    /**
+     * Stop the threads of this executor, after the work that is in progress.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Wait for the threads of this executor to stop after a shutdown.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of the timeout.
+     * @return whether the threads have stopped.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool == null || pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Get the color of a region in the checkerboard. Adjacent regions always have different colors.
+     *
+     * @param regionX the x-coordinate of the region.
+     * @param regionZ the z-coordinate of the region.
+     * @return the color, from zero to three.
+     */
+    static int colorOf(int regionX, int regionZ) {
+        return (regionX & 1) | (regionZ & 1) << 1;
+    }
+}
@@ -20,7 +20,8 @@ public interface ChunkIoService {
     boolean read(GlowChunk chunk) throws IOException;
 
     /**
-     * Writes a single chunk.
+     * Writes a single chunk. The chunk is marked as saved once its data has reached storage, which
+     * may be after this method returns.
      *
      * @param chunk The {@link GlowChunk} to write from.
      * @throws IOException if an I/O error occurs.
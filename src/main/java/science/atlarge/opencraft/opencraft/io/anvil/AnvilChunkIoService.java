@@ -1,5 +1,6 @@
 package science.atlarge.opencraft.opencraft.io.anvil;
 
+import it.unimi.dsi.fastutil.longs.LongList;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -18,11 +19,10 @@ import science.atlarge.opencraft.opencraft.i18n.ConsoleMessages;
 import science.atlarge.opencraft.opencraft.io.ChunkIoService;
 import science.atlarge.opencraft.opencraft.io.entity.EntityStorage;
 import science.atlarge.opencraft.opencraft.io.entity.UnknownEntityTypeException;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
 import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
 import science.atlarge.opencraft.opencraft.util.nbt.NbtInputStream;
 import science.atlarge.opencraft.opencraft.util.nbt.NbtOutputStream;
-import org.bukkit.Chunk;
-import org.bukkit.Location;
 import org.bukkit.Material;
 
 /**
@@ -167,6 +167,10 @@ public final class AnvilChunkIoService implements ChunkIoService {
         RegionFile region = cache.getRegionFile(x, z);
         int regionX = x & REGION_SIZE - 1;
         int regionZ = z & REGION_SIZE - 1;
+        // the chunk is only marked as saved once the region file has written it to disk
+        long version = chunk.getVersion();
+        long stateVersion = chunk.getStateVersion();
+        long inhabitedTime = chunk.getInhabitedTime();
 
         CompoundTag levelTags = new CompoundTag();
 
@@ -174,7 +178,7 @@ public final class AnvilChunkIoService implements ChunkIoService {
         levelTags.putInt("xPos", chunk.getX()); // NON-NLS
         levelTags.putInt("zPos", chunk.getZ()); // NON-NLS
         levelTags.putLong("LastUpdate", 0); // NON-NLS
-        levelTags.putLong("InhabitedTime", chunk.getInhabitedTime()); // NON-NLS
+        levelTags.putLong("InhabitedTime", inhabitedTime); // NON-NLS
         levelTags.putBool("TerrainPopulated", chunk.isPopulated()); // NON-NLS
 
         // chunk sections
@@ -236,20 +240,19 @@ public final class AnvilChunkIoService implements ChunkIoService {
         levelTags.putCompoundList("TileEntities", blockEntities);
 
         List<CompoundTag> tileTicks = new ArrayList<>();
-        for (Location location : chunk.getWorld().getTickMap()) {
-            Chunk locationChunk = location.getChunk();
-            if (locationChunk.getX() == chunk.getX() && locationChunk.getZ() == chunk.getZ()) {
-                int tileX = location.getBlockX();
-                int tileY = location.getBlockY();
-                int tileZ = location.getBlockZ();
-                String type = ItemIds.getName(location.getBlock().getType());
-                CompoundTag tag = new CompoundTag();
-                tag.putInt("x", tileX);
-                tag.putInt("y", tileY);
-                tag.putInt("z", tileZ);
-                tag.putString("i", type);
-                tileTicks.add(tag);
-            }
+        LongList scheduledPulses = chunk.getWorld().getScheduledPulses(chunk);
+        for (int i = 0; i < scheduledPulses.size(); i++) {
+            long position = scheduledPulses.getLong(i);
+            int tileX = TickWheel.unpackX(position);
+            int tileY = TickWheel.unpackY(position);
+            int tileZ = TickWheel.unpackZ(position);
+            String type = ItemIds.getName(chunk.getBlock(tileX, tileY, tileZ).getType());
+            CompoundTag tag = new CompoundTag();
+            tag.putInt("x", tileX);
+            tag.putInt("y", tileY);
+            tag.putInt("z", tileZ);
+            tag.putString("i", type);
+            tileTicks.add(tag);
         }
         levelTags.putCompoundList("TileTicks", tileTicks);
 
@@ -257,9 +260,11 @@ public final class AnvilChunkIoService implements ChunkIoService {
         levelOut.putCompound("Level", levelTags);
 
         try (NbtOutputStream nbt = new NbtOutputStream(
-            region.getChunkDataOutputStream(regionX, regionZ), false)) {
+            region.getChunkDataOutputStream(regionX, regionZ,
+                () -> chunk.markSaved(version, stateVersion, inhabitedTime)), false)) {
             nbt.writeTag(levelOut);
         }
+        cache.scheduleFlush(region);
     }
 
     @Override
@@ -34,10 +34,19 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
@@ -81,6 +90,17 @@ import science.atlarge.opencraft.opencraft.util.config.ServerConfig.Key;
  *
  * <p>A version of 2 represents a deflated (zlib compressed) NBT file. The deflated data is the
  * chunk length - 1.
+ *
+ * <p>Written chunks are buffered in memory until the region file is flushed, so that the chunks
+ * written in between flushes are written in as few system calls as possible. Reads of buffered
+ * chunks return the buffered data. A flush writes every chunk to newly allocated sectors, and only
+ * frees the old sectors once the header pointing to the new ones has been written, so a failed
+ * flush leaves the file as it was and keeps the chunks buffered.
+ *
+ * <p>A region file can optionally be memory-mapped, in which case chunks are streamed from the
+ * mapped file without a system call or a copy. Replaced mappings are left to the garbage collector,
+ * so they stay valid while chunks are read from them, and the sectors freed by a flush are only
+ * reused once no chunks are being read from the mapping.
  */
 public class RegionFile {
 
@@ -101,8 +121,30 @@ public class RegionFile {
     private final int[] chunkTimestamps;
     private RandomAccessFile file;
     private BitSet sectorsUsed;
+    private int totalSectors;
     private final AtomicInteger sizeDelta = new AtomicInteger();
 
+    /**
+     * The deflated chunk data which has not yet been written, by chunk index.
+     */
+    private final Map<Integer, PendingWrite> pendingWrites = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * The memory-mapped contents of the file, or null if it is not memory-mapped.
+     */
+    private MappedByteBuffer mapping;
+
+    /**
+     * The number of open streams of chunk data in the memory mapping.
+     */
+    private int readers;
+
+    /**
+     * The sectors that are no longer used, but may still be read by open streams of chunk data.
+     */
+    private final BitSet retiredSectors = new BitSet();
+
     /**
      * Returns the modification timestamp of the region file when it was first opened by this
      * instance, or zero if this instance created the file. The timestamp is in milliseconds since
@@ -120,6 +162,17 @@ public class RegionFile {
      * @throws IOException if the file cannot be opened
      */
     public RegionFile(File path) throws IOException {
+        this(path, false);
+    }
+
+    /**
+     * Opens a region file for reading and writing, creating it if it doesn't exist.
+     *
+     * @param path         the file path; must be in an existing folder
+     * @param memoryMapped whether chunks should be read from a memory mapping of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public RegionFile(File path, boolean memoryMapped) throws IOException {
         offsets = new int[SECTOR_INTS];
         chunkTimestamps = new int[SECTOR_INTS];
 
@@ -167,22 +220,28 @@ public class RegionFile {
         }
 
         // set up the available sector map
-        int totalSectors = (int) Math.ceil(file.length() / (double) SECTOR_BYTES);
+        totalSectors = (int) Math.ceil(file.length() / (double) SECTOR_BYTES);
         sectorsUsed = new BitSet(totalSectors);
 
         // reserve the first two sectors
         sectorsUsed.set(0, 2);
 
         // read offset table and timestamp tables
-        file.seek(0);
-
-        ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_BYTES);
-        while (header.hasRemaining()) {
-            if (file.getChannel().read(header) == -1) {
-                throw new EOFException();
+        ByteBuffer header;
+        if (memoryMapped) {
+            mapping = file.getChannel().map(MapMode.READ_ONLY, 0, file.length());
+            header = mapping.duplicate();
+            header.limit(2 * SECTOR_BYTES);
+        } else {
+            file.seek(0);
+            header = ByteBuffer.allocate(2 * SECTOR_BYTES);
+            while (header.hasRemaining()) {
+                if (file.getChannel().read(header) == -1) {
+                    throw new EOFException();
+                }
             }
+            header.flip();
         }
-        header.flip();
 
         // populate the offset table
         IntBuffer headerAsInts = header.asIntBuffer();
@@ -194,7 +253,7 @@ public class RegionFile {
             int numSectors = offset & 255;
 
             if (offset != 0 && startSector >= 0 && startSector + numSectors <= totalSectors) {
-                sectorsUsed.set(startSector, startSector + numSectors + 1);
+                sectorsUsed.set(startSector, startSector + numSectors);
             } else if (offset != 0) {
                 GlowServer.logger.warning(
                         "Region \"" + path + "\": offsets[" + i + "] = " + offset + " -> "
@@ -226,16 +285,20 @@ public class RegionFile {
      * @return an input stream with the chunk data, or null if the chunk is missing
      * @throws IOException if the file cannot be read, or the chunk is invalid
      */
-    public DataInputStream getChunkDataInputStream(int x, int z) throws IOException {
+    public synchronized DataInputStream getChunkDataInputStream(int x, int z) throws IOException {
         checkBounds(x, z);
 
+        PendingWrite pending = pendingWrites.get(x + (z << 5));
+        if (pending != null) {
+            return getZlibInputStream(new ByteArrayInputStream(pending.data, 0, pending.length));
+        }
+
         int offset = getOffset(x, z);
         if (offset == 0) {
             // does not exist
             return null;
         }
 
-        int totalSectors = sectorsUsed.length();
         int sectorNumber = offset >> 8;
         int numSectors = offset & 0xFF;
         if (sectorNumber + numSectors > totalSectors) {
@@ -243,41 +306,78 @@ public class RegionFile {
                     "Invalid sector: " + sectorNumber + "+" + numSectors + " > " + totalSectors);
         }
 
-        file.seek(sectorNumber * SECTOR_BYTES);
-        int length = file.readInt();
+        int position = sectorNumber * SECTOR_BYTES;
+        int length;
+        byte version;
+        if (mapping != null) {
+            length = mapping.getInt(position);
+            version = mapping.get(position + Integer.BYTES);
+        } else {
+            file.seek(position);
+            length = file.readInt();
+            version = file.readByte();
+        }
         if (length > SECTOR_BYTES * numSectors) {
             throw new IOException("Invalid length: " + length + " > " + SECTOR_BYTES * numSectors);
         } else if (length <= 0) {
             throw new IOException("Invalid length: " + length + " <= 0 ");
         }
 
-        byte version = file.readByte();
+        int dataPosition = position + CHUNK_HEADER_SIZE;
         if (version == VERSION_GZIP) {
-            byte[] data = new byte[length - 1];
-            file.read(data);
+            InputStream data = readData(dataPosition, length - 1);
             try {
                 return new DataInputStream(new BufferedInputStream(
-                        new GZIPInputStream(new ByteArrayInputStream(data), 2048)));
+                        new GZIPInputStream(data, 2048)));
             } catch (ZipException e) {
+                data.close();
                 if (e.getMessage().equals("Not in GZIP format")) {
                     GlowServer.logger.info("Incorrect region version, switching to zlib...");
-                    file.seek((sectorNumber * SECTOR_BYTES) + Integer.BYTES);
+                    file.seek(position + Integer.BYTES);
                     file.write(VERSION_DEFLATE);
-                    return getZlibInputStream(data);
+                    return getZlibInputStream(readData(dataPosition, length - 1));
                 }
+            } catch (IOException e) {
+                data.close();
+                throw e;
             }
         } else if (version == VERSION_DEFLATE) {
-            byte[] data = new byte[length - 1];
-            file.read(data);
-            return getZlibInputStream(data);
+            return getZlibInputStream(readData(dataPosition, length - 1));
         }
 
         throw new IOException("Unknown version: " + version);
     }
 
-    private DataInputStream getZlibInputStream(byte[] data) {
+    /**
+     * Get a stream of the (compressed) chunk data at the given position. If the file is
+     * memory-mapped, the stream reads the data from the mapping, and must be closed to let the
+     * sectors freed in the meantime be reused. Otherwise, the data is read into memory.
+     */
+    private InputStream readData(int position, int length) throws IOException {
+        if (mapping == null) {
+            byte[] data = new byte[length];
+            file.seek(position);
+            file.readFully(data);
+            return new ByteArrayInputStream(data);
+        }
+        ByteBuffer data = mapping.duplicate();
+        data.position(position);
+        data.limit(position + length);
+        readers++;
+        return new MappedInputStream(data.slice());
+    }
+
+    private synchronized void closeReader() {
+        readers--;
+        if (readers == 0) {
+            sectorsUsed.andNot(retiredSectors);
+            retiredSectors.clear();
+        }
+    }
+
+    private DataInputStream getZlibInputStream(InputStream data) {
         return new DataInputStream(new BufferedInputStream(new InflaterInputStream(
-                new ByteArrayInputStream(data), new Inflater(), 2048)));
+                data, new Inflater(), 2048)));
     }
 
     /**
@@ -289,11 +389,25 @@ public class RegionFile {
      *         to disk.
      */
     public DataOutputStream getChunkDataOutputStream(int x, int z) {
+        return getChunkDataOutputStream(x, z, () -> { });
+    }
+
+    /**
+     * Creates a {@link DataOutputStream} to write a chunk to a byte.
+     *
+     * @param x       the chunk X coordinate within the region
+     * @param z       the chunk Z coordinate within the region
+     * @param written called by the flush which writes the chunk to disk, unless the chunk is
+     *                written again before that
+     * @return a {@link DataOutputStream}, backed by memory, that can prepare the chunk for writing
+     *         to disk. Closing it throws an {@link IOException} if the region file is closed.
+     */
+    public DataOutputStream getChunkDataOutputStream(int x, int z, Runnable written) {
         checkBounds(x, z);
         Deflater deflater = new Deflater(
                 COMPRESSION_ENABLED ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
         deflater.setStrategy(Deflater.HUFFMAN_ONLY);
-        DeflaterOutputStream dos = new DeflaterOutputStream(new ChunkBuffer(x, z), deflater, 2048) {
+        DeflaterOutputStream dos = new DeflaterOutputStream(new ChunkBuffer(x, z, written), deflater, 2048) {
             @Override
             public void close() throws IOException {
                 super.close();
@@ -303,53 +417,147 @@ public class RegionFile {
         return new DataOutputStream(new BufferedOutputStream(dos));
     }
 
-    /* write a chunk at (x,z) with length bytes of data to disk */
-    protected void write(int x, int z, byte[] data, int length) throws IOException {
-        int offset = getOffset(x, z);
-        int sectorNumber = offset >> 8;
-        int sectorsAllocated = offset & 0xFF;
-        int sectorsNeeded = (length + CHUNK_HEADER_SIZE) / SECTOR_BYTES + 1;
+    /**
+     * Buffer the deflated data of the chunk at (x,z) until the next flush. Data buffered earlier for
+     * the same chunk is replaced.
+     *
+     * @throws IOException if the region file is closed, e.g. because it was evicted from the cache
+     */
+    protected synchronized void write(int x, int z, byte[] data, int length, Runnable written)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Region file is closed");
+        }
+        pendingWrites.put(x + (z << 5), new PendingWrite(data, length, written));
+    }
 
-        // maximum chunk size is 1MB
-        if (sectorsNeeded >= 256) {
+    /**
+     * Write all buffered chunks to disk. New sectors are allocated for all chunks first, and the
+     * file is grown at most once. Chunks stored in consecutive sectors are then written with a
+     * single gathering write, and the header tables are written last. If any write fails, the
+     * chunks stay buffered and the sector allocation is rolled back, so the next flush retries them.
+     *
+     * @throws IOException if the chunks cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (closed || pendingWrites.isEmpty()) {
             return;
         }
 
-        if (sectorNumber != 0 && sectorsAllocated == sectorsNeeded) {
-            /* we can simply overwrite the old sectors */
-            writeSector(sectorNumber, data, length);
-        } else {
-            /* mark the sectors previously used for this chunk as free */
-            if (sectorNumber != 0) {
-                sectorsUsed.clear(sectorNumber, sectorNumber + sectorsAllocated + 1);
+        int[] oldOffsets = offsets.clone();
+        int[] oldTimestamps = chunkTimestamps.clone();
+        BitSet oldSectorsUsed = (BitSet) sectorsUsed.clone();
+        int oldTotalSectors = totalSectors;
+
+        int timestamp = (int) (System.currentTimeMillis() / 1000L);
+        List<SectorWrite> writes = new ArrayList<>(pendingWrites.size());
+        List<Runnable> written = new ArrayList<>(pendingWrites.size());
+        try {
+            for (Map.Entry<Integer, PendingWrite> entry : pendingWrites.entrySet()) {
+                int index = entry.getKey();
+                PendingWrite pending = entry.getValue();
+                int length = pending.length;
+                int sectorsNeeded = (length + CHUNK_HEADER_SIZE) / SECTOR_BYTES + 1;
+
+                // maximum chunk size is 1MB
+                if (sectorsNeeded >= 256) {
+                    GlowServer.logger.warning("Chunk " + index + " is too large to be saved: "
+                            + length + " bytes");
+                    continue;
+                }
+
+                // the old sectors are still in use, so the chunk is never overwritten in place
+                int sectorNumber = findNewSectorStart(sectorsNeeded);
+                if (sectorNumber == -1) {
+                    sectorNumber = totalSectors;
+                    totalSectors += sectorsNeeded;
+                }
+                sectorsUsed.set(sectorNumber, sectorNumber + sectorsNeeded);
+                offsets[index] = sectorNumber << 8 | sectorsNeeded;
+                chunkTimestamps[index] = timestamp;
+
+                ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+                header.putInt(length + 1); // chunk length
+                header.put(VERSION_DEFLATE); // chunk version number
+                header.flip();
+                int paddingLength = sectorsNeeded * SECTOR_BYTES - CHUNK_HEADER_SIZE - length;
+                ByteBuffer padding = ByteBuffer.wrap(emptySector, 0, paddingLength);
+                writes.add(new SectorWrite(sectorNumber, sectorsNeeded, header,
+                        ByteBuffer.wrap(pending.data, 0, length), padding));
+                written.add(pending.written);
             }
 
-            /* scan for a free space large enough to store this chunk */
-            sectorNumber = findNewSectorStart(sectorsNeeded);
-            if (sectorNumber == -1) {
-                /*
-                 * no free space large enough found -- we need to grow the
-                 * file
-                 */
-                file.seek(file.length());
-                for (int i = 0; i < sectorsNeeded; ++i) {
-                    file.write(emptySector);
+            // grow the file once for all appended chunks
+            long length = (long) totalSectors * SECTOR_BYTES;
+            if (length > file.length()) {
+                sizeDelta.addAndGet((int) (length - file.length()));
+                file.setLength(length);
+                if (mapping != null) {
+                    mapping = file.getChannel().map(MapMode.READ_ONLY, 0, length);
                 }
-                sizeDelta.addAndGet(SECTOR_BYTES * sectorsNeeded);
-                sectorNumber = sectorsUsed.length();
             }
 
-            sectorsUsed.set(sectorNumber, sectorNumber + sectorsNeeded + 1);
-            writeSector(sectorNumber, data, length);
-            setOffset(x, z, sectorNumber << 8 | sectorsNeeded);
-            setTimestamp(x, z, (int) (System.currentTimeMillis() / 1000L));
+            FileChannel channel = file.getChannel();
+            writes.sort(Comparator.comparingInt(write -> write.sectorNumber));
+            int start = 0;
+            while (start < writes.size()) {
+                int end = start;
+                int nextSector = writes.get(start).sectorNumber;
+                List<ByteBuffer> buffers = new ArrayList<>();
+                while (end < writes.size() && writes.get(end).sectorNumber == nextSector) {
+                    SectorWrite write = writes.get(end);
+                    buffers.add(write.header);
+                    buffers.add(write.data);
+                    buffers.add(write.padding);
+                    nextSector += write.sectorCount;
+                    end++;
+                }
+                writeFully(channel, (long) writes.get(start).sectorNumber * SECTOR_BYTES,
+                        buffers.toArray(new ByteBuffer[0]));
+                start = end;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_BYTES);
+            header.asIntBuffer().put(offsets).put(chunkTimestamps);
+            writeFully(channel, 0, header);
+        } catch (IOException | RuntimeException e) {
+            System.arraycopy(oldOffsets, 0, offsets, 0, offsets.length);
+            System.arraycopy(oldTimestamps, 0, chunkTimestamps, 0, chunkTimestamps.length);
+            sectorsUsed = oldSectorsUsed;
+            totalSectors = oldTotalSectors;
+            throw e;
+        }
+
+        // the header now points to the new sectors, so the old ones can be reused once they are
+        // no longer read
+        for (int index : pendingWrites.keySet()) {
+            int oldSector = oldOffsets[index] >> 8;
+            if (oldSector != 0 && offsets[index] != oldOffsets[index]) {
+                int end = oldSector + (oldOffsets[index] & 0xFF);
+                if (readers == 0) {
+                    sectorsUsed.clear(oldSector, end);
+                } else {
+                    retiredSectors.set(oldSector, end);
+                }
+            }
+        }
+        pendingWrites.clear();
+        written.forEach(Runnable::run);
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer... buffers)
+            throws IOException {
+        channel.position(position);
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
         }
     }
 
     private int findNewSectorStart(int sectorsNeeded) {
         int start = -1;
         int runLength = 0;
-        for (int i = sectorsUsed.nextClearBit(0); i < sectorsUsed.length(); i++) {
+        for (int i = sectorsUsed.nextClearBit(0); i < totalSectors; i++) {
             if (sectorsUsed.get(i)) {
                 // must reset
                 start = -1;
@@ -368,14 +576,6 @@ public class RegionFile {
         return -1;
     }
 
-    /* write a chunk data to the region file at specified sector number */
-    private void writeSector(int sectorNumber, byte[] data, int length) throws IOException {
-        file.seek(sectorNumber * SECTOR_BYTES);
-        file.writeInt(length + 1); // chunk length
-        file.writeByte(VERSION_DEFLATE); // chunk version number
-        file.write(data, 0, length); // chunk data
-    }
-
     /* is this an invalid chunk coordinate? */
     private void checkBounds(int x, int z) {
         if (x < 0 || x >= 32 || z < 0 || z >= 32) {
@@ -387,25 +587,27 @@ public class RegionFile {
         return offsets[x + (z << 5)];
     }
 
-    public boolean hasChunk(int x, int z) {
-        return getOffset(x, z) != 0;
-    }
-
-    private void setOffset(int x, int z, int offset) throws IOException {
-        offsets[x + (z << 5)] = offset;
-        file.seek((x + (z << 5)) << 2);
-        file.writeInt(offset);
-    }
-
-    private void setTimestamp(int x, int z, int value) throws IOException {
-        chunkTimestamps[x + (z << 5)] = value;
-        file.seek(SECTOR_BYTES + ((x + (z << 5)) << 2));
-        file.writeInt(value);
+    public synchronized boolean hasChunk(int x, int z) {
+        return getOffset(x, z) != 0 || pendingWrites.containsKey(x + (z << 5));
     }
 
-    public void close() throws IOException {
-        file.getChannel().force(true);
-        file.close();
+    /**
+     * Flush the buffered chunks and close the file.
+     *
+     * @throws IOException if the chunks cannot be written or the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            file.getChannel().force(true);
+        } finally {
+            closed = true;
+            mapping = null;
+            file.close();
+        }
     }
 
     /*
@@ -416,16 +618,105 @@ public class RegionFile {
 
         private final int x;
         private final int z;
+        private final Runnable written;
 
-        public ChunkBuffer(int x, int z) {
+        public ChunkBuffer(int x, int z, Runnable written) {
             super(SECTOR_BYTES); // initialize to 4KB
             this.x = x;
             this.z = z;
+            this.written = written;
         }
 
         @Override
         public void close() throws IOException {
-            RegionFile.this.write(x, z, buf, count);
+            RegionFile.this.write(x, z, buf, count, written);
+        }
+    }
+
+    /**
+     * A stream of chunk data in the memory mapping of the file.
+     */
+    private final class MappedInputStream extends InputStream {
+
+        private final ByteBuffer data;
+        private boolean released;
+
+        MappedInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return data.hasRemaining() ? data.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            } else if (!data.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, data.remaining());
+            data.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, data.remaining()));
+            data.position(data.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return data.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                closeReader();
+            }
+        }
+    }
+
+    /**
+     * The buffered data of a chunk, and the callback to run once it has been written.
+     */
+    private static final class PendingWrite {
+
+        private final byte[] data;
+        private final int length;
+        private final Runnable written;
+
+        PendingWrite(byte[] data, int length, Runnable written) {
+            this.data = data;
+            this.length = length;
+            this.written = written;
+        }
+    }
+
+    /**
+     * The buffers of a chunk which is written to the given sectors.
+     */
+    private static final class SectorWrite {
+
+        private final int sectorNumber;
+        private final int sectorCount;
+        private final ByteBuffer header;
+        private final ByteBuffer data;
+        private final ByteBuffer padding;
+
+        SectorWrite(int sectorNumber, int sectorCount, ByteBuffer header, ByteBuffer data,
+                ByteBuffer padding) {
+            this.sectorNumber = sectorNumber;
+            this.sectorCount = sectorCount;
+            this.header = header;
+            this.data = data;
+            this.padding = padding;
         }
     }
 }
@@ -31,22 +31,45 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import science.atlarge.opencraft.opencraft.GlowServer;
 import science.atlarge.opencraft.opencraft.ServerProvider;
 import science.atlarge.opencraft.opencraft.util.config.ServerConfig.Key;
 
 /**
  * A simple cache and wrapper for efficiently accessing multiple RegionFiles simultaneously.
+ *
+ * <p>Region files to which chunks have been written are flushed in the background, shortly after
+ * the first write, so that the chunks written in the meantime are flushed together. A region file
+ * that fails to flush is flushed again later.
  */
 public class RegionFileCache {
 
+    /**
+     * The delay between the first write to a region file and the flush which writes it to disk.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 100;
+
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("region-writer").setDaemon(true).build()); // NON-NLS
+
     private static final int MAX_CACHE_SIZE =
             ((GlowServer) ServerProvider.getServer()).getConfig().getInt(Key.REGION_CACHE_SIZE);
 
+    private static final boolean MEMORY_MAPPED =
+            ((GlowServer) ServerProvider.getServer()).getConfig().getBoolean(Key.REGION_MEMORY_MAPPED);
+
     private static final RemovalListener<File, RegionFile> removalListener = removal -> {
         try {
             removal.getValue().close();
@@ -62,13 +85,16 @@ public class RegionFileCache {
             .build(new CacheLoader<File, RegionFile>() {
                 @Override
                 public RegionFile load(File file) throws Exception {
-                    return new RegionFile(file);
+                    return new RegionFile(file, MEMORY_MAPPED);
                 }
             });
 
     private final String extension;
     private final File regionDir;
 
+    private final Set<RegionFile> dirtyRegions = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
     public RegionFileCache(File basePath, String extension) {
         this.extension = extension;
         regionDir = new File(basePath, "region");
@@ -90,8 +116,40 @@ public class RegionFileCache {
                 new File(regionDir, "r." + (chunkX >> 5) + "." + (chunkZ >> 5) + extension));
     }
 
+    /**
+     * Schedule the buffered chunks of the given region file to be written in the background.
+     *
+     * @param region the region file to which chunks have been written
+     */
+    public void scheduleFlush(RegionFile region) {
+        dirtyRegions.add(region);
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flushDirtyRegions, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushDirtyRegions() {
+        flushScheduled.set(false);
+        Iterator<RegionFile> iterator = dirtyRegions.iterator();
+        while (iterator.hasNext()) {
+            RegionFile region = iterator.next();
+            iterator.remove();
+            try {
+                region.flush();
+            } catch (IOException e) {
+                // the chunks stay buffered in the region file, so try again later
+                GlowServer.logger.log(Level.SEVERE, "Failed to write region file", e);
+                scheduleFlush(region);
+            }
+        }
+    }
+
+    /**
+     * Flush and close all region files.
+     */
     public void clear() throws RejectedExecutionException {
         regions.invalidateAll();
+        dirtyRegions.clear();
     }
 
 }
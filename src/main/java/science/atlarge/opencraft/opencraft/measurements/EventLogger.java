@@ -1,13 +1,9 @@
 package science.atlarge.opencraft.opencraft.measurements;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 public abstract class EventLogger implements AutoCloseable {
 
-    private final Map<String, Long> timings = new HashMap<>();
-
     abstract public void init() throws IOException;
 
     abstract public void log(String key, String value);
@@ -20,15 +16,5 @@ public abstract class EventLogger implements AutoCloseable {
         log(key, String.valueOf(value));
     }
 
-    public void start(String key) {
-        timings.put(key, System.currentTimeMillis());
-    }
-
-    public void stop(String key) {
-        if (timings.containsKey(key)) {
-            log(key, System.currentTimeMillis() - timings.remove(key));
-        }
-    }
-
     abstract public void flush();
 }
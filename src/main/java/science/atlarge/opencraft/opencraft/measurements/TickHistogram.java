@@ -0,0 +1,142 @@
+package science.atlarge.opencraft.opencraft.measurements;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, log-linear histogram of durations in nanoseconds.
+ *
+ * <p>Values are grouped into buckets of exponentially increasing size, each of which is split
+ * into {@value #SUB_BUCKET_COUNT} linear sub-buckets. This keeps the relative error of reported
+ * percentiles below 1 / {@value #SUB_BUCKET_COUNT}, while recording remains a single atomic
+ * increment that does not allocate.
+ */
+public class TickHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values larger than 2^MAX_EXPONENT nanoseconds (about 18 minutes) are clamped.
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_TRACKABLE_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a single duration.
+     *
+     * @param nanos the duration in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE_VALUE)));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Get the number of recorded values.
+     *
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get the largest recorded value.
+     *
+     * @return the largest recorded value in nanoseconds, or zero if nothing has been recorded.
+     */
+    public long getMax() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Get the arithmetic mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, or zero if nothing has been recorded.
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * Get the value at the given percentile. The result is the upper bound of the bucket which
+     * contains the percentile, capped by the largest recorded value.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value at the given percentile in nanoseconds, or zero if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        // Concurrent recordings may have incremented the total count before the bucket count
+        return getMax();
+    }
+
+    /**
+     * Clear all recorded values. Values recorded concurrently with a reset may be partially lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Find the index of the bucket in which the given value is counted.
+     *
+     * @param value a non-negative value no larger than {@link #MAX_TRACKABLE_VALUE}.
+     * @return the index of the bucket.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Find the largest value that is counted in the bucket with the given index.
+     *
+     * @param index the index of the bucket.
+     * @return the largest value in the bucket.
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
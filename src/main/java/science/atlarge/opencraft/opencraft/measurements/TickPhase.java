@@ -0,0 +1,45 @@
+package science.atlarge.opencraft.opencraft.measurements;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * The stages of a server or world tick that are timed by a {@link TickProfiler}.
+ */
+public enum TickPhase {
+
+    // Server phases, recorded by the scheduler on the primary thread
+    SERVER_TICK("tick", "The duration of a tick."),
+    SERVER_NETWORK("tick_network", "The duration of a tick processing the network"),
+    SERVER_JOBS("tick_jobs", "Duration of the server tick spent processing jobs"),
+    SERVER_WORLDS("tick_worlds", "Duration of a tick processing worlds"),
+
+    // World phases, recorded by each world thread
+    WORLD_TICK("world_tick", "Duration of a world tick."),
+    UPDATE_AREAS_OF_INTEREST("update_areas_of_interest", "Duration of updating the areas of interest."),
+    PULSE_TICK_MAP("pulse_tick_map", "Duration of pulsing the scheduled block ticks."),
+    PULSE_FLUIDS("pulse_fluids", "Duration of flowing the pending fluid updates."),
+    PULSE_REDSTONE("pulse_redstone", "Duration of recomputing the power of redstone wire networks."),
+    UPDATE_BLOCKS_IN_CHUNKS("update_blocks_in_chunks", "Duration of ticking blocks in active chunks."),
+    BROADCAST_ENTITY_UPDATES("broadcast_entity_updates", "Duration of pulsing and broadcasting entities."),
+    SPAWN_ENTITIES("spawn_entities", "Duration of spawning entities for players."),
+    SAVE_WORLD("save_world", "Duration of the autosave check.");
+
+    /**
+     * The key used when logging this phase.
+     */
+    @Getter
+    @NonNls
+    private final String key;
+
+    /**
+     * A short, human-readable description of this phase.
+     */
+    @Getter
+    private final String description;
+
+    TickPhase(String key, String description) {
+        this.key = key;
+        this.description = description;
+    }
+}
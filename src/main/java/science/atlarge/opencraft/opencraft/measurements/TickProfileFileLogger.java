@@ -0,0 +1,89 @@
+package science.atlarge.opencraft.opencraft.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.bukkit.World;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+
+/**
+ * Periodically writes the tick profiles of the server and its worlds to a file, and resets them
+ * afterwards. Each line of the file describes one phase of one profiler over the last period.
+ */
+public class TickProfileFileLogger implements AutoCloseable {
+
+    private final File file;
+    private final long periodMs;
+    private final GlowServer server;
+    private final Timer timer = new Timer("tick-profile-logger", true);
+    private PrintWriter writer;
+
+    /**
+     * Create a new logger.
+     *
+     * @param file     the file to write to.
+     * @param periodMs the number of milliseconds between consecutive dumps.
+     * @param server   the server whose profiles should be written.
+     */
+    public TickProfileFileLogger(File file, long periodMs, GlowServer server) {
+        this.file = file;
+        this.periodMs = periodMs;
+        this.server = server;
+    }
+
+    /**
+     * Open the file and start dumping periodically.
+     *
+     * @throws IOException if the file cannot be created.
+     */
+    public void init() throws IOException {
+        if (!this.file.isFile()) {
+            this.file.createNewFile();
+        }
+        this.writer = new PrintWriter(file);
+        this.writer.println("timestamp\tsource\tphase\tcount\tmean_us\tp50_us\tp99_us\tmax_us");
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                dump();
+            }
+        }, periodMs, periodMs);
+    }
+
+    /**
+     * Write and reset the profiles of the server and all of its worlds.
+     */
+    public synchronized void dump() {
+        long timestamp = System.currentTimeMillis();
+        dump(timestamp, "server", server.getScheduler().getTickProfiler());
+        for (World world : server.getWorlds()) {
+            dump(timestamp, world.getName(), ((GlowWorld) world).getTickProfiler());
+        }
+        writer.flush();
+    }
+
+    private void dump(long timestamp, String source, TickProfiler profiler) {
+        for (TickPhase phase : TickPhase.values()) {
+            TickHistogram histogram = profiler.getHistogram(phase);
+            if (histogram.getCount() > 0) {
+                writer.println(timestamp + "\t" + source + "\t" + phase.getKey()
+                    + "\t" + histogram.getCount()
+                    + "\t" + (long) (histogram.getMean() / 1000)
+                    + "\t" + histogram.getPercentile(50) / 1000
+                    + "\t" + histogram.getPercentile(99) / 1000
+                    + "\t" + histogram.getMax() / 1000);
+            }
+        }
+        profiler.reset();
+    }
+
+    @Override
+    public void close() {
+        timer.cancel();
+        dump();
+        writer.close();
+    }
+}
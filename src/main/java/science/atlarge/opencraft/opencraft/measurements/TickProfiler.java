@@ -0,0 +1,61 @@
+package science.atlarge.opencraft.opencraft.measurements;
+
+/**
+ * Collects the durations of the phases of a tick in one {@link TickHistogram} per {@link TickPhase}.
+ *
+ * <p>Timing a phase does not allocate, which allows it to be used on the hot path:
+ * <pre>
+ * long time = System.nanoTime();
+ * doFirstPhase();
+ * time = profiler.record(TickPhase.FIRST, time);
+ * doSecondPhase();
+ * time = profiler.record(TickPhase.SECOND, time);
+ * </pre>
+ */
+public class TickProfiler {
+
+    private static final TickPhase[] PHASES = TickPhase.values();
+
+    private final TickHistogram[] histograms = new TickHistogram[PHASES.length];
+
+    /**
+     * Create a new profiler with empty histograms for all phases.
+     */
+    public TickProfiler() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new TickHistogram();
+        }
+    }
+
+    /**
+     * Record the duration of a phase that started at the given time and ended now.
+     *
+     * @param phase      the phase that ended.
+     * @param startNanos the value of {@link System#nanoTime()} when the phase started.
+     * @return the current value of {@link System#nanoTime()}, which can be used as the start of the next phase.
+     */
+    public long record(TickPhase phase, long startNanos) {
+        long now = System.nanoTime();
+        histograms[phase.ordinal()].record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * Get the histogram of the given phase.
+     *
+     * @param phase the phase.
+     * @return the histogram of the phase.
+     */
+    public TickHistogram getHistogram(TickPhase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Clear the histograms of all phases.
+     */
+    public void reset() {
+        for (TickHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package science.atlarge.opencraft.opencraft.messaging;
 import java.util.function.Supplier;
 import javax.jms.JMSException;
 import science.atlarge.opencraft.opencraft.util.config.BrokerConfig;
+import science.atlarge.opencraft.opencraft.util.config.BrokerType;
 import science.atlarge.opencraft.messaging.Broker;
 import science.atlarge.opencraft.messaging.brokers.ActivemqBroker;
 import science.atlarge.opencraft.messaging.brokers.AsyncBroker;
@@ -40,6 +41,16 @@ public final class Brokers {
         return base;
     }
 
+    /**
+     * Check whether the given configuration creates a broker that sends messages through an external server.
+     *
+     * @param config the configuration to be used.
+     * @return whether the broker is external.
+     */
+    public static boolean isExternal(BrokerConfig config) {
+        return config.getType() == BrokerType.ACTIVEMQ || config.getType() == BrokerType.RABBITMQ;
+    }
+
     private static <Topic, Subscriber, Message> Broker<Topic, Subscriber, Message> newBaseBroker(
             BrokerConfig config,
             Supplier<JmsCodec<Message>> codecFactory
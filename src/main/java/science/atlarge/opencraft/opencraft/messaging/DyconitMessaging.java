@@ -1,26 +1,56 @@
 package science.atlarge.opencraft.opencraft.messaging;
 
 import com.flowpowered.network.Message;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import org.bukkit.entity.Player;
 import science.atlarge.opencraft.dyconits.DyconitSystem;
 import science.atlarge.opencraft.dyconits.Subscriber;
 import science.atlarge.opencraft.dyconits.policies.DyconitPolicy;
 import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
 import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.MessageCoalescer;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.ChunkPolicy;
 
 public class DyconitMessaging implements Messaging {
 
     private final DyconitSystem<Player, Message> system;
 
-    public DyconitMessaging(DyconitSystem<Player, Message> system) {
+    /**
+     * The coalescers of the subscribers, or null if messages are passed on as they are delivered.
+     */
+    private final Map<GlowPlayer, MessageCoalescer> coalescers;
+
+    /**
+     * The world of this messaging system, or null if it is shared by all worlds.
+     */
+    private final GlowWorld world;
+
+    /**
+     * Create a dyconit messaging system.
+     *
+     * @param system   the dyconit system.
+     * @param coalesce whether the messages delivered to a subscriber are coalesced until the next flush.
+     * @param world    the world of the messaging system, or null if it is shared by all worlds. Players that have left
+     *                 the world are unsubscribed, so they can be subscribed by the system of their new world.
+     */
+    public DyconitMessaging(DyconitSystem<Player, Message> system, boolean coalesce, GlowWorld world) {
         this.system = system;
+        this.coalescers = coalesce ? new ConcurrentHashMap<>() : null;
+        this.world = world;
         logPolicy();
     }
 
     @Override
     public void update(GlowPlayer sub, Consumer<Message> callback) {
-        if (!sub.isDisconnected()) {
+        if (!sub.isDisconnected() && (world == null || sub.getWorld() == world)) {
+            if (coalescers != null) {
+                MessageCoalescer coalescer = coalescers.computeIfAbsent(sub, player -> new MessageCoalescer(callback));
+                coalescer.setCallback(callback);
+                callback = coalescer;
+            }
             system.update(new Subscriber<>(sub, callback));
         } else {
             remove(sub);
@@ -30,6 +60,12 @@ public class DyconitMessaging implements Messaging {
     @Override
     public void remove(GlowPlayer sub) {
         system.unsubscribeAll(sub);
+        if (system.getPolicy() instanceof ChunkPolicy) {
+            ((ChunkPolicy) system.getPolicy()).removeSubscriber(sub);
+        }
+        if (coalescers != null) {
+            coalescers.remove(sub);
+        }
     }
 
     @Override
@@ -37,6 +73,13 @@ public class DyconitMessaging implements Messaging {
         system.publish(sub, message);
     }
 
+    @Override
+    public void flush() {
+        if (coalescers != null) {
+            coalescers.values().forEach(MessageCoalescer::flush);
+        }
+    }
+
     @Override
     public void close() {
         // Nothing to close.
@@ -52,6 +95,7 @@ public class DyconitMessaging implements Messaging {
     }
 
     private void logPolicy() {
-        GlowServer.logger.info("Dyconit System using policy: " + system.getPolicy().getClass().getSimpleName());
+        String prefix = world == null ? "Dyconit System" : "Dyconit System of " + world.getName();
+        GlowServer.logger.info(prefix + " using policy: " + system.getPolicy().getClass().getSimpleName());
     }
 }
@@ -1,6 +1,7 @@
 package science.atlarge.opencraft.opencraft.messaging;
 
 import com.flowpowered.network.Message;
+import java.util.Map;
 import org.bukkit.entity.Player;
 import science.atlarge.opencraft.dyconits.DyconitSystem;
 import science.atlarge.opencraft.dyconits.policies.DyconitPolicy;
@@ -10,20 +11,53 @@ import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.PolicyFac
 import science.atlarge.opencraft.opencraft.messaging.filters.FeedbackFilter;
 import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 
+/**
+ * Provides each world with its own dyconit system, so worlds that are pulsed in parallel do not share its structures
+ * and can use different policies. The policy of a world can be set in the world-policies section of the messaging
+ * configuration. If per-world systems are disabled, all worlds share a single system with the default policy.
+ */
 public class DyconitMessagingProvider implements MessagingProvider {
 
-    private static DyconitMessaging dyconitMessagingSystem;
+    private static final String WORLD_KEY = "world";
+    private static final String POLICY_KEY = "policy";
+
+    private DyconitMessaging sharedMessagingSystem;
 
     @Override
-    public Messaging build(GlowServer server, GlowWorld world) {
-        if (dyconitMessagingSystem == null) {
-            String policyString = server.getConfig().getString(ServerConfig.Key.OPENCRAFT_POLICY);
-            DyconitPolicy<Player, Message> policy = PolicyFactory.policyFromString(policyString, server);
-            if (policy == null) {
-                throw new RuntimeException("Policy '" + policyString + "' does not exist.");
+    public synchronized Messaging build(GlowServer server, GlowWorld world) {
+        ServerConfig config = server.getConfig();
+        boolean perWorld = config.getBoolean(ServerConfig.Key.OPENCRAFT_MESSAGING_PER_WORLD);
+        if (!perWorld && sharedMessagingSystem != null) {
+            return sharedMessagingSystem;
+        }
+        String policyString = perWorld ? policyOf(config, world) : config.getString(ServerConfig.Key.OPENCRAFT_POLICY);
+        DyconitPolicy<Player, Message> policy = PolicyFactory.policyFromString(policyString, server);
+        if (policy == null) {
+            throw new RuntimeException("Policy '" + policyString + "' does not exist.");
+        }
+        boolean coalesce = config.getBoolean(ServerConfig.Key.OPENCRAFT_MESSAGING_COALESCE);
+        DyconitSystem<Player, Message> system = new DyconitSystem<>(policy, new FeedbackFilter(),
+            server.isLogDyconits());
+        DyconitMessaging messaging = new DyconitMessaging(system, coalesce, perWorld ? world : null);
+        if (!perWorld) {
+            sharedMessagingSystem = messaging;
+        }
+        return messaging;
+    }
+
+    /**
+     * Get the name of the policy of the given world.
+     *
+     * @param config the server configuration.
+     * @param world  the world.
+     * @return the policy configured for the world, or the default policy.
+     */
+    private static String policyOf(ServerConfig config, GlowWorld world) {
+        for (Map<?, ?> worldPolicy : config.getMapList(ServerConfig.Key.OPENCRAFT_MESSAGING_WORLD_POLICIES)) {
+            if (world.getName().equals(worldPolicy.get(WORLD_KEY)) && worldPolicy.get(POLICY_KEY) instanceof String) {
+                return (String) worldPolicy.get(POLICY_KEY);
             }
-            dyconitMessagingSystem = new DyconitMessaging(new DyconitSystem<>(policy, new FeedbackFilter(), server.isLogDyconits()));
         }
-        return dyconitMessagingSystem;
+        return config.getString(ServerConfig.Key.OPENCRAFT_POLICY);
     }
 }
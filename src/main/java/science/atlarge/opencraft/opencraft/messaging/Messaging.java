@@ -11,5 +11,7 @@ public interface Messaging {
 
     void publish(Object sub, Message message);
 
+    void flush();
+
     void close();
 }
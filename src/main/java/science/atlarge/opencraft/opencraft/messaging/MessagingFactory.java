@@ -1,8 +1,16 @@
 package science.atlarge.opencraft.opencraft.messaging;
 
 import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.jms.JMSException;
+import org.apache.activemq.ActiveMQConnectionFactory;
 import science.atlarge.opencraft.opencraft.GlowServer;
 import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.messaging.sharding.EmbeddedBroker;
+import science.atlarge.opencraft.opencraft.messaging.sharding.RegionMap;
+import science.atlarge.opencraft.opencraft.messaging.sharding.ShardedMessaging;
 import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 
 public class MessagingFactory {
@@ -19,6 +27,49 @@ public class MessagingFactory {
             throw new RuntimeException("Messaging system '" + type + "' does not exist.");
         }
         GlowServer.logger.info("Using " + type + " messaging system");
-        return provider.build(server, world);
+        Messaging messaging = provider.build(server, world);
+        if (server.getConfig().getBoolean(ServerConfig.Key.OPENCRAFT_SHARDING_ENABLED)) {
+            return shard(messaging, world, server);
+        }
+        return messaging;
+    }
+
+    /**
+     * Create the assignment of regions to the nodes of a sharded world from the configuration.
+     *
+     * @param config the server configuration.
+     * @return the region map, in which this server runs the configured node.
+     */
+    public static RegionMap regionsFromConfig(ServerConfig config) {
+        List<Map<?, ?>> nodes = config.getMapList(ServerConfig.Key.OPENCRAFT_SHARDING_NODES);
+        String node = config.getString(ServerConfig.Key.OPENCRAFT_SHARDING_NODE);
+        if (nodes.isEmpty()) {
+            nodes = Collections.singletonList(Collections.singletonMap("name", node));
+        }
+        return RegionMap.fromConfigMaps(config.getInt(ServerConfig.Key.OPENCRAFT_SHARDING_REGION_SIZE), nodes, node);
+    }
+
+    private static Messaging shard(Messaging messaging, GlowWorld world, GlowServer server) {
+        ServerConfig config = server.getConfig();
+        RegionMap regions = regionsFromConfig(config);
+        String node = regions.getLocalNode().getName();
+        String url = config.getString(ServerConfig.Key.OPENCRAFT_SHARDING_BROKER_URL);
+        int brokerPort = config.getInt(ServerConfig.Key.OPENCRAFT_SHARDING_EMBEDDED_BROKER_PORT);
+        if (brokerPort > 0) {
+            try {
+                url = EmbeddedBroker.start(brokerPort);
+            } catch (Exception exception) {
+                messaging.close();
+                throw new RuntimeException("Could not start the sharding broker on port " + brokerPort, exception);
+            }
+        }
+        try {
+            GlowServer.logger.info("Sharding " + world.getName() + " over " + regions.getNodes() + " as " + node);
+            return new ShardedMessaging(messaging, world, regions, server.getViewDistance(),
+                    new ActiveMQConnectionFactory(url));
+        } catch (JMSException exception) {
+            messaging.close();
+            throw new RuntimeException("Could not connect to the sharding broker at " + url, exception);
+        }
     }
 }
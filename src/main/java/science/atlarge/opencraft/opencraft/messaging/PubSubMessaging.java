@@ -1,23 +1,73 @@
 package science.atlarge.opencraft.opencraft.messaging;
 
 import com.flowpowered.network.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
 import org.bukkit.Chunk;
 import org.bukkit.entity.Player;
+import science.atlarge.opencraft.messaging.Filter;
 import science.atlarge.opencraft.messaging.MessagingSystem;
+import science.atlarge.opencraft.messaging.Policy;
+import science.atlarge.opencraft.opencraft.messaging.codecs.MessageBatch;
 
 public class PubSubMessaging implements Messaging {
 
     private final MessagingSystem<Chunk, Object, Player, Message> messageMessagingSystem;
 
+    /**
+     * The policy and filter of the messaging system, which are applied to the messages in a batch. Both are null if
+     * messages are not batched.
+     */
+    private final Policy<Chunk, Object, Player> policy;
+    private final Filter<Player, Message> filter;
+
+    /**
+     * The messages published to each topic since the last flush, if messages are batched.
+     */
+    private final Map<Chunk, List<Message>> batches = new ConcurrentHashMap<>();
+
     public PubSubMessaging(MessagingSystem<Chunk, Object, Player, Message> messageMessagingSystem) {
+        this(messageMessagingSystem, null, null);
+    }
+
+    /**
+     * Create a messaging system that batches the messages published to each topic until it is flushed, and publishes
+     * each batch as a single message. This reduces the number of messages an external broker has to handle.
+     *
+     * @param messageMessagingSystem the messaging system.
+     * @param policy                 the policy of the messaging system, which selects the topics of messages.
+     * @param filter                 the filter of the messaging system, which is applied to each message of a batch.
+     */
+    public PubSubMessaging(MessagingSystem<Chunk, Object, Player, Message> messageMessagingSystem,
+                           Policy<Chunk, Object, Player> policy, Filter<Player, Message> filter) {
         this.messageMessagingSystem = messageMessagingSystem;
+        this.policy = policy;
+        this.filter = filter;
     }
 
     @Override
     public void update(GlowPlayer sub, Consumer<Message> callback) {
-        this.messageMessagingSystem.update(sub, callback);
+        if (policy == null) {
+            this.messageMessagingSystem.update(sub, callback);
+        } else {
+            this.messageMessagingSystem.update(sub, message -> deliver(sub, message, callback));
+        }
+    }
+
+    private void deliver(Player sub, Message message, Consumer<Message> callback) {
+        if (!(message instanceof MessageBatch)) {
+            callback.accept(message);
+            return;
+        }
+        for (Message batched : ((MessageBatch) message).getMessages()) {
+            if (filter.filter(sub, batched)) {
+                callback.accept(batched);
+            }
+        }
     }
 
     @Override
@@ -27,11 +77,34 @@ public class PubSubMessaging implements Messaging {
 
     @Override
     public void publish(Object sub, Message message) {
-        this.messageMessagingSystem.broadcast(sub, message);
+        if (policy == null) {
+            this.messageMessagingSystem.broadcast(sub, message);
+            return;
+        }
+        for (Chunk topic : policy.selectTargets(sub)) {
+            batches.compute(topic, (key, batch) -> {
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                }
+                batch.add(message);
+                return batch;
+            });
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (Chunk topic : batches.keySet()) {
+            List<Message> batch = batches.remove(topic);
+            if (batch != null) {
+                this.messageMessagingSystem.broadcast(topic, new MessageBatch(batch));
+            }
+        }
     }
 
     @Override
     public void close() {
+        flush();
         this.messageMessagingSystem.close();
     }
 }
@@ -9,14 +9,23 @@ import science.atlarge.opencraft.messaging.MessagingSystem;
 import science.atlarge.opencraft.opencraft.GlowServer;
 import science.atlarge.opencraft.opencraft.GlowWorld;
 import science.atlarge.opencraft.opencraft.messaging.codecs.CompositeCodec;
+import science.atlarge.opencraft.opencraft.messaging.codecs.EnvelopeCodec;
 import science.atlarge.opencraft.opencraft.messaging.filters.FeedbackFilter;
+import science.atlarge.opencraft.opencraft.util.config.BrokerConfig;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 
 public class PubSubMessagingProvider implements MessagingProvider {
     @Override
     public Messaging build(GlowServer server, GlowWorld world) {
         science.atlarge.opencraft.opencraft.messaging.policies.ChunkPolicy policy = new science.atlarge.opencraft.opencraft.messaging.policies.ChunkPolicy(world, server.getViewDistance());
-        Broker<Chunk, Player, Message> broker = Brokers.newBroker(server.getBrokerConfig(), CompositeCodec::new);
+        BrokerConfig brokerConfig = server.getBrokerConfig();
         Filter<Player, Message> filter = new FeedbackFilter();
+        boolean batch = server.getConfig().getBoolean(ServerConfig.Key.OPENCRAFT_BROKER_BATCH);
+        if (batch && Brokers.isExternal(brokerConfig)) {
+            Broker<Chunk, Player, Message> broker = Brokers.newBroker(brokerConfig, EnvelopeCodec::new);
+            return new PubSubMessaging(new MessagingSystem<>(policy, broker, filter), policy, filter);
+        }
+        Broker<Chunk, Player, Message> broker = Brokers.newBroker(brokerConfig, CompositeCodec::new);
         return new PubSubMessaging(new MessagingSystem<>(policy, broker, filter));
     }
 }
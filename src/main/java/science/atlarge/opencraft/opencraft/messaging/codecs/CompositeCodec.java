@@ -175,13 +175,22 @@ import science.atlarge.opencraft.messaging.brokers.JmsCodec;
 /**
  * The composite codec combines all gameplay related codecs into a single codec for use by the JMS based brokers.
  */
-public final class CompositeCodec implements JmsCodec<Message> {
+public class CompositeCodec implements JmsCodec<Message> {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The maximum capacity of the buffers that are reused, so a single large message does not pin its memory.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
 
     private final Map<Integer, Class<? extends Message>> types;
     private final Map<Class<? extends Message>, Integer> opcodes;
     private final Map<Class<? extends Message>, Codec<? extends Message>> codecs;
     private final AtomicInteger counter;
     private final ByteBufAllocator allocator;
+    private final ThreadLocal<ByteBuf> encodingBuffers;
+    private final ThreadLocal<byte[]> decodingArrays;
 
     /**
      * Create a composite codec.
@@ -194,6 +203,8 @@ public final class CompositeCodec implements JmsCodec<Message> {
         counter = new AtomicInteger();
 
         allocator = UnpooledByteBufAllocator.DEFAULT;
+        encodingBuffers = ThreadLocal.withInitial(() -> allocator.heapBuffer(INITIAL_CAPACITY));
+        decodingArrays = ThreadLocal.withInitial(() -> new byte[INITIAL_CAPACITY]);
 
         register(SpawnObjectMessage.class, new SpawnObjectCodec());
         register(SpawnXpOrbMessage.class, new SpawnXpOrbCodec());
@@ -286,41 +297,41 @@ public final class CompositeCodec implements JmsCodec<Message> {
 
     @Override
     public javax.jms.Message encode(Session session, Message flowMessage) throws JMSException {
+        ByteBuf buffer = encodingBuffer();
+        encode(buffer, flowMessage);
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        return bytesMessage;
+    }
 
-        Class<? extends Message> type = flowMessage.getClass();
-        Integer opcode = opcodes.get(type);
-        Codec<? extends Message> codec = codecs.get(type);
-
-        if (opcode == null || codec == null) {
-            throw new RuntimeException("Unknown Flow message type: " + type.getName());
-        }
-
-        ByteBuf buffer = allocator.buffer();
-        try {
-
-            ByteBufUtils.writeVarInt(buffer, opcode);
-            //noinspection unchecked
-            buffer = ((Codec<Message>) codec).encode(buffer, flowMessage);
-
-            int length = buffer.readableBytes();
-            int index = buffer.readerIndex();
-            byte[] bytes = new byte[length];
-            buffer.getBytes(index, bytes);
-
-            BytesMessage bytesMessage = session.createBytesMessage();
-            bytesMessage.writeBytes(bytes);
-            return bytesMessage;
-
-        } catch (IOException exception) {
-            throw new RuntimeException("Could not encode Flow message: " + flowMessage, exception);
+    @Override
+    public Message decode(Session session, javax.jms.Message jmsMessage) throws JMSException {
+        return decode(readBody(jmsMessage));
+    }
 
-        } finally {
-            buffer.release();
+    /**
+     * Get the encoding buffer of the current thread, which is empty. The buffer is reused by later calls on the same
+     * thread, unless it has grown beyond {@value #MAX_RETAINED_CAPACITY} bytes.
+     *
+     * @return the encoding buffer, which is backed by an array.
+     */
+    ByteBuf encodingBuffer() {
+        ByteBuf buffer = encodingBuffers.get();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = allocator.heapBuffer(INITIAL_CAPACITY);
+            encodingBuffers.set(buffer);
         }
+        return buffer.clear();
     }
 
-    @Override
-    public Message decode(Session session, javax.jms.Message jmsMessage) throws JMSException {
+    /**
+     * Read the body of a JMS message into the decoding array of the current thread.
+     *
+     * @param jmsMessage the JMS message, which must be a bytes message.
+     * @return a buffer wrapping the body of the message, which is only valid until the next call on the same thread.
+     * @throws JMSException if the body cannot be read.
+     */
+    ByteBuf readBody(javax.jms.Message jmsMessage) throws JMSException {
 
         if (!(jmsMessage instanceof BytesMessage)) {
             Class<?> type = jmsMessage.getClass();
@@ -329,8 +340,12 @@ public final class CompositeCodec implements JmsCodec<Message> {
 
         BytesMessage bytesMessage = (BytesMessage) jmsMessage;
         int length = (int) bytesMessage.getBodyLength();
-        byte[] bytes = new byte[length];
-        int read = bytesMessage.readBytes(bytes);
+        byte[] bytes = decodingArrays.get();
+        if (bytes.length < length || bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[Math.max(length, INITIAL_CAPACITY)];
+            decodingArrays.set(bytes);
+        }
+        int read = length == 0 ? 0 : bytesMessage.readBytes(bytes, length);
 
         if (read == -1) {
             throw new RuntimeException("Reached end of stream");
@@ -340,29 +355,62 @@ public final class CompositeCodec implements JmsCodec<Message> {
             throw new RuntimeException("Did not read enough bytes");
         }
 
-        ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+        return Unpooled.wrappedBuffer(bytes, 0, length);
+    }
 
-        try {
+    /**
+     * Write the opcode and contents of a Flow message to the given buffer.
+     *
+     * @param buffer      the buffer.
+     * @param flowMessage the Flow message.
+     */
+    void encode(ByteBuf buffer, Message flowMessage) {
 
-            int opcode = ByteBufUtils.readVarInt(buffer);
-            Class<? extends Message> type = types.get(opcode);
-            Codec<? extends Message> codec = codecs.get(type);
+        Class<? extends Message> type = flowMessage.getClass();
+        Integer opcode = opcodes.get(type);
+        Codec<? extends Message> codec = codecs.get(type);
 
-            if (type == null || codec == null) {
-                throw new RuntimeException("Unknown opcode: " + opcode);
-            }
+        if (opcode == null || codec == null) {
+            throw new RuntimeException("Unknown Flow message type: " + type.getName());
+        }
 
-            try {
-                return codec.decode(buffer);
-            } catch (IOException exception) {
-                throw new RuntimeException("Could not decode JMS message: " + type.getName(), exception);
+        try {
+            ByteBufUtils.writeVarInt(buffer, opcode);
+            //noinspection unchecked
+            ByteBuf result = ((Codec<Message>) codec).encode(buffer, flowMessage);
+            if (result != buffer) {
+                throw new IllegalStateException("Codec of " + type.getName() + " did not encode in place");
             }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not encode Flow message: " + flowMessage, exception);
+        }
+    }
 
+    /**
+     * Read a Flow message, preceded by its opcode, from the given buffer.
+     *
+     * @param buffer the buffer.
+     * @return the Flow message.
+     */
+    Message decode(ByteBuf buffer) {
+        int opcode;
+        try {
+            opcode = ByteBufUtils.readVarInt(buffer);
         } catch (IOException exception) {
             throw new RuntimeException("Could not read opcode");
+        }
+
+        Class<? extends Message> type = types.get(opcode);
+        Codec<? extends Message> codec = codecs.get(type);
 
-        } finally {
-            buffer.release();
+        if (type == null || codec == null) {
+            throw new RuntimeException("Unknown opcode: " + opcode);
+        }
+
+        try {
+            return codec.decode(buffer);
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not decode JMS message: " + type.getName(), exception);
         }
     }
 }
@@ -0,0 +1,86 @@
+package science.atlarge.opencraft.opencraft.messaging.codecs;
+
+import com.flowpowered.network.Message;
+import com.flowpowered.network.util.ByteBufUtils;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+/**
+ * The envelope codec packs a batch of messages into a single JMS message, so an external broker handles one message
+ * per topic and tick instead of one per update.
+ *
+ * <p>The body of an envelope is a sequence of entries, each consisting of the length of the entry as a varint followed
+ * by the opcode and contents of the message, as written by the {@link CompositeCodec}. Messages that are not batched
+ * are sent as an envelope with a single entry, and every envelope is decoded into a {@link MessageBatch}.
+ */
+public final class EnvelopeCodec extends CompositeCodec {
+
+    /**
+     * The maximum number of bytes of a varint that holds an int.
+     */
+    private static final int MAX_VARINT_LENGTH = 5;
+
+    @Override
+    public javax.jms.Message encode(Session session, Message flowMessage) throws JMSException {
+        List<Message> messages = flowMessage instanceof MessageBatch
+            ? ((MessageBatch) flowMessage).getMessages()
+            : Collections.singletonList(flowMessage);
+
+        ByteBuf buffer = encodingBuffer();
+        for (Message message : messages) {
+            writeEntry(buffer, message);
+        }
+
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        return bytesMessage;
+    }
+
+    @Override
+    public Message decode(Session session, javax.jms.Message jmsMessage) throws JMSException {
+        ByteBuf buffer = readBody(jmsMessage);
+        List<Message> messages = new ArrayList<>();
+        while (buffer.isReadable()) {
+            int length;
+            try {
+                length = ByteBufUtils.readVarInt(buffer);
+            } catch (IOException exception) {
+                throw new RuntimeException("Could not read entry length");
+            }
+            if (length > buffer.readableBytes()) {
+                throw new RuntimeException("Entry of " + length + " bytes exceeds the envelope");
+            }
+            messages.add(decode(buffer.readSlice(length)));
+        }
+        return new MessageBatch(messages);
+    }
+
+    /**
+     * Write a message to the buffer, preceded by its length. Space for the longest possible length is reserved up
+     * front, and the message is moved back if its length turns out to be shorter, so the message is encoded only once.
+     *
+     * @param buffer  the buffer.
+     * @param message the message.
+     */
+    private void writeEntry(ByteBuf buffer, Message message) {
+        int start = buffer.writerIndex();
+        buffer.writeZero(MAX_VARINT_LENGTH);
+        encode(buffer, message);
+        int end = buffer.writerIndex();
+        int length = end - start - MAX_VARINT_LENGTH;
+
+        buffer.writerIndex(start);
+        ByteBufUtils.writeVarInt(buffer, length);
+        int contents = buffer.writerIndex();
+        if (contents != start + MAX_VARINT_LENGTH) {
+            buffer.setBytes(contents, buffer, start + MAX_VARINT_LENGTH, length);
+        }
+        buffer.writerIndex(contents + length);
+    }
+}
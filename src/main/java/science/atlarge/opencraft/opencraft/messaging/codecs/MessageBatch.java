@@ -0,0 +1,15 @@
+package science.atlarge.opencraft.opencraft.messaging.codecs;
+
+import com.flowpowered.network.Message;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A batch of messages that is sent to a topic of an external broker as a single JMS message.
+ */
+@Data
+public final class MessageBatch implements Message {
+
+    private final List<Message> messages;
+
+}
@@ -0,0 +1,230 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits;
+
+import com.flowpowered.network.Message;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import lombok.Setter;
+import science.atlarge.opencraft.opencraft.entity.meta.MetadataIndex;
+import science.atlarge.opencraft.opencraft.entity.meta.MetadataMap.Entry;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityHeadRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityMetadataMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityVelocityMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+
+/**
+ * The message coalescer collects the messages that dyconits deliver to a subscriber, and merges or drops the messages
+ * that are made redundant by later messages before passing them on. Successive relative moves of an entity are merged
+ * into a single move, and later rotations, teleports, velocities, metadata and block changes supersede earlier ones
+ * for the same entity or block.
+ *
+ * <p>Only runs of these updates are coalesced; any other message acts as a barrier that later messages are never
+ * merged across, so the order of all other messages is preserved.
+ */
+public final class MessageCoalescer implements Consumer<Message> {
+
+    private static final long MOVE = 1;
+    private static final long ROTATION = 2;
+    private static final long HEAD_ROTATION = 3;
+    private static final long TELEPORT = 4;
+    private static final long VELOCITY = 5;
+    private static final long METADATA = 6;
+    private static final long BLOCK = 7;
+
+    /**
+     * The callback to which the coalesced messages are passed.
+     */
+    @Setter
+    private volatile Consumer<Message> callback;
+
+    /**
+     * The pending messages in order. Messages that have been superseded are replaced by null.
+     */
+    private List<Message> pending = new ArrayList<>();
+
+    /**
+     * The index in the pending messages of the last mergeable message for each key.
+     */
+    private final Long2IntMap slots = new Long2IntOpenHashMap();
+
+    /**
+     * Create a message coalescer.
+     *
+     * @param callback the callback to which the coalesced messages are passed.
+     */
+    public MessageCoalescer(Consumer<Message> callback) {
+        this.callback = callback;
+        slots.defaultReturnValue(-1);
+    }
+
+    private static long entityKey(long kind, int id) {
+        return kind << 60 | id & 0xffffffffL;
+    }
+
+    private static long blockKey(int x, int y, int z) {
+        return BLOCK << 60 | (x & 0x3ffffffL) << 34 | (z & 0x3ffffffL) << 8 | y & 0xffL;
+    }
+
+    @Override
+    public synchronized void accept(Message message) {
+        if (message instanceof RelativeEntityPositionMessage) {
+            RelativeEntityPositionMessage move = (RelativeEntityPositionMessage) message;
+            move(move.getId(), move);
+        } else if (message instanceof RelativeEntityPositionRotationMessage) {
+            RelativeEntityPositionRotationMessage move = (RelativeEntityPositionRotationMessage) message;
+            // the move carries a newer rotation than any pending rotation
+            drop(entityKey(ROTATION, move.getId()));
+            move(move.getId(), move);
+        } else if (message instanceof EntityRotationMessage) {
+            int id = ((EntityRotationMessage) message).getId();
+            // later moves must not be merged into a move with an older rotation
+            slots.remove(entityKey(MOVE, id));
+            supersede(entityKey(ROTATION, id), message);
+        } else if (message instanceof EntityTeleportMessage) {
+            int id = ((EntityTeleportMessage) message).getId();
+            drop(entityKey(MOVE, id));
+            drop(entityKey(ROTATION, id));
+            supersede(entityKey(TELEPORT, id), message);
+        } else if (message instanceof EntityHeadRotationMessage) {
+            supersede(entityKey(HEAD_ROTATION, ((EntityHeadRotationMessage) message).getId()), message);
+        } else if (message instanceof EntityVelocityMessage) {
+            supersede(entityKey(VELOCITY, ((EntityVelocityMessage) message).getId()), message);
+        } else if (message instanceof EntityMetadataMessage) {
+            metadata((EntityMetadataMessage) message);
+        } else if (message instanceof BlockChangeMessage) {
+            BlockChangeMessage change = (BlockChangeMessage) message;
+            supersede(blockKey(change.getX(), change.getY(), change.getZ()), message);
+        } else {
+            slots.clear();
+            pending.add(message);
+        }
+    }
+
+    /**
+     * Pass the pending messages on to the callback.
+     */
+    public void flush() {
+        List<Message> messages;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            messages = pending;
+            pending = new ArrayList<>(messages.size());
+            slots.clear();
+        }
+        Consumer<Message> target = callback;
+        for (Message message : messages) {
+            if (message != null) {
+                target.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Drop the pending message with the given key, if any.
+     *
+     * @param key the key of the message.
+     */
+    private void drop(long key) {
+        int slot = slots.remove(key);
+        if (slot >= 0) {
+            pending.set(slot, null);
+        }
+    }
+
+    /**
+     * Append a message, and drop the pending message with the same key.
+     *
+     * @param key     the key of the message.
+     * @param message the message.
+     */
+    private void supersede(long key, Message message) {
+        drop(key);
+        slots.put(key, pending.size());
+        pending.add(message);
+    }
+
+    private void move(int id, Message message) {
+        long key = entityKey(MOVE, id);
+        int slot = slots.get(key);
+        if (slot >= 0) {
+            Message merged = mergeMoves(pending.get(slot), message);
+            if (merged != null) {
+                pending.set(slot, null);
+                message = merged;
+            }
+        }
+        slots.put(key, pending.size());
+        pending.add(message);
+    }
+
+    private void metadata(EntityMetadataMessage message) {
+        long key = entityKey(METADATA, message.getId());
+        int slot = slots.get(key);
+        if (slot >= 0) {
+            EntityMetadataMessage previous = (EntityMetadataMessage) pending.get(slot);
+            Map<MetadataIndex, Entry> entries = new LinkedHashMap<>();
+            previous.getEntries().forEach(entry -> entries.put(entry.index, entry));
+            message.getEntries().forEach(entry -> entries.put(entry.index, entry));
+            List<Entry> merged = new ArrayList<>(entries.values());
+            Collections.sort(merged);
+            message = new EntityMetadataMessage(message.getId(), merged);
+        }
+        supersede(key, message);
+    }
+
+    /**
+     * Merge two successive relative moves of the same entity. The merged move has the rotation of the last move that
+     * has one, if any.
+     *
+     * @param first  the first move.
+     * @param second the second move.
+     * @return the merged move, or null if the sum of the moves cannot be expressed as a relative move.
+     */
+    private static Message mergeMoves(Message first, Message second) {
+        int deltaX = deltaX(first) + deltaX(second);
+        int deltaY = deltaY(first) + deltaY(second);
+        int deltaZ = deltaZ(first) + deltaZ(second);
+        if (deltaX != (short) deltaX || deltaY != (short) deltaY || deltaZ != (short) deltaZ) {
+            return null;
+        }
+        if (second instanceof RelativeEntityPositionRotationMessage) {
+            RelativeEntityPositionRotationMessage move = (RelativeEntityPositionRotationMessage) second;
+            return new RelativeEntityPositionRotationMessage(move.getId(), (short) deltaX, (short) deltaY,
+                (short) deltaZ, move.getRotation(), move.getPitch(), move.isOnGround());
+        }
+        RelativeEntityPositionMessage move = (RelativeEntityPositionMessage) second;
+        if (first instanceof RelativeEntityPositionRotationMessage) {
+            RelativeEntityPositionRotationMessage rotated = (RelativeEntityPositionRotationMessage) first;
+            return new RelativeEntityPositionRotationMessage(move.getId(), (short) deltaX, (short) deltaY,
+                (short) deltaZ, rotated.getRotation(), rotated.getPitch(), move.isOnGround());
+        }
+        return new RelativeEntityPositionMessage(move.getId(), (short) deltaX, (short) deltaY, (short) deltaZ,
+            move.isOnGround());
+    }
+
+    private static int deltaX(Message move) {
+        return move instanceof RelativeEntityPositionMessage ? ((RelativeEntityPositionMessage) move).getDeltaX()
+            : ((RelativeEntityPositionRotationMessage) move).getDeltaX();
+    }
+
+    private static int deltaY(Message move) {
+        return move instanceof RelativeEntityPositionMessage ? ((RelativeEntityPositionMessage) move).getDeltaY()
+            : ((RelativeEntityPositionRotationMessage) move).getDeltaY();
+    }
+
+    private static int deltaZ(Message move) {
+        return move instanceof RelativeEntityPositionMessage ? ((RelativeEntityPositionMessage) move).getDeltaZ()
+            : ((RelativeEntityPositionRotationMessage) move).getDeltaZ();
+    }
+}
@@ -2,11 +2,10 @@ package science.atlarge.opencraft.opencraft.messaging.dyconits.policies;
 
 import com.flowpowered.network.Message;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -20,14 +19,31 @@ import science.atlarge.opencraft.dyconits.policies.DyconitCommand;
 import science.atlarge.opencraft.dyconits.policies.DyconitPolicy;
 import science.atlarge.opencraft.dyconits.policies.DyconitSubscribeCommand;
 import science.atlarge.opencraft.dyconits.policies.DyconitUnsubscribeCommand;
-
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+import science.atlarge.opencraft.opencraft.util.collection.ConcurrentLong2ObjectMap;
+import science.atlarge.opencraft.opencraft.util.collection.ConcurrentLongMultiset;
+
+/**
+ * A policy with a dyconit for each chunk, to which the players that have the chunk in view are subscribed.
+ *
+ * <p>The names of the dyconits of chunks that players are subscribed to are cached by chunk key, so publishing does
+ * not build a string per message. Subscriptions are updated incrementally: when the chunk a player is in changes, only
+ * the chunks that enter and leave the view of the player are subscribed to and unsubscribed from. The state of the
+ * policy is thread-safe, as players are updated in parallel.
+ */
 public class ChunkPolicy implements DyconitPolicy<Player, Message> {
 
     private static final String CATCH_ALL_DYCONIT_NAME = "catch-all";
+    private static final Bounds CHUNK_BOUNDS = new Bounds(Integer.MAX_VALUE / 2, 2);
+
+    /**
+     * A location per thread to copy the locations of players and entities into.
+     */
+    private static final ThreadLocal<Location> SCRATCH = ThreadLocal.withInitial(() -> new Location(null, 0, 0, 0));
 
     private final int viewDistance;
-    private final Map<Player, Location> referenceLocation = new HashMap<>();
-    private final Map<Player, Set<String>> prevSubscriptions = new HashMap<>();
+    private final Map<World, ChunkNames> names = new ConcurrentHashMap<>();
+    private final Map<Player, View> views = new ConcurrentHashMap<>();
 
     public ChunkPolicy(int viewDistance) {
         this.viewDistance = viewDistance;
@@ -38,69 +54,196 @@ public class ChunkPolicy implements DyconitPolicy<Player, Message> {
     public String computeAffectedDyconit(@NotNull Object publisher) {
         if (publisher instanceof Chunk) {
             Chunk chunk = (Chunk) publisher;
-            return chunkToName(chunk);
+            return chunkName(chunk.getWorld(), chunk.getX(), chunk.getZ());
         }
 
         if (publisher instanceof Block) {
-            Chunk chunk = ((Block) publisher).getChunk();
-            return chunkToName(chunk);
+            Block block = (Block) publisher;
+            return chunkName(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
         }
 
         if (publisher instanceof Entity) {
-            Chunk chunk = ((Entity) publisher).getChunk();
-            return chunkToName(chunk);
+            Location location = ((Entity) publisher).getLocation(SCRATCH.get());
+            return chunkName(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
         }
 
         if (publisher instanceof Location) {
-            Chunk chunk = ((Location) publisher).getChunk();
-            return chunkToName(chunk);
+            Location location = (Location) publisher;
+            return chunkName(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
         }
 
         return CATCH_ALL_DYCONIT_NAME;
     }
 
-    private String chunkToName(Chunk chunk) {
-        return chunk.getWorld().getName() + "-" + chunk.getX() + "-" + chunk.getZ();
+    private String chunkName(World world, int x, int z) {
+        ChunkNames worldNames = names.get(world);
+        return worldNames == null ? ChunkNames.create(world, x, z) : worldNames.get(x, z);
     }
 
     @Override
     public @NotNull List<DyconitCommand<Player, Message>> update(Subscriber<Player, Message> sub) {
         Player player = sub.getKey();
-        Location location = player.getLocation();
-        List<DyconitCommand<Player, Message>> chunks = new ArrayList<>();
-
-        if (referenceLocation.containsKey(player) && referenceLocation.get(player).distanceSquared(location) < 256) {
-            return chunks;
-        }
-        referenceLocation.put(player, location);
-
+        Location location = player.getLocation(SCRATCH.get());
         World world = location.getWorld();
         int centerX = location.getBlockX() >> 4;
         int centerZ = location.getBlockZ() >> 4;
-        int radius = Math.min(viewDistance, sub.getKey().getViewDistance());
-
-        Set<String> playerSubscriptions = new HashSet<>();
-        chunks.add(new DyconitSubscribeCommand<>(sub.getKey(), sub.getCallback(), Bounds.Companion.getZERO(), CATCH_ALL_DYCONIT_NAME));
-        for (int x = centerX - radius; x <= centerX + radius; x++) {
-            for (int z = centerZ - radius; z <= centerZ + radius; z++) {
-                Chunk chunk = world.getChunkAt(x, z);
-                String dyconitName = chunkToName(chunk);
-                chunks.add(new DyconitSubscribeCommand<>(sub.getKey(), sub.getCallback(), new Bounds(Integer.MAX_VALUE / 2, 2), dyconitName));
-                playerSubscriptions.add(dyconitName);
+        int radius = Math.min(viewDistance, player.getViewDistance());
+        View previous = views.get(player);
+        if (previous != null && previous.matches(world, centerX, centerZ, radius)) {
+            return Collections.emptyList();
+        }
+        View current = new View(world, centerX, centerZ, radius);
+        views.put(player, current);
+
+        List<DyconitCommand<Player, Message>> commands = new ArrayList<>();
+        if (previous == null) {
+            commands.add(new DyconitSubscribeCommand<>(player, sub.getCallback(), Bounds.Companion.getZERO(),
+                CATCH_ALL_DYCONIT_NAME));
+        } else {
+            ChunkNames previousNames = names.computeIfAbsent(previous.world, ChunkNames::new);
+            for (int x = previous.minX(); x <= previous.maxX(); x++) {
+                for (int z = previous.minZ(); z <= previous.maxZ(); z++) {
+                    if (!current.contains(previous.world, x, z)) {
+                        commands.add(new DyconitUnsubscribeCommand<>(player, previousNames.unsubscribe(x, z)));
+                    }
+                }
             }
         }
-        Set<String> prevPlayerSubscriptions = prevSubscriptions.computeIfAbsent(player, p -> new HashSet<>());
-        for (String dyconitName : prevPlayerSubscriptions) {
-            if (!playerSubscriptions.contains(dyconitName)) {
-                chunks.add(new DyconitUnsubscribeCommand<>(player, dyconitName));
+
+        ChunkNames currentNames = names.computeIfAbsent(current.world, ChunkNames::new);
+        for (int x = current.minX(); x <= current.maxX(); x++) {
+            for (int z = current.minZ(); z <= current.maxZ(); z++) {
+                Bounds bounds = chunkBounds(x - current.centerX, z - current.centerZ);
+                String dyconitName;
+                if (previous == null || !previous.contains(current.world, x, z)) {
+                    dyconitName = currentNames.subscribe(x, z);
+                } else if (chunkBounds(x - previous.centerX, z - previous.centerZ) != bounds) {
+                    dyconitName = currentNames.get(x, z);
+                } else {
+                    continue;
+                }
+                commands.add(new DyconitSubscribeCommand<>(player, sub.getCallback(), bounds, dyconitName));
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Forget the subscriptions of the given player, e.g. because it has been unsubscribed from all dyconits.
+     *
+     * @param player the player.
+     */
+    public void removeSubscriber(Player player) {
+        View view = views.remove(player);
+        if (view == null) {
+            return;
+        }
+        ChunkNames worldNames = names.computeIfAbsent(view.world, ChunkNames::new);
+        for (int x = view.minX(); x <= view.maxX(); x++) {
+            for (int z = view.minZ(); z <= view.maxZ(); z++) {
+                worldNames.unsubscribe(x, z);
             }
         }
-        prevSubscriptions.put(player, playerSubscriptions);
-        return chunks;
+    }
+
+    /**
+     * Get the bounds of the dyconit of a chunk in view of a player. Chunks that keep the same bounds object when the
+     * player moves are not subscribed to again.
+     *
+     * @param dx the x-offset of the chunk from the chunk of the player.
+     * @param dz the z-offset of the chunk from the chunk of the player.
+     * @return the bounds of the dyconit.
+     */
+    protected Bounds chunkBounds(int dx, int dz) {
+        return CHUNK_BOUNDS;
     }
 
     @Override
     public int weigh(Message message) {
-        return 1;
+        return MessageWeigher.weigh(message);
+    }
+
+    /**
+     * The square of chunks a player has in view.
+     */
+    private static final class View {
+
+        private final World world;
+        private final int centerX;
+        private final int centerZ;
+        private final int radius;
+
+        View(World world, int centerX, int centerZ, int radius) {
+            this.world = world;
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.radius = radius;
+        }
+
+        int minX() {
+            return centerX - radius;
+        }
+
+        int maxX() {
+            return centerX + radius;
+        }
+
+        int minZ() {
+            return centerZ - radius;
+        }
+
+        int maxZ() {
+            return centerZ + radius;
+        }
+
+        boolean matches(World world, int centerX, int centerZ, int radius) {
+            return this.world == world && this.centerX == centerX && this.centerZ == centerZ && this.radius == radius;
+        }
+
+        boolean contains(World world, int x, int z) {
+            return this.world == world && Math.abs(x - centerX) <= radius && Math.abs(z - centerZ) <= radius;
+        }
+    }
+
+    /**
+     * The dyconit names of the chunks of a world that players are subscribed to, by chunk key.
+     */
+    private static final class ChunkNames {
+
+        private final World world;
+        private final ConcurrentLong2ObjectMap<String> names = new ConcurrentLong2ObjectMap<>();
+        private final ConcurrentLongMultiset subscribers = new ConcurrentLongMultiset();
+
+        ChunkNames(World world) {
+            this.world = world;
+        }
+
+        static String create(World world, int x, int z) {
+            return world.getName() + "-" + x + "-" + z;
+        }
+
+        /**
+         * Get the name of the dyconit of a chunk, which is only cached if players are subscribed to the chunk.
+         */
+        String get(int x, int z) {
+            String name = names.get(GlowChunk.Key.toLong(x, z));
+            return name == null ? create(world, x, z) : name;
+        }
+
+        String subscribe(int x, int z) {
+            long key = GlowChunk.Key.toLong(x, z);
+            subscribers.add(key);
+            return names.computeIfAbsent(key, ignored -> create(world, x, z));
+        }
+
+        String unsubscribe(int x, int z) {
+            long key = GlowChunk.Key.toLong(x, z);
+            String name = get(x, z);
+            subscribers.remove(key);
+            if (!subscribers.contains(key)) {
+                names.remove(key, name);
+            }
+            return name;
+        }
     }
 }
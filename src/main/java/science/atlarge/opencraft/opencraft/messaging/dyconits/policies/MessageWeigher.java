@@ -0,0 +1,59 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits.policies;
+
+import com.flowpowered.network.Message;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.DestroyEntitiesMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityEquipmentMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityMetadataMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityVelocityMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnMobMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnObjectMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnPaintingMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnPlayerMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnXpOrbMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+
+/**
+ * Weighs messages by their importance to the player, for the numerical bounds of dyconits. Small, frequent updates such
+ * as relative moves and rotations weigh one, so many of them may be delayed, while messages that the player would
+ * notice immediately, such as spawns, teleports and block changes, are heavier and flush a dyconit sooner.
+ */
+public final class MessageWeigher {
+
+    /**
+     * The weight of messages that have no explicit weight.
+     */
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private static final Map<Class<? extends Message>, Integer> WEIGHTS =
+        ImmutableMap.<Class<? extends Message>, Integer>builder()
+            .put(SpawnMobMessage.class, 8)
+            .put(SpawnObjectMessage.class, 8)
+            .put(SpawnPaintingMessage.class, 8)
+            .put(SpawnPlayerMessage.class, 8)
+            .put(SpawnXpOrbMessage.class, 8)
+            .put(DestroyEntitiesMessage.class, 8)
+            .put(EntityTeleportMessage.class, 8)
+            .put(BlockChangeMessage.class, 4)
+            .put(MultiBlockChangeMessage.class, 4)
+            .put(EntityEquipmentMessage.class, 2)
+            .put(EntityMetadataMessage.class, 2)
+            .put(EntityVelocityMessage.class, 2)
+            .build();
+
+    private MessageWeigher() {
+    }
+
+    /**
+     * Get the weight of the given message.
+     *
+     * @param message the message.
+     * @return the weight of the message, which is at least one.
+     */
+    public static int weigh(Message message) {
+        return WEIGHTS.getOrDefault(message.getClass(), DEFAULT_WEIGHT);
+    }
+}
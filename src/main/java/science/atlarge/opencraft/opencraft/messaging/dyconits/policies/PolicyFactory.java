@@ -5,11 +5,17 @@ import org.bukkit.Server;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.Nullable;
 import science.atlarge.opencraft.dyconits.policies.DyconitPolicy;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
 
 public class PolicyFactory {
     public static @Nullable DyconitPolicy<Player, Message> policyFromString(String policyName, Server server) {
         if (nameMatches(ChunkPolicy.class, policyName)) {
             return new ChunkPolicy(server.getViewDistance());
+        } else if (nameMatches(TieredChunkPolicy.class, policyName)) {
+            ServerConfig config = ((GlowServer) server).getConfig();
+            return TieredChunkPolicy.fromConfigMaps(server.getViewDistance(),
+                config.getMapList(ServerConfig.Key.OPENCRAFT_POLICY_TIERS));
         } else if (nameMatches(ZeroBoundsPolicy.class, policyName)) {
             return new ZeroBoundsPolicy();
         } else if (nameMatches(InfiniteBoundsPolicy.class, policyName)) {
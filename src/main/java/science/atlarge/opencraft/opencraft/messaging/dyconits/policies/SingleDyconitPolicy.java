@@ -36,6 +36,6 @@ public class SingleDyconitPolicy implements DyconitPolicy<Player, Message> {
 
     @Override
     public int weigh(Message message) {
-        return 1;
+        return MessageWeigher.weigh(message);
     }
 }
@@ -0,0 +1,130 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits.policies;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import science.atlarge.opencraft.dyconits.Bounds;
+
+/**
+ * A chunk policy that assigns looser bounds to chunks further away from the player. The chunks in view are divided
+ * into concentric square rings, or tiers, each with their own staleness and numerical bound. Chunks beyond the
+ * outermost tier share its bounds.
+ *
+ * <p>This trades precision of updates far away from the player, which are barely visible, for fewer messages.
+ */
+public class TieredChunkPolicy extends ChunkPolicy {
+
+    /**
+     * The tiers, ordered from the innermost to the outermost ring.
+     */
+    @Getter
+    private final List<Tier> tiers;
+
+    /**
+     * Create a tiered chunk policy.
+     *
+     * @param viewDistance the maximum view distance of players, in chunks.
+     * @param tiers        the tiers, in any order. There must be at least one tier.
+     */
+    public TieredChunkPolicy(int viewDistance, List<Tier> tiers) {
+        super(viewDistance);
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("A tiered chunk policy needs at least one tier");
+        }
+        List<Tier> sorted = new ArrayList<>(tiers);
+        sorted.sort(Comparator.comparingInt(Tier::getRadius));
+        this.tiers = sorted;
+    }
+
+    /**
+     * Create a tiered chunk policy from the tiers in the configuration.
+     *
+     * @param viewDistance the maximum view distance of players, in chunks.
+     * @param configMaps   the tiers, as maps with a radius, a staleness and a numerical bound.
+     * @return the tiered chunk policy.
+     */
+    public static TieredChunkPolicy fromConfigMaps(int viewDistance, List<Map<?, ?>> configMaps) {
+        return new TieredChunkPolicy(viewDistance,
+            configMaps.stream().map(Tier::fromConfigMap).collect(Collectors.toList()));
+    }
+
+    @Override
+    protected Bounds chunkBounds(int dx, int dz) {
+        int distance = Math.max(Math.abs(dx), Math.abs(dz));
+        for (Tier tier : tiers) {
+            if (distance <= tier.radius) {
+                return tier.bounds;
+            }
+        }
+        return tiers.get(tiers.size() - 1).bounds;
+    }
+
+    /**
+     * A ring of chunks around the player that share the same bounds.
+     */
+    public static final class Tier {
+
+        private static final String RADIUS_KEY = "radius";
+        private static final String STALENESS_KEY = "staleness";
+        private static final String NUMERICAL_KEY = "numerical";
+
+        /**
+         * The outer radius of the ring, in chunks. The ring starts just outside the previous tier.
+         */
+        @Getter
+        private final int radius;
+
+        /**
+         * The maximum time an update may be delayed, in milliseconds.
+         */
+        @Getter
+        private final int staleness;
+
+        /**
+         * The maximum total weight of the delayed updates.
+         */
+        @Getter
+        private final int numerical;
+
+        private final Bounds bounds;
+
+        /**
+         * Create a tier.
+         *
+         * @param radius    the outer radius of the ring, in chunks.
+         * @param staleness the staleness bound, in milliseconds.
+         * @param numerical the numerical bound.
+         */
+        public Tier(int radius, int staleness, int numerical) {
+            if (radius < 0 || staleness < 0 || numerical < 0) {
+                throw new IllegalArgumentException("The radius and bounds of a tier cannot be negative");
+            }
+            this.radius = radius;
+            this.staleness = staleness;
+            this.numerical = numerical;
+            this.bounds = new Bounds(staleness, numerical);
+        }
+
+        /**
+         * Read a tier from the configuration.
+         *
+         * @param configMap the map with the radius, staleness and numerical bound of the tier.
+         * @return the tier.
+         */
+        public static Tier fromConfigMap(Map<?, ?> configMap) {
+            return new Tier(getInt(configMap, RADIUS_KEY), getInt(configMap, STALENESS_KEY),
+                getInt(configMap, NUMERICAL_KEY));
+        }
+
+        private static int getInt(Map<?, ?> configMap, String key) {
+            Object value = configMap.get(key);
+            if (!(value instanceof Integer)) {
+                throw new IllegalArgumentException("Tier '" + configMap + "' needs an integer " + key);
+            }
+            return (Integer) value;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import java.util.logging.Level;
+import org.apache.activemq.broker.BrokerService;
+import science.atlarge.opencraft.opencraft.GlowServer;
+
+/**
+ * The embedded broker lets one node of a sharded world run the ActiveMQ broker that connects the nodes, so no separate
+ * broker has to be started. The broker keeps no messages on disk, and accepts the other nodes over TCP.
+ */
+public final class EmbeddedBroker {
+
+    private static BrokerService broker;
+
+    private EmbeddedBroker() {
+    }
+
+    /**
+     * Start the broker, unless it has already been started.
+     *
+     * @param port the TCP port on which the broker accepts nodes.
+     * @return the URL at which this node connects to the broker.
+     * @throws Exception if the broker could not be started.
+     */
+    public static synchronized String start(int port) throws Exception {
+        if (broker == null) {
+            BrokerService service = new BrokerService();
+            service.setBrokerName("opencraft");
+            service.setPersistent(false);
+            service.setUseJmx(false);
+            service.setUseShutdownHook(false);
+            service.addConnector("tcp://0.0.0.0:" + port);
+            service.start();
+            broker = service;
+            GlowServer.logger.info("Started the sharding broker on port " + port);
+        }
+        return "tcp://localhost:" + port;
+    }
+
+    /**
+     * Stop the broker, if it has been started.
+     */
+    public static synchronized void stop() {
+        if (broker == null) {
+            return;
+        }
+        try {
+            broker.stop();
+            broker.waitUntilStopped();
+        } catch (Exception e) {
+            GlowServer.logger.log(Level.WARNING, "Could not stop the sharding broker", e);
+        }
+        broker = null;
+    }
+}
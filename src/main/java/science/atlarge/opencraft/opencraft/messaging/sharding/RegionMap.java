@@ -0,0 +1,180 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * The region map divides a world into square regions of chunks, and assigns each region to one of the nodes that
+ * together simulate the world. Regions are assigned in columns: the columns of regions along the x-axis are owned by
+ * the nodes in turn, so each region borders at most two other nodes.
+ */
+public final class RegionMap {
+
+    private static final String NAME_KEY = "name";
+    private static final String SERVER_KEY = "server";
+
+    /**
+     * The width of a region, in chunks.
+     */
+    @Getter
+    private final int regionSize;
+
+    /**
+     * The nodes, in the order in which they own columns of regions.
+     */
+    @Getter
+    private final List<Node> nodes;
+
+    /**
+     * The node that this server runs.
+     */
+    @Getter
+    private final Node localNode;
+
+    /**
+     * Create a region map.
+     *
+     * @param regionSize the width of a region, in chunks.
+     * @param nodes      the nodes that simulate the world. There must be at least one node.
+     * @param localName  the name of the node that this server runs, which must be one of the nodes.
+     */
+    public RegionMap(int regionSize, List<Node> nodes, String localName) {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("The region size must be positive");
+        }
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A region map needs at least one node");
+        }
+        this.regionSize = regionSize;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.localNode = nodes.stream()
+            .filter(node -> node.getName().equals(localName))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Node '" + localName + "' is not in " + nodes));
+    }
+
+    /**
+     * Create a region map from the nodes in the configuration.
+     *
+     * @param regionSize the width of a region, in chunks.
+     * @param configMaps the nodes, as maps with a name and, optionally, the name of the server behind a proxy.
+     * @param localName  the name of the node that this server runs.
+     * @return the region map.
+     */
+    public static RegionMap fromConfigMaps(int regionSize, List<Map<?, ?>> configMaps, String localName) {
+        List<Node> nodes = new ArrayList<>();
+        for (Map<?, ?> configMap : configMaps) {
+            nodes.add(Node.fromConfigMap(configMap));
+        }
+        return new RegionMap(regionSize, nodes, localName);
+    }
+
+    /**
+     * Get the position of the node that this server runs among the nodes, which differs between the nodes.
+     *
+     * @return the index of the local node.
+     */
+    public int getLocalIndex() {
+        return nodes.indexOf(localNode);
+    }
+
+    /**
+     * Get the node that owns the chunk with the given coordinates.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     * @return the owner of the chunk.
+     */
+    public Node ownerOf(int chunkX, int chunkZ) {
+        return nodes.get(Math.floorMod(Math.floorDiv(chunkX, regionSize), nodes.size()));
+    }
+
+    /**
+     * Check whether this server owns the chunk with the given coordinates.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     * @return whether the chunk is local.
+     */
+    public boolean isLocal(int chunkX, int chunkZ) {
+        return ownerOf(chunkX, chunkZ) == localNode;
+    }
+
+    /**
+     * Get the other nodes that own a chunk within the given distance of a chunk. Players on these nodes may have the
+     * chunk in view, so these nodes need the updates of the chunk.
+     *
+     * @param chunkX   the x-coordinate of the chunk.
+     * @param chunkZ   the z-coordinate of the chunk.
+     * @param distance the distance, in chunks.
+     * @return the neighbouring nodes, which is empty if the chunk is not near a border with another node.
+     */
+    public List<Node> neighboursOf(int chunkX, int chunkZ, int distance) {
+        Node owner = ownerOf(chunkX, chunkZ);
+        int minRegion = Math.floorDiv(chunkX - distance, regionSize);
+        int maxRegion = Math.floorDiv(chunkX + distance, regionSize);
+        List<Node> neighbours = Collections.emptyList();
+        for (int region = minRegion; region <= maxRegion; region++) {
+            Node node = nodes.get(Math.floorMod(region, nodes.size()));
+            if (node != owner && !neighbours.contains(node)) {
+                if (neighbours.isEmpty()) {
+                    neighbours = new ArrayList<>(2);
+                }
+                neighbours.add(node);
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * A server process that simulates part of a world.
+     */
+    public static final class Node {
+
+        /**
+         * The unique name of the node.
+         */
+        @Getter
+        private final String name;
+
+        /**
+         * The name of the server behind a proxy that players are sent to when they enter the regions of this node.
+         */
+        @Getter
+        private final String server;
+
+        /**
+         * Create a node.
+         *
+         * @param name   the unique name of the node.
+         * @param server the name of the server behind a proxy.
+         */
+        public Node(String name, String server) {
+            this.name = name;
+            this.server = server;
+        }
+
+        /**
+         * Read a node from the configuration.
+         *
+         * @param configMap the map with the name and, optionally, the server of the node.
+         * @return the node.
+         */
+        public static Node fromConfigMap(Map<?, ?> configMap) {
+            Object name = configMap.get(NAME_KEY);
+            if (!(name instanceof String)) {
+                throw new IllegalArgumentException("Node '" + configMap + "' needs a name");
+            }
+            Object server = configMap.get(SERVER_KEY);
+            return new Node((String) name, server instanceof String ? (String) server : (String) name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
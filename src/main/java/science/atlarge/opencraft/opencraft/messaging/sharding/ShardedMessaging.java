@@ -0,0 +1,645 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import com.flowpowered.network.Message;
+import com.google.common.collect.ImmutableSet;
+import io.netty.channel.ChannelFuture;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.Topic;
+import lombok.Getter;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.block.entity.BlockEntity;
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+import science.atlarge.opencraft.opencraft.entity.GlowEntity;
+import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
+import science.atlarge.opencraft.opencraft.io.entity.EntityStorage;
+import science.atlarge.opencraft.opencraft.messaging.Messaging;
+import science.atlarge.opencraft.opencraft.messaging.codecs.EnvelopeCodec;
+import science.atlarge.opencraft.opencraft.messaging.codecs.MessageBatch;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.DestroyEntitiesMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityEquipmentMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityHeadRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityMetadataMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityVelocityMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockActionMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.ChunkDataMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.PluginMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.UpdateBlockEntityMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.UpdateSignMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.UserListItemMessage;
+import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
+import science.atlarge.opencraft.opencraft.util.nbt.NbtInputStream;
+import science.atlarge.opencraft.opencraft.util.nbt.NbtOutputStream;
+
+/**
+ * Sharded messaging lets several server processes, or nodes, simulate one world together. The world is divided into
+ * regions by a {@link RegionMap}, and each node simulates the regions it owns.
+ *
+ * <p>The block and chunk messages published in chunks near a border with other nodes are also collected per chunk,
+ * and sent to those nodes through a JMS broker when the messaging is flushed, as a single envelope per chunk and node.
+ * The envelopes received from other nodes are published to the local messaging system at the next flush, so local
+ * players that have the chunk in view receive them. The block changes among them are also applied to the chunk if it
+ * is loaded on this node, so the chunk is sent to players with these changes.
+ *
+ * <p>The entities in border chunks are shown to the players of the neighbouring nodes in the same way: at each flush,
+ * the entities that entered these chunks are spawned on the neighbouring nodes, and the entities that left them are
+ * destroyed there. In between, their movement and metadata are forwarded. The nodes allocate entity ids from their own
+ * partitions, so the ids of these entities do not collide with those of the entities of the receiving node.
+ *
+ * <p>A player that enters a region owned by another node is handed off at the next flush: its state is sent to the new
+ * owner together with the location at which it arrives, and the player is sent to the server of the new owner through
+ * the BungeeCord plugin channel of the proxy in front of the nodes. The new owner loads that state instead of its own
+ * copy when the player joins. If the proxy cannot be reached, or the player is still connected to this node after
+ * {@link #HANDOFF_TIMEOUT}, the handoff is tried again.
+ */
+public final class ShardedMessaging implements Messaging {
+
+    private static final String UPDATES_TYPE = "updates";
+    private static final String HANDOFF_TYPE = "handoff";
+    private static final String CHUNK_X_PROPERTY = "chunkX";
+    private static final String CHUNK_Z_PROPERTY = "chunkZ";
+    private static final String PROXY_CHANNEL = "BungeeCord";
+
+    /**
+     * The time in milliseconds after which a player that is still connected to this node is handed off again.
+     */
+    static final long HANDOFF_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The types of the messages about blocks and chunks that are sent to other nodes.
+     */
+    private static final Set<Class<? extends Message>> FORWARDED_MESSAGES = ImmutableSet.of(
+        BlockActionMessage.class,
+        BlockChangeMessage.class,
+        ChunkDataMessage.class,
+        MultiBlockChangeMessage.class,
+        UpdateBlockEntityMessage.class,
+        UpdateSignMessage.class);
+
+    /**
+     * The types of the messages about entities that are sent to other nodes, while the entity is spawned on them.
+     */
+    private static final Set<Class<? extends Message>> FORWARDED_ENTITY_MESSAGES = ImmutableSet.of(
+        EntityEquipmentMessage.class,
+        EntityHeadRotationMessage.class,
+        EntityMetadataMessage.class,
+        EntityRotationMessage.class,
+        EntityTeleportMessage.class,
+        EntityVelocityMessage.class,
+        RelativeEntityPositionMessage.class,
+        RelativeEntityPositionRotationMessage.class);
+
+    private final Messaging local;
+    private final GlowWorld world;
+
+    /**
+     * The assignment of regions to nodes.
+     */
+    @Getter
+    private final RegionMap regions;
+    private final int viewDistance;
+    private final EnvelopeCodec codec = new EnvelopeCodec();
+    private final Function<GlowPlayer, CompoundTag> stateWriter;
+    private final BiConsumer<GlowPlayer, CompoundTag> stateReader;
+
+    private final Connection connection;
+    private final Session session;
+    private final MessageProducer producer;
+    private final Map<RegionMap.Node, Topic> topics = new ConcurrentHashMap<>();
+
+    /**
+     * The messages published in border chunks since the last flush, by chunk key.
+     */
+    private final Map<Long, List<Message>> outgoing = new ConcurrentHashMap<>();
+
+    /**
+     * The entities that are spawned on other nodes, by entity id.
+     */
+    private final Map<Integer, Announcement> announced = new ConcurrentHashMap<>();
+
+    /**
+     * The envelopes received from other nodes since the last flush.
+     */
+    private final Queue<Incoming> incoming = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The time at which each player that is being handed off to another node was last handed off.
+     */
+    private final Map<UUID, Long> handedOff = new ConcurrentHashMap<>();
+    private final Queue<Handoff> handoffs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The players that other nodes have handed off to this node, by player.
+     */
+    private final Map<UUID, Arrival> arrivals = new ConcurrentHashMap<>();
+
+    /**
+     * Create a sharded messaging system.
+     *
+     * @param local        the messaging system of the players on this node.
+     * @param world        the world.
+     * @param regions      the assignment of regions to nodes.
+     * @param viewDistance the maximum view distance of players, in chunks.
+     * @param factory      the factory of connections to the broker that connects the nodes.
+     * @throws JMSException if the broker cannot be reached.
+     */
+    public ShardedMessaging(Messaging local, GlowWorld world, RegionMap regions, int viewDistance,
+                            ConnectionFactory factory) throws JMSException {
+        this(local, world, regions, viewDistance, factory, player -> {
+            CompoundTag state = new CompoundTag();
+            EntityStorage.save(player, state);
+            return state;
+        }, EntityStorage::load);
+    }
+
+    /**
+     * Create a sharded messaging system which stores the state of handed off players with the given functions.
+     */
+    ShardedMessaging(Messaging local, GlowWorld world, RegionMap regions, int viewDistance, ConnectionFactory factory,
+                     Function<GlowPlayer, CompoundTag> stateWriter, BiConsumer<GlowPlayer, CompoundTag> stateReader)
+        throws JMSException {
+        this.local = local;
+        this.world = world;
+        this.regions = regions;
+        this.viewDistance = viewDistance;
+        this.stateWriter = stateWriter;
+        this.stateReader = stateReader;
+
+        connection = factory.createConnection();
+        try {
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(null);
+
+            // the consumer gets its own session, as it is called on a thread of the broker client
+            Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(topicOf(consumerSession, regions.getLocalNode()));
+            consumer.setMessageListener(this::receive);
+            connection.start();
+        } catch (JMSException exception) {
+            connection.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Load the state of a player that another node handed off to this node, and place it where it left that node.
+     *
+     * @param player the player that joins this node.
+     * @return whether the player was handed off to this node.
+     */
+    public boolean arrive(GlowPlayer player) {
+        Arrival arrival = arrivals.remove(player.getUniqueId());
+        if (arrival == null) {
+            return false;
+        }
+        stateReader.accept(player, arrival.state);
+        player.setRawLocation(arrival.location, false);
+        return true;
+    }
+
+    @Override
+    public void update(GlowPlayer sub, Consumer<Message> callback) {
+        // only decide on the handoff here, as players are updated in parallel; the state is taken at the flush
+        Location location = sub.getLocation();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        if (sub.getWorld() == world && !regions.isLocal(chunkX, chunkZ)) {
+            long now = System.currentTimeMillis();
+            Long previous = handedOff.get(sub.getUniqueId());
+            if (previous == null || now - previous > HANDOFF_TIMEOUT) {
+                if (previous != null) {
+                    GlowServer.logger.warning(sub.getName() + " was not moved by the proxy, handing off again");
+                }
+                handedOff.put(sub.getUniqueId(), now);
+                handoffs.add(new Handoff(sub, location, regions.ownerOf(chunkX, chunkZ)));
+            }
+        } else {
+            handedOff.remove(sub.getUniqueId());
+        }
+        local.update(sub, callback);
+    }
+
+    @Override
+    public void remove(GlowPlayer sub) {
+        handedOff.remove(sub.getUniqueId());
+        local.remove(sub);
+    }
+
+    @Override
+    public void publish(Object sub, Message message) {
+        local.publish(sub, message);
+
+        if (sub instanceof GlowEntity && FORWARDED_ENTITY_MESSAGES.contains(message.getClass())) {
+            Announcement announcement = announced.get(((GlowEntity) sub).getEntityId());
+            if (announcement != null && announcement.entity == sub) {
+                queue(announcement.chunk, Collections.singletonList(message));
+            }
+            return;
+        }
+        if (!FORWARDED_MESSAGES.contains(message.getClass())) {
+            return;
+        }
+        Location location = locationOf(sub);
+        if (location == null) {
+            return;
+        }
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        if (regions.neighboursOf(chunkX, chunkZ, viewDistance).isEmpty()) {
+            return;
+        }
+        queue(GlowChunk.Key.toLong(chunkX, chunkZ), Collections.singletonList(message));
+    }
+
+    @Override
+    public void flush() {
+        Incoming received;
+        while ((received = incoming.poll()) != null) {
+            Location location = new Location(world, (received.chunkX << 4) + 8, 0, (received.chunkZ << 4) + 8);
+            for (Message message : received.messages) {
+                applyRemote(message);
+                local.publish(location, message);
+            }
+        }
+        local.flush();
+
+        announceEntities();
+        try {
+            sendUpdates();
+            sendHandoffs();
+        } catch (JMSException exception) {
+            GlowServer.logger.log(Level.WARNING, "Could not send updates of " + world.getName() + " to other nodes",
+                exception);
+        }
+    }
+
+    @Override
+    public void close() {
+        local.close();
+        try {
+            connection.close();
+        } catch (JMSException exception) {
+            GlowServer.logger.log(Level.WARNING, "Could not close connection to other nodes", exception);
+        }
+    }
+
+    /**
+     * Apply a change that another node made to its blocks to the copy of their chunk on this node, if it is loaded, so
+     * the change is kept when the chunk is sent to players again. The change is not published again, and does not
+     * cause block updates, as the node that owns the blocks simulates them.
+     *
+     * @param message the message received from the other node.
+     */
+    private void applyRemote(Message message) {
+        try {
+            if (message instanceof BlockChangeMessage) {
+                BlockChangeMessage change = (BlockChangeMessage) message;
+                GlowChunk chunk = loadedChunk(change.getX() >> 4, change.getZ() >> 4);
+                if (chunk != null) {
+                    applyBlockChange(chunk, change);
+                }
+            } else if (message instanceof MultiBlockChangeMessage) {
+                MultiBlockChangeMessage change = (MultiBlockChangeMessage) message;
+                GlowChunk chunk = loadedChunk(change.getChunkX(), change.getChunkZ());
+                if (chunk != null) {
+                    for (BlockChangeMessage record : change.getRecords()) {
+                        applyBlockChange(chunk, record);
+                    }
+                }
+            } else if (message instanceof UpdateBlockEntityMessage) {
+                UpdateBlockEntityMessage update = (UpdateBlockEntityMessage) message;
+                GlowChunk chunk = loadedChunk(update.getX() >> 4, update.getZ() >> 4);
+                BlockEntity blockEntity = chunk == null ? null
+                    : chunk.getEntity(update.getX() & 0xF, update.getY(), update.getZ() & 0xF);
+                if (blockEntity != null) {
+                    blockEntity.loadNbt(update.getNbt());
+                    chunk.markStateModified();
+                }
+            }
+        } catch (RuntimeException e) {
+            GlowServer.logger.log(Level.WARNING, "Could not apply a change from another node to " + world.getName(),
+                e);
+        }
+    }
+
+    private GlowChunk loadedChunk(int chunkX, int chunkZ) {
+        GlowChunk chunk = world.getChunkManager().getChunkIfPresent(GlowChunk.Key.toLong(chunkX, chunkZ));
+        return chunk != null && chunk.isLoaded() ? chunk : null;
+    }
+
+    private static void applyBlockChange(GlowChunk chunk, BlockChangeMessage change) {
+        int x = change.getX() & 0xF;
+        int z = change.getZ() & 0xF;
+        int y = change.getY();
+        int type = change.getType() >> 4;
+        int metaData = change.getType() & 0xF;
+        // setting the type also clears the metadata
+        if (chunk.getType(x, z, y) != type) {
+            chunk.setType(x, z, y, type);
+        }
+        if (chunk.getMetaData(x, z, y) != metaData) {
+            chunk.setMetaData(x, z, y, metaData);
+        }
+    }
+
+    /**
+     * Queue messages to be sent to the nodes near a chunk at the next flush.
+     *
+     * @param key      the key of the chunk.
+     * @param messages the messages.
+     */
+    private void queue(long key, Collection<? extends Message> messages) {
+        outgoing.compute(key, (k, queued) -> {
+            if (queued == null) {
+                queued = new ArrayList<>();
+            }
+            queued.addAll(messages);
+            return queued;
+        });
+    }
+
+    /**
+     * Spawn the entities that entered border chunks on the nodes near them, and destroy the entities that left these
+     * chunks or the world. An entity that moves to chunks near other nodes is destroyed, and spawned again at the next
+     * flush, as the envelopes of different chunks may arrive in any order.
+     */
+    private void announceEntities() {
+        for (GlowEntity entity : world.getEntityManager()) {
+            Location location = entity.getLocation();
+            int chunkX = location.getBlockX() >> 4;
+            int chunkZ = location.getBlockZ() >> 4;
+            long key = GlowChunk.Key.toLong(chunkX, chunkZ);
+            // entities outside the regions of this node are not simulated here, and players there are handed off
+            List<RegionMap.Node> nodes = entity.isRemoved() || !regions.isLocal(chunkX, chunkZ)
+                ? Collections.emptyList() : regions.neighboursOf(chunkX, chunkZ, viewDistance);
+
+            Announcement announcement = announced.get(entity.getEntityId());
+            if (announcement == null) {
+                if (!nodes.isEmpty()) {
+                    queue(key, spawnMessages(entity));
+                    announced.put(entity.getEntityId(), new Announcement(entity, key, nodes));
+                }
+            } else if (announcement.entity == entity && announcement.nodes.equals(nodes)) {
+                announcement.chunk = key;
+            } else {
+                destroy(announcement);
+            }
+        }
+        for (Announcement announcement : announced.values()) {
+            if (!announcement.entity.isValid()) {
+                destroy(announcement);
+            }
+        }
+    }
+
+    private void destroy(Announcement announcement) {
+        GlowEntity entity = announcement.entity;
+        announced.remove(entity.getEntityId(), announcement);
+        List<Message> messages = new ArrayList<>(2);
+        messages.add(new DestroyEntitiesMessage(Collections.singletonList(entity.getEntityId())));
+        if (entity instanceof GlowPlayer) {
+            messages.add(UserListItemMessage.removeOne(entity.getUniqueId()));
+        }
+        queue(announcement.chunk, messages);
+    }
+
+    private static List<Message> spawnMessages(GlowEntity entity) {
+        List<Message> messages = new ArrayList<>();
+        if (entity instanceof GlowPlayer) {
+            // clients only spawn players that are in their list of players
+            messages.add(new UserListItemMessage(UserListItemMessage.Action.ADD_PLAYER,
+                ((GlowPlayer) entity).getUserListEntry()));
+        }
+        messages.addAll(entity.createSpawnMessage());
+        return messages;
+    }
+
+    private void sendUpdates() throws JMSException {
+        for (Long key : outgoing.keySet()) {
+            List<Message> messages = outgoing.remove(key);
+            if (messages == null) {
+                continue;
+            }
+            int chunkX = (int) (key >> 32);
+            int chunkZ = (int) (long) key;
+            javax.jms.Message envelope = codec.encode(session, new MessageBatch(messages));
+            envelope.setJMSType(UPDATES_TYPE);
+            envelope.setIntProperty(CHUNK_X_PROPERTY, chunkX);
+            envelope.setIntProperty(CHUNK_Z_PROPERTY, chunkZ);
+            for (RegionMap.Node node : regions.neighboursOf(chunkX, chunkZ, viewDistance)) {
+                producer.send(topicOf(session, node), envelope);
+            }
+        }
+    }
+
+    private void sendHandoffs() throws JMSException {
+        Handoff handoff;
+        while ((handoff = handoffs.poll()) != null) {
+            GlowPlayer player = handoff.player;
+            try {
+                MapMessage notice = session.createMapMessage();
+                notice.setJMSType(HANDOFF_TYPE);
+                notice.setString("player", player.getUniqueId().toString());
+                notice.setDouble("x", handoff.location.getX());
+                notice.setDouble("y", handoff.location.getY());
+                notice.setDouble("z", handoff.location.getZ());
+                notice.setFloat("yaw", handoff.location.getYaw());
+                notice.setFloat("pitch", handoff.location.getPitch());
+                notice.setBytes("state", writeState(stateWriter.apply(player)));
+                producer.send(topicOf(session, handoff.target), notice);
+            } catch (JMSException | IOException | RuntimeException exception) {
+                handedOff.remove(player.getUniqueId());
+                GlowServer.logger.log(Level.WARNING, "Could not hand off " + player.getName() + " to "
+                    + handoff.target, exception);
+                continue;
+            }
+
+            ChannelFuture future = player.getSession()
+                .sendWithFuture(new PluginMessage(PROXY_CHANNEL, connect(handoff.target.getServer())));
+            if (future == null) {
+                // the player already disconnected
+                handedOff.remove(player.getUniqueId());
+                continue;
+            }
+            future.addListener(sent -> {
+                if (!sent.isSuccess()) {
+                    handedOff.remove(player.getUniqueId());
+                }
+            });
+            GlowServer.logger.info("Handing off " + player.getName() + " in " + world.getName() + " to "
+                + handoff.target);
+        }
+    }
+
+    private void receive(javax.jms.Message message) {
+        try {
+            if (UPDATES_TYPE.equals(message.getJMSType())) {
+                MessageBatch batch = (MessageBatch) codec.decode(session, message);
+                incoming.add(new Incoming(message.getIntProperty(CHUNK_X_PROPERTY),
+                    message.getIntProperty(CHUNK_Z_PROPERTY), batch.getMessages()));
+            } else if (HANDOFF_TYPE.equals(message.getJMSType())) {
+                MapMessage notice = (MapMessage) message;
+                Location location = new Location(world, notice.getDouble("x"), notice.getDouble("y"),
+                    notice.getDouble("z"), notice.getFloat("yaw"), notice.getFloat("pitch"));
+                arrivals.put(UUID.fromString(notice.getString("player")),
+                    new Arrival(location, readState(notice.getBytes("state"))));
+            }
+        } catch (JMSException | IOException | RuntimeException exception) {
+            GlowServer.logger.log(Level.WARNING, "Could not receive message from other nodes", exception);
+        }
+    }
+
+    private Topic topicOf(Session session, RegionMap.Node node) throws JMSException {
+        Topic topic = topics.get(node);
+        if (topic == null) {
+            topic = session.createTopic("opencraft." + world.getName() + "." + node.getName());
+            topics.put(node, topic);
+        }
+        return topic;
+    }
+
+    private static Location locationOf(Object publisher) {
+        if (publisher instanceof Chunk) {
+            Chunk chunk = (Chunk) publisher;
+            return new Location(chunk.getWorld(), chunk.getX() << 4, 0, chunk.getZ() << 4);
+        }
+        if (publisher instanceof Block) {
+            return ((Block) publisher).getLocation();
+        }
+        if (publisher instanceof Entity) {
+            return ((Entity) publisher).getLocation();
+        }
+        if (publisher instanceof Location) {
+            return (Location) publisher;
+        }
+        return null;
+    }
+
+    private static byte[] writeState(CompoundTag state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (NbtOutputStream out = new NbtOutputStream(bytes)) {
+            out.writeTag(state);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CompoundTag readState(byte[] state) throws IOException {
+        try (NbtInputStream in = new NbtInputStream(new ByteArrayInputStream(state))) {
+            return in.readCompound();
+        }
+    }
+
+    /**
+     * Create the message that asks the proxy to move a player to another server.
+     *
+     * @param server the name of the server behind the proxy.
+     * @return the contents of the plugin message.
+     */
+    private static byte[] connect(String server) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("Connect");
+            out.writeUTF(server);
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The messages of a chunk that were received from another node.
+     */
+    private static final class Incoming {
+
+        private final int chunkX;
+        private final int chunkZ;
+        private final List<Message> messages;
+
+        Incoming(int chunkX, int chunkZ, List<Message> messages) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * An entity that is spawned on the nodes near the chunk in which it was last seen at a flush.
+     */
+    private static final class Announcement {
+
+        private final GlowEntity entity;
+        private final List<RegionMap.Node> nodes;
+        private volatile long chunk;
+
+        Announcement(GlowEntity entity, long chunk, List<RegionMap.Node> nodes) {
+            this.entity = entity;
+            this.chunk = chunk;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * A player that another node handed off to this node, which has not joined yet.
+     */
+    private static final class Arrival {
+
+        private final Location location;
+        private final CompoundTag state;
+
+        Arrival(Location location, CompoundTag state) {
+            this.location = location;
+            this.state = state;
+        }
+    }
+
+    /**
+     * A player that is handed off to another node at the next flush.
+     */
+    private static final class Handoff {
+
+        private final GlowPlayer player;
+        private final Location location;
+        private final RegionMap.Node target;
+
+        Handoff(GlowPlayer player, Location location, RegionMap.Node target) {
+            this.player = player;
+            this.location = location;
+            this.target = target;
+        }
+    }
+}
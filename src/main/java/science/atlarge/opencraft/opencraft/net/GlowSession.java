@@ -11,7 +11,9 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.CodecException;
+import io.netty.util.concurrent.EventExecutorGroup;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,6 +39,7 @@ import science.atlarge.opencraft.opencraft.net.message.play.game.UserListItemMes
 import science.atlarge.opencraft.opencraft.net.pipeline.CodecsHandler;
 import science.atlarge.opencraft.opencraft.net.pipeline.CompressionHandler;
 import science.atlarge.opencraft.opencraft.net.pipeline.EncryptionHandler;
+import science.atlarge.opencraft.opencraft.net.pipeline.FlushCoalescingHandler;
 import science.atlarge.opencraft.opencraft.net.protocol.GlowProtocol;
 import science.atlarge.opencraft.opencraft.net.protocol.LoginProtocol;
 import science.atlarge.opencraft.opencraft.net.protocol.PlayProtocol;
@@ -163,6 +166,12 @@ public class GlowSession extends BasicSession {
      */
     private volatile boolean compresssionSent;
 
+    /**
+     * The handler that coalesces the flushes of the channel, or null if every message is flushed
+     * when it is sent.
+     */
+    private final FlushCoalescingHandler flushHandler;
+
     /**
      * Creates a new session.
      *
@@ -177,6 +186,7 @@ public class GlowSession extends BasicSession {
         this.server = server;
         this.protocolProvider = protocolProvider;
         this.connectionManager = connectionManager;
+        flushHandler = channel.pipeline().get(FlushCoalescingHandler.class);
         address = super.getAddress();
     }
 
@@ -320,6 +330,16 @@ public class GlowSession extends BasicSession {
         return super.sendWithFuture(message);
     }
 
+    /**
+     * Flush the messages which have been sent since the last flush. Unless flushes are coalesced,
+     * messages are flushed as soon as they are sent and this does nothing.
+     */
+    public void flush() {
+        if (flushHandler != null) {
+            flushHandler.flushPending();
+        }
+    }
+
     /**
      * Send the message and release the specified byte buffer after it is sent.
      *
@@ -397,6 +417,7 @@ public class GlowSession extends BasicSession {
             ChannelFuture future = sendWithFuture(new KickMessage(reason));
             if (future != null) {
                 future.addListener(ChannelFutureListener.CLOSE);
+                flush();
             }
         } else {
             getChannel().close();
@@ -500,6 +521,10 @@ public class GlowSession extends BasicSession {
 
         updatePipeline("codecs", new CodecsHandler((GlowProtocol) proto));
         super.setProtocol(proto);
+        if (flushHandler != null) {
+            // only coalesce once the login has completed, so the handshake is not delayed
+            flushHandler.setCoalescing(proto instanceof PlayProtocol);
+        }
     }
 
     /**
@@ -520,7 +545,17 @@ public class GlowSession extends BasicSession {
         // set compression can only be sent once
         if (!compresssionSent) {
             send(new SetCompressionMessage(threshold));
-            updatePipeline("compression", new CompressionHandler(threshold));
+            CompressionHandler handler = new CompressionHandler(threshold,
+                server.getCompressionLevel());
+            EventExecutorGroup executor = server.getCompressionExecutor();
+            if (executor == null) {
+                updatePipeline("compression", handler);
+            } else {
+                // compress on the executor, so large messages do not stall the network threads
+                ChannelPipeline pipeline = getChannel().pipeline();
+                pipeline.remove("compression");
+                pipeline.addAfter(executor, "framing", "compression", handler);
+            }
             compresssionSent = true;
         }
     }
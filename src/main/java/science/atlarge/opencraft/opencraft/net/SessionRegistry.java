@@ -23,6 +23,13 @@ public final class SessionRegistry {
         sessions.keySet().forEach(GlowSession::pulse);
     }
 
+    /**
+     * Flushes the messages which all sessions have written during the tick.
+     */
+    public void flush() {
+        sessions.keySet().forEach(GlowSession::flush);
+    }
+
     /**
      * Adds a new session.
      *
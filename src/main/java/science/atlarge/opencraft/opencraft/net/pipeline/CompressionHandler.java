@@ -5,77 +5,113 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
-import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.util.concurrent.FastThreadLocal;
 import java.util.List;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 /**
  * Experimental pipeline component.
+ *
+ * <p>Messages are deflated from and inflated into pooled buffers. The {@link Deflater} and {@link Inflater} are
+ * shared by all channels of an event loop, or of an executor if the handler was added to the pipeline with one, so
+ * large messages can be compressed off the network threads.
  */
 public final class CompressionHandler extends MessageToMessageCodec<ByteBuf, ByteBuf> {
 
-    private static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    /**
+     * The maximum size of an uncompressed message allowed by the protocol.
+     */
+    private static final int MAX_UNCOMPRESSED_SIZE = 1 << 21;
+
+    private static final FastThreadLocal<Deflater> DEFLATER = new FastThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+
+        @Override
+        protected void onRemoval(Deflater deflater) {
+            deflater.end();
+        }
+    };
+
+    private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+
+        @Override
+        protected void onRemoval(Inflater inflater) {
+            inflater.end();
+        }
+    };
 
     private final int threshold;
-    private final Inflater inflater;
-    private final Deflater deflater;
+    private final int level;
 
     /**
-     * Creates an instance that compresses messages using an {@link Inflater} and {@link Deflater}.
+     * Creates an instance that compresses messages with the default compression level.
      *
      * @param threshold the smallest message length, in bytes, to compress
      */
     public CompressionHandler(int threshold) {
+        this(threshold, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates an instance that compresses messages using a {@link Deflater} with the given level.
+     *
+     * @param threshold the smallest message length, in bytes, to compress
+     * @param level     the compression level, from 0 to 9, or -1 for the default level
+     */
+    public CompressionHandler(int threshold, int level) {
         this.threshold = threshold;
-        inflater = new Inflater();
-        deflater = new Deflater(COMPRESSION_LEVEL);
+        this.level = level;
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out)
         throws Exception {
-        ByteBuf prefixBuf = ctx.alloc().buffer(5);
-        ByteBuf contentsBuf;
-
-        if (msg.readableBytes() >= threshold) {
+        int length = msg.readableBytes();
+        if (length >= threshold) {
             // message should be compressed
-            int index = msg.readerIndex();
-            int length = msg.readableBytes();
+            ByteBuf source = toHeapBuffer(ctx, msg);
+            ByteBuf compressed = ctx.alloc().heapBuffer(5 + length);
+            boolean finished;
+            try {
+                ByteBufUtils.writeVarInt(compressed, length);
+                Deflater deflater = DEFLATER.get();
+                deflater.setLevel(level);
+                deflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), length);
+                deflater.finish();
+                int compressedLength = deflater.deflate(compressed.array(),
+                    compressed.arrayOffset() + compressed.writerIndex(), length);
+                finished = deflater.finished();
+                deflater.reset();
+                compressed.writerIndex(compressed.writerIndex() + compressedLength);
+            } finally {
+                if (source != msg) {
+                    source.release();
+                }
+            }
 
-            byte[] sourceData = new byte[length];
-            msg.readBytes(sourceData);
-            deflater.setInput(sourceData);
-            deflater.finish();
-
-            byte[] compressedData = new byte[length];
-            int compressedLength = deflater.deflate(compressedData);
-            deflater.reset();
-
-            if (compressedLength == 0) {
-                // compression failed in some weird way
-                throw new EncoderException("Failed to compress message of size " + length);
-            } else if (compressedLength >= length) {
-                // compression increased the size. threshold is probably too low
-                // send as an uncompressed packet
-                ByteBufUtils.writeVarInt(prefixBuf, 0);
-                msg.readerIndex(index);
-                msg.retain();
-                contentsBuf = msg;
-            } else {
+            if (finished) {
                 // all is well
-                ByteBufUtils.writeVarInt(prefixBuf, length);
-                contentsBuf = Unpooled.wrappedBuffer(compressedData, 0, compressedLength);
+                out.add(compressed);
+                return;
             }
-        } else {
-            // message should be sent through
-            ByteBufUtils.writeVarInt(prefixBuf, 0);
-            msg.retain();
-            contentsBuf = msg;
+            // compression did not reduce the size. threshold is probably too low
+            // send as an uncompressed packet
+            compressed.release();
         }
 
-        out.add(Unpooled.wrappedBuffer(prefixBuf, contentsBuf));
+        // message should be sent through
+        ByteBuf prefixBuf = ctx.alloc().buffer(1);
+        ByteBufUtils.writeVarInt(prefixBuf, 0);
+        out.add(Unpooled.wrappedBuffer(prefixBuf, msg.retain()));
     }
 
     @Override
@@ -93,33 +129,70 @@ public final class CompressionHandler extends MessageToMessageCodec<ByteBuf, Byt
                         + threshold);
             }
 
-            ByteBuf buf = ctx.alloc().buffer(length);
-            msg.readBytes(buf, length);
-            out.add(buf);
-        } else {
-            // message is compressed
-            byte[] sourceData = new byte[msg.readableBytes()];
-            msg.readBytes(sourceData);
-            inflater.setInput(sourceData);
-
-            byte[] destData = new byte[uncompressedSize];
-            int resultLength = inflater.inflate(destData);
-            inflater.reset();
-
-            if (resultLength == 0) {
-                // might be a leftover from before compression was enabled (no compression header)
-                // uncompressedSize is likely to be < threshold
-                msg.readerIndex(index);
-                msg.retain();
-                out.add(msg);
-            } else if (resultLength != uncompressedSize) {
-                throw new DecoderException(
-                    "Received compressed message claiming to be of size " + uncompressedSize
-                        + " but actually " + resultLength);
-            } else {
-                out.add(Unpooled.wrappedBuffer(destData));
+            out.add(msg.readRetainedSlice(length));
+            return;
+        }
+        if (uncompressedSize > MAX_UNCOMPRESSED_SIZE) {
+            throw new DecoderException(
+                "Received compressed message claiming to be of size " + uncompressedSize
+                    + " which is greater than the maximum " + MAX_UNCOMPRESSED_SIZE);
+        }
+
+        // message is compressed
+        ByteBuf source = toHeapBuffer(ctx, msg);
+        ByteBuf decompressed = ctx.alloc().heapBuffer(uncompressedSize, uncompressedSize);
+        int resultLength;
+        try {
+            Inflater inflater = INFLATER.get();
+            inflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(),
+                source.readableBytes());
+            try {
+                resultLength = inflater.inflate(decompressed.array(), decompressed.arrayOffset(),
+                    uncompressedSize);
+            } finally {
+                inflater.reset();
+            }
+        } catch (Exception ex) {
+            decompressed.release();
+            throw ex;
+        } finally {
+            if (source != msg) {
+                source.release();
             }
         }
+
+        if (resultLength == 0) {
+            // might be a leftover from before compression was enabled (no compression header)
+            // uncompressedSize is likely to be < threshold
+            decompressed.release();
+            msg.readerIndex(index);
+            out.add(msg.retain());
+        } else if (resultLength != uncompressedSize) {
+            decompressed.release();
+            throw new DecoderException(
+                "Received compressed message claiming to be of size " + uncompressedSize
+                    + " but actually " + resultLength);
+        } else {
+            out.add(decompressed.writerIndex(resultLength));
+        }
     }
 
+    /**
+     * Get a buffer with an accessible backing array that contains the readable bytes of the given
+     * buffer, because the {@link Deflater} and {@link Inflater} only work on arrays. If the given
+     * buffer has no backing array, its bytes are copied into a pooled heap buffer, which must be
+     * released by the caller.
+     *
+     * @param ctx the context of this handler
+     * @param buf the buffer
+     * @return the given buffer, or a pooled copy of it
+     */
+    private static ByteBuf toHeapBuffer(ChannelHandlerContext ctx, ByteBuf buf) {
+        if (buf.hasArray()) {
+            return buf;
+        }
+        ByteBuf copy = ctx.alloc().heapBuffer(buf.readableBytes());
+        copy.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+        return copy;
+    }
 }
@@ -1,10 +1,8 @@
 package science.atlarge.opencraft.opencraft.net.pipeline;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.List;
 import javax.crypto.Cipher;
@@ -15,6 +13,11 @@ import science.atlarge.opencraft.opencraft.i18n.ConsoleMessages;
 
 /**
  * Experimental pipeline component.
+ *
+ * <p>AES/CFB8 is a stream cipher mode, so the output of a message is exactly as long as its input. Messages that this
+ * handler owns exclusively are therefore ciphered in place; other messages are ciphered into a pooled buffer. The
+ * handler sits directly at the socket end of the pipeline, where it receives the buffers read from the socket and the
+ * buffers written by the framing handler, which are never shared.
  */
 public final class EncryptionHandler extends MessageToMessageCodec<ByteBuf, ByteBuf> {
 
@@ -39,13 +42,13 @@ public final class EncryptionHandler extends MessageToMessageCodec<ByteBuf, Byte
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out)
         throws Exception {
-        encodeBuf.crypt(msg, out);
+        encodeBuf.crypt(ctx, msg, out);
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out)
         throws Exception {
-        decodeBuf.crypt(msg, out);
+        decodeBuf.crypt(ctx, msg, out);
     }
 
     private static class CryptBuf {
@@ -57,17 +60,54 @@ public final class EncryptionHandler extends MessageToMessageCodec<ByteBuf, Byte
             cipher.init(mode, sharedSecret, new IvParameterSpec(sharedSecret.getEncoded()));
         }
 
-        public void crypt(ByteBuf msg, List<Object> out) {
-            ByteBuffer outBuffer = ByteBuffer.allocate(msg.readableBytes());
-
+        public void crypt(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+            int length = msg.readableBytes();
             try {
-                cipher.update(msg.nioBuffer(), outBuffer);
+                if (isExclusive(msg)) {
+                    cryptInPlace(msg, length);
+                    out.add(msg.retain());
+                } else {
+                    out.add(cryptCopy(ctx, msg, length));
+                }
             } catch (ShortBufferException e) {
                 throw new AssertionError("Encryption buffer was too short", e);
             }
+        }
 
-            outBuffer.flip();
-            out.add(Unpooled.wrappedBuffer(outBuffer));
+        /**
+         * Check whether the given message can be overwritten with its ciphered contents. A message that is referenced
+         * only by this handler, and that is backed by a single array or memory region, is overwritten.
+         *
+         * @param msg the message.
+         * @return whether the message can be ciphered in place.
+         */
+        private static boolean isExclusive(ByteBuf msg) {
+            return msg.refCnt() == 1 && !msg.isReadOnly() && (msg.hasArray() || msg.nioBufferCount() == 1);
+        }
+
+        private void cryptInPlace(ByteBuf msg, int length) throws ShortBufferException {
+            int index = msg.readerIndex();
+            if (msg.hasArray()) {
+                // the cipher explicitly supports identical input and output arrays
+                byte[] array = msg.array();
+                int offset = msg.arrayOffset() + index;
+                cipher.update(array, offset, length, array, offset);
+            } else {
+                // the cipher copes with distinct buffers that share the same memory
+                cipher.update(msg.nioBuffer(index, length), msg.nioBuffer(index, length));
+            }
+        }
+
+        private ByteBuf cryptCopy(ChannelHandlerContext ctx, ByteBuf msg, int length) throws ShortBufferException {
+            ByteBuf result = ctx.alloc().directBuffer(length);
+            try {
+                cipher.update(msg.nioBuffer(), result.nioBuffer(0, length));
+                result.writerIndex(length);
+                return result;
+            } catch (ShortBufferException | RuntimeException e) {
+                result.release();
+                throw e;
+            }
         }
     }
 
@@ -0,0 +1,135 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline component that coalesces the flushes of a channel. While coalescing, messages are written without being
+ * flushed, and the channel is only flushed when {@link #flushPending()} is called at the end of a tick, when the
+ * written bytes exceed the byte budget, or when the oldest unflushed message has waited for the maximum delay.
+ *
+ * <p>This handler should be placed next to the head of the pipeline, so it sees the encoded bytes. All of its state is
+ * only accessed from the event loop of the channel.
+ */
+public final class FlushCoalescingHandler extends ChannelDuplexHandler {
+
+    private final FlushStatistics statistics;
+    private final int byteBudget;
+    private final long delayNanos;
+
+    private volatile boolean coalescing;
+    private ChannelHandlerContext ctx;
+
+    /**
+     * The number of packets and bytes written since the last flush.
+     */
+    private int pendingPackets;
+    private long pendingBytes;
+
+    /**
+     * The flush scheduled after the maximum delay, or null if nothing is pending.
+     */
+    private ScheduledFuture<?> delayedFlush;
+
+    /**
+     * Creates a flush coalescing handler, which does not coalesce until {@link #setCoalescing(boolean)} is called.
+     *
+     * @param statistics the statistics to record flushes in.
+     * @param byteBudget the number of written bytes after which the channel is flushed.
+     * @param delay      the maximum time in milliseconds that a written message waits for a flush.
+     */
+    public FlushCoalescingHandler(FlushStatistics statistics, int byteBudget, int delay) {
+        this.statistics = statistics;
+        this.byteBudget = byteBudget;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    /**
+     * Start or stop coalescing flushes. Pending messages are flushed when coalescing stops.
+     *
+     * @param coalescing whether to coalesce flushes.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+        if (!coalescing) {
+            flushPending();
+        }
+    }
+
+    /**
+     * Flush the messages that have been written since the last flush, if any. This may be called from any thread.
+     */
+    public void flushPending() {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null) {
+            return;
+        }
+        if (ctx.executor().inEventLoop()) {
+            flushNow();
+        } else {
+            ctx.executor().execute(this::flushNow);
+        }
+    }
+
+    private void flushNow() {
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+        if (pendingPackets == 0) {
+            return;
+        }
+        statistics.record(pendingPackets, pendingBytes);
+        pendingPackets = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        pendingPackets++;
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufHolder) {
+            pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+        }
+        ctx.write(msg, promise);
+
+        if (!coalescing) {
+            return;
+        }
+        if (pendingBytes >= byteBudget) {
+            flushNow();
+        } else if (delayedFlush == null) {
+            delayedFlush = ctx.executor().schedule(this::flushNow, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (!coalescing) {
+            flushNow();
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushNow();
+        super.close(ctx, promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushNow();
+    }
+}
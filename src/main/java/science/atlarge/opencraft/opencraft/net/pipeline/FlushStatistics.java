@@ -0,0 +1,64 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the flushes performed by the {@link FlushCoalescingHandler}s of all sessions, and the packets and bytes
+ * written by them.
+ */
+public final class FlushStatistics {
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder packets = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Record a flush.
+     *
+     * @param packets the number of packets written since the previous flush.
+     * @param bytes   the number of bytes written since the previous flush.
+     */
+    void record(int packets, long bytes) {
+        flushes.increment();
+        this.packets.add(packets);
+        this.bytes.add(bytes);
+    }
+
+    /**
+     * Get the number of flushes.
+     *
+     * @return the number of flushes.
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Get the average number of packets written per flush.
+     *
+     * @return the number of packets per flush, or zero if nothing was flushed.
+     */
+    public double getPacketsPerFlush() {
+        long flushes = this.flushes.sum();
+        return flushes == 0 ? 0 : (double) packets.sum() / flushes;
+    }
+
+    /**
+     * Get the average number of bytes written per flush.
+     *
+     * @return the number of bytes per flush, or zero if nothing was flushed.
+     */
+    public double getBytesPerFlush() {
+        long flushes = this.flushes.sum();
+        return flushes == 0 ? 0 : (double) bytes.sum() / flushes;
+    }
+
+    /**
+     * Reset all counters.
+     */
+    public void reset() {
+        flushes.reset();
+        packets.reset();
+        bytes.reset();
+    }
+}
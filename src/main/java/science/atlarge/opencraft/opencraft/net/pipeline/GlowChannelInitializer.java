@@ -51,5 +51,11 @@ public final class GlowChannelInitializer extends ChannelInitializer<SocketChann
             .addLast("compression", NoopHandler.INSTANCE)
             .addLast("codecs", codecs)
             .addLast("handler", handler);
+
+        // next to the head of the pipeline, so the handler sees the encrypted bytes
+        FlushCoalescingHandler flush = connectionManager.getServer().createFlushCoalescingHandler();
+        if (flush != null) {
+            c.pipeline().addAfter("idle_timeout", "flush", flush);
+        }
     }
 }
@@ -23,6 +23,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
+import lombok.Getter;
 import org.bukkit.Server;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -30,6 +31,9 @@ import org.bukkit.scheduler.BukkitScheduler;
 import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.scheduler.BukkitWorker;
 import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.measurements.TickPhase;
+import science.atlarge.opencraft.opencraft.measurements.TickProfiler;
 import science.atlarge.opencraft.opencraft.net.SessionRegistry;
 
 /**
@@ -98,6 +102,12 @@ public final class GlowScheduler implements BukkitScheduler {
      */
     private final SessionRegistry sessionRegistry;
 
+    /**
+     * The profiler recording the duration of each phase of the server tick.
+     */
+    @Getter
+    private final TickProfiler tickProfiler = new TickProfiler();
+
     /**
      * Creates a new task scheduler.
      *
@@ -202,29 +212,30 @@ public final class GlowScheduler implements BukkitScheduler {
     /**
      * Start the yardstick collector.
      *
-     * @param key  the key.
-     * @param help the help message.
+     * @param phase the phase to measure.
+     * @return the value of {@link System#nanoTime()} at the start of the phase.
      */
-    private void startMeasurement(String key, String help) {
+    private long startMeasurement(TickPhase phase) {
         if (collectorEnabled()) {
-            YSCollector.start(key, help);
-        }
-        if (server instanceof GlowServer) {
-            ((GlowServer) server).eventLogger.start(key);
+            YSCollector.start(phase.getKey(), phase.getDescription());
         }
+        return System.nanoTime();
     }
 
     /**
-     * Stop the yardstick collector.
+     * Stop the yardstick collector, and record the duration of the phase.
      *
-     * @param key the key.
+     * @param phase      the phase to measure.
+     * @param startNanos the value returned by {@link #startMeasurement(TickPhase)}.
      */
-    private void stopMeasurement(String key) {
+    private void stopMeasurement(TickPhase phase, long startNanos) {
         if (collectorEnabled()) {
-            YSCollector.stop(key);
+            YSCollector.stop(phase.getKey());
         }
+        long nanos = tickProfiler.record(phase, startNanos) - startNanos;
         if (server instanceof GlowServer) {
-            ((GlowServer) server).eventLogger.stop(key);
+            // the event log keeps whole milliseconds, as it did when the logger timed the phases itself
+            ((GlowServer) server).eventLogger.log(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(nanos));
         }
     }
 
@@ -234,18 +245,16 @@ public final class GlowScheduler implements BukkitScheduler {
     // TODO: Add watchdog system to make sure ticks advance
     private void pulse() {
 
-        startMeasurement("tick", "The duration of a tick.");
+        long tickStart = startMeasurement(TickPhase.SERVER_TICK);
         primaryThread = Thread.currentThread();
 
         // Process player packets
-        startMeasurement("tick_network",
-                "The duration of a tick processing the network");
+        long networkStart = startMeasurement(TickPhase.SERVER_NETWORK);
         sessionRegistry.pulse();
-        stopMeasurement("tick_network");
+        stopMeasurement(TickPhase.SERVER_NETWORK, networkStart);
 
         // Run the relevant tasks.
-        startMeasurement("tick_jobs",
-                "Duration of the server tick spent processing jobs");
+        long jobsStart = startMeasurement(TickPhase.SERVER_JOBS);
         for (Iterator<GlowTask> it = tasks.values().iterator(); it.hasNext(); ) {
             GlowTask task = it.next();
             switch (task.shouldExecute()) {
@@ -263,9 +272,9 @@ public final class GlowScheduler implements BukkitScheduler {
                     // do nothing
             }
         }
-        stopMeasurement("tick_jobs");
+        stopMeasurement(TickPhase.SERVER_JOBS, jobsStart);
 
-        startMeasurement("tick_worlds", "Duration of a tick processing worlds");
+        long worldsStart = startMeasurement(TickPhase.SERVER_WORLDS);
         try {
             int currentTick = worlds.beginTick();
             try {
@@ -291,9 +300,14 @@ public final class GlowScheduler implements BukkitScheduler {
             System.out.flush();
             System.err.flush();
         }
-        stopMeasurement("tick_worlds");
+        stopMeasurement(TickPhase.SERVER_WORLDS, worldsStart);
+
+        worlds.getWorlds().forEach(GlowWorld::flushMessaging);
+
+        // Send the packets written during the tick
+        sessionRegistry.flush();
 
-        stopMeasurement("tick");
+        stopMeasurement(TickPhase.SERVER_TICK, tickStart);
     }
 
     @Override
@@ -0,0 +1,258 @@
+package science.atlarge.opencraft.opencraft.scheduler;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import lombok.Getter;
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+
+/**
+ * A hierarchical timing wheel of the scheduled ticks of blocks, which are identified by their packed coordinates.
+ *
+ * <p>Each level of the wheel has 64 slots. A slot of the lowest level holds the blocks that are due in a single tick,
+ * and a slot of a higher level spans a full turn of the level below it. Whenever a level completes a turn, the next
+ * slot of the level above it is spread over it. Advancing a tick thus only touches the blocks that are due, and each
+ * block once per level as it moves down. Cancelled blocks are dropped lazily, when their slot comes up.
+ *
+ * <p>The scheduled blocks are also indexed by chunk, so the ticks of a chunk are found and removed in time
+ * proportional to their number when the chunk is saved or unloaded. The wheel is thread-safe.
+ */
+public final class TickWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << SLOT_BITS * LEVELS) - 1;
+
+    /**
+     * The due tick of the blocks that are being ticked.
+     */
+    private static final long RUNNING = Long.MIN_VALUE;
+
+    /**
+     * The scheduled blocks of each slot of each level, as pairs of a position and its due tick.
+     */
+    private final LongArrayList[][] slots = new LongArrayList[LEVELS][SLOTS];
+
+    /**
+     * The due tick of each scheduled block.
+     */
+    private final Long2LongMap due = new Long2LongOpenHashMap();
+
+    /**
+     * The scheduled blocks of each chunk, by chunk key.
+     */
+    private final Long2ObjectMap<LongSet> chunks = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * The tick the wheel has last advanced to.
+     */
+    @Getter
+    private long tick;
+
+    /**
+     * Create an empty timing wheel.
+     */
+    public TickWheel() {
+        due.defaultReturnValue(-1);
+        for (LongArrayList[] level : slots) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                level[slot] = new LongArrayList();
+            }
+        }
+    }
+
+    /**
+     * Pack the coordinates of a block into a long.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param z the z-coordinate.
+     * @return the packed coordinates.
+     */
+    public static long pack(int x, int y, int z) {
+        return (x & 0x3ffffffL) << 38 | (z & 0x3ffffffL) << 12 | y & 0xfffL;
+    }
+
+    public static int unpackX(long position) {
+        return (int) (position >> 38);
+    }
+
+    public static int unpackY(long position) {
+        return (int) (position & 0xfff);
+    }
+
+    public static int unpackZ(long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    private static long chunkKey(long position) {
+        return GlowChunk.Key.toLong(unpackX(position) >> 4, unpackZ(position) >> 4);
+    }
+
+    /**
+     * Schedule a tick of a block, unless one is scheduled already.
+     *
+     * @param position the packed coordinates of the block.
+     * @param delay    the number of ticks until the block is due, which is at least one.
+     * @return whether the tick was scheduled.
+     */
+    public synchronized boolean schedule(long position, long delay) {
+        if (due.containsKey(position)) {
+            return false;
+        }
+        insert(position, delay);
+        LongSet blocks = chunks.get(chunkKey(position));
+        if (blocks == null) {
+            blocks = new LongOpenHashSet();
+            chunks.put(chunkKey(position), blocks);
+        }
+        blocks.add(position);
+        return true;
+    }
+
+    /**
+     * Schedule the next tick of a block that is being ticked, or move the scheduled tick of a block. Nothing is
+     * scheduled for a block whose tick has been cancelled, e.g. by the block itself while it was being ticked.
+     *
+     * @param position the packed coordinates of the block.
+     * @param delay    the number of ticks until the block is due, which is at least one.
+     * @return whether the block was still scheduled, and is now rescheduled.
+     */
+    public synchronized boolean reschedule(long position, long delay) {
+        if (!due.containsKey(position)) {
+            return false;
+        }
+        insert(position, delay);
+        return true;
+    }
+
+    private void insert(long position, long delay) {
+        long dueTick = tick + Math.max(1, Math.min(delay, MAX_DELAY));
+        due.put(position, dueTick);
+        LongArrayList slot = slotOf(dueTick);
+        slot.add(position);
+        slot.add(dueTick);
+    }
+
+    /**
+     * Get the slot of a due tick: the slot of the lowest level at which the due tick is in the current turn.
+     */
+    private LongArrayList slotOf(long dueTick) {
+        for (int level = 0; level < LEVELS - 1; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if (dueTick >>> shift == tick >>> shift) {
+                return slots[level][(int) (dueTick >>> SLOT_BITS * level) & SLOTS - 1];
+            }
+        }
+        return slots[LEVELS - 1][(int) (dueTick >>> SLOT_BITS * (LEVELS - 1)) & SLOTS - 1];
+    }
+
+    /**
+     * Cancel the scheduled tick of a block.
+     *
+     * @param position the packed coordinates of the block.
+     * @return whether a tick was scheduled.
+     */
+    public synchronized boolean cancel(long position) {
+        if (due.remove(position) == -1) {
+            return false;
+        }
+        long key = chunkKey(position);
+        LongSet blocks = chunks.get(key);
+        blocks.remove(position);
+        if (blocks.isEmpty()) {
+            chunks.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a tick of a block is scheduled.
+     *
+     * @param position the packed coordinates of the block.
+     * @return whether a tick is scheduled or running.
+     */
+    public synchronized boolean isScheduled(long position) {
+        return due.containsKey(position);
+    }
+
+    /**
+     * Advance the wheel by one tick. The blocks that are due remain scheduled while they are ticked, so they must
+     * either be {@linkplain #reschedule(long, long) rescheduled} or {@linkplain #cancel(long) cancelled} afterwards.
+     *
+     * @return the packed coordinates of the blocks that are due.
+     */
+    public synchronized LongList advance() {
+        tick++;
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & (1L << SLOT_BITS * level) - 1) == 0) {
+                LongArrayList slot = slots[level][(int) (tick >>> SLOT_BITS * level) & SLOTS - 1];
+                if (!slot.isEmpty()) {
+                    LongArrayList cascading = slot.clone();
+                    slot.clear();
+                    for (int i = 0; i < cascading.size(); i += 2) {
+                        long position = cascading.getLong(i);
+                        long dueTick = cascading.getLong(i + 1);
+                        if (due.get(position) == dueTick) {
+                            LongArrayList lower = slotOf(dueTick);
+                            lower.add(position);
+                            lower.add(dueTick);
+                        }
+                    }
+                }
+            }
+        }
+
+        LongArrayList slot = slots[0][(int) tick & SLOTS - 1];
+        LongArrayList blocks = new LongArrayList(slot.size() / 2);
+        for (int i = 0; i < slot.size(); i += 2) {
+            long position = slot.getLong(i);
+            if (due.get(position) == slot.getLong(i + 1)) {
+                due.put(position, RUNNING);
+                blocks.add(position);
+            }
+        }
+        slot.clear();
+        return blocks;
+    }
+
+    /**
+     * Get the blocks of a chunk that have a scheduled tick.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     * @return the packed coordinates of the blocks.
+     */
+    public synchronized LongList getScheduled(int chunkX, int chunkZ) {
+        LongSet blocks = chunks.get(GlowChunk.Key.toLong(chunkX, chunkZ));
+        return blocks == null ? new LongArrayList() : new LongArrayList(blocks);
+    }
+
+    /**
+     * Cancel the scheduled ticks of all blocks of a chunk.
+     *
+     * @param chunkX the x-coordinate of the chunk.
+     * @param chunkZ the z-coordinate of the chunk.
+     */
+    public synchronized void cancelChunk(int chunkX, int chunkZ) {
+        LongSet blocks = chunks.remove(GlowChunk.Key.toLong(chunkX, chunkZ));
+        if (blocks != null) {
+            blocks.forEach((long position) -> due.remove(position));
+        }
+    }
+
+    /**
+     * Get the number of blocks with a scheduled tick.
+     *
+     * @return the number of blocks.
+     */
+    public synchronized int size() {
+        return due.size();
+    }
+}
@@ -3,24 +3,33 @@ package science.atlarge.opencraft.opencraft.util;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.Arrays;
-import lombok.Getter;
 
 /**
  * An array of nibbles (4-bit values) stored efficiently as a byte array of half the size.
  *
  * <p>The even indices are stored in the least significant nibble and the odd indices in the most
  * significant bits. For example, [1 5 8 15] is stored as [0x51 0xf8].
+ *
+ * <p>An array in which every nibble has the same value is stored as that single value, and the
+ * byte array is only allocated once a different value is set.
  */
 public final class NibbleArray {
 
     /**
-     * Get the raw bytes of this nibble array. Modifying the returned array will modify the internal
-     * representation of this nibble array.
-     *
-     * @return The raw bytes.
+     * The size in nibbles.
      */
-    @Getter
-    private final byte[] rawData;
+    private final int size;
+
+    /**
+     * The raw bytes, or null if every nibble has the {@link #uniformValue}. Volatile, so that a
+     * reader on another thread sees either the uniform value or a fully filled array.
+     */
+    private volatile byte[] rawData;
+
+    /**
+     * The value of every nibble while the array is uniform.
+     */
+    private byte uniformValue;
 
     /**
      * Construct a new NibbleArray with the given size in nibbles.
@@ -42,10 +51,8 @@ public final class NibbleArray {
      */
     public NibbleArray(int size, byte value) {
         checkArgument(size > 0 && size % 2 == 0, "size must be positive even number, not " + size);
-        rawData = new byte[size / 2];
-        if (value != 0) {
-            fill(value);
-        }
+        this.size = size;
+        this.uniformValue = (byte) (value & 0xf);
     }
 
     /**
@@ -54,6 +61,7 @@ public final class NibbleArray {
      * @param rawData The raw data to use.
      */
     public NibbleArray(byte... rawData) {
+        this.size = 2 * rawData.length;
         this.rawData = rawData;
     }
 
@@ -63,7 +71,7 @@ public final class NibbleArray {
      * @return The size in nibbles.
      */
     public int size() {
-        return 2 * rawData.length;
+        return size;
     }
 
     /**
@@ -72,7 +80,48 @@ public final class NibbleArray {
      * @return The size in bytes.
      */
     public int byteSize() {
-        return rawData.length;
+        return size / 2;
+    }
+
+    /**
+     * Check whether every nibble in this array has the same value, and no byte array is allocated.
+     *
+     * @return True if the array is stored as a single value.
+     */
+    public boolean isUniform() {
+        return rawData == null;
+    }
+
+    /**
+     * Get the value of every nibble in this array, if it {@linkplain #isUniform() is uniform}.
+     *
+     * @return The value of the nibbles.
+     * @throws IllegalStateException If the array is not uniform.
+     */
+    public byte getUniformValue() {
+        if (rawData != null) {
+            throw new IllegalStateException("Nibble array is not uniform");
+        }
+        return uniformValue;
+    }
+
+    /**
+     * Get the raw bytes of this nibble array. Modifying the returned array will modify the internal
+     * representation of this nibble array. If the array is uniform, the byte array is allocated.
+     *
+     * @return The raw bytes.
+     */
+    public byte[] getRawData() {
+        byte[] rawData = this.rawData;
+        if (rawData == null) {
+            // fill the array before publishing it, so readers never see a zeroed array
+            rawData = new byte[size / 2];
+            if (uniformValue != 0) {
+                Arrays.fill(rawData, (byte) (uniformValue << 4 | uniformValue));
+            }
+            this.rawData = rawData;
+        }
+        return rawData;
     }
 
     /**
@@ -82,6 +131,13 @@ public final class NibbleArray {
      * @return The value of the nibble at that index.
      */
     public byte get(int index) {
+        byte[] rawData = this.rawData;
+        if (rawData == null) {
+            if (index < 0 || index >= size) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+            return uniformValue;
+        }
         byte val = rawData[index / 2];
         if (index % 2 == 0) {
             return (byte) (val & 0x0f);
@@ -98,6 +154,13 @@ public final class NibbleArray {
      */
     public void set(int index, byte value) {
         value &= 0xf;
+        if (rawData == null && value == uniformValue) {
+            if (index < 0 || index >= size) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+            return;
+        }
+        byte[] rawData = getRawData();
         int half = index / 2;
         byte previous = rawData[half];
         if (index % 2 == 0) {
@@ -108,13 +171,36 @@ public final class NibbleArray {
     }
 
     /**
-     * Fill the nibble array with the specified value.
+     * Fill the nibble array with the specified value. This releases the byte array.
      *
      * @param value The value nibble to fill with.
      */
     public void fill(byte value) {
-        value &= 0xf;
-        Arrays.fill(rawData, (byte) (value << 4 | value));
+        uniformValue = (byte) (value & 0xf);
+        rawData = null;
+    }
+
+    /**
+     * Release the byte array if every nibble in it has the same value.
+     *
+     * @return True if the array is uniform afterwards.
+     */
+    public boolean compact() {
+        byte[] rawData = this.rawData;
+        if (rawData == null) {
+            return true;
+        }
+        byte first = rawData[0];
+        if ((first & 0xf) != (first >> 4 & 0xf)) {
+            return false;
+        }
+        for (byte value : rawData) {
+            if (value != first) {
+                return false;
+            }
+        }
+        fill(first);
+        return true;
     }
 
     /**
@@ -125,9 +211,9 @@ public final class NibbleArray {
      */
     public void setRawData(byte... source) {
         checkArgument(
-                source.length == rawData.length,
-                "expected byte array of length " + rawData.length + ", not " + source.length);
-        System.arraycopy(source, 0, rawData, 0, source.length);
+                source.length == byteSize(),
+                "expected byte array of length " + byteSize() + ", not " + source.length);
+        System.arraycopy(source, 0, getRawData(), 0, source.length);
     }
 
     /**
@@ -136,6 +222,10 @@ public final class NibbleArray {
      * @return The snapshot NibbleArray.
      */
     public NibbleArray snapshot() {
+        byte[] rawData = this.rawData;
+        if (rawData == null) {
+            return new NibbleArray(size, uniformValue);
+        }
         return new NibbleArray(rawData.clone());
     }
 }
@@ -127,14 +127,16 @@ public final class VariableValueArray implements Cloneable {
 
     /**
      * Creates a new VariableValueArray with the contents of this one, and the given bits per
-     * value.
+     * value. The values are repacked value by value straight into the new backing array, so this
+     * is considerably cheaper than copying them one by one with {@link #set(int, int)}. This array
+     * is left unchanged, so readers holding it never see a half-resized array.
      *
      * @param newBitsPerValue The new value. Must be larger than the current value ( {@link
      *         #getBitsPerValue()}).
      * @return A new VariableValueArray
      * @throws IllegalArgumentException If newBitsPerValue is less than or equal to the
-     *         current bits per value. Setting it to the same size would be a waste of resources,
-     *         and decreasing could lead to data loss.
+     *         current bits per value, or greater than 64. Setting it to the same size would be a
+     *         waste of resources, and decreasing could lead to data loss.
      */
     public VariableValueArray increaseBitsPerValueTo(int newBitsPerValue) {
         if (newBitsPerValue < this.bitsPerValue) {
@@ -146,9 +148,28 @@ public final class VariableValueArray implements Cloneable {
                     "Cannot resize to the same size!  (size was " + newBitsPerValue + ")");
         }
 
-        VariableValueArray returned = new VariableValueArray(newBitsPerValue, this.capacity);
-        for (int i = 0; i < this.capacity; i++) {
-            returned.set(i, this.get(i));
+        VariableValueArray returned = new VariableValueArray(newBitsPerValue, capacity);
+        long[] resized = returned.backing;
+        int readBit = 0;
+        int writeBit = 0;
+        for (int i = 0; i < capacity; i++) {
+            int readWord = readBit >> 6;
+            int readOffset = readBit & 0x3f;
+            long value = backing[readWord] >>> readOffset;
+            if (readOffset + bitsPerValue > 64) {
+                value |= backing[readWord + 1] << 64 - readOffset;
+            }
+            value &= valueMask;
+
+            int writeWord = writeBit >> 6;
+            int writeOffset = writeBit & 0x3f;
+            resized[writeWord] |= value << writeOffset;
+            if (writeOffset + newBitsPerValue > 64) {
+                resized[writeWord + 1] |= value >>> 64 - writeOffset;
+            }
+
+            readBit += bitsPerValue;
+            writeBit += newBitsPerValue;
         }
         return returned;
     }
@@ -0,0 +1,273 @@
+package science.atlarge.opencraft.opencraft.util.collection;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe map from primitive longs to objects. The map is split into segments, which are open hash tables that
+ * are each guarded by their own monitor for writes, so keys are never boxed and writers only contend when they access
+ * the same segment.
+ *
+ * <p>Reads take no lock. The table of a segment is published through a volatile field and replaced as a whole when it
+ * grows, and the key of a slot never changes once its value has been published: removed keys leave a tombstone, which
+ * can only be reused by the same key and is dropped when the table is rebuilt. A reader therefore always probes a
+ * consistent table, and sees either the old or the new value of a key.
+ *
+ * @param <V> the type of the values.
+ */
+public final class ConcurrentLong2ObjectMap<V> {
+
+    /**
+     * The number of segments, which is a power of two.
+     */
+    private static final int SEGMENTS = 64;
+
+    /**
+     * The number of bits of the hash that select the segment.
+     */
+    private static final int SEGMENT_BITS = Integer.numberOfTrailingZeros(SEGMENTS);
+
+    /**
+     * The initial number of slots of each segment, which is a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The value of a slot whose key was removed.
+     */
+    private static final Object REMOVED = new Object();
+
+    private final Segment[] segments;
+
+    /**
+     * Create an empty map.
+     */
+    public ConcurrentLong2ObjectMap() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(INITIAL_CAPACITY);
+        }
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) hash & SEGMENTS - 1];
+    }
+
+    /**
+     * Get the value of the given key.
+     *
+     * @param key the key.
+     * @return the value, or null if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = HashCommon.mix(key);
+        Table table = segment(hash).table;
+        for (int slot = (int) (hash >>> SEGMENT_BITS) & table.mask; ; slot = slot + 1 & table.mask) {
+            Object value = table.values.get(slot);
+            if (value == null) {
+                return null;
+            }
+            if (table.keys[slot] == key) {
+                return value == REMOVED ? null : (V) value;
+            }
+        }
+    }
+
+    /**
+     * Check whether the given key is in the map.
+     *
+     * @param key the key.
+     * @return whether the key is in the map.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Get the value of the given key, or compute and store it if the key is not in the map. The function is called
+     * without holding any lock, so when several threads compute the same key at once, each of them may call it, but
+     * only the first value is stored and returned to all of them.
+     *
+     * @param key      the key.
+     * @param function the function that computes the value of the key.
+     * @return the current or computed value.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = function.apply(key);
+        V previous = putIfAbsent(key, value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * Store the given value, unless the key is already in the map.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @return the current value, or null if the given value was stored.
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        long hash = HashCommon.mix(key);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            return (V) segment.putIfAbsent(hash, key, value);
+        }
+    }
+
+    /**
+     * Remove the given key, if it is mapped to the given value.
+     *
+     * @param key   the key.
+     * @param value the expected value.
+     * @return whether the key was removed.
+     */
+    public boolean remove(long key, V value) {
+        long hash = HashCommon.mix(key);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            return segment.remove(hash, key, value);
+        }
+    }
+
+    /**
+     * Get the number of keys in the map.
+     *
+     * @return the size of the map.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get a snapshot of the values in the map, which does not reflect later changes.
+     *
+     * @return the values.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            Table table = segment.table;
+            for (int slot = 0; slot < table.keys.length; slot++) {
+                Object value = table.values.get(slot);
+                if (value != null && value != REMOVED) {
+                    values.add((V) value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The slots of a segment. A slot is empty while its value is null.
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final AtomicReferenceArray<Object> values;
+        private final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    /**
+     * A segment of the map, whose monitor guards all writes to it.
+     */
+    private static final class Segment {
+
+        private volatile Table table;
+
+        /**
+         * The number of keys in the segment.
+         */
+        private int size;
+
+        /**
+         * The number of slots in use, including tombstones.
+         */
+        private int used;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        Object putIfAbsent(long hash, long key, Object value) {
+            Table table = this.table;
+            int slot = (int) (hash >>> SEGMENT_BITS) & table.mask;
+            for (Object current; (current = table.values.get(slot)) != null; slot = slot + 1 & table.mask) {
+                if (table.keys[slot] == key) {
+                    if (current != REMOVED) {
+                        return current;
+                    }
+                    table.values.set(slot, value);
+                    size++;
+                    return null;
+                }
+            }
+            // the key is written before the value publishes the slot
+            table.keys[slot] = key;
+            table.values.set(slot, value);
+            size++;
+            if (++used > table.keys.length * 3 / 4) {
+                rebuild(table);
+            }
+            return null;
+        }
+
+        boolean remove(long hash, long key, Object value) {
+            Table table = this.table;
+            int slot = (int) (hash >>> SEGMENT_BITS) & table.mask;
+            for (Object current; (current = table.values.get(slot)) != null; slot = slot + 1 & table.mask) {
+                if (table.keys[slot] == key) {
+                    if (current == REMOVED || !current.equals(value)) {
+                        return false;
+                    }
+                    table.values.set(slot, REMOVED);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Copy the keys into a new table without tombstones, which is at most half full, and publish it.
+         */
+        private void rebuild(Table old) {
+            int capacity = Math.max(INITIAL_CAPACITY, HashCommon.nextPowerOfTwo(size * 2 + 1));
+            Table table = new Table(capacity);
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values.get(i);
+                if (value != null && value != REMOVED) {
+                    long key = old.keys[i];
+                    int slot = (int) (HashCommon.mix(key) >>> SEGMENT_BITS) & table.mask;
+                    while (table.values.get(slot) != null) {
+                        slot = slot + 1 & table.mask;
+                    }
+                    table.keys[slot] = key;
+                    table.values.lazySet(slot, value);
+                }
+            }
+            used = size;
+            this.table = table;
+        }
+    }
+}
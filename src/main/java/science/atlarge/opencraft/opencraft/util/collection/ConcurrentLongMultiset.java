@@ -0,0 +1,103 @@
+package science.atlarge.opencraft.opencraft.util.collection;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * A thread-safe multiset of primitive longs, which keeps a reference count per key. Keys are removed as soon as their
+ * count drops to zero, so the multiset only takes memory for keys that are currently held. Like
+ * {@link ConcurrentLong2ObjectMap}, it is split into segments that are each guarded by their own monitor.
+ */
+public final class ConcurrentLongMultiset {
+
+    /**
+     * The number of segments, which is a power of two.
+     */
+    private static final int SEGMENTS = 64;
+
+    private final Long2IntOpenHashMap[] segments;
+
+    /**
+     * Create an empty multiset.
+     */
+    public ConcurrentLongMultiset() {
+        segments = new Long2IntOpenHashMap[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Long2IntOpenHashMap();
+        }
+    }
+
+    private Long2IntOpenHashMap segment(long key) {
+        return segments[(int) HashCommon.mix(key) & SEGMENTS - 1];
+    }
+
+    /**
+     * Add one occurrence of the given key.
+     *
+     * @param key the key.
+     * @return the count of the key after adding it.
+     */
+    public int add(long key) {
+        Long2IntOpenHashMap segment = segment(key);
+        synchronized (segment) {
+            return segment.addTo(key, 1) + 1;
+        }
+    }
+
+    /**
+     * Remove one occurrence of the given key, if it is present.
+     *
+     * @param key the key.
+     * @return whether the key was present.
+     */
+    public boolean remove(long key) {
+        Long2IntOpenHashMap segment = segment(key);
+        synchronized (segment) {
+            int count = segment.get(key);
+            if (count <= 0) {
+                return false;
+            }
+            if (count == 1) {
+                segment.remove(key);
+            } else {
+                segment.put(key, count - 1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Remove all occurrences of the given key.
+     *
+     * @param key the key.
+     */
+    public void removeAll(long key) {
+        Long2IntOpenHashMap segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Get the number of occurrences of the given key.
+     *
+     * @param key the key.
+     * @return the count of the key.
+     */
+    public int count(long key) {
+        Long2IntOpenHashMap segment = segment(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Check whether the given key occurs at least once.
+     *
+     * @param key the key.
+     * @return whether the key is present.
+     */
+    public boolean contains(long key) {
+        return count(key) > 0;
+    }
+}
@@ -0,0 +1,44 @@
+package science.atlarge.opencraft.opencraft.util.config;
+
+/**
+ * The type of queue in which the chunk tasks of a priority executor wait to be run.
+ */
+public enum QueueType {
+
+    /**
+     * Tasks are ordered by distance ring, and re-prioritised lazily per priority group.
+     */
+    BUCKETED("bucketed"),
+
+    /**
+     * Tasks are ordered by exact priority, and the whole queue is re-sorted when priorities change.
+     */
+    SORTED("sorted");
+
+    /**
+     * Get the queue type with the given configuration name.
+     *
+     * @param name the name, e.g. "bucketed".
+     * @return the queue type.
+     * @throws IllegalArgumentException if there is no queue type with the name.
+     */
+    public static QueueType parse(String name) {
+        for (QueueType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown queue: " + name);
+    }
+
+    private final String name;
+
+    QueueType(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -14,6 +14,7 @@ import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -379,6 +380,25 @@ public class ServerConfig implements DynamicallyTypedMap<ServerConfig.Key> {
         return migrateStatus;
     }
 
+    /**
+     * Create the default tiers of the tiered chunk policy, which give chunks beyond two chunks from the player looser
+     * bounds in two steps.
+     *
+     * @return the default tiers, as maps with a radius in chunks, a staleness bound and a numerical bound.
+     */
+    private static List<Map<String, Object>> defaultPolicyTiers() {
+        List<Map<String, Object>> tiers = new ArrayList<>();
+        int[][] values = {{2, 0, 0}, {5, 250, 4}, {10, 1000, 16}};
+        for (int[] tier : values) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("radius", tier[0]);
+            map.put("staleness", tier[1]);
+            map.put("numerical", tier[2]);
+            tiers.add(map);
+        }
+        return tiers;
+    }
+
     /**
      * An enum containing configuration keys used by the server.
      *
@@ -390,13 +410,37 @@ public class ServerConfig implements DynamicallyTypedMap<ServerConfig.Key> {
         // Opencraft - Collector
         OPENCRAFT_COLLECTOR("opencraft.collector", false, Boolean.class::isInstance),
 
+        // Opencraft - Chunks
+        OPENCRAFT_CHUNK_QUEUE("opencraft.chunks.queue", "sorted", String.class::isInstance),
+        OPENCRAFT_CHUNK_CACHE_SIZE("opencraft.chunks.cache-size", 64, Validators.NON_NEGATIVE_INTEGER),
+
+        // Opencraft - World ticks
+        OPENCRAFT_TICK_PARALLELISM("opencraft.tick.parallelism", Runtime.getRuntime().availableProcessors(),
+                Validators.POSITIVE_INTEGER),
+        OPENCRAFT_TICK_REGION_SIZE("opencraft.tick.region-size", 4, Validators.POSITIVE_INTEGER),
+        OPENCRAFT_TICK_WORLDS("opencraft.tick.worlds", new ArrayList<>()),
+
         // Opencraft - Logging
         OPENCRAFT_LOGGING_DYCONIT("opencraft.logging.dyconit", false, Boolean.class::isInstance),
         OPENCRAFT_LOGGING_EVENTS("opencraft.logging.events", false, Boolean.class::isInstance),
+        OPENCRAFT_LOGGING_TICK_PROFILE("opencraft.logging.tick-profile", false, Boolean.class::isInstance),
+        OPENCRAFT_LOGGING_TICK_PROFILE_INTERVAL("opencraft.logging.tick-profile-interval", 60,
+                Validators.POSITIVE_INTEGER),
+
+        // Opencraft - Network
+        OPENCRAFT_NETWORK_COALESCE_FLUSHES("opencraft.network.coalesce-flushes", false, Boolean.class::isInstance),
+        OPENCRAFT_NETWORK_FLUSH_BYTES("opencraft.network.flush-bytes", 65536, Validators.POSITIVE_INTEGER),
+        OPENCRAFT_NETWORK_FLUSH_DELAY("opencraft.network.flush-delay", 10, Validators.POSITIVE_INTEGER),
 
         // Opencraft - Messaging System
         OPENCRAFT_MESSAGING_TYPE("opencraft.messaging.type", "dyconit", String.class::isInstance),
         OPENCRAFT_POLICY("opencraft.messaging.policy", "chunk", String.class::isInstance),
+        OPENCRAFT_POLICY_TIERS("opencraft.messaging.tiers", defaultPolicyTiers()),
+        OPENCRAFT_MESSAGING_COALESCE("opencraft.messaging.coalesce", true, Boolean.class::isInstance),
+        OPENCRAFT_MESSAGING_PER_WORLD("opencraft.messaging.per-world", true, Boolean.class::isInstance),
+        OPENCRAFT_MESSAGING_WORLD_POLICIES("opencraft.messaging.world-policies", new ArrayList<>()),
+        OPENCRAFT_MESSAGING_FLUSH_ON_WORLD_THREAD("opencraft.messaging.flush-on-world-thread", true,
+                Boolean.class::isInstance),
         // Opencraft - Messaging System - Pub/Sub Only
         OPENCRAFT_BROKER_TYPE("opencraft.messaging.broker.type", "read-write", String.class::isInstance),
         OPENCRAFT_BROKER_ASYNC("opencraft.messaging.broker.async", true, Boolean.class::isInstance),
@@ -409,6 +453,16 @@ public class ServerConfig implements DynamicallyTypedMap<ServerConfig.Key> {
         OPENCRAFT_BROKER_USERNAME("opencraft.messaging.broker.username", "", String.class::isInstance),
         OPENCRAFT_BROKER_PASSWORD("opencraft.messaging.broker.password", "", String.class::isInstance),
         OPENCRAFT_BROKER_VIRTUAL_HOST("opencraft.messaging.broker.virtualHost", "", String.class::isInstance),
+        OPENCRAFT_BROKER_BATCH("opencraft.messaging.broker.batch", true, Boolean.class::isInstance),
+        // Opencraft - Sharding
+        OPENCRAFT_SHARDING_ENABLED("opencraft.sharding.enabled", false, Boolean.class::isInstance),
+        OPENCRAFT_SHARDING_NODE("opencraft.sharding.node", "node-0", String.class::isInstance),
+        OPENCRAFT_SHARDING_NODES("opencraft.sharding.nodes", new ArrayList<>()),
+        OPENCRAFT_SHARDING_REGION_SIZE("opencraft.sharding.region-size", 32, Validators.POSITIVE_INTEGER),
+        OPENCRAFT_SHARDING_BROKER_URL("opencraft.sharding.broker-url", "tcp://localhost:61616",
+                String.class::isInstance),
+        OPENCRAFT_SHARDING_EMBEDDED_BROKER_PORT("opencraft.sharding.embedded-broker-port", 0,
+                Validators.NON_NEGATIVE_INTEGER),
 
         // server
         SERVER_IP("server.ip", "", Migrate.PROPS, "server-ip", String.class::isInstance),
@@ -523,6 +577,10 @@ public class ServerConfig implements DynamicallyTypedMap<ServerConfig.Key> {
         COMPRESSION_THRESHOLD("advanced.compression-threshold", 256, Migrate.PROPS,
                 "network-compression-threshold",
                 typeCheck(Integer.class).and(value -> value >= -1)),
+        COMPRESSION_LEVEL("advanced.compression-level", -1,
+                typeCheck(Integer.class).and(value -> value >= -1 && value <= 9)),
+        COMPRESSION_THREADS("advanced.compression-threads", 0,
+                Validators.NON_NEGATIVE_INTEGER),
         PROXY_SUPPORT("advanced.proxy-support", false, Boolean.class::isInstance),
         PLAYER_SAMPLE_COUNT("advanced.player-sample-count", 12,
                 Validators.NON_NEGATIVE_INTEGER),
@@ -533,6 +591,8 @@ public class ServerConfig implements DynamicallyTypedMap<ServerConfig.Key> {
                 Validators.NON_NEGATIVE_INTEGER),
         REGION_COMPRESSION("advanced.region-file.compression", true,
                 Boolean.class::isInstance),
+        REGION_MEMORY_MAPPED("advanced.region-file.memory-mapped", false,
+                Boolean.class::isInstance),
         PROFILE_LOOKUP_TIMEOUT("advanced.profile-lookup-timeout", 5,
                 Validators.NON_NEGATIVE_INTEGER),
         SUGGEST_PLAYER_NAMES_WHEN_NULL_TAB_COMPLETIONS(
@@ -13,7 +13,10 @@ import static org.powermock.api.mockito.PowerMockito.when;
 
 import java.util.Iterator;
 import java.util.Objects;
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 import science.atlarge.opencraft.opencraft.GlowServer;
 import science.atlarge.opencraft.opencraft.GlowWorld;
 import org.bukkit.Chunk;
@@ -289,6 +292,25 @@ public class AreaOfInterestTest {
         assertTrue(spliterator.tryAdvance(Assertions::assertNotNull));
     }
 
+    /**
+     * Verify that the spliterator of the area splits, and that the parts cover each chunk of the area exactly once.
+     */
+    @Test
+    void splitSpliterator() {
+        AreaOfInterest area = new AreaOfInterest(origin, 1);
+        int length = 2 * area.getRadius() + 1;
+        Spliterator<GlowChunk> suffix = area.spliterator();
+        Spliterator<GlowChunk> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertEquals(length * length, prefix.estimateSize() + suffix.estimateSize());
+
+        Set<Long> keys = StreamSupport.stream(area.spliterator(), true)
+            .map(chunk -> GlowChunk.Key.toLong(chunk.getX(), chunk.getZ()))
+            .collect(Collectors.toSet());
+        assertEquals(length * length, keys.size());
+        area.forEach(chunk -> assertTrue(keys.contains(GlowChunk.Key.toLong(chunk.getX(), chunk.getZ()))));
+    }
+
     /**
      * Verify that the area returns the correct hashcode.
      */
@@ -0,0 +1,162 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.World.Environment;
+import org.bukkit.WorldType;
+import org.bukkit.generator.BlockPopulator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.block.BuiltinMaterialValueManager;
+import science.atlarge.opencraft.opencraft.generator.GlowChunkData;
+import science.atlarge.opencraft.opencraft.generator.GlowChunkGenerator;
+import science.atlarge.opencraft.opencraft.io.ChunkIoService;
+
+class ChunkManagerTest {
+
+    private static final long TIMEOUT = 10;
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final List<Chunk> populated = new CopyOnWriteArrayList<>();
+
+    private GlowServer server;
+    private ChunkIoService service;
+    private ChunkManager manager;
+
+    @BeforeEach
+    void setUp() {
+        GlowWorld world = mock(GlowWorld.class);
+        server = mock(GlowServer.class);
+        service = mock(ChunkIoService.class);
+        when(world.getName()).thenReturn("world");
+        when(world.getEnvironment()).thenReturn(Environment.NORMAL);
+        when(world.getWorldType()).thenReturn(WorldType.FLAT);
+        when(world.getMaxHeight()).thenReturn(GlowChunk.DEPTH);
+        when(world.getServer()).thenReturn(server);
+        when(world.getLightEngine()).thenReturn(new LightEngine(new BuiltinMaterialValueManager(), true,
+            key -> manager.getChunkIfPresent(key), MoreExecutors.newDirectExecutorService()));
+        when(world.getPopulators()).thenReturn(Collections.singletonList(new BlockPopulator() {
+            @Override
+            public void populate(World world, Random random, Chunk source) {
+                populated.add(source);
+            }
+        }));
+        manager = new ChunkManager(world, service, new FloorGenerator());
+    }
+
+    @Test
+    void concurrentLoadsShareOneGeneration() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch read = new CountDownLatch(1);
+        when(service.read(any())).thenAnswer(invocation -> {
+            reading.countDown();
+            read.await(TIMEOUT, TimeUnit.SECONDS);
+            return false;
+        });
+
+        CompletableFuture<GlowChunk> first = manager.loadChunkAsync(1, 2, true);
+        assertTrue(reading.await(TIMEOUT, TimeUnit.SECONDS));
+        CompletableFuture<GlowChunk> second = manager.loadChunkAsync(1, 2, true);
+        read.countDown();
+
+        assertSame(first, second);
+        GlowChunk chunk = first.get(TIMEOUT, TimeUnit.SECONDS);
+        assertSame(manager.getChunk(1, 2), chunk);
+        assertTrue(chunk.isLoaded());
+        assertEquals(1, generated.get());
+        assertEquals(1, chunk.getType(0, 0, 0));
+    }
+
+    @Test
+    void chunkReadFromDiskIsNotGenerated() throws Exception {
+        when(service.read(any())).thenAnswer(invocation -> {
+            invocation.<GlowChunk>getArgument(0).initializeSections(new ChunkSection[GlowChunk.SEC_COUNT]);
+            return true;
+        });
+
+        GlowChunk chunk = manager.loadChunkAsync(0, 0, true).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertTrue(chunk.isLoaded());
+        assertFalse(chunk.isDirty());
+        assertEquals(0, generated.get());
+    }
+
+    @Test
+    void chunkIsNotGeneratedWhenGenerationIsDisabled() throws Exception {
+        when(server.isGenerationDisabled()).thenReturn(true);
+
+        GlowChunk chunk = manager.loadChunkAsync(0, 0, true).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertFalse(chunk.isLoaded());
+        assertEquals(0, generated.get());
+        assertFalse(manager.loadChunkAsync(0, 0, false).get(TIMEOUT, TimeUnit.SECONDS).isLoaded());
+    }
+
+    @Test
+    void populationLoadsTheAreaAroundTheChunkAndPopulatesItOnce() throws Exception {
+        CompletableFuture<GlowChunk> first = manager.populateChunkAsync(0, 0);
+        CompletableFuture<GlowChunk> second = manager.populateChunkAsync(0, 0);
+
+        GlowChunk chunk = first.get(TIMEOUT, TimeUnit.SECONDS);
+        assertSame(chunk, second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(chunk.isPopulated());
+        assertEquals(Collections.singletonList(chunk), populated);
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                assertTrue(manager.isChunkLoaded(x, z));
+                assertEquals(x == 0 && z == 0, manager.getChunk(x, z).isPopulated());
+            }
+        }
+        assertEquals(9, generated.get());
+        assertSame(chunk, manager.populateChunkAsync(0, 0).get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, populated.size());
+    }
+
+    @Test
+    void overlappingPopulationsShareTheirNeighbours() {
+        manager.forcePopulation(0, 0);
+        manager.forcePopulation(1, 0);
+
+        assertTrue(manager.getChunk(0, 0).isPopulated());
+        assertTrue(manager.getChunk(1, 0).isPopulated());
+        assertEquals(2, populated.size());
+        assertEquals(12, generated.get());
+    }
+
+    /**
+     * Generates a single layer of stone at the bottom of every chunk, and counts the chunks it generated.
+     */
+    private class FloorGenerator extends GlowChunkGenerator {
+
+        @Override
+        public ChunkData generateChunkData(World world, Random random, int chunkX, int chunkZ, BiomeGrid biomes) {
+            generated.incrementAndGet();
+            GlowChunkData chunkData = new GlowChunkData(world);
+            for (int x = 0; x < GlowChunk.WIDTH; x++) {
+                for (int z = 0; z < GlowChunk.HEIGHT; z++) {
+                    chunkData.setBlock(x, 0, z, 1);
+                }
+            }
+            return chunkData;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The chunk packet cache is tested for versioning, its memory bound and its counters.
+ */
+class ChunkPacketCacheTest {
+
+    private ChunkPacketCache cache;
+    private GlowChunk first;
+    private GlowChunk second;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChunkPacketCache(100);
+        first = mock(GlowChunk.class);
+        second = mock(GlowChunk.class);
+    }
+
+    @Test
+    void staleEntriesAreMisses() {
+        cache.put(first, new ChunkPacketCache.Entry(1, true, 3, new byte[10]));
+
+        assertNotNull(cache.get(first, 1, true));
+        assertNull(cache.get(first, 2, true));
+        assertNull(cache.get(first, 1, false));
+        assertNull(cache.get(second, 1, true));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        GlowChunk third = mock(GlowChunk.class);
+        cache.put(first, new ChunkPacketCache.Entry(0, true, 0, new byte[40]));
+        cache.put(second, new ChunkPacketCache.Entry(0, true, 0, new byte[40]));
+        cache.get(first, 0, true);
+        cache.put(third, new ChunkPacketCache.Entry(0, true, 0, new byte[40]));
+
+        assertNotNull(cache.get(first, 0, true));
+        assertNull(cache.get(second, 0, true));
+        assertNotNull(cache.get(third, 0, true));
+        assertEquals(80, cache.getSize());
+        assertEquals(2, cache.getCount());
+    }
+
+    @Test
+    void invalidateFreesMemory() {
+        cache.put(first, new ChunkPacketCache.Entry(0, true, 0, new byte[40]));
+        cache.put(first, new ChunkPacketCache.Entry(1, true, 0, new byte[30]));
+        assertEquals(30, cache.getSize());
+
+        cache.invalidate(first);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    void oversizedEntriesAreNotCached() {
+        cache.put(first, new ChunkPacketCache.Entry(0, true, 0, new byte[101]));
+        assertEquals(0, cache.getCount());
+    }
+}
@@ -0,0 +1,105 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
+
+/**
+ * The chunk section is tested for its compact representations of single-type sections and uniform light, and for
+ * growing its palette up to the global palette.
+ */
+class ChunkSectionTest {
+
+    private static final char STONE = 1 << 4;
+    private static final char GRASS = 2 << 4;
+
+    @Test
+    void newSectionsAreEmptyAndUniformlyLit() {
+        ChunkSection section = new ChunkSection();
+
+        assertTrue(section.isEmpty());
+        assertEquals(0, section.getType(3, 4, 5));
+        assertTrue(section.getSkyLight().isUniform());
+        assertTrue(section.getBlockLight().isUniform());
+        assertEquals(ChunkSection.DEFAULT_SKYLIGHT, section.getSkyLight(3, 4, 5));
+    }
+
+    @Test
+    void settingTheSameTypeKeepsTheSection() {
+        char[] types = new char[ChunkSection.ARRAY_SIZE];
+        Arrays.fill(types, STONE);
+        ChunkSection section = new ChunkSection(types);
+
+        section.setType(0, 0, 0, STONE);
+        section.setType(15, 15, 15, (char) 0);
+
+        assertFalse(section.isEmpty());
+        assertEquals(STONE, section.getType(0, 0, 0));
+        assertEquals(0, section.getType(15, 15, 15));
+        assertEquals(STONE, section.getType(15, 15, 14));
+    }
+
+    @Test
+    void paletteGrowsToGlobalPalette() {
+        ChunkSection section = new ChunkSection();
+        char[] expected = new char[ChunkSection.ARRAY_SIZE];
+        for (int i = 0; i < 300; i++) {
+            int x = i & 0xf;
+            int z = i >> 4 & 0xf;
+            int y = i >> 8;
+            char type = (char) ((i + 1) << 4);
+            section.setType(x, y, z, type);
+            expected[section.index(x, y, z)] = type;
+        }
+
+        assertArrayEquals(expected, section.getTypes());
+        assertArrayEquals(expected, section.snapshot().getTypes());
+        section.optimize();
+        assertArrayEquals(expected, section.getTypes());
+    }
+
+    @Test
+    void lightSurvivesNbt() {
+        ChunkSection section = new ChunkSection();
+        section.setType(1, 2, 3, STONE);
+        section.setBlockLight(1, 2, 3, (byte) 7);
+
+        CompoundTag tag = new CompoundTag();
+        section.writeToNbt(tag);
+        ChunkSection loaded = ChunkSection.fromNbt(tag);
+
+        assertEquals(STONE, loaded.getType(1, 2, 3));
+        assertEquals(7, loaded.getBlockLight(1, 2, 3));
+        assertFalse(loaded.getBlockLight().isUniform());
+        assertTrue(loaded.getSkyLight().isUniform());
+        assertTrue(section.getSkyLight().isUniform());
+    }
+
+    @Test
+    void randomlyTickingBlocksAreCounted() {
+        char[] types = new char[ChunkSection.ARRAY_SIZE];
+        Arrays.fill(types, STONE);
+        types[0] = GRASS;
+        types[1] = GRASS;
+        ChunkSection section = new ChunkSection(types);
+
+        assertTrue(ChunkSection.ticksRandomly(GRASS));
+        assertFalse(ChunkSection.ticksRandomly(STONE));
+        assertEquals(2, section.getRandomTickCount());
+
+        section.setType(0, 0, 0, STONE);
+        section.setType(5, 5, 5, (char) (GRASS | 1));
+        section.setType(5, 5, 5, GRASS);
+
+        assertEquals(2, section.getRandomTickCount());
+        assertEquals(2, section.snapshot().getRandomTickCount());
+        section.recount();
+        assertEquals(2, section.getRandomTickCount());
+        assertEquals(0, new ChunkSection().getRandomTickCount());
+    }
+}
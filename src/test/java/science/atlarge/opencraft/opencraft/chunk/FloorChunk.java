@@ -0,0 +1,71 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.function.LongFunction;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.block.BuiltinMaterialValueManager;
+
+/**
+ * A single loaded chunk with a stone floor, which the engine tests place their blocks on. The chunk is in a mocked
+ * world whose light engine propagates on the calling thread.
+ */
+final class FloorChunk {
+
+    static final int AIR = 0;
+    static final int STONE = 1;
+
+    /**
+     * The height of the floor, which is the lowest y-coordinate above it.
+     */
+    static final int FLOOR = 4;
+
+    private final Long2ObjectMap<GlowChunk> chunks = new Long2ObjectOpenHashMap<>();
+    private final LightEngine lightEngine;
+    private final GlowChunk chunk;
+
+    /**
+     * Create the chunk at the origin.
+     */
+    FloorChunk() {
+        GlowWorld world = mock(GlowWorld.class);
+        lightEngine = new LightEngine(new BuiltinMaterialValueManager(), true, chunks::get,
+            MoreExecutors.newDirectExecutorService());
+        when(world.getLightEngine()).thenReturn(lightEngine);
+
+        chunk = new GlowChunk(world, 0, 0);
+        ChunkSection floor = new ChunkSection();
+        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+            for (int z = 0; z < GlowChunk.HEIGHT; z++) {
+                for (int y = 0; y < FLOOR; y++) {
+                    floor.setType(x, y, z, (char) (STONE << 4));
+                }
+            }
+        }
+        ChunkSection[] sections = new ChunkSection[GlowChunk.SEC_COUNT];
+        sections[0] = floor;
+        chunk.initializeSections(sections);
+        chunks.put(GlowChunk.Key.toLong(0, 0), chunk);
+    }
+
+    /**
+     * Get the function that gets a chunk by its key, for the engines under test.
+     *
+     * @return the function, which only knows this chunk.
+     */
+    LongFunction<GlowChunk> getChunks() {
+        return chunks::get;
+    }
+
+    LightEngine getLightEngine() {
+        return lightEngine;
+    }
+
+    GlowChunk getChunk() {
+        return chunk;
+    }
+}
@@ -0,0 +1,168 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.AIR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.FLOOR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.STONE;
+
+import com.flowpowered.network.Message;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+
+/**
+ * The fluid engine is tested on a {@link FloorChunk}, which fluid does not flow out of.
+ */
+class FluidEngineTest {
+
+    private static final int WATER = 8;
+    private static final int STATIONARY_WATER = 9;
+    private static final int LAVA = 10;
+    private static final int OBSIDIAN = 49;
+    private static final int WIRE = 55;
+    private static final int TICK_RATE_WATER = 4;
+
+    private final List<Message> messages = new ArrayList<>();
+    private GlowChunk chunk;
+    private RedstoneEngine redstoneEngine;
+    private FluidEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        FloorChunk floor = new FloorChunk();
+        chunk = floor.getChunk();
+        redstoneEngine = new RedstoneEngine(floor.getChunks(), new RedstoneEngine.Circuit() {
+            @Override
+            public int getInputPower(int x, int y, int z) {
+                return 0;
+            }
+
+            @Override
+            public int powerChanging(int x, int y, int z, int oldPower, int newPower) {
+                return newPower;
+            }
+
+            @Override
+            public void powerChanged(int x, int y, int z) {
+            }
+        });
+        engine = new FluidEngine(floor.getChunks(), false, redstoneEngine);
+    }
+
+    private void place(int x, int y, int z, int type) {
+        chunk.setType(x, z, y, type);
+        if (type == WATER || type == LAVA) {
+            engine.schedule(x, y, z, type == LAVA);
+        }
+    }
+
+    private void pulse(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            engine.pulse((changed, message) -> messages.add(message));
+        }
+    }
+
+    @Test
+    void sourceSpreadsWeakerWithDistance() {
+        place(8, FLOOR, 8, WATER);
+        pulse(TICK_RATE_WATER);
+
+        assertEquals(1, messages.size());
+        assertEquals(5, ((MultiBlockChangeMessage) messages.get(0)).getRecords().size());
+        assertEquals(STATIONARY_WATER, chunk.getType(8, 8, FLOOR));
+        assertEquals(WATER, chunk.getType(9, 8, FLOOR));
+        assertEquals(1, chunk.getMetaData(9, 8, FLOOR));
+
+        pulse(TICK_RATE_WATER * 10);
+
+        assertEquals(5, chunk.getMetaData(11, 10, FLOOR));
+        assertEquals(7, chunk.getMetaData(15, 8, FLOOR));
+        assertEquals(AIR, chunk.getType(8, 0, FLOOR));
+        assertEquals(AIR, chunk.getType(8, 8, FLOOR + 1));
+    }
+
+    @Test
+    void flowDrainsWhenTheSourceIsRemoved() {
+        place(8, FLOOR, 8, WATER);
+        pulse(TICK_RATE_WATER * 10);
+
+        place(8, FLOOR, 8, AIR);
+        engine.schedule(9, FLOOR, 8, false);
+        engine.schedule(7, FLOOR, 8, false);
+        engine.schedule(8, FLOOR, 9, false);
+        engine.schedule(8, FLOOR, 7, false);
+        pulse(TICK_RATE_WATER * 10);
+
+        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+            for (int z = 0; z < GlowChunk.HEIGHT; z++) {
+                assertEquals(AIR, chunk.getType(x, z, FLOOR), x + ", " + z);
+            }
+        }
+    }
+
+    @Test
+    void flowHeadsForTheNearestHole() {
+        place(8, FLOOR - 1, 10, AIR);
+        place(8, FLOOR, 8, WATER);
+        pulse(TICK_RATE_WATER * 2);
+
+        assertEquals(1, chunk.getMetaData(8, 9, FLOOR));
+        assertEquals(2, chunk.getMetaData(8, 10, FLOOR));
+        assertEquals(AIR, chunk.getType(9, 8, FLOOR));
+        assertEquals(AIR, chunk.getType(8, 7, FLOOR));
+
+        pulse(TICK_RATE_WATER * 2);
+
+        assertEquals(STATIONARY_WATER, chunk.getType(8, 10, FLOOR - 1));
+        assertEquals(8, chunk.getMetaData(8, 10, FLOOR - 1));
+    }
+
+    @Test
+    void waterBetweenTwoSourcesBecomesASource() {
+        place(8, FLOOR, 8, WATER);
+        place(10, FLOOR, 8, WATER);
+        pulse(TICK_RATE_WATER * 2);
+
+        assertEquals(0, chunk.getMetaData(9, 8, FLOOR));
+        assertEquals(1, chunk.getMetaData(9, 9, FLOOR));
+    }
+
+    @Test
+    void lavaSolidifiesNextToWater() {
+        place(8, FLOOR, 8, WATER);
+        place(12, FLOOR, 8, LAVA);
+        pulse(20);
+
+        assertEquals(OBSIDIAN, chunk.getType(12, 8, FLOOR));
+        assertTrue(chunk.getType(11, 8, FLOOR) != LAVA);
+    }
+
+    @Test
+    void lavaFlowingOntoWaterTurnsItIntoStone() {
+        place(8, FLOOR, 8, WATER);
+        place(8, FLOOR + 1, 8, LAVA);
+        pulse(20);
+
+        assertEquals(STONE, chunk.getType(8, 8, FLOOR));
+        assertEquals(STATIONARY_WATER, chunk.getType(9, 8, FLOOR));
+    }
+
+    @Test
+    void washedAwayWireIsDroppedFromItsNetwork() {
+        place(9, FLOOR, 8, WIRE);
+        redstoneEngine.linksChanged(9, FLOOR, 8);
+        redstoneEngine.pulse((changed, message) -> { });
+
+        assertEquals(1, redstoneEngine.getNetworkCount());
+
+        place(8, FLOOR, 8, WATER);
+        pulse(TICK_RATE_WATER);
+        redstoneEngine.pulse((changed, message) -> { });
+
+        assertEquals(WATER, chunk.getType(9, 8, FLOOR));
+        assertEquals(0, redstoneEngine.getNetworkCount());
+    }
+}
@@ -1,7 +1,14 @@
 package science.atlarge.opencraft.opencraft.chunk;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.net.message.play.game.ChunkDataMessage;
 import science.atlarge.opencraft.opencraft.util.Coordinates;
 import org.junit.jupiter.api.Test;
 
@@ -30,4 +37,40 @@ class GlowChunkTest {
         assertEquals(chunkX, chunk.getCenterCoordinates().getChunkX());
         assertEquals(chunkZ, chunk.getCenterCoordinates().getChunkZ());
     }
+
+    @Test
+    void messageOfSectionsLeavesOutOtherAndEmptySections() {
+        GlowWorld world = mock(GlowWorld.class);
+        GlowServer server = mock(GlowServer.class);
+        when(world.getServer()).thenReturn(server);
+        when(server.getChunkPacketCache()).thenReturn(new ChunkPacketCache(1024 * 1024));
+        GlowChunk chunk = new GlowChunk(world, 0, 0);
+        ChunkSection[] sections = new ChunkSection[GlowChunk.SEC_COUNT];
+        for (int i = 0; i < 3; i++) {
+            sections[i] = new ChunkSection();
+            sections[i].setType(0, 0, 0, (char) (1 << 4));
+        }
+        sections[3] = new ChunkSection();
+        chunk.initializeSections(sections);
+
+        ChunkDataMessage message = chunk.toMessage(true, 0b11101);
+
+        assertFalse(message.isContinuous());
+        assertEquals(0b00101, message.getPrimaryMask());
+    }
+
+    @Test
+    void stateChangesMakeChunkDirtyWithoutChangingItsVersion() {
+        GlowChunk chunk = new GlowChunk(null, 0, 0);
+        chunk.markSaved(chunk.getVersion(), chunk.getStateVersion(), chunk.getInhabitedTime());
+        assertFalse(chunk.isDirty());
+
+        long version = chunk.getVersion();
+        chunk.markStateModified();
+
+        assertTrue(chunk.isDirty());
+        assertEquals(version, chunk.getVersion());
+        chunk.markSaved(chunk.getVersion(), chunk.getStateVersion(), chunk.getInhabitedTime());
+        assertFalse(chunk.isDirty());
+    }
 }
@@ -0,0 +1,133 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.AIR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.FLOOR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.STONE;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The light engine is tested on a {@link FloorChunk}, propagating on the calling thread.
+ */
+class LightEngineTest {
+
+    private static final int TORCH = 50;
+
+    private GlowChunk chunk;
+    private LightEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        FloorChunk floor = new FloorChunk();
+        chunk = floor.getChunk();
+        engine = floor.getLightEngine();
+    }
+
+    private void place(int x, int y, int z, int type) {
+        // the chunk records the change with the light engine of its world
+        chunk.setType(x, z, y, type);
+    }
+
+    private Map<GlowChunk, Integer> pulse() {
+        Map<GlowChunk, Integer> relit = new HashMap<>();
+        engine.pulse(relit::put);
+        // the propagation runs on the calling thread, so its result is passed on by the next pulse
+        engine.pulse(relit::put);
+        return relit;
+    }
+
+    @Test
+    void generatedChunkIsLitFromTheSky() {
+        engine.chunkGenerated(0, 0);
+
+        assertEquals(1, pulse().size());
+        assertEquals(15, chunk.getSkyLight(3, 3, FLOOR));
+        assertEquals(15, chunk.getSkyLight(3, 3, 15));
+        assertEquals(0, chunk.getSkyLight(3, 3, FLOOR - 1));
+    }
+
+    @Test
+    void roofShadesTheBlocksBelowIt() {
+        engine.chunkGenerated(0, 0);
+        pulse();
+
+        place(8, 10, 8, STONE);
+        pulse();
+
+        assertEquals(0, chunk.getSkyLight(8, 8, 10));
+        assertEquals(14, chunk.getSkyLight(8, 8, 9));
+        assertEquals(14, chunk.getSkyLight(8, 8, FLOOR));
+        assertEquals(15, chunk.getSkyLight(9, 8, 9));
+
+        place(8, 10, 8, AIR);
+        pulse();
+
+        assertEquals(15, chunk.getSkyLight(8, 8, 10));
+        assertEquals(15, chunk.getSkyLight(8, 8, FLOOR));
+    }
+
+    @Test
+    void torchLightsAndDarkensItsSurroundings() {
+        place(8, FLOOR, 8, TORCH);
+        Map<GlowChunk, Integer> relit = pulse();
+
+        // the light that reaches past the top of the lowest section is stored in a new section
+        assertEquals(0b11, (int) relit.get(chunk));
+        assertEquals(14, chunk.getBlockLight(8, 8, FLOOR));
+        assertEquals(13, chunk.getBlockLight(9, 8, FLOOR));
+        assertEquals(11, chunk.getBlockLight(10, 9, FLOOR));
+        assertEquals(0, chunk.getBlockLight(8, 8, FLOOR - 1));
+        assertEquals(2, chunk.getBlockLight(8, 8, 16));
+        assertEquals(1, chunk.getBlockLight(8, 9, 16));
+
+        place(8, FLOOR, 8, AIR);
+        pulse();
+
+        assertEquals(0, chunk.getBlockLight(8, 8, FLOOR));
+        assertEquals(0, chunk.getBlockLight(10, 9, FLOOR));
+        assertEquals(0, chunk.getBlockLight(8, 8, 16));
+    }
+
+    @Test
+    void roofShadesTheSectionsBelowIt() {
+        engine.chunkGenerated(0, 0);
+        pulse();
+
+        place(8, 40, 8, STONE);
+        // the missing sections below the new one are created too, and stay lit by the sky
+        assertNotNull(chunk.getSections()[1]);
+        assertEquals(15, chunk.getSkyLight(8, 8, 20));
+        pulse();
+
+        assertEquals(15, chunk.getSkyLight(8, 8, 41));
+        assertEquals(14, chunk.getSkyLight(8, 8, 39));
+        assertEquals(14, chunk.getSkyLight(8, 8, 16));
+        assertEquals(14, chunk.getSkyLight(8, 8, 15));
+        assertEquals(14, chunk.getSkyLight(8, 8, FLOOR));
+        assertEquals(15, chunk.getSkyLight(9, 8, 39));
+    }
+
+    @Test
+    void sectionCreatedBelowAnotherSectionIsDark() {
+        chunk.getSections()[3] = new ChunkSection();
+
+        place(8, 20, 8, STONE);
+
+        assertEquals(0, chunk.getSkyLight(9, 9, 20));
+        assertNull(chunk.getSections()[2]);
+    }
+
+    @Test
+    void changesWithoutEffectOnLightAreIgnored() {
+        place(8, FLOOR - 1, 8, STONE + 2);
+
+        assertTrue(pulse().isEmpty());
+    }
+}
@@ -0,0 +1,217 @@
+package science.atlarge.opencraft.opencraft.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.AIR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.FLOOR;
+import static science.atlarge.opencraft.opencraft.chunk.FloorChunk.STONE;
+
+import com.flowpowered.network.Message;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.scheduler.TickWheel;
+
+/**
+ * The redstone engine is tested on a {@link FloorChunk}, with wire running along z = 8.
+ */
+class RedstoneEngineTest {
+
+    private static final int WIRE = 55;
+    private static final int Z = 8;
+
+    private final Long2IntMap inputs = new Long2IntOpenHashMap();
+    private final LongList notified = new LongArrayList();
+    private final List<Message> messages = new ArrayList<>();
+    private GlowChunk chunk;
+    private RedstoneEngine engine;
+    private boolean calledLocked;
+    private Runnable reading;
+
+    @BeforeEach
+    void setUp() {
+        FloorChunk floor = new FloorChunk();
+        chunk = floor.getChunk();
+        engine = new RedstoneEngine(floor.getChunks(), new RedstoneEngine.Circuit() {
+            @Override
+            public int getInputPower(int x, int y, int z) {
+                calledLocked |= Thread.holdsLock(engine);
+                if (reading != null) {
+                    Runnable run = reading;
+                    reading = null;
+                    run.run();
+                }
+                return inputs.get(TickWheel.pack(x, y, z));
+            }
+
+            @Override
+            public int powerChanging(int x, int y, int z, int oldPower, int newPower) {
+                calledLocked |= Thread.holdsLock(engine);
+                return newPower;
+            }
+
+            @Override
+            public void powerChanged(int x, int y, int z) {
+                calledLocked |= Thread.holdsLock(engine);
+                notified.add(TickWheel.pack(x, y, z));
+            }
+        });
+    }
+
+    private void place(int x, int y, int type) {
+        chunk.setType(x, Z, y, type);
+        engine.linksChanged(x, y, Z);
+    }
+
+    private void power(int x, int y, int power) {
+        inputs.put(TickWheel.pack(x, y, Z), power);
+        engine.powerChanged(x, y, Z);
+    }
+
+    private int powerAt(int x, int y) {
+        assertEquals(WIRE, chunk.getType(x, Z, y));
+        return chunk.getMetaData(x, Z, y);
+    }
+
+    @Test
+    void powerDecaysAlongTheWire() {
+        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+            place(x, FLOOR, WIRE);
+        }
+        engine.pulse((changed, message) -> { });
+        power(0, FLOOR, 15);
+        engine.pulse((changed, message) -> messages.add(message));
+
+        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+            assertEquals(15 - x, powerAt(x, FLOOR));
+        }
+        assertEquals(1, messages.size());
+        assertEquals(15, ((MultiBlockChangeMessage) messages.get(0)).getRecords().size());
+        assertEquals(15, notified.size());
+
+        power(0, FLOOR, 0);
+        engine.pulse((changed, message) -> messages.add(message));
+
+        for (int x = 0; x < GlowChunk.WIDTH; x++) {
+            assertEquals(0, powerAt(x, FLOOR));
+        }
+        assertEquals(2, messages.size());
+    }
+
+    @Test
+    void strongerInputsWin() {
+        for (int x = 0; x < 10; x++) {
+            place(x, FLOOR, WIRE);
+        }
+        power(0, FLOOR, 15);
+        power(9, FLOOR, 15);
+        power(4, FLOOR, 3);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(11, powerAt(4, FLOOR));
+        assertEquals(11, powerAt(5, FLOOR));
+        assertEquals(15, powerAt(9, FLOOR));
+    }
+
+    @Test
+    void networksAreCachedUntilTheirLinksChange() {
+        for (int x = 0; x < 9; x++) {
+            if (x != 4) {
+                place(x, FLOOR, WIRE);
+            }
+        }
+        power(0, FLOOR, 15);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(2, engine.getNetworkCount());
+        assertEquals(0, powerAt(5, FLOOR));
+
+        place(4, FLOOR, WIRE);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(1, engine.getNetworkCount());
+        assertEquals(10, powerAt(5, FLOOR));
+
+        place(4, FLOOR, AIR);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(2, engine.getNetworkCount());
+        assertEquals(12, powerAt(3, FLOOR));
+        assertEquals(0, powerAt(5, FLOOR));
+    }
+
+    @Test
+    void wireLinksUpAndDownASolidStep() {
+        place(0, FLOOR, WIRE);
+        place(1, FLOOR, STONE);
+        place(2, FLOOR, STONE);
+        place(1, FLOOR + 1, WIRE);
+        place(2, FLOOR + 1, WIRE);
+        place(3, FLOOR, WIRE);
+        power(0, FLOOR, 15);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(1, engine.getNetworkCount());
+        assertEquals(14, powerAt(1, FLOOR + 1));
+        assertEquals(13, powerAt(2, FLOOR + 1));
+        assertEquals(12, powerAt(3, FLOOR));
+
+        // a solid block above the lower wire cuts the step up
+        place(0, FLOOR + 1, STONE);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(2, engine.getNetworkCount());
+        assertEquals(15, powerAt(0, FLOOR));
+        assertEquals(0, powerAt(1, FLOOR + 1));
+        assertTrue(notified.contains(TickWheel.pack(3, FLOOR, Z)));
+    }
+
+    @Test
+    void unloadedChunksAreForgotten() {
+        place(0, FLOOR, WIRE);
+        place(1, FLOOR, WIRE);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(1, engine.getNetworkCount());
+
+        engine.cancelChunk(1, 0);
+
+        assertEquals(1, engine.getNetworkCount());
+
+        engine.cancelChunk(0, 0);
+
+        assertEquals(0, engine.getNetworkCount());
+    }
+
+    @Test
+    void circuitIsCalledWithoutTheLock() {
+        place(0, FLOOR, WIRE);
+        place(1, FLOOR, WIRE);
+        power(0, FLOOR, 15);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(14, powerAt(1, FLOOR));
+        assertEquals(2, notified.size());
+        assertFalse(calledLocked);
+    }
+
+    @Test
+    void networkChangedWhileInputIsReadIsRecomputedOnNextPulse() {
+        place(0, FLOOR, WIRE);
+        place(1, FLOOR, WIRE);
+        power(0, FLOOR, 15);
+        reading = () -> place(2, FLOOR, WIRE);
+        engine.pulse((changed, message) -> { });
+
+        assertEquals(0, powerAt(1, FLOOR));
+        engine.pulse((changed, message) -> { });
+        assertEquals(13, powerAt(2, FLOOR));
+    }
+}
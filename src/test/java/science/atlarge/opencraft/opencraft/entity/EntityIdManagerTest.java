@@ -0,0 +1,48 @@
+package science.atlarge.opencraft.opencraft.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+/**
+ * Tests the ranges of ids that the managers of different partitions allocate.
+ */
+public class EntityIdManagerTest {
+
+    private static final int PARTITION_SIZE = 1 << (Integer.SIZE - 1 - EntityIdManager.PARTITION_BITS);
+
+    private static int allocate(EntityIdManager manager) {
+        return manager.allocate(mock(GlowEntity.class));
+    }
+
+    @Test
+    public void partitionsStartAtTheirFirstUsableId() {
+        assertEquals(1, allocate(EntityIdManager.partitioned(0)));
+        assertEquals(PARTITION_SIZE, allocate(EntityIdManager.partitioned(1)));
+        assertEquals(3 * PARTITION_SIZE, allocate(EntityIdManager.partitioned(3)));
+    }
+
+    @Test
+    public void idsStayWithinTheirPartition() {
+        EntityIdManager manager = EntityIdManager.partitioned(2);
+        for (int i = 0; i < 100; i++) {
+            int id = allocate(manager);
+            assertTrue(id >= 2 * PARTITION_SIZE && id < 3 * PARTITION_SIZE);
+        }
+
+        int last = (1 << EntityIdManager.PARTITION_BITS) - 1;
+        assertEquals(last * PARTITION_SIZE, allocate(EntityIdManager.partitioned(last)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativePartitionIsRejected() {
+        EntityIdManager.partitioned(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void partitionBeyondThePartitionBitsIsRejected() {
+        EntityIdManager.partitioned(1 << EntityIdManager.PARTITION_BITS);
+    }
+}
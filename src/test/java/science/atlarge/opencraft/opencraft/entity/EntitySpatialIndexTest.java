@@ -0,0 +1,97 @@
+package science.atlarge.opencraft.opencraft.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+import science.atlarge.opencraft.opencraft.entity.passive.GlowChicken;
+import science.atlarge.opencraft.opencraft.entity.physics.BoundingBox;
+
+/**
+ * Tests the range queries of the {@link EntityManager}, which are answered by its spatial index of
+ * chunk-sized cells. The chickens searched for are 0.4 blocks wide.
+ */
+public class EntitySpatialIndexTest extends GlowEntityTest<GlowChicken> {
+
+    public EntitySpatialIndexTest() {
+        super(GlowChicken::new);
+    }
+
+    private GlowChicken spawn(double x, double z) {
+        return new GlowChicken(new Location(world, x, 0, z));
+    }
+
+    private Set<Entity> search(double minX, double minZ, double maxX, double maxZ) {
+        return search(minX, minZ, maxX, maxZ, null);
+    }
+
+    private Set<Entity> search(double minX, double minZ, double maxX, double maxZ, GlowEntity except) {
+        BoundingBox box = BoundingBox.fromCorners(new Vector(minX, -1, minZ), new Vector(maxX, 2, maxZ));
+        return new HashSet<>(entityManager.getEntitiesInside(box, except));
+    }
+
+    private static Set<Entity> entities(Entity... entities) {
+        return new HashSet<>(Arrays.asList(entities));
+    }
+
+    @Test
+    public void entitiesAreFoundAcrossCellBoundaries() {
+        GlowChicken left = spawn(15.9, 0.5);
+        GlowChicken right = spawn(16.1, 0.5);
+        GlowChicken negative = spawn(-0.1, 0.5);
+
+        assertEquals(entities(left, right), search(15.8, 0.4, 16.0, 0.6));
+        assertEquals(entities(right), search(16.2, 0.4, 16.5, 0.6));
+        assertEquals(entities(left), search(15.5, 0.4, 15.8, 0.6));
+        assertEquals(entities(negative), search(0.05, 0.4, 0.5, 0.6));
+    }
+
+    @Test
+    public void movedEntitiesAreOnlyFoundAtTheirNewLocation() {
+        assertEquals(entities(entity), search(-1, -1, 1, 1));
+
+        entity.setRawLocation(new Location(world, 40.5, 0, -40.5));
+        assertEquals(entities(), search(-1, -1, 1, 1));
+        assertEquals(entities(entity), search(40, -41, 41, -40));
+
+        // within the same cell
+        entity.setRawLocation(new Location(world, 47.5, 0, -33.5));
+        assertEquals(entities(), search(40, -41, 41, -40));
+        assertEquals(entities(entity), search(47, -34, 48, -33));
+    }
+
+    @Test
+    public void unregisteredEntitiesAreNotFound() {
+        GlowChicken other = spawn(0.5, 0.5);
+
+        entityManager.unregister(entity);
+        assertEquals(entities(other), search(-1, -1, 1, 1));
+
+        // entities that are not registered are not added back by moving
+        entity.setRawLocation(new Location(world, 0.5, 0, 0.4));
+        assertEquals(entities(other), search(-1, -1, 1, 1));
+    }
+
+    @Test
+    public void excludedEntityIsNotFound() {
+        GlowChicken other = spawn(0.5, 0.5);
+
+        assertEquals(entities(other), search(-1, -1, 1, 1, entity));
+        assertEquals(entities(entity), search(-1, -1, 1, 1, other));
+    }
+
+    @Test
+    public void searchesCoveringMoreCellsThanOccupiedFindDistantEntities() {
+        GlowChicken distant = spawn(1000.5, -1000.5);
+
+        assertEquals(entities(entity, distant), search(-2000, -2000, 2000, 2000));
+        assertEquals(entities(distant), search(500, -2000, 2000, -500));
+        assertTrue(search(-2000, 500, 2000, 2000).isEmpty());
+    }
+}
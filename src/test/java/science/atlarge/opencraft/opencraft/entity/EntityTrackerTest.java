@@ -0,0 +1,137 @@
+package science.atlarge.opencraft.opencraft.entity;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Collections;
+import java.util.function.IntPredicate;
+import org.bukkit.Location;
+import org.junit.Before;
+import org.junit.Test;
+import science.atlarge.opencraft.opencraft.chunk.AreaOfInterest;
+import science.atlarge.opencraft.opencraft.entity.passive.GlowChicken;
+
+/**
+ * Tests the visibility of entities to a player with a view distance of two chunks, whose known
+ * entities are kept in {@link #known}.
+ */
+public class EntityTrackerTest extends GlowEntityTest<GlowChicken> {
+
+    private static final int VIEW_DISTANCE = 2;
+
+    private final IntSet known = new IntOpenHashSet();
+    private Location playerLocation;
+
+    public EntityTrackerTest() {
+        super(GlowChicken::new);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        when(server.getViewDistance()).thenReturn(VIEW_DISTANCE);
+        playerLocation = new Location(world, 0, 0, 0);
+        when(player.getAreaOfInterest())
+            .thenAnswer(invocation -> new AreaOfInterest(playerLocation, VIEW_DISTANCE));
+        doAnswer(invocation -> known.contains(((GlowEntity) invocation.getArgument(0)).getEntityId()))
+            .when(player).knowsEntity(any());
+        doAnswer(invocation -> known.add(((GlowEntity) invocation.getArgument(0)).getEntityId()))
+            .when(player).trackEntity(any());
+        doAnswer(invocation -> known.remove((int) invocation.<Integer>getArgument(0)))
+            .when(player).untrackEntity(anyInt());
+        doAnswer(invocation -> {
+            IntPredicate visible = invocation.getArgument(0);
+            for (IntIterator it = known.iterator(); it.hasNext(); ) {
+                if (!visible.test(it.nextInt())) {
+                    it.remove();
+                }
+            }
+            return null;
+        }).when(player).retainTrackedEntities(any());
+    }
+
+    private void update() {
+        entityManager.updateVisibility(Collections.singletonList(player));
+    }
+
+    private boolean isKnown(GlowEntity entity) {
+        return known.contains(entity.getEntityId());
+    }
+
+    @Test
+    public void entitiesCrossingChunkBoundariesEnterAndLeaveView() {
+        update();
+        assertTrue(isKnown(entity));
+
+        // three chunks away, outside the view distance
+        entity.setRawLocation(new Location(world, 48, 0, 0));
+        update();
+        assertFalse(isKnown(entity));
+
+        entity.setRawLocation(new Location(world, 47, 0, 0));
+        update();
+        assertTrue(isKnown(entity));
+    }
+
+    @Test
+    public void playersCrossingChunkBoundariesSeeOtherEntities() {
+        update();
+        assertTrue(isKnown(entity));
+
+        playerLocation = new Location(world, -33, 0, 0);
+        update();
+        assertFalse(isKnown(entity));
+
+        playerLocation = new Location(world, -32, 0, 0);
+        update();
+        assertTrue(isKnown(entity));
+    }
+
+    @Test
+    public void deadLivingEntitiesStayVisibleForTheirDeathAnimation() {
+        update();
+
+        entity.deathTicks = EntityTracker.DEATH_ANIMATION_TICKS;
+        entityManager.invalidate(entity);
+        update();
+        assertTrue(isKnown(entity));
+
+        entity.deathTicks = EntityTracker.DEATH_ANIMATION_TICKS + 1;
+        entityManager.invalidate(entity);
+        update();
+        assertFalse(isKnown(entity));
+    }
+
+    @Test
+    public void removedEntitiesAreDestroyed() {
+        update();
+
+        entity.remove();
+        update();
+        assertFalse(isKnown(entity));
+    }
+
+    @Test
+    public void knownLightningStaysVisibleOutOfView() {
+        GlowLightningStrike lightning = new GlowLightningStrike(location);
+        update();
+        assertTrue(isKnown(lightning));
+
+        playerLocation = new Location(world, 1000, 0, 0);
+        update();
+        assertTrue(isKnown(lightning));
+        assertFalse(isKnown(entity));
+
+        lightning.remove();
+        update();
+        assertFalse(isKnown(lightning));
+    }
+}
@@ -0,0 +1,126 @@
+package science.atlarge.opencraft.opencraft.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class that verifies whether the BucketedBlockingQueue orders elements by distance ring and only re-prioritises
+ * groups whose version has changed.
+ */
+class BucketedBlockingQueueTest {
+
+    private BucketedBlockingQueue<TestPriorityRunnable> queue;
+
+    @BeforeEach
+    void beforeEach() {
+        queue = new BucketedBlockingQueue<>();
+    }
+
+    @Test
+    void bucketOf() {
+        assertEquals(0, BucketedBlockingQueue.bucketOf(0.0));
+        assertEquals(0, BucketedBlockingQueue.bucketOf(15.0 * 15.0));
+        assertEquals(1, BucketedBlockingQueue.bucketOf(16.0 * 16.0));
+        assertEquals(BucketedBlockingQueue.BUCKET_COUNT - 1, BucketedBlockingQueue.bucketOf(Double.MAX_VALUE));
+        assertEquals(0, BucketedBlockingQueue.bucketOf(Double.NaN));
+    }
+
+    @Test
+    void pollsNearestRingFirst() {
+        TestPriorityRunnable far = new TestPriorityRunnable(null, 100.0 * 100.0);
+        TestPriorityRunnable near = new TestPriorityRunnable(null, 1.0);
+        TestPriorityRunnable middle = new TestPriorityRunnable(null, 40.0 * 40.0);
+        queue.addAll(Arrays.asList(far, near, middle));
+
+        assertEquals(3, queue.size());
+        assertSame(near, queue.peek());
+        assertSame(near, queue.poll());
+        assertSame(middle, queue.poll());
+        assertSame(far, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void removedElementsAreSkipped() throws InterruptedException {
+        TestPriorityRunnable first = new TestPriorityRunnable(null, 1.0);
+        TestPriorityRunnable second = new TestPriorityRunnable(null, 1.0);
+        queue.addAll(Arrays.asList(first, second));
+
+        assertTrue(queue.remove(first));
+        assertEquals(1, queue.size());
+        assertSame(second, queue.take());
+        assertNull(queue.poll(1L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void unchangedGroupsAreNotUpdated() {
+        Object version = new Object();
+        TestPriorityRunnable runnable = new TestPriorityRunnable(version, 1.0);
+        queue.executeAndCancel(Collections.singletonList(runnable), element -> false);
+
+        runnable.nextPriority = 100.0 * 100.0;
+        Set<TestPriorityRunnable> cancelled = queue.executeAndCancel(Collections.emptyList(), element -> true);
+
+        assertTrue(cancelled.isEmpty());
+        assertEquals(0, runnable.updates);
+        assertSame(runnable, queue.poll());
+    }
+
+    @Test
+    void changedGroupsAreMovedAndCancelled() {
+        TestPriorityRunnable moved = new TestPriorityRunnable(null, 1.0);
+        TestPriorityRunnable stays = new TestPriorityRunnable(null, 20.0 * 20.0);
+        TestPriorityRunnable toBeCancelled = new TestPriorityRunnable(null, 1.0);
+        queue.executeAndCancel(Arrays.asList(moved, stays, toBeCancelled), element -> false);
+
+        moved.nextPriority = 100.0 * 100.0;
+        Set<TestPriorityRunnable> cancelled =
+            queue.executeAndCancel(Collections.emptyList(), element -> element == toBeCancelled);
+
+        assertEquals(Collections.singleton(toBeCancelled), cancelled);
+        assertEquals(2, queue.size());
+        assertSame(stays, queue.poll());
+        assertSame(moved, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    private static final class TestPriorityRunnable extends PriorityRunnable {
+
+        private final Object version;
+        private Double nextPriority;
+        private int updates;
+
+        TestPriorityRunnable(Object version, double priority) {
+            this.version = version;
+            setPriority(priority);
+        }
+
+        @Override
+        public Object getPriorityVersion() {
+            return version;
+        }
+
+        @Override
+        public void updatePriority() {
+            updates++;
+            if (nextPriority != null) {
+                setPriority(nextPriority);
+            }
+        }
+
+        @Override
+        public void run() {
+            // not relevant for these tests
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package science.atlarge.opencraft.opencraft.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+
+/**
+ * The region tick executor is tested for processing all items, and for never processing adjacent regions at the same
+ * time.
+ */
+class RegionTickExecutorTest {
+
+    private static final int REGION_SIZE = 2;
+
+    private RegionTickExecutor executor;
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdown();
+    }
+
+    @Test
+    void allItemsAreProcessed() {
+        executor = new RegionTickExecutor("test", 4, REGION_SIZE);
+        List<long[]> chunks = chunks(-10, 10);
+        AtomicInteger processed = new AtomicInteger();
+
+        executor.forEachByRegion(chunks, RegionTickExecutorTest::key, chunk -> processed.incrementAndGet());
+
+        assertEquals(chunks.size(), processed.get());
+    }
+
+    @Test
+    void adjacentRegionsAreNotProcessedConcurrently() {
+        executor = new RegionTickExecutor("test", 8, REGION_SIZE);
+        Set<Long> active = ConcurrentHashMap.newKeySet();
+        AtomicBoolean conflict = new AtomicBoolean();
+
+        executor.forEachByRegion(chunks(-8, 8), RegionTickExecutorTest::key, chunk -> {
+            int regionX = Math.floorDiv((int) chunk[0], REGION_SIZE);
+            int regionZ = Math.floorDiv((int) chunk[1], REGION_SIZE);
+            long region = GlowChunk.Key.toLong(regionX, regionZ);
+            active.add(region);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if ((dx != 0 || dz != 0) && active.contains(GlowChunk.Key.toLong(regionX + dx, regionZ + dz))) {
+                        conflict.set(true);
+                    }
+                }
+            }
+            Thread.yield();
+            active.remove(region);
+        });
+
+        assertFalse(conflict.get());
+    }
+
+    @Test
+    void adjacentRegionsHaveDifferentColors() {
+        for (int x = -2; x <= 2; x++) {
+            for (int z = -2; z <= 2; z++) {
+                assertNotEquals(RegionTickExecutor.colorOf(x, z), RegionTickExecutor.colorOf(x + 1, z));
+                assertNotEquals(RegionTickExecutor.colorOf(x, z), RegionTickExecutor.colorOf(x, z + 1));
+                assertNotEquals(RegionTickExecutor.colorOf(x, z), RegionTickExecutor.colorOf(x + 1, z + 1));
+                assertNotEquals(RegionTickExecutor.colorOf(x, z), RegionTickExecutor.colorOf(x + 1, z - 1));
+            }
+        }
+    }
+
+    @Test
+    void singleThreadRunsOnCaller() {
+        executor = new RegionTickExecutor("test", 1, REGION_SIZE);
+        Thread caller = Thread.currentThread();
+        AtomicBoolean elsewhere = new AtomicBoolean();
+
+        executor.forEachByRegion(chunks(-2, 2), RegionTickExecutorTest::key,
+            chunk -> elsewhere.compareAndSet(false, Thread.currentThread() != caller));
+
+        assertFalse(elsewhere.get());
+    }
+
+    @Test
+    void computationsRunOnPool() {
+        executor = new RegionTickExecutor("test", 2, REGION_SIZE);
+
+        String thread = executor.invoke(() -> Thread.currentThread().getName());
+
+        assertTrue(thread.startsWith("test-"));
+    }
+
+    private static List<long[]> chunks(int min, int max) {
+        List<long[]> chunks = new ArrayList<>();
+        for (int x = min; x <= max; x++) {
+            for (int z = min; z <= max; z++) {
+                chunks.add(new long[] {x, z});
+            }
+        }
+        return chunks;
+    }
+
+    private static long key(long[] chunk) {
+        return GlowChunk.Key.toLong((int) chunk[0], (int) chunk[1]);
+    }
+}
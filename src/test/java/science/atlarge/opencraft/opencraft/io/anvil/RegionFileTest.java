@@ -0,0 +1,145 @@
+package science.atlarge.opencraft.opencraft.io.anvil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.ByteStreams;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.ServerProvider;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
+
+class RegionFileTest {
+
+    /**
+     * The lengths of the chunks that are written, which take up one, two and five sectors.
+     */
+    private static final int[] LENGTHS = {100, 5000, 20000};
+
+    @TempDir
+    File folder;
+
+    @BeforeAll
+    static void setUpServer() {
+        GlowServer server = mock(GlowServer.class);
+        when(server.getConfig()).thenReturn(mock(ServerConfig.class));
+        ServerProvider.setMockServer(server);
+    }
+
+    @AfterAll
+    static void tearDownServer() {
+        ServerProvider.setMockServer(null);
+    }
+
+    @Test
+    void chunksAreReadBackAfterReopening() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    void chunksAreReadBackFromMemoryMappedFile() throws IOException {
+        roundTrip(true);
+    }
+
+    private void roundTrip(boolean memoryMapped) throws IOException {
+        File path = new File(folder, "r.0.0.mca");
+        RegionFile region = new RegionFile(path, memoryMapped);
+        AtomicBoolean[] written = new AtomicBoolean[LENGTHS.length];
+        for (int i = 0; i < LENGTHS.length; i++) {
+            written[i] = write(region, i, LENGTHS[i]);
+        }
+        // rewrite one chunk in between flushes, so that its old sectors are freed
+        region.flush();
+        write(region, 0, LENGTHS[1]);
+        region.close();
+
+        for (AtomicBoolean flag : written) {
+            assertTrue(flag.get());
+        }
+        region = new RegionFile(path, memoryMapped);
+        assertArrayEquals(data(0, LENGTHS[1]), read(region, 0));
+        for (int i = 1; i < LENGTHS.length; i++) {
+            assertArrayEquals(data(i, LENGTHS[i]), read(region, i));
+        }
+        assertNull(region.getChunkDataInputStream(LENGTHS.length, 0));
+        region.close();
+    }
+
+    @Test
+    void openStreamOfMappedChunkOutlivesRewrite() throws IOException {
+        RegionFile region = new RegionFile(new File(folder, "r.0.0.mca"), true);
+        write(region, 0, LENGTHS[0]);
+        region.flush();
+
+        try (DataInputStream in = region.getChunkDataInputStream(0, 0)) {
+            // the sector of the rewritten chunk would be reused by the next chunk of the same size
+            write(region, 0, LENGTHS[1]);
+            region.flush();
+            write(region, 1, LENGTHS[0]);
+            region.flush();
+
+            assertArrayEquals(data(0, LENGTHS[0]), ByteStreams.toByteArray(in));
+        }
+        assertArrayEquals(data(0, LENGTHS[1]), read(region, 0));
+        assertArrayEquals(data(1, LENGTHS[0]), read(region, 1));
+        region.close();
+    }
+
+    @Test
+    void failedFlushKeepsChunksBuffered() throws IOException {
+        File path = new File(folder, "r.0.0.mca");
+        RegionFile region = new RegionFile(path);
+        AtomicBoolean written = write(region, 0, LENGTHS[1]);
+
+        // an interrupt closes the channel of the file when it is written
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IOException.class, region::flush);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertFalse(written.get());
+        assertTrue(region.hasChunk(0, 0));
+        assertArrayEquals(data(0, LENGTHS[1]), read(region, 0));
+        assertThrows(IOException.class, region::close);
+
+        region = new RegionFile(path);
+        assertFalse(region.hasChunk(0, 0));
+        region.close();
+    }
+
+    private static AtomicBoolean write(RegionFile region, int x, int length) throws IOException {
+        AtomicBoolean written = new AtomicBoolean();
+        try (DataOutputStream out = region.getChunkDataOutputStream(x, 0, () -> written.set(true))) {
+            out.write(data(x, length));
+        }
+        return written;
+    }
+
+    private static byte[] read(RegionFile region, int x) throws IOException {
+        try (DataInputStream in = region.getChunkDataInputStream(x, 0)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static byte[] data(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
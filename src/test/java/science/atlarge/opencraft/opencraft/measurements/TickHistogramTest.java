@@ -0,0 +1,60 @@
+package science.atlarge.opencraft.opencraft.measurements;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tick histogram is tested for the accuracy of its buckets and reported statistics.
+ */
+class TickHistogramTest {
+
+    private TickHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        histogram = new TickHistogram();
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (long value = 0; value < 1 << 20; value++) {
+            int index = TickHistogram.indexOf(value);
+            assertTrue(value <= TickHistogram.highestValueOf(index));
+            if (index > 0) {
+                assertTrue(value > TickHistogram.highestValueOf(index - 1));
+            }
+        }
+    }
+
+    @Test
+    void percentilesAreWithinRelativeError() {
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+        assertEquals(500_000, histogram.getPercentile(50), 500_000 / 32.0);
+        assertEquals(990_000, histogram.getPercentile(99), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    void resetClearsValues() {
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
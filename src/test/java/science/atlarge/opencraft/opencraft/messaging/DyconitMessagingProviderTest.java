@@ -0,0 +1,102 @@
+package science.atlarge.opencraft.opencraft.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.GlowServer;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.ChunkPolicy;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.InfiniteBoundsPolicy;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.ZeroBoundsPolicy;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig;
+import science.atlarge.opencraft.opencraft.util.config.ServerConfig.Key;
+
+/**
+ * The provider is tested for selecting the policy of each world from the world-policies section, and for sharing a
+ * single system between all worlds when per-world systems are disabled.
+ */
+class DyconitMessagingProviderTest {
+
+    private final Map<Key, Object> parameters = new EnumMap<>(Key.class);
+    private GlowServer server;
+    private GlowWorld overworld;
+    private GlowWorld nether;
+    private GlowWorld end;
+
+    private static GlowWorld world(String name) {
+        GlowWorld world = mock(GlowWorld.class);
+        when(world.getName()).thenReturn(name);
+        return world;
+    }
+
+    @BeforeEach
+    void setUp() {
+        server = mock(GlowServer.class);
+        when(server.getConfig()).thenReturn(new ServerConfig(new File("config"), new File("opencraft.yml"),
+            parameters));
+        when(server.getViewDistance()).thenReturn(8);
+        overworld = world("world");
+        nether = world("world_nether");
+        end = world("world_the_end");
+        parameters.put(Key.OPENCRAFT_POLICY, "chunk");
+        parameters.put(Key.OPENCRAFT_MESSAGING_WORLD_POLICIES, Arrays.asList(
+            ImmutableMap.of("world", "world_nether", "policy", "zero"),
+            ImmutableMap.of("world", "world_the_end", "policy", 42),
+            ImmutableMap.of("world", "world_the_end", "policy", "infinite")));
+    }
+
+    private DyconitMessaging build(DyconitMessagingProvider provider, GlowWorld world) {
+        return (DyconitMessaging) provider.build(server, world);
+    }
+
+    @Test
+    void worldsUseTheirConfiguredPolicyOrTheDefault() {
+        parameters.put(Key.OPENCRAFT_MESSAGING_PER_WORLD, true);
+        DyconitMessagingProvider provider = new DyconitMessagingProvider();
+
+        DyconitMessaging overworldMessaging = build(provider, overworld);
+        DyconitMessaging netherMessaging = build(provider, nether);
+        DyconitMessaging endMessaging = build(provider, end);
+
+        assertTrue(overworldMessaging.getPolicy() instanceof ChunkPolicy);
+        assertTrue(netherMessaging.getPolicy() instanceof ZeroBoundsPolicy);
+        // entries without a policy name are skipped
+        assertTrue(endMessaging.getPolicy() instanceof InfiniteBoundsPolicy);
+        assertNotSame(overworldMessaging, netherMessaging);
+        assertNotSame(overworldMessaging, build(provider, overworld));
+    }
+
+    @Test
+    void worldsShareTheDefaultPolicyWhenPerWorldSystemsAreDisabled() {
+        parameters.put(Key.OPENCRAFT_MESSAGING_PER_WORLD, false);
+        DyconitMessagingProvider provider = new DyconitMessagingProvider();
+
+        DyconitMessaging overworldMessaging = build(provider, overworld);
+
+        assertTrue(overworldMessaging.getPolicy() instanceof ChunkPolicy);
+        assertSame(overworldMessaging, build(provider, nether));
+        assertSame(overworldMessaging, build(provider, end));
+    }
+
+    @Test
+    void unknownPolicyOfAWorldIsRejected() {
+        parameters.put(Key.OPENCRAFT_MESSAGING_PER_WORLD, true);
+        parameters.put(Key.OPENCRAFT_MESSAGING_WORLD_POLICIES, Arrays.asList(
+            ImmutableMap.of("world", "world_nether", "policy", "unknown")));
+        DyconitMessagingProvider provider = new DyconitMessagingProvider();
+
+        assertTrue(build(provider, overworld).getPolicy() instanceof ChunkPolicy);
+        assertThrows(RuntimeException.class, () -> provider.build(server, nether));
+    }
+}
@@ -0,0 +1,139 @@
+package science.atlarge.opencraft.opencraft.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.flowpowered.network.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.dyconits.DyconitSystem;
+import science.atlarge.opencraft.dyconits.Subscriber;
+import science.atlarge.opencraft.dyconits.policies.DyconitCommand;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.MessageCoalescer;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.ChunkPolicy;
+import science.atlarge.opencraft.opencraft.messaging.filters.FeedbackFilter;
+
+/**
+ * The messaging system of a world is tested for subscribing only the players in that world, so players that change
+ * worlds are handed over to the system of their new world.
+ */
+class DyconitMessagingTest {
+
+    private final Consumer<Message> callback = message -> { };
+    private GlowWorld world;
+    private GlowWorld otherWorld;
+    private GlowPlayer player;
+    private RecordingPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        world = mock(GlowWorld.class);
+        otherWorld = mock(GlowWorld.class);
+        player = mock(GlowPlayer.class);
+        when(player.getWorld()).thenReturn(world);
+        policy = new RecordingPolicy();
+    }
+
+    private DyconitMessaging messaging(boolean coalesce, GlowWorld world) {
+        return new DyconitMessaging(new DyconitSystem<>(policy, new FeedbackFilter(), false), coalesce, world);
+    }
+
+    @Test
+    void playersInTheWorldAreSubscribed() {
+        DyconitMessaging messaging = messaging(false, world);
+
+        messaging.update(player, callback);
+
+        assertEquals(1, policy.updated.size());
+        assertEquals(player, policy.updated.get(0).getKey());
+        assertTrue(policy.removed.isEmpty());
+    }
+
+    @Test
+    void playersThatChangedWorldsAreRemoved() {
+        DyconitMessaging messaging = messaging(false, world);
+        messaging.update(player, callback);
+
+        when(player.getWorld()).thenReturn(otherWorld);
+        messaging.update(player, callback);
+
+        assertEquals(1, policy.updated.size());
+        assertEquals(Collections.singletonList(player), policy.removed);
+    }
+
+    @Test
+    void disconnectedPlayersAreRemoved() {
+        DyconitMessaging messaging = messaging(false, world);
+        messaging.update(player, callback);
+
+        when(player.isDisconnected()).thenReturn(true);
+        messaging.update(player, callback);
+
+        assertEquals(1, policy.updated.size());
+        assertEquals(Collections.singletonList(player), policy.removed);
+    }
+
+    @Test
+    void sharedSystemKeepsPlayersOfAllWorlds() {
+        DyconitMessaging messaging = messaging(false, null);
+        messaging.update(player, callback);
+
+        when(player.getWorld()).thenReturn(otherWorld);
+        messaging.update(player, callback);
+
+        assertEquals(2, policy.updated.size());
+        assertTrue(policy.removed.isEmpty());
+    }
+
+    @Test
+    void coalescerIsDroppedWhenPlayersChangeWorlds() {
+        DyconitMessaging messaging = messaging(true, world);
+        messaging.update(player, callback);
+        messaging.update(player, callback);
+        Consumer<Message> coalescer = policy.updated.get(0).getCallback();
+        assertTrue(coalescer instanceof MessageCoalescer);
+        assertEquals(coalescer, policy.updated.get(1).getCallback());
+
+        when(player.getWorld()).thenReturn(otherWorld);
+        messaging.update(player, callback);
+        when(player.getWorld()).thenReturn(world);
+        messaging.update(player, callback);
+
+        assertEquals(3, policy.updated.size());
+        assertNotSame(coalescer, policy.updated.get(2).getCallback());
+    }
+
+    /**
+     * Records the subscribers that are updated and removed, without subscribing them to any dyconit.
+     */
+    private static class RecordingPolicy extends ChunkPolicy {
+
+        private final List<Subscriber<Player, Message>> updated = new ArrayList<>();
+        private final List<Player> removed = new ArrayList<>();
+
+        RecordingPolicy() {
+            super(8);
+        }
+
+        @Override
+        public List<DyconitCommand<Player, Message>> update(Subscriber<Player, Message> sub) {
+            updated.add(sub);
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void removeSubscriber(Player player) {
+            removed.add(player);
+        }
+    }
+}
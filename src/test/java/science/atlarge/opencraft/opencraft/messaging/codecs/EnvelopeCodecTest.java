@@ -0,0 +1,96 @@
+package science.atlarge.opencraft.opencraft.messaging.codecs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.flowpowered.network.Message;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.Topic;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.PluginMessage;
+
+/**
+ * The envelope codec is tested by sending envelopes through an embedded, non-persistent ActiveMQ broker.
+ */
+class EnvelopeCodecTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+    private EnvelopeCodec codec;
+
+    @BeforeEach
+    void setUp() throws JMSException {
+        ActiveMQConnectionFactory factory =
+            new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false&broker.useJmx=false");
+        connection = factory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("chunk");
+        consumer = session.createConsumer(topic);
+        producer = session.createProducer(topic);
+        codec = new EnvelopeCodec();
+    }
+
+    @AfterEach
+    void tearDown() throws JMSException {
+        connection.close();
+    }
+
+    @Test
+    void batchRoundTrip() throws JMSException {
+        List<Message> messages = Arrays.asList(
+            new RelativeEntityPositionMessage(1, (short) 10, (short) -2, (short) 0),
+            new BlockChangeMessage(-100, 64, 300, 1, 2),
+            new PluginMessage("channel", new byte[1000]),
+            new EntityTeleportMessage(2, 1.5, 70, -8.25, 0, 0));
+
+        assertEquals(new MessageBatch(messages), roundTrip(new MessageBatch(messages)));
+    }
+
+    @Test
+    void singleMessageIsDecodedAsBatch() throws JMSException {
+        Message message = new BlockChangeMessage(0, 0, 0, 4);
+
+        assertEquals(new MessageBatch(Collections.singletonList(message)), roundTrip(message));
+    }
+
+    @Test
+    void emptyBatchRoundTrip() throws JMSException {
+        MessageBatch batch = new MessageBatch(Collections.emptyList());
+
+        assertEquals(batch, roundTrip(batch));
+    }
+
+    @Test
+    void buffersAreReused() throws JMSException {
+        MessageBatch large = new MessageBatch(Collections.singletonList(new PluginMessage("a", new byte[4096])));
+        MessageBatch small = new MessageBatch(Collections.singletonList(new PluginMessage("b", new byte[3])));
+
+        assertEquals(large, roundTrip(large));
+        assertEquals(small, roundTrip(small));
+    }
+
+    private Message roundTrip(Message message) throws JMSException {
+        producer.send(codec.encode(session, message));
+        javax.jms.Message received = consumer.receive(TIMEOUT);
+        assertNotNull(received);
+        return codec.decode(session, received);
+    }
+}
@@ -0,0 +1,101 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.flowpowered.network.Message;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.RelativeEntityPositionRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.ChatMessage;
+
+/**
+ * The message coalescer is tested for merging moves, superseding absolute updates, and preserving the order of other
+ * messages.
+ */
+class MessageCoalescerTest {
+
+    private List<Message> delivered;
+    private MessageCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        delivered = new ArrayList<>();
+        coalescer = new MessageCoalescer(delivered::add);
+    }
+
+    @Test
+    void nothingIsDeliveredBeforeFlush() {
+        coalescer.accept(move(1, 10));
+        assertTrue(delivered.isEmpty());
+
+        coalescer.flush();
+        assertEquals(Arrays.asList(move(1, 10)), delivered);
+    }
+
+    @Test
+    void movesAreMerged() {
+        coalescer.accept(move(1, 10));
+        coalescer.accept(move(2, 5));
+        coalescer.accept(move(1, 20));
+        coalescer.accept(new RelativeEntityPositionRotationMessage(1, (short) 1, (short) 0, (short) 0, 90, 0));
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(move(2, 5),
+            new RelativeEntityPositionRotationMessage(1, (short) 31, (short) 0, (short) 0, 90, 0)), delivered);
+    }
+
+    @Test
+    void overflowingMovesAreNotMerged() {
+        coalescer.accept(move(1, Short.MAX_VALUE));
+        coalescer.accept(move(1, 1));
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(move(1, Short.MAX_VALUE), move(1, 1)), delivered);
+    }
+
+    @Test
+    void teleportsSupersedeMovesAndRotations() {
+        EntityTeleportMessage teleport = new EntityTeleportMessage(1, 0, 64, 0, 0, 0);
+        coalescer.accept(move(1, 10));
+        coalescer.accept(new EntityRotationMessage(1, 45, 0));
+        coalescer.accept(teleport);
+        coalescer.accept(move(1, 3));
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(teleport, move(1, 3)), delivered);
+    }
+
+    @Test
+    void blockChangesSupersedeEarlierChanges() {
+        coalescer.accept(new BlockChangeMessage(1, 2, 3, 16));
+        coalescer.accept(new BlockChangeMessage(1, 2, 4, 16));
+        coalescer.accept(new BlockChangeMessage(1, 2, 3, 0));
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(new BlockChangeMessage(1, 2, 4, 16), new BlockChangeMessage(1, 2, 3, 0)),
+            delivered);
+    }
+
+    @Test
+    void otherMessagesAreBarriers() {
+        ChatMessage chat = new ChatMessage("hello");
+        coalescer.accept(move(1, 10));
+        coalescer.accept(chat);
+        coalescer.accept(move(1, 20));
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(move(1, 10), chat, move(1, 20)), delivered);
+    }
+
+    private static RelativeEntityPositionMessage move(int id, int deltaX) {
+        return new RelativeEntityPositionMessage(id, (short) deltaX, (short) 0, (short) 0);
+    }
+}
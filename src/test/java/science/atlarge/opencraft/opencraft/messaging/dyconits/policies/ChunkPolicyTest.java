@@ -0,0 +1,88 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits.policies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.flowpowered.network.Message;
+import java.util.List;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.dyconits.Subscriber;
+import science.atlarge.opencraft.dyconits.policies.DyconitCommand;
+import science.atlarge.opencraft.dyconits.policies.DyconitSubscribeCommand;
+import science.atlarge.opencraft.dyconits.policies.DyconitUnsubscribeCommand;
+
+/**
+ * The dyconit chunk policy is tested for cached dyconit names and for incremental subscription updates.
+ */
+class ChunkPolicyTest {
+
+    private World world;
+    private Location location;
+    private Player player;
+    private ChunkPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        world = mock(World.class);
+        when(world.getName()).thenReturn("world");
+        location = new Location(world, 0, 64, 0);
+        player = mock(Player.class);
+        when(player.getViewDistance()).thenReturn(1);
+        when(player.getLocation(any(Location.class))).thenAnswer(invocation -> {
+            Location target = invocation.getArgument(0);
+            target.setWorld(location.getWorld());
+            target.setX(location.getX());
+            target.setY(location.getY());
+            target.setZ(location.getZ());
+            return target;
+        });
+        policy = new ChunkPolicy(8);
+    }
+
+    @Test
+    void namesOfSubscribedChunksAreCached() {
+        Location publisher = new Location(world, 20, 64, -3);
+        String before = policy.computeAffectedDyconit(publisher);
+        assertEquals("world-1--1", before);
+        assertNotSame(before, policy.computeAffectedDyconit(publisher));
+
+        update();
+        String cached = policy.computeAffectedDyconit(publisher);
+        assertEquals(before, cached);
+        assertSame(cached, policy.computeAffectedDyconit(publisher));
+
+        policy.removeSubscriber(player);
+        assertNotSame(cached, policy.computeAffectedDyconit(publisher));
+    }
+
+    @Test
+    void onlyChangedChunksAreUpdated() {
+        List<DyconitCommand<Player, Message>> initial = update();
+        assertEquals(1 + 9, count(initial, DyconitSubscribeCommand.class));
+
+        location.setX(8);
+        assertTrue(update().isEmpty());
+
+        location.setX(16);
+        List<DyconitCommand<Player, Message>> moved = update();
+        assertEquals(3, count(moved, DyconitSubscribeCommand.class));
+        assertEquals(3, count(moved, DyconitUnsubscribeCommand.class));
+    }
+
+    private List<DyconitCommand<Player, Message>> update() {
+        return policy.update(new Subscriber<>(player, message -> { }));
+    }
+
+    private static long count(List<DyconitCommand<Player, Message>> commands, Class<?> type) {
+        return commands.stream().filter(type::isInstance).count();
+    }
+}
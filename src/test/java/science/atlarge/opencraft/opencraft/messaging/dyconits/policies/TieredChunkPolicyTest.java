@@ -0,0 +1,57 @@
+package science.atlarge.opencraft.opencraft.messaging.dyconits.policies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import science.atlarge.opencraft.dyconits.Bounds;
+import science.atlarge.opencraft.opencraft.messaging.dyconits.policies.TieredChunkPolicy.Tier;
+
+/**
+ * The tiered chunk policy is tested for assigning the bounds of the ring a chunk is in, and for reading its tiers from
+ * the configuration.
+ */
+class TieredChunkPolicyTest {
+
+    @Test
+    void chunksGetTheBoundsOfTheirRing() {
+        TieredChunkPolicy policy = new TieredChunkPolicy(8, Arrays.asList(new Tier(4, 500, 8), new Tier(1, 0, 0)));
+        Bounds inner = policy.chunkBounds(0, 0);
+        Bounds outer = policy.chunkBounds(2, -4);
+
+        assertSame(inner, policy.chunkBounds(-1, 1));
+        assertNotSame(inner, outer);
+        assertSame(outer, policy.chunkBounds(-4, 0));
+        assertSame(outer, policy.chunkBounds(8, 7));
+    }
+
+    @Test
+    void tiersAreReadFromTheConfiguration() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("radius", 3);
+        map.put("staleness", 100);
+        map.put("numerical", 2);
+        List<Map<?, ?>> maps = Collections.singletonList(map);
+
+        Tier tier = TieredChunkPolicy.fromConfigMaps(8, maps).getTiers().get(0);
+        assertEquals(3, tier.getRadius());
+        assertEquals(100, tier.getStaleness());
+        assertEquals(2, tier.getNumerical());
+
+        map.remove("numerical");
+        assertThrows(IllegalArgumentException.class, () -> TieredChunkPolicy.fromConfigMaps(8, maps));
+    }
+
+    @Test
+    void policiesNeedTiers() {
+        assertThrows(IllegalArgumentException.class, () -> new TieredChunkPolicy(8, Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> new Tier(-1, 0, 0));
+    }
+}
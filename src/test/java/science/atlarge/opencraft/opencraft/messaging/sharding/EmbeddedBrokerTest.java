@@ -0,0 +1,88 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.flowpowered.network.Message;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.bukkit.Location;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+
+/**
+ * The embedded broker is tested for connecting two nodes over TCP, one in this JVM and one in a {@link ShardNode} in a
+ * forked JVM, as two servers would be connected.
+ */
+class EmbeddedBrokerTest {
+
+    @TempDir
+    Path directory;
+
+    private ShardedMessaging node;
+    private Process child;
+
+    @AfterEach
+    void tearDown() {
+        if (child != null) {
+            child.destroyForcibly();
+        }
+        if (node != null) {
+            node.close();
+        }
+        EmbeddedBroker.stop();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void nodesInDifferentJvmsExchangeBorderUpdates() throws Exception {
+        String url = EmbeddedBroker.start(freePort());
+        Path output = directory.resolve("node-b.log");
+        GlowWorld world = ShardNode.mockWorld();
+        RecordingMessaging local = new RecordingMessaging();
+        node = new ShardedMessaging(local, world,
+            RegionMap.fromConfigMaps(ShardNode.REGION_SIZE, ShardNode.NODES, "a"), ShardNode.VIEW_DISTANCE,
+            new ActiveMQConnectionFactory(url));
+        child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"), ShardNode.class.getName(), url)
+            .redirectOutput(output.toFile())
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+
+        long deadline = System.currentTimeMillis() + ShardNode.TIMEOUT;
+        while (local.published.isEmpty() && child.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            node.flush();
+        }
+        assertEquals(Collections.<Message>singletonList(ShardNode.CHANGE), local.published);
+
+        BlockChangeMessage change = new BlockChangeMessage(ShardNode.REGION_SIZE * 16 - 1, 64, 0, 2);
+        node.publish(new Location(world, change.getX(), change.getY(), change.getZ()), change);
+        node.flush();
+
+        assertTrue(child.waitFor(ShardNode.TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, child.exitValue());
+        // other lines of the output are logged by the broker client
+        List<String> received = Files.readAllLines(output, StandardCharsets.UTF_8).stream()
+            .filter(line -> line.startsWith(ShardNode.RECEIVED))
+            .collect(Collectors.toList());
+        assertEquals(Collections.singletonList(ShardNode.RECEIVED + change), received);
+    }
+}
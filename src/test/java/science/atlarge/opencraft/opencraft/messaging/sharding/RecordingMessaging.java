@@ -0,0 +1,38 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import com.flowpowered.network.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
+import science.atlarge.opencraft.opencraft.messaging.Messaging;
+
+/**
+ * A local messaging system that records the messages published to it.
+ */
+final class RecordingMessaging implements Messaging {
+
+    final List<Message> published = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void update(GlowPlayer sub, Consumer<Message> callback) {
+    }
+
+    @Override
+    public void remove(GlowPlayer sub) {
+    }
+
+    @Override
+    public void publish(Object sub, Message message) {
+        published.add(message);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,74 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The region map is tested for assigning regions to nodes and finding the neighbours of border chunks.
+ */
+class RegionMapTest {
+
+    private static final List<Map<?, ?>> NODES = Arrays.asList(
+        ImmutableMap.of("name", "a"),
+        ImmutableMap.of("name", "b", "server", "lobby-b"),
+        ImmutableMap.of("name", "c"));
+
+    private final RegionMap regions = RegionMap.fromConfigMaps(32, NODES, "a");
+
+    @Test
+    void regionsAreOwnedInTurn() {
+        assertEquals("a", regions.ownerOf(0, 0).getName());
+        assertEquals("a", regions.ownerOf(31, -1000).getName());
+        assertEquals("b", regions.ownerOf(32, 0).getName());
+        assertEquals("c", regions.ownerOf(64, 0).getName());
+        assertEquals("a", regions.ownerOf(96, 0).getName());
+        assertEquals("c", regions.ownerOf(-1, 0).getName());
+    }
+
+    @Test
+    void localRegions() {
+        assertTrue(regions.isLocal(0, 500));
+        assertFalse(regions.isLocal(40, 500));
+        assertTrue(regions.isLocal(-65, 0));
+    }
+
+    @Test
+    void serverDefaultsToName() {
+        assertEquals("a", regions.getNodes().get(0).getServer());
+        assertEquals("lobby-b", regions.getNodes().get(1).getServer());
+    }
+
+    @Test
+    void innerChunksHaveNoNeighbours() {
+        assertTrue(regions.neighboursOf(16, 0, 8).isEmpty());
+    }
+
+    @Test
+    void borderChunksHaveNeighbours() {
+        assertEquals(Collections.singletonList(regions.getNodes().get(1)), regions.neighboursOf(28, 0, 8));
+        assertEquals(Collections.singletonList(regions.getNodes().get(2)), regions.neighboursOf(3, 0, 8));
+        assertEquals(Arrays.asList(regions.getNodes().get(2), regions.getNodes().get(1)),
+            regions.neighboursOf(16, 0, 20));
+    }
+
+    @Test
+    void singleNodeHasNoNeighbours() {
+        RegionMap single = RegionMap.fromConfigMaps(4, Collections.singletonList(ImmutableMap.of("name", "a")), "a");
+
+        assertTrue(single.neighboursOf(3, 0, 10).isEmpty());
+    }
+
+    @Test
+    void unknownLocalNode() {
+        assertThrows(IllegalArgumentException.class, () -> RegionMap.fromConfigMaps(32, NODES, "d"));
+    }
+}
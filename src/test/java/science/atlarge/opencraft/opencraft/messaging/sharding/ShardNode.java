@@ -0,0 +1,80 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.bukkit.Location;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.chunk.ChunkManager;
+import science.atlarge.opencraft.opencraft.entity.EntityManager;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+
+/**
+ * Node b of a sharded world, which {@link EmbeddedBrokerTest} runs in a JVM of its own. The node connects to the broker
+ * at the URL given as its argument, sends a block change near its border with node a, and prints the first message
+ * that it receives from node a. It exits with status 1 if no message arrives in time.
+ */
+public final class ShardNode {
+
+    static final List<Map<?, ?>> NODES = Arrays.asList(
+        ImmutableMap.of("name", "a"),
+        ImmutableMap.of("name", "b"));
+    static final int REGION_SIZE = 32;
+    static final int VIEW_DISTANCE = 4;
+    static final long TIMEOUT = 30000;
+
+    /**
+     * The prefix of the line on which the received message is printed.
+     */
+    static final String RECEIVED = "received: ";
+
+    /**
+     * The block change that node b sends.
+     */
+    static final BlockChangeMessage CHANGE = new BlockChangeMessage(REGION_SIZE * 16, 64, 0, 1);
+
+    private ShardNode() {
+    }
+
+    /**
+     * Create a world without entities or loaded chunks.
+     *
+     * @return the world.
+     */
+    static GlowWorld mockWorld() {
+        GlowWorld world = mock(GlowWorld.class);
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.iterator()).thenAnswer(invocation -> Collections.emptyIterator());
+        when(world.getName()).thenReturn("world");
+        when(world.getEntityManager()).thenReturn(entityManager);
+        when(world.getChunkManager()).thenReturn(mock(ChunkManager.class));
+        return world;
+    }
+
+    public static void main(String[] args) throws Exception {
+        GlowWorld world = mockWorld();
+        RecordingMessaging local = new RecordingMessaging();
+        ShardedMessaging node = new ShardedMessaging(local, world, RegionMap.fromConfigMaps(REGION_SIZE, NODES, "b"),
+            VIEW_DISTANCE, new ActiveMQConnectionFactory(args[0]));
+        node.publish(new Location(world, CHANGE.getX(), CHANGE.getY(), CHANGE.getZ()), CHANGE);
+        node.flush();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (local.published.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            node.flush();
+        }
+        node.close();
+        if (local.published.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println(RECEIVED + local.published.get(0));
+        System.exit(0);
+    }
+}
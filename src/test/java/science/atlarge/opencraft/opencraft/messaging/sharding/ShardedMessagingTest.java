@@ -0,0 +1,295 @@
+package science.atlarge.opencraft.opencraft.messaging.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.flowpowered.network.Message;
+import com.google.common.collect.ImmutableMap;
+import io.netty.channel.ChannelFuture;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.jms.JMSException;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.bukkit.Location;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import science.atlarge.opencraft.opencraft.GlowWorld;
+import science.atlarge.opencraft.opencraft.chunk.ChunkManager;
+import science.atlarge.opencraft.opencraft.chunk.GlowChunk;
+import science.atlarge.opencraft.opencraft.entity.EntityManager;
+import science.atlarge.opencraft.opencraft.entity.GlowEntity;
+import science.atlarge.opencraft.opencraft.entity.GlowPlayer;
+import science.atlarge.opencraft.opencraft.messaging.Messaging;
+import science.atlarge.opencraft.opencraft.net.GlowSession;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.DestroyEntitiesMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityHeadRotationMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.EntityTeleportMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.entity.SpawnXpOrbMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.BlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.MultiBlockChangeMessage;
+import science.atlarge.opencraft.opencraft.net.message.play.game.PluginMessage;
+import science.atlarge.opencraft.opencraft.util.nbt.CompoundTag;
+
+/**
+ * Two nodes of a sharded world are connected through an embedded, non-persistent ActiveMQ broker, and are tested for
+ * exchanging the updates of border chunks and entities, and handing off players. The state of a player is a tag
+ * holding its name.
+ */
+class ShardedMessagingTest {
+
+    private static final String BROKER_URL = "vm://sharding?broker.persistent=false&broker.useJmx=false";
+    private static final int VIEW_DISTANCE = 4;
+    private static final long TIMEOUT = 5000;
+    private static final List<Map<?, ?>> NODES = Arrays.asList(
+        ImmutableMap.of("name", "a"),
+        ImmutableMap.of("name", "b"));
+
+    private GlowWorld world;
+    private ChunkManager chunkManager;
+    private final List<GlowEntity> entities = new CopyOnWriteArrayList<>();
+    private RecordingMessaging localA;
+    private RecordingMessaging localB;
+    private ShardedMessaging nodeA;
+    private ShardedMessaging nodeB;
+    private final Map<GlowPlayer, CompoundTag> loadedStates = Collections.synchronizedMap(new HashMap<>());
+
+    @BeforeEach
+    void setUp() throws JMSException {
+        world = mock(GlowWorld.class);
+        when(world.getName()).thenReturn("world");
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.iterator()).thenAnswer(invocation -> entities.iterator());
+        when(world.getEntityManager()).thenReturn(entityManager);
+        chunkManager = mock(ChunkManager.class);
+        when(world.getChunkManager()).thenReturn(chunkManager);
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
+        localA = new RecordingMessaging();
+        localB = new RecordingMessaging();
+        nodeA = createNode(localA, "a", factory);
+        nodeB = createNode(localB, "b", factory);
+    }
+
+    private ShardedMessaging createNode(Messaging local, String node, ActiveMQConnectionFactory factory)
+        throws JMSException {
+        return new ShardedMessaging(local, world, RegionMap.fromConfigMaps(32, NODES, node), VIEW_DISTANCE, factory,
+            player -> {
+                CompoundTag state = new CompoundTag();
+                state.putString("name", player.getName());
+                return state;
+            }, loadedStates::put);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void borderUpdatesReachNeighbour() throws InterruptedException {
+        BlockChangeMessage change = new BlockChangeMessage(31 * 16 + 2, 64, 5, 1);
+        nodeA.publish(new Location(world, 31 * 16 + 2, 64, 5), change);
+        assertEquals(Collections.singletonList(change), localA.published);
+
+        nodeA.flush();
+
+        assertEquals(Collections.singletonList(change), awaitPublished(nodeB, localB));
+    }
+
+    @Test
+    void borderUpdatesAreAppliedToLoadedChunksOfNeighbour() throws InterruptedException {
+        GlowChunk chunk = mock(GlowChunk.class);
+        when(chunk.isLoaded()).thenReturn(true);
+        when(chunk.getType(0, 0, 70)).thenReturn(1);
+        when(chunkManager.getChunkIfPresent(GlowChunk.Key.toLong(31, 0))).thenReturn(chunk);
+        BlockChangeMessage change = new BlockChangeMessage(31 * 16 + 2, 64, 5, 1, 3);
+        MultiBlockChangeMessage multiChange = new MultiBlockChangeMessage(31, 0, Arrays.asList(
+            new BlockChangeMessage(0, 70, 0, 1, 0),
+            new BlockChangeMessage(1, 70, 1, 2, 0)));
+        nodeA.publish(new Location(world, 31 * 16 + 2, 64, 5), change);
+        nodeA.publish(new Location(world, 31 * 16, 70, 0), multiChange);
+        nodeA.flush();
+
+        assertEquals(Arrays.asList(change, multiChange), awaitPublished(nodeB, localB, 2));
+        verify(chunk).setType(2, 5, 64, 1);
+        verify(chunk).setMetaData(2, 5, 64, 3);
+        // blocks that already have the changed state are left alone
+        verify(chunk, never()).setType(0, 0, 70, 1);
+        verify(chunk).setType(1, 1, 70, 2);
+        verify(chunk, never()).setMetaData(anyInt(), anyInt(), anyInt(), eq(0));
+    }
+
+    @Test
+    void innerUpdatesStayLocal() throws InterruptedException {
+        BlockChangeMessage inner = new BlockChangeMessage(16 * 16, 64, 0, 1);
+        BlockChangeMessage border = new BlockChangeMessage(31 * 16, 64, 0, 2);
+        nodeA.publish(new Location(world, 16 * 16, 64, 0), inner);
+        nodeA.flush();
+        nodeA.publish(new Location(world, 31 * 16, 64, 0), border);
+        nodeA.flush();
+
+        // updates are delivered in order, so the inner update would have arrived before the border update
+        assertEquals(Collections.singletonList(border), awaitPublished(nodeB, localB));
+    }
+
+    @Test
+    void entityUpdatesStayLocal() throws InterruptedException {
+        EntityHeadRotationMessage rotation = new EntityHeadRotationMessage(1, 0);
+        BlockChangeMessage border = new BlockChangeMessage(31 * 16, 64, 0, 2);
+        nodeA.publish(new Location(world, 31 * 16, 64, 0), rotation);
+        nodeA.flush();
+        nodeA.publish(new Location(world, 31 * 16, 64, 0), border);
+        nodeA.flush();
+
+        assertEquals(Arrays.asList(rotation, border), localA.published);
+        assertEquals(Collections.singletonList(border), awaitPublished(nodeB, localB));
+    }
+
+    @Test
+    void borderEntitiesAreSpawnedOnNeighbourUntilTheyLeave() throws InterruptedException {
+        GlowEntity entity = mockEntity(7, new Location(world, 31 * 16 + 2, 64, 5));
+        EntityTeleportMessage early = new EntityTeleportMessage(7, 31 * 16 + 2, 64, 5, 0, 0);
+        EntityTeleportMessage teleport = new EntityTeleportMessage(7, 31 * 16 + 3, 64, 5, 0, 0);
+        // updates of entities that have not been spawned on the neighbour are not forwarded
+        nodeA.publish(entity, early);
+        nodeA.flush();
+        nodeA.publish(entity, teleport);
+        nodeA.flush();
+
+        assertEquals(Arrays.asList(entity.createSpawnMessage().get(0), teleport), awaitPublished(nodeB, localB, 2));
+
+        when(entity.getLocation()).thenReturn(new Location(world, 16 * 16, 64, 5));
+        nodeA.flush();
+        nodeA.publish(entity, early);
+        nodeA.flush();
+
+        assertEquals(new DestroyEntitiesMessage(Collections.singletonList(7)), awaitPublished(nodeB, localB, 3).get(2));
+        Thread.sleep(100);
+        nodeB.flush();
+        assertEquals(3, localB.published.size());
+    }
+
+    @Test
+    void removedEntitiesAreDestroyedOnNeighbour() throws InterruptedException {
+        GlowEntity entity = mockEntity(7, new Location(world, 31 * 16 + 2, 64, 5));
+        nodeA.flush();
+        assertEquals(1, awaitPublished(nodeB, localB, 1).size());
+
+        entities.remove(entity);
+        when(entity.isValid()).thenReturn(false);
+        nodeA.flush();
+
+        assertEquals(new DestroyEntitiesMessage(Collections.singletonList(7)), awaitPublished(nodeB, localB, 2).get(1));
+    }
+
+    @Test
+    void playersAreHandedOffWithTheirState() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        Location border = new Location(world, 32 * 16 + 1, 70, 3, 90, 10);
+        GlowPlayer leaving = mockPlayer(uuid, border);
+        when(leaving.getSession().sendWithFuture(any())).thenReturn(mock(ChannelFuture.class));
+
+        nodeA.update(leaving, message -> { });
+        nodeA.update(leaving, message -> { });
+        nodeA.flush();
+
+        // the player is asked to move to the server of node b once
+        ArgumentCaptor<Message> connect = ArgumentCaptor.forClass(Message.class);
+        verify(leaving.getSession()).sendWithFuture(connect.capture());
+        assertEquals(new PluginMessage("BungeeCord", connect("b")), connect.getValue());
+
+        GlowPlayer arriving = mockPlayer(uuid, new Location(world, 0, 64, 0));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        boolean arrived = false;
+        while (!arrived && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            arrived = nodeB.arrive(arriving);
+        }
+
+        assertTrue(arrived);
+        assertEquals("player", loadedStates.get(arriving).getString("name"));
+        verify(arriving).setRawLocation(border, false);
+        // the arrival is only claimed once
+        assertFalse(nodeB.arrive(arriving));
+    }
+
+    @Test
+    void failedHandoffsAreRetried() {
+        GlowPlayer player = mockPlayer(UUID.randomUUID(), new Location(world, 32 * 16 + 1, 70, 3));
+        // the session returns no future, as if the connection was closed
+
+        nodeA.update(player, message -> { });
+        nodeA.flush();
+        nodeA.update(player, message -> { });
+        nodeA.flush();
+
+        verify(player.getSession(), times(2)).sendWithFuture(any());
+    }
+
+    private GlowEntity mockEntity(int id, Location location) {
+        GlowEntity entity = mock(GlowEntity.class);
+        when(entity.getEntityId()).thenReturn(id);
+        when(entity.getLocation()).thenReturn(location);
+        when(entity.isValid()).thenReturn(true);
+        when(entity.createSpawnMessage()).thenReturn(Collections.singletonList(
+            new SpawnXpOrbMessage(id, location, (short) 1)));
+        entities.add(entity);
+        return entity;
+    }
+
+    private GlowPlayer mockPlayer(UUID uuid, Location location) {
+        GlowPlayer player = mock(GlowPlayer.class);
+        GlowSession session = mock(GlowSession.class);
+        when(player.getUniqueId()).thenReturn(uuid);
+        when(player.getName()).thenReturn("player");
+        when(player.getWorld()).thenReturn(world);
+        when(player.getLocation()).thenReturn(location);
+        when(player.getSession()).thenReturn(session);
+        return player;
+    }
+
+    private static byte[] connect(String server) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("Connect");
+            out.writeUTF(server);
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> awaitPublished(ShardedMessaging node, RecordingMessaging local)
+        throws InterruptedException {
+        return awaitPublished(node, local, 1);
+    }
+
+    private static List<Message> awaitPublished(ShardedMessaging node, RecordingMessaging local, int count)
+        throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (local.published.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            node.flush();
+        }
+        return local.published;
+    }
+}
@@ -0,0 +1,68 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The compression handler is tested for round trips of compressed and uncompressed messages.
+ */
+class CompressionHandlerTest {
+
+    private static final int THRESHOLD = 64;
+
+    @Test
+    void largeMessagesAreCompressed() {
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 7);
+
+        ByteBuf compressed = encode(Unpooled.wrappedBuffer(data));
+        assertTrue(compressed.readableBytes() < data.length);
+
+        assertRoundTrip(data, compressed);
+    }
+
+    @Test
+    void directMessagesAreCompressed() {
+        byte[] data = new byte[1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 13);
+        }
+        ByteBuf direct = Unpooled.directBuffer(data.length).writeBytes(data);
+
+        assertRoundTrip(data, encode(direct));
+    }
+
+    @Test
+    void smallMessagesAreNotCompressed() {
+        byte[] data = {1, 2, 3};
+
+        ByteBuf encoded = encode(Unpooled.wrappedBuffer(data));
+        assertEquals(data.length + 1, encoded.readableBytes());
+
+        assertRoundTrip(data, encoded);
+    }
+
+    private static ByteBuf encode(ByteBuf message) {
+        EmbeddedChannel channel = new EmbeddedChannel(new CompressionHandler(THRESHOLD, 6));
+        channel.writeOutbound(message);
+        return channel.readOutbound();
+    }
+
+    private static void assertRoundTrip(byte[] expected, ByteBuf encoded) {
+        EmbeddedChannel channel = new EmbeddedChannel(new CompressionHandler(THRESHOLD));
+        channel.writeInbound(encoded);
+        ByteBuf decoded = channel.readInbound();
+        try {
+            assertTrue(Arrays.equals(expected, ByteBufUtil.getBytes(decoded)));
+        } finally {
+            decoded.release();
+        }
+    }
+}
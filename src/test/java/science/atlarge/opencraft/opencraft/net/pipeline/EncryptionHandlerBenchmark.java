@@ -0,0 +1,121 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the encryption handler with that of the previous implementation, which ciphered every
+ * message into a new heap buffer. Both encrypt messages written by a framing handler into pooled direct buffers.
+ *
+ * <p>Run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=science.atlarge.opencraft.opencraft.net.pipeline.EncryptionHandlerBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionHandlerBenchmark {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[16], "AES");
+
+    @Param({"32", "512", "8192"})
+    private int size;
+
+    private byte[] payload;
+    private EmbeddedChannel pooled;
+    private EmbeddedChannel unpooled;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args ignored.
+     * @throws RunnerException if the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EncryptionHandlerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) i;
+        }
+        pooled = new EmbeddedChannel(new EncryptionHandler(KEY));
+        unpooled = new EmbeddedChannel(new UnpooledEncryptionHandler(KEY));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pooled.finishAndReleaseAll();
+        unpooled.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int pooled() {
+        return encrypt(pooled);
+    }
+
+    @Benchmark
+    public int unpooled() {
+        return encrypt(unpooled);
+    }
+
+    private int encrypt(EmbeddedChannel channel) {
+        channel.writeOutbound(channel.alloc().directBuffer(size).writeBytes(payload));
+        ByteBuf encrypted = channel.readOutbound();
+        int result = encrypted.getByte(0);
+        encrypted.release();
+        return result;
+    }
+
+    /**
+     * The encrypting half of the previous encryption handler.
+     */
+    private static final class UnpooledEncryptionHandler extends MessageToMessageEncoder<ByteBuf> {
+
+        private final Cipher cipher;
+
+        UnpooledEncryptionHandler(SecretKey sharedSecret) throws GeneralSecurityException {
+            cipher = Cipher.getInstance("AES/CFB8/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, sharedSecret, new IvParameterSpec(sharedSecret.getEncoded()));
+        }
+
+        @Override
+        protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+            ByteBuffer outBuffer = ByteBuffer.allocate(msg.readableBytes());
+            cipher.update(msg.nioBuffer(), outBuffer);
+            outBuffer.flip();
+            out.add(Unpooled.wrappedBuffer(outBuffer));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The encryption handler is tested for round trips of heap, direct and shared messages.
+ */
+class EncryptionHandlerTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[] {
+        1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES");
+
+    @Test
+    void heapMessagesRoundTrip() {
+        byte[] data = data(1000);
+        assertRoundTrip(data, Unpooled.buffer(data.length).writeBytes(data));
+    }
+
+    @Test
+    void directMessagesRoundTrip() {
+        byte[] data = data(1000);
+        assertRoundTrip(data, Unpooled.directBuffer(data.length).writeBytes(data));
+    }
+
+    @Test
+    void sharedMessagesAreNotOverwritten() {
+        byte[] data = data(100);
+        byte[] shared = data.clone();
+        ByteBuf message = Unpooled.wrappedBuffer(shared);
+        message.retain();
+
+        EmbeddedChannel channel = new EmbeddedChannel(new EncryptionHandler(KEY));
+        channel.writeOutbound(message);
+        ByteBuf encrypted = channel.readOutbound();
+
+        assertArrayEquals(data, shared);
+        assertEquals(1, message.refCnt());
+        assertFalse(Arrays.equals(data, ByteBufUtil.getBytes(encrypted)));
+        message.release();
+        encrypted.release();
+    }
+
+    @Test
+    void cipherStateSpansMessages() {
+        byte[] data = data(64);
+        EmbeddedChannel encoder = new EmbeddedChannel(new EncryptionHandler(KEY));
+        EmbeddedChannel decoder = new EmbeddedChannel(new EncryptionHandler(KEY));
+        for (int i = 0; i < 3; i++) {
+            encoder.writeOutbound(Unpooled.wrappedBuffer(data.clone()));
+            decoder.writeInbound((ByteBuf) encoder.readOutbound());
+            ByteBuf decrypted = decoder.readInbound();
+            try {
+                assertArrayEquals(data, ByteBufUtil.getBytes(decrypted));
+            } finally {
+                decrypted.release();
+            }
+        }
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static void assertRoundTrip(byte[] expected, ByteBuf message) {
+        EmbeddedChannel encoder = new EmbeddedChannel(new EncryptionHandler(KEY));
+        encoder.writeOutbound(message);
+        ByteBuf encrypted = encoder.readOutbound();
+        assertFalse(Arrays.equals(expected, ByteBufUtil.getBytes(encrypted)));
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new EncryptionHandler(KEY));
+        decoder.writeInbound(encrypted);
+        ByteBuf decrypted = decoder.readInbound();
+        try {
+            assertArrayEquals(expected, ByteBufUtil.getBytes(decrypted));
+        } finally {
+            decrypted.release();
+        }
+    }
+}
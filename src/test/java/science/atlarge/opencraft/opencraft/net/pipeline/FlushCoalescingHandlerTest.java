@@ -0,0 +1,74 @@
+package science.atlarge.opencraft.opencraft.net.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The flush coalescing handler is tested for holding back flushes until the end of a tick or until its byte budget is
+ * exceeded.
+ */
+class FlushCoalescingHandlerTest {
+
+    private FlushStatistics statistics;
+    private FlushCoalescingHandler handler;
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        statistics = new FlushStatistics();
+        handler = new FlushCoalescingHandler(statistics, 100, 1000);
+        channel = new EmbeddedChannel(handler);
+    }
+
+    @Test
+    void flushesImmediatelyUntilCoalescing() {
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+
+        assertNotNull(release(channel.readOutbound()));
+        assertEquals(1, statistics.getFlushes());
+    }
+
+    @Test
+    void flushesPendingMessagesTogether() {
+        handler.setCoalescing(true);
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[30]));
+        assertNull(channel.readOutbound());
+
+        handler.flushPending();
+
+        assertNotNull(release(channel.readOutbound()));
+        assertNotNull(release(channel.readOutbound()));
+        assertEquals(1, statistics.getFlushes());
+        assertEquals(2.0, statistics.getPacketsPerFlush());
+        assertEquals(40.0, statistics.getBytesPerFlush());
+    }
+
+    @Test
+    void flushesWhenByteBudgetIsExceeded() {
+        handler.setCoalescing(true);
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[60]));
+        assertNull(channel.readOutbound());
+
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[60]));
+
+        assertNotNull(release(channel.readOutbound()));
+        assertNotNull(release(channel.readOutbound()));
+        assertEquals(1, statistics.getFlushes());
+    }
+
+    private static ByteBuf release(Object message) {
+        ByteBuf buf = (ByteBuf) message;
+        if (buf != null) {
+            buf.release();
+        }
+        return buf;
+    }
+}
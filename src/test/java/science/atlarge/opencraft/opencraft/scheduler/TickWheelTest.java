@@ -0,0 +1,127 @@
+package science.atlarge.opencraft.opencraft.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.junit.jupiter.api.Test;
+
+class TickWheelTest {
+
+    private static final long BLOCK = TickWheel.pack(-20, 64, 37);
+    private static final long OTHER = TickWheel.pack(-19, 64, 37);
+
+    /**
+     * Advance the wheel until the given block is due.
+     *
+     * @return the number of ticks until the block was due, or -1 if it was not due within the limit.
+     */
+    private static long ticksUntilDue(TickWheel wheel, long position, long limit) {
+        for (long ticks = 1; ticks <= limit; ticks++) {
+            if (wheel.advance().contains(position)) {
+                return ticks;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    void packedCoordinatesRoundTrip() {
+        long position = TickWheel.pack(-30_000_000, 255, 29_999_999);
+
+        assertEquals(-30_000_000, TickWheel.unpackX(position));
+        assertEquals(255, TickWheel.unpackY(position));
+        assertEquals(29_999_999, TickWheel.unpackZ(position));
+    }
+
+    @Test
+    void blocksAreDueAfterTheirDelay() {
+        for (long delay : new long[] {1, 2, 63, 64, 65, 4095, 4096, 5000, 300_000}) {
+            TickWheel wheel = new TickWheel();
+            // start in the middle of a turn, so the due tick crosses levels
+            for (int i = 0; i < 100; i++) {
+                wheel.advance();
+            }
+            wheel.schedule(BLOCK, delay);
+
+            assertEquals(delay, ticksUntilDue(wheel, BLOCK, delay + 1), "delay " + delay);
+        }
+    }
+
+    @Test
+    void cancelledBlocksAreNotDue() {
+        TickWheel wheel = new TickWheel();
+        wheel.schedule(BLOCK, 10);
+        wheel.schedule(OTHER, 10);
+
+        assertTrue(wheel.cancel(BLOCK));
+        assertFalse(wheel.cancel(BLOCK));
+
+        for (int i = 0; i < 9; i++) {
+            assertTrue(wheel.advance().isEmpty());
+        }
+        assertEquals(new LongArrayList(new long[] {OTHER}), wheel.advance());
+    }
+
+    @Test
+    void dueBlocksStayScheduledUntilRescheduled() {
+        TickWheel wheel = new TickWheel();
+        wheel.schedule(BLOCK, 1);
+        wheel.advance();
+
+        assertTrue(wheel.isScheduled(BLOCK));
+        assertFalse(wheel.schedule(BLOCK, 1));
+
+        wheel.reschedule(BLOCK, 3);
+
+        assertEquals(3, ticksUntilDue(wheel, BLOCK, 10));
+    }
+
+    @Test
+    void blocksCancelledWhileTickedAreNotRescheduled() {
+        TickWheel wheel = new TickWheel();
+        wheel.schedule(BLOCK, 1);
+        wheel.advance();
+
+        // the block cancels its own tick while it is being ticked
+        assertTrue(wheel.cancel(BLOCK));
+        assertFalse(wheel.reschedule(BLOCK, 3));
+
+        assertFalse(wheel.isScheduled(BLOCK));
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.getScheduled(-2, 2).isEmpty());
+        assertEquals(-1, ticksUntilDue(wheel, BLOCK, 10));
+    }
+
+    @Test
+    void reschedulingMovesTheTick() {
+        TickWheel wheel = new TickWheel();
+        wheel.schedule(BLOCK, 100);
+        wheel.reschedule(BLOCK, 5);
+
+        assertEquals(5, ticksUntilDue(wheel, BLOCK, 200));
+        wheel.cancel(BLOCK);
+        assertEquals(-1, ticksUntilDue(wheel, BLOCK, 200));
+    }
+
+    @Test
+    void blocksAreIndexedByChunk() {
+        TickWheel wheel = new TickWheel();
+        long elsewhere = TickWheel.pack(20, 64, 37);
+        wheel.schedule(BLOCK, 5);
+        wheel.schedule(OTHER, 5);
+        wheel.schedule(elsewhere, 5);
+
+        LongList scheduled = wheel.getScheduled(-2, 2);
+        assertEquals(2, scheduled.size());
+        assertTrue(scheduled.contains(BLOCK) && scheduled.contains(OTHER));
+
+        wheel.cancelChunk(-2, 2);
+
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.getScheduled(-2, 2).isEmpty());
+        assertEquals(5, ticksUntilDue(wheel, elsewhere, 10));
+    }
+}
@@ -79,6 +79,28 @@ public class VariableValueArrayTest {
         }
     }
 
+    @Test
+    public void testResizeStraddlingValues() {
+        // Values that straddle the backing longs both before and after resizing
+        VariableValueArray array = new VariableValueArray(5, 100);
+        for (int i = 0; i < 100; i++) {
+            array.set(i, i % 32);
+        }
+        VariableValueArray resized = array.increaseBitsPerValueTo(13);
+        assertThat(13, is(resized.getBitsPerValue()));
+        assertThat(8191L, is(resized.getLargestPossibleValue()));
+        assertThat(21, is(resized.getBacking().length));
+        for (int i = 0; i < 100; i++) {
+            assertThat(i % 32, is(resized.get(i)));
+        }
+        resized.set(99, 8000);
+        assertThat(8000, is(resized.get(99)));
+        assertThat(2, is(resized.get(98)));
+        // the original array is left unchanged
+        assertThat(5, is(array.getBitsPerValue()));
+        assertThat(3, is(array.get(99)));
+    }
+
     @Test
     public void testCalculateNeededBits() {
         assertThat(1, is(VariableValueArray.calculateNeededBits(0)));
@@ -0,0 +1,82 @@
+package science.atlarge.opencraft.opencraft.util.collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ConcurrentLong2ObjectMap}.
+ */
+class ConcurrentLong2ObjectMapTest {
+
+    @Test
+    void computeIfAbsentKeepsTheFirstValue() {
+        ConcurrentLong2ObjectMap<String> map = new ConcurrentLong2ObjectMap<>();
+
+        String first = map.computeIfAbsent(42L, key -> "first");
+
+        assertSame(first, map.computeIfAbsent(42L, key -> "second"));
+        assertSame(first, map.putIfAbsent(42L, "third"));
+        assertSame(first, map.get(42L));
+        assertTrue(map.containsKey(42L));
+    }
+
+    @Test
+    void removeOnlyRemovesTheExpectedValue() {
+        ConcurrentLong2ObjectMap<String> map = new ConcurrentLong2ObjectMap<>();
+        map.putIfAbsent(-1L, "value");
+
+        assertFalse(map.remove(-1L, "other"));
+        assertTrue(map.remove(-1L, "value"));
+        assertNull(map.get(-1L));
+    }
+
+    @Test
+    void valuesOfAllSegments() {
+        ConcurrentLong2ObjectMap<Integer> map = new ConcurrentLong2ObjectMap<>();
+        IntStream.range(0, 1000).parallel().forEach(i -> map.computeIfAbsent((long) i << 32, key -> i));
+
+        assertEquals(1000, map.size());
+        assertEquals(1000, map.values().stream().distinct().count());
+    }
+
+    @Test
+    void removedKeysCanBeStoredAgainWhileTheTableGrows() {
+        ConcurrentLong2ObjectMap<Long> map = new ConcurrentLong2ObjectMap<>();
+        for (long key = 0; key < 10000; key++) {
+            map.putIfAbsent(key, key);
+            if (key % 2 == 0) {
+                assertTrue(map.remove(key, key));
+            }
+        }
+        for (long key = 0; key < 10000; key += 4) {
+            assertNull(map.putIfAbsent(key, -key));
+        }
+
+        assertEquals(7500, map.size());
+        for (long key = 0; key < 10000; key++) {
+            Long expected = key % 4 == 0 ? -key : key % 2 == 0 ? null : key;
+            assertEquals(expected, map.get(key));
+            assertEquals(expected != null, map.containsKey(key));
+        }
+    }
+
+    @Test
+    void computeIfAbsentCallsTheFunctionWithoutTheLock() {
+        ConcurrentLong2ObjectMap<String> map = new ConcurrentLong2ObjectMap<>();
+
+        // a function that writes the same segment would deadlock if the lock were held
+        String value = map.computeIfAbsent(7L, key -> {
+            assertNull(map.putIfAbsent(key, "inner"));
+            return "outer";
+        });
+
+        assertEquals("inner", value);
+        assertEquals("inner", map.get(7L));
+    }
+}
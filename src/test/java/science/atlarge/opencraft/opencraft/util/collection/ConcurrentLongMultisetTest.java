@@ -0,0 +1,38 @@
+package science.atlarge.opencraft.opencraft.util.collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ConcurrentLongMultiset}.
+ */
+class ConcurrentLongMultisetTest {
+
+    @Test
+    void countsOccurrences() {
+        ConcurrentLongMultiset multiset = new ConcurrentLongMultiset();
+
+        assertEquals(1, multiset.add(-5L));
+        assertEquals(2, multiset.add(-5L));
+        assertTrue(multiset.remove(-5L));
+        assertTrue(multiset.contains(-5L));
+        assertTrue(multiset.remove(-5L));
+        assertFalse(multiset.contains(-5L));
+        assertFalse(multiset.remove(-5L));
+        assertEquals(0, multiset.count(-5L));
+    }
+
+    @Test
+    void removeAllClearsTheCount() {
+        ConcurrentLongMultiset multiset = new ConcurrentLongMultiset();
+        multiset.add(Long.MAX_VALUE);
+        multiset.add(Long.MAX_VALUE);
+
+        multiset.removeAll(Long.MAX_VALUE);
+
+        assertFalse(multiset.contains(Long.MAX_VALUE));
+    }
+}